@@ -0,0 +1,57 @@
+package se.skorup.group;
+
+import java.util.Random;
+
+/**
+ * Creates synthetic groups for the benchmarks.
+ * */
+public class GroupFixtures
+{
+    /** You should not be able to instantiate a class of this object. */
+    private GroupFixtures() {}
+
+    /**
+     * Creates a group with random wishes and denies. The same
+     * arguments will always create the same group.
+     *
+     * @param size the number of persons in the group.
+     * @param wishes the number of wishes made by each person.
+     * @param denies the number of deny items added per person.
+     * @param seed the seed of the random generator.
+     * @return the created group.
+     * */
+    public static Group create(int size, int wishes, int denies, long seed)
+    {
+        var gm = new Group("Benchmark-" + size);
+        var r = new Random(seed);
+
+        for (var i = 0; i < size; i++)
+            gm.registerPerson("Person-" + i);
+
+        for (var i = 0; i < size; i++)
+        {
+            for (var k = 0; k < wishes; k++)
+                gm.addWishItem(i, other(r, size, i));
+
+            for (var k = 0; k < denies; k++)
+                gm.addDenyItem(i, other(r, size, i));
+        }
+
+        return gm;
+    }
+
+    /**
+     * Picks a random id that isn't the same as id.
+     *
+     * @param r the random generator.
+     * @param size the number of persons.
+     * @param id the id to be avoided.
+     * @return a random id, different from id.
+     * */
+    private static int other(Random r, int size, int id)
+    {
+        int res;
+        do res = r.nextInt(size); while (res == id && size > 1);
+        return res;
+    }
+}
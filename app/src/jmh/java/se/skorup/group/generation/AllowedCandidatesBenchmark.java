@@ -0,0 +1,141 @@
+package se.skorup.group.generation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.Group;
+import se.skorup.group.GroupFixtures;
+import se.skorup.util.collections.IndexBitSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the ways of finding the persons that are allowed in
+ * the subgroup being built, i.e. the persons that are left and
+ * not denied with any member of the subgroup.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllowedCandidatesBenchmark
+{
+    @Param({"500", "2000", "10000"})
+    public int size;
+
+    /** The number of members of the subgroup being built. */
+    @Param({"5"})
+    public int groupSize;
+
+    private Group gm;
+    private ConstraintGraph cg;
+
+    private Set<Integer> leftIds;
+    private List<Integer> currentIds;
+
+    private IndexBitSet left;
+    private IndexBitSet allowed;
+    private Subgroup current;
+
+    @Setup
+    public void setUp()
+    {
+        gm = GroupFixtures.create(size, 3, 3, 42);
+        cg = gm.snapshot();
+
+        // Half of the persons are already placed and the subgroup has groupSize members.
+        left = new IndexBitSet(size);
+        allowed = new IndexBitSet(size);
+        current = new Subgroup(cg);
+        currentIds = new ArrayList<>();
+
+        for (var i = 0; i < size; i++)
+        {
+            if (i % 2 == 0)
+                left.set(i);
+        }
+
+        for (var i = 0; i < groupSize; i++)
+        {
+            var member = 2 * i + 1;
+            current.add(member);
+            currentIds.add(cg.idOf(member));
+        }
+
+        leftIds = IntStream.range(0, size)
+                                  .filter(left::get)
+                                  .map(cg::idOf)
+                                  .boxed()
+                                  .collect(Collectors.toSet());
+    }
+
+    /**
+     * The path before the snapshot: per pair, a lock-free read of the published
+     * state and two lookups of boxed ids in the hash maps of the denylist.
+     * */
+    @Benchmark
+    public void groupIsDenied(Blackhole bh)
+    {
+        for (var id : leftIds)
+        {
+            var ok = true;
+            for (var member : currentIds)
+            {
+                if (gm.isDenied(id, member))
+                {
+                    ok = false;
+                    break;
+                }
+            }
+
+            bh.consume(ok);
+        }
+    }
+
+    /** One lookup in the snapshot per pair. */
+    @Benchmark
+    public void snapshotIsDenied(Blackhole bh)
+    {
+        for (var c = left.nextSetBit(0); c != -1; c = left.nextSetBit(c + 1))
+        {
+            var ok = true;
+            for (var i = 0; i < current.size(); i++)
+            {
+                if (cg.isDenied(c, current.get(i)))
+                {
+                    ok = false;
+                    break;
+                }
+            }
+
+            bh.consume(ok);
+        }
+    }
+
+    /** left &amp; ~forbidden, in one word-parallel pass. */
+    @Benchmark
+    public void forbiddenSet(Blackhole bh)
+    {
+        current.allowed(left, allowed);
+
+        for (var c = allowed.nextSetBit(0); c != -1; c = allowed.nextSetBit(c + 1))
+            bh.consume(c);
+    }
+}
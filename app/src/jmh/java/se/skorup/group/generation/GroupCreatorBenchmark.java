@@ -0,0 +1,128 @@
+package se.skorup.group.generation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.Group;
+import se.skorup.group.GroupFixtures;
+import se.skorup.group.progress.Progress;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the generation of subgroups and the scoring of them,
+ * over synthetic groups of different sizes, wish densities and
+ * deny densities.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupCreatorBenchmark
+{
+    private static final Progress NO_PROGRESS = p -> {};
+
+    /** The size of the subgroups. */
+    private static final int GROUP_SIZE = 5;
+
+    @Param({"30", "300", "3000"})
+    public int size;
+
+    /** The number of wishes made by each person. */
+    @Param({"1", "3"})
+    public int wishes;
+
+    /** The number of deny items added per person. */
+    @Param({"0", "1"})
+    public int denies;
+
+    private Group gm;
+    private ConstraintGraph cg;
+    private int[][] groups;
+    private List<Set<Integer>> groupIds;
+    private long seed;
+
+    @Setup
+    public void setUp()
+    {
+        gm = GroupFixtures.create(size, wishes, denies, 42);
+        cg = gm.snapshot();
+
+        // Scores every person in groups of GROUP_SIZE, by index.
+        groups = new int[(size + GROUP_SIZE - 1) / GROUP_SIZE][];
+        for (var g = 0; g < groups.length; g++)
+        {
+            groups[g] = new int[Math.min(GROUP_SIZE, size - g * GROUP_SIZE)];
+            for (var k = 0; k < groups[g].length; k++)
+                groups[g][k] = g * GROUP_SIZE + k;
+        }
+
+        groupIds = cg.toIds(groups);
+    }
+
+    /**
+     * Generates subgroups, the greedy creators can fail on the denylist
+     * now and then, those runs are counted as an empty result.
+     *
+     * @param gc the creator to be used.
+     * @return the result of the creator.
+     * */
+    private List<List<Set<Integer>>> generate(GroupCreator gc)
+    {
+        try
+        {
+            return gc.generate(gm, GROUP_SIZE, false, seed++);
+        }
+        catch (GroupCreationFailedException e)
+        {
+            return List.of();
+        }
+    }
+
+    @Benchmark
+    public List<List<Set<Integer>>> random()
+    {
+        return generate(new RandomGroupCreator(NO_PROGRESS));
+    }
+
+    @Benchmark
+    public List<List<Set<Integer>>> wishlist()
+    {
+        return generate(new WishlistGroupCreator());
+    }
+
+    /** A fixed number of iterations, so the time is comparable between the sizes. */
+    @Benchmark
+    public List<List<Set<Integer>>> localSearch()
+    {
+        return generate(new LocalSearchGroupCreator(NO_PROGRESS, 100_000, Duration.ofMinutes(1)));
+    }
+
+    /** The score of a snapshot, i.e. what every candidate in WishesGroupCreator costs. */
+    @Benchmark
+    public double getScoreSnapshot()
+    {
+        return WishesGroupCreator.getScore(groups, cg);
+    }
+
+    /** The score from ids, including taking the snapshot. */
+    @Benchmark
+    public double getScoreGroup()
+    {
+        return WishesGroupCreator.getScore(groupIds, gm);
+    }
+}
@@ -0,0 +1,60 @@
+package se.skorup.group.generation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.skorup.group.Group;
+import se.skorup.group.GroupFixtures;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link WishesGroupCreator}. One run makes 250 greedy
+ * runs per person on all the cores, so every run is measured once.
+ * 3000 persons is left out, since it runs into the five minute timeout
+ * of the creator, {@link GroupCreatorBenchmark#localSearch()} covers it.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class WishesGroupCreatorBenchmark
+{
+    @Param({"30", "300"})
+    public int size;
+
+    /** The number of wishes made by each person. */
+    @Param({"1", "3"})
+    public int wishes;
+
+    /** The number of deny items added per person. */
+    @Param({"0", "1"})
+    public int denies;
+
+    private Group gm;
+    private long seed;
+
+    @Setup
+    public void setUp()
+    {
+        gm = GroupFixtures.create(size, wishes, denies, 42);
+    }
+
+    @Benchmark
+    public List<List<Set<Integer>>> wishes() throws GroupCreationFailedException
+    {
+        return new WishesGroupCreator(p -> {}).generate(gm, 5, false, seed++);
+    }
+}
@@ -0,0 +1,110 @@
+package se.skorup.util.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the reading of a large synthetic CSV-file, in order and
+ * in parallel with a growing number of threads, to show how it scales.
+ * The number of threads is capped by the number of cores.
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CSVReaderBenchmark
+{
+    /** The size of the file, in MB. */
+    @Param({"200"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path path;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        path = Files.createTempFile("benchmark", ".csv");
+        pool = new ForkJoinPool(Math.min(threads, Runtime.getRuntime().availableProcessors()));
+
+        // A roster of names, and the wishes of every person.
+        var r = new Random(42);
+        var bytes = (long) size << 20;
+
+        try (var out = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+        {
+            for (var written = 0L; written < bytes;)
+                written += writeRow(out, r);
+        }
+    }
+
+    private static int writeRow(BufferedWriter out, Random r) throws IOException
+    {
+        var row = new StringBuilder();
+
+        for (var k = 0; k < 10; k++)
+        {
+            if (k > 0)
+                row.append(',');
+
+            row.append("förnamn").append(r.nextInt(5_000)).append(" efternamn").append(r.nextInt(300));
+        }
+
+        out.append(row).append('\n');
+        return row.length() + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        pool.shutdown();
+        Files.delete(path);
+    }
+
+    @Benchmark
+    public String[][] parallel() throws IOException
+    {
+        return CSVReader.readCSV(path.toString(), pool);
+    }
+
+    /** The file streamed through one parser, it doesn't depend on the number of threads. */
+    @Benchmark
+    public String[][] sequential() throws IOException
+    {
+        var rows = new ArrayList<String[]>();
+
+        try (var parser = CSVParser.open(path))
+        {
+            for (var row = parser.readRow(); row != null; row = parser.readRow())
+                rows.add(row);
+        }
+
+        return rows.toArray(String[][]::new);
+    }
+}
@@ -0,0 +1,353 @@
+package se.skorup.group;
+
+import se.skorup.util.io.BinaryReader;
+import se.skorup.util.io.BinaryWriter;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An attribute of the persons in a group, e.g. reading level or gender,
+ * stored as one column indexed by the id of the person. A numeric attribute
+ * is a double per person, NaN if it is missing, and a categorical attribute
+ * is the index of a category per person, -1 if it is missing.
+ * <br><br>
+ * A column is never changed, every change creates a new column, so it can
+ * be shared with the published states of the {@link Group}.
+ * */
+public final class Attribute implements Serializable
+{
+    @Serial
+    private static final long serialVersionUID = 2431855624163826047L;
+
+    /**
+     * The type of an attribute.
+     * */
+    public enum Kind
+    {
+        NUMERIC, CATEGORICAL
+    }
+
+    private final String name;
+    private final Kind kind;
+
+    /** The values of a numeric attribute, by id. */
+    private final double[] values;
+
+    /** The categories of a categorical attribute, by id. */
+    private final int[] codes;
+    private final List<String> categories;
+
+    private Attribute(String name, Kind kind, double[] values, int[] codes, List<String> categories)
+    {
+        this.name = name;
+        this.kind = kind;
+        this.values = values;
+        this.codes = codes;
+        this.categories = categories;
+    }
+
+    /**
+     * Creates a new attribute, without any values.
+     *
+     * @param name the name of the attribute.
+     * @param kind the type of the attribute.
+     * @return the created attribute.
+     * */
+    public static Attribute of(String name, Kind kind)
+    {
+        return kind == Kind.NUMERIC ?
+               new Attribute(name, kind, new double[0], null, List.of()) :
+               new Attribute(name, kind, null, new int[0], List.of());
+    }
+
+    /**
+     * Gets the name of the attribute.
+     *
+     * @return the name of the attribute.
+     * */
+    public String name()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the type of the attribute.
+     *
+     * @return the type of the attribute.
+     * */
+    public Kind kind()
+    {
+        return kind;
+    }
+
+    /**
+     * Gets the categories of a categorical attribute, in the order they were first used.
+     *
+     * @return the categories, empty if the attribute is numeric.
+     * */
+    public List<String> categories()
+    {
+        return categories;
+    }
+
+    /**
+     * Gets the numeric value of a person.
+     *
+     * @param id the id of the person.
+     * @return the value, NaN iff it is missing or the attribute isn't numeric.
+     * */
+    public double getNumeric(int id)
+    {
+        return kind == Kind.NUMERIC && id >= 0 && id < values.length ? values[id] : Double.NaN;
+    }
+
+    /**
+     * Gets the category of a person.
+     *
+     * @param id the id of the person.
+     * @return the index of the category, -1 iff it is missing or the attribute isn't categorical.
+     * */
+    public int getCode(int id)
+    {
+        return kind == Kind.CATEGORICAL && id >= 0 && id < codes.length ? codes[id] : -1;
+    }
+
+    /**
+     * Gets the category of a person.
+     *
+     * @param id the id of the person.
+     * @return the category, {@code null} iff it is missing or the attribute isn't categorical.
+     * */
+    public String getCategory(int id)
+    {
+        var code = getCode(id);
+        return code == -1 ? null : categories.get(code);
+    }
+
+    /**
+     * Creates a copy of the attribute, with the numeric value of a person set.
+     *
+     * @param id the id of the person.
+     * @param value the value, NaN removes it.
+     * @return the new attribute.
+     * @throws IllegalStateException iff the attribute isn't numeric.
+     * */
+    public Attribute withNumeric(int id, double value) throws IllegalStateException
+    {
+        return withNumerics(Collections.singletonMap(id, value));
+    }
+
+    /**
+     * Creates a copy of the attribute, with the numeric values of some persons
+     * set. The column is only copied once, however many values there are.
+     *
+     * @param byId the values by the ids of the persons, NaN removes a value.
+     * @return the new attribute.
+     * @throws IllegalStateException iff the attribute isn't numeric.
+     * */
+    public Attribute withNumerics(Map<Integer, Double> byId) throws IllegalStateException
+    {
+        if (kind != Kind.NUMERIC)
+            throw new IllegalStateException("%s isn't numeric".formatted(name));
+
+        var res = Arrays.copyOf(values, Math.max(values.length, maxId(byId) + 1));
+        Arrays.fill(res, values.length, res.length, Double.NaN);
+
+        for (var e : byId.entrySet())
+            res[e.getKey()] = e.getValue();
+
+        return new Attribute(name, kind, res, null, categories);
+    }
+
+    /**
+     * Creates a copy of the attribute, with the category of a person set.
+     *
+     * @param id the id of the person.
+     * @param category the category, {@code null} removes it.
+     * @return the new attribute.
+     * @throws IllegalStateException iff the attribute isn't categorical.
+     * */
+    public Attribute withCategory(int id, String category) throws IllegalStateException
+    {
+        return withCategories(Collections.singletonMap(id, category));
+    }
+
+    /**
+     * Creates a copy of the attribute, with the categories of some persons
+     * set. The column is only copied once, however many categories there are.
+     *
+     * @param byId the categories by the ids of the persons, {@code null} removes a category.
+     * @return the new attribute.
+     * @throws IllegalStateException iff the attribute isn't categorical.
+     * */
+    public Attribute withCategories(Map<Integer, String> byId) throws IllegalStateException
+    {
+        if (kind != Kind.CATEGORICAL)
+            throw new IllegalStateException("%s isn't categorical".formatted(name));
+
+        var cats = new ArrayList<>(categories);
+        var res = Arrays.copyOf(codes, Math.max(codes.length, maxId(byId) + 1));
+        Arrays.fill(res, codes.length, res.length, -1);
+
+        for (var e : byId.entrySet())
+        {
+            var category = e.getValue();
+            var code = category == null ? -1 : cats.indexOf(category);
+
+            if (category != null && code == -1)
+            {
+                cats.add(category);
+                code = cats.size() - 1;
+            }
+
+            res[e.getKey()] = code;
+        }
+
+        return new Attribute(name, kind, null, res, cats.size() == categories.size() ? categories : List.copyOf(cats));
+    }
+
+    /**
+     * Gets the largest id of some values.
+     *
+     * @param byId the values by id.
+     * @return the largest id, -1 iff there are no values.
+     * */
+    private static int maxId(Map<Integer, ?> byId)
+    {
+        var max = -1;
+
+        for (var id : byId.keySet())
+            max = Math.max(max, id);
+
+        return max;
+    }
+
+    /**
+     * Creates a copy of the attribute, without the value of a person.
+     *
+     * @param id the id of the person.
+     * @return the new attribute.
+     * */
+    public Attribute without(int id)
+    {
+        return kind == Kind.NUMERIC ? withNumeric(id, Double.NaN) : withCategory(id, null);
+    }
+
+    /**
+     * Gets the numeric values of some persons, as one column.
+     *
+     * @param ids the ids of the persons.
+     * @return the values, in the order of the ids.
+     * */
+    public double[] numericColumn(int[] ids)
+    {
+        var res = new double[ids.length];
+
+        for (var i = 0; i < ids.length; i++)
+            res[i] = getNumeric(ids[i]);
+
+        return res;
+    }
+
+    /**
+     * Gets the categories of some persons, as one column.
+     *
+     * @param ids the ids of the persons.
+     * @return the indices of the categories, in the order of the ids.
+     * */
+    public int[] categoricalColumn(int[] ids)
+    {
+        var res = new int[ids.length];
+
+        for (var i = 0; i < ids.length; i++)
+            res[i] = getCode(ids[i]);
+
+        return res;
+    }
+
+    /**
+     * Writes the attribute in the binary format of a {@link se.skorup.util.io.SaveFile save file}.
+     *
+     * @param out the writer.
+     * @throws IOException iff the writing fails.
+     * */
+    public void writeBinary(BinaryWriter out) throws IOException
+    {
+        out.writeString(name);
+        out.writeByte(kind.ordinal());
+
+        if (kind == Kind.NUMERIC)
+        {
+            out.writeVarInt(values.length);
+            for (var v : values)
+                out.writeDouble(v);
+
+            return;
+        }
+
+        out.writeVarInt(categories.size());
+        for (var c : categories)
+            out.writeString(c);
+
+        // Shifted by one, so a missing category is zero.
+        out.writeVarInt(codes.length);
+        for (var c : codes)
+            out.writeVarInt(c + 1);
+    }
+
+    /**
+     * Reads an attribute written by {@link #writeBinary(BinaryWriter)}.
+     *
+     * @param in the reader.
+     * @return the attribute.
+     * @throws IOException iff the reading fails or the attribute is corrupt.
+     * */
+    public static Attribute readBinary(BinaryReader in) throws IOException
+    {
+        var name = in.readString();
+        var ordinal = in.readByte();
+
+        if (ordinal >= Kind.values().length)
+            throw new IOException("Unknown kind of attribute: %d".formatted(ordinal));
+
+        var kind = Kind.values()[ordinal];
+
+        if (kind == Kind.NUMERIC)
+        {
+            var values = new double[in.readVarInt()];
+            for (var i = 0; i < values.length; i++)
+                values[i] = in.readDouble();
+
+            return new Attribute(name, kind, values, null, List.of());
+        }
+
+        var categories = new ArrayList<String>();
+        var count = in.readVarInt();
+        for (var i = 0; i < count; i++)
+            categories.add(in.readString());
+
+        var codes = new int[in.readVarInt()];
+        for (var i = 0; i < codes.length; i++)
+        {
+            codes[i] = in.readVarInt() - 1;
+
+            if (codes[i] >= categories.size())
+                throw new IOException("Unknown category of %s: %d".formatted(name, codes[i]));
+        }
+
+        return new Attribute(name, kind, null, codes, List.copyOf(categories));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "%s (%s)".formatted(name, kind);
+    }
+}
@@ -0,0 +1,540 @@
+package se.skorup.group;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, index compacted, snapshot of the wishes and
+ * denies of a {@link Group}. All persons are mapped to a dense
+ * index in the range 0..n-1, sorted by their id, and the wishes
+ * and denies are stored as CSR-adjacency arrays of indices.
+ * <br><br>
+ * The attributes of the persons are kept as one primitive column per
+ * attribute, indexed the same way.
+ * <br><br>
+ * This is the structure the generators work against, it takes
+ * no locks and never boxes, so it is safe and cheap to share
+ * between threads.
+ * */
+public final class ConstraintGraph
+{
+    private final int[] ids;
+    private final int[] indices;
+
+    private final int[] wishOffsets;
+    private final int[] wishes;
+
+    private final int[] wishedByOffsets;
+    private final int[] wishedBy;
+
+    private final int[] denyOffsets;
+    private final int[] denies;
+
+    /** The attributes, a column is null iff the attribute is of the other kind. */
+    private final String[] attributeNames;
+    private final double[][] numeric;
+    private final int[][] categorical;
+    private final int[] categoryCounts;
+
+    /**
+     * Creates a new ConstraintGraph, without any attributes.
+     *
+     * @param persons the ids of the persons in the group.
+     * @param wishlist the wishlist of the group.
+     * @param denylist the denylist of the group.
+     * */
+    ConstraintGraph(
+        Collection<Integer> persons,
+        Map<Integer, Set<Integer>> wishlist,
+        Map<Integer, Set<Integer>> denylist
+    )
+    {
+        this(persons, wishlist, denylist, List.of());
+    }
+
+    /**
+     * Creates a new ConstraintGraph. The maps are expected to be
+     * the maps of a group, i.e. id to the set of ids. Entries pointing
+     * at persons that doesn't exist will be ignored.
+     *
+     * @param persons the ids of the persons in the group.
+     * @param wishlist the wishlist of the group.
+     * @param denylist the denylist of the group.
+     * @param attributes the attributes of the group.
+     * */
+    ConstraintGraph(
+        Collection<Integer> persons,
+        Map<Integer, Set<Integer>> wishlist,
+        Map<Integer, Set<Integer>> denylist,
+        Collection<Attribute> attributes
+    )
+    {
+        this.ids = persons.stream().mapToInt(Integer::intValue).sorted().toArray();
+        this.indices = new int[ids.length == 0 ? 0 : ids[ids.length - 1] + 1];
+        Arrays.fill(indices, -1);
+
+        for (var i = 0; i < ids.length; i++)
+            indices[ids[i]] = i;
+
+        // The deny-relation is symmetric, so it is folded into both rows.
+        var denyRows = new ArrayList<Set<Integer>>(ids.length);
+        for (var i = 0; i < ids.length; i++)
+            denyRows.add(new HashSet<>());
+
+        for (var e : denylist.entrySet())
+        {
+            var from = indexOf(e.getKey());
+            if (from == -1)
+                continue;
+
+            for (var id : e.getValue())
+            {
+                var to = indexOf(id);
+                if (to == -1 || to == from)
+                    continue;
+
+                denyRows.get(from).add(to);
+                denyRows.get(to).add(from);
+            }
+        }
+
+        this.denyOffsets = new int[ids.length + 1];
+        this.denies = toCSR(denyRows, denyOffsets);
+
+        var wishRows = new ArrayList<Set<Integer>>(ids.length);
+        for (var id : ids)
+        {
+            var row = new HashSet<Integer>();
+            for (var wished : wishlist.getOrDefault(id, Set.of()))
+            {
+                var to = indexOf(wished);
+                if (to != -1 && wished != id)
+                    row.add(to);
+            }
+
+            wishRows.add(row);
+        }
+
+        this.wishOffsets = new int[ids.length + 1];
+        this.wishes = toCSR(wishRows, wishOffsets);
+
+        // The reversed wishes, i.e. who has wished for a person.
+        var wishedByRows = new ArrayList<Set<Integer>>(ids.length);
+        for (var i = 0; i < ids.length; i++)
+            wishedByRows.add(new HashSet<>());
+
+        for (var i = 0; i < ids.length; i++)
+        {
+            for (var to : wishRows.get(i))
+                wishedByRows.get(to).add(i);
+        }
+
+        this.wishedByOffsets = new int[ids.length + 1];
+        this.wishedBy = toCSR(wishedByRows, wishedByOffsets);
+
+        var count = attributes.size();
+        this.attributeNames = new String[count];
+        this.numeric = new double[count][];
+        this.categorical = new int[count][];
+        this.categoryCounts = new int[count];
+
+        var a = 0;
+        for (var attribute : attributes)
+        {
+            attributeNames[a] = attribute.name();
+            categoryCounts[a] = attribute.categories().size();
+
+            if (attribute.kind() == Attribute.Kind.NUMERIC)
+                numeric[a] = attribute.numericColumn(ids);
+            else
+                categorical[a] = attribute.categoricalColumn(ids);
+
+            a++;
+        }
+    }
+
+    /**
+     * Creates the subgraph of a snapshot that is induced by some of its persons.
+     *
+     * @param parent the snapshot the subgraph is taken from.
+     * @param members the indices of the persons in the parent, sorted.
+     * */
+    private ConstraintGraph(ConstraintGraph parent, int[] members)
+    {
+        this.ids = new int[members.length];
+        for (var i = 0; i < members.length; i++)
+            ids[i] = parent.ids[members[i]];
+
+        this.indices = new int[ids.length == 0 ? 0 : ids[ids.length - 1] + 1];
+        Arrays.fill(indices, -1);
+
+        for (var i = 0; i < ids.length; i++)
+            indices[ids[i]] = i;
+
+        // The rows are sorted by index in the parent, and the order of the members is kept.
+        this.wishOffsets = new int[ids.length + 1];
+        this.wishes = parent.induce(parent.wishOffsets, parent.wishes, members, this, wishOffsets);
+        this.wishedByOffsets = new int[ids.length + 1];
+        this.wishedBy = parent.induce(parent.wishedByOffsets, parent.wishedBy, members, this, wishedByOffsets);
+        this.denyOffsets = new int[ids.length + 1];
+        this.denies = parent.induce(parent.denyOffsets, parent.denies, members, this, denyOffsets);
+
+        this.attributeNames = parent.attributeNames;
+        this.categoryCounts = parent.categoryCounts;
+        this.numeric = new double[attributeNames.length][];
+        this.categorical = new int[attributeNames.length][];
+
+        for (var a = 0; a < attributeNames.length; a++)
+        {
+            var numericColumn = parent.numeric[a];
+            var categoricalColumn = parent.categorical[a];
+
+            if (numericColumn != null)
+                numeric[a] = Arrays.stream(members).mapToDouble(i -> numericColumn[i]).toArray();
+            else
+                categorical[a] = Arrays.stream(members).map(i -> categoricalColumn[i]).toArray();
+        }
+    }
+
+    /**
+     * Keeps the entries of the rows of the members that point at other
+     * members, translated to the indices of the subgraph.
+     *
+     * @param offsets the offsets of the rows in this snapshot.
+     * @param rows the rows in this snapshot.
+     * @param members the indices of the members in this snapshot.
+     * @param sub the subgraph, only its indices are used.
+     * @param subOffsets the array the offsets of the subgraph will be written to.
+     * @return the rows of the subgraph.
+     * */
+    private int[] induce(int[] offsets, int[] rows, int[] members, ConstraintGraph sub, int[] subOffsets)
+    {
+        var res = new int[rows.length];
+        var total = 0;
+
+        for (var i = 0; i < members.length; i++)
+        {
+            subOffsets[i] = total;
+
+            for (var k = offsets[members[i]]; k < offsets[members[i] + 1]; k++)
+            {
+                var to = sub.indexOf(ids[rows[k]]);
+                if (to != -1)
+                    res[total++] = to;
+            }
+        }
+
+        subOffsets[members.length] = total;
+        return Arrays.copyOf(res, total);
+    }
+
+    /**
+     * Flattens the rows into one array, where the row i is
+     * stored in the range offsets[i] until offsets[i + 1].
+     * Every row is sorted.
+     *
+     * @param rows the rows to be flattened.
+     * @param offsets the array the offsets will be written to,
+     *                it has to have the length rows.size() + 1.
+     * @return the flattened rows.
+     * */
+    private static int[] toCSR(List<Set<Integer>> rows, int[] offsets)
+    {
+        var total = 0;
+        for (var i = 0; i < rows.size(); i++)
+        {
+            offsets[i] = total;
+            total += rows.get(i).size();
+        }
+
+        offsets[rows.size()] = total;
+
+        var res = new int[total];
+        for (var i = 0; i < rows.size(); i++)
+        {
+            var pos = offsets[i];
+            for (var to : rows.get(i))
+                res[pos++] = to;
+
+            Arrays.sort(res, offsets[i], offsets[i + 1]);
+        }
+
+        return res;
+    }
+
+    /**
+     * The number of persons in the snapshot.
+     *
+     * @return the number of persons.
+     * */
+    public int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     * Gets the id of the person at an index.
+     *
+     * @param index the index of the person.
+     * @return the id of the person.
+     * */
+    public int idOf(int index)
+    {
+        return ids[index];
+    }
+
+    /**
+     * Gets the index of a person.
+     *
+     * @param id the id of the person.
+     * @return the index of the person, or -1 iff
+     *         the person isn't part of the snapshot.
+     * */
+    public int indexOf(int id)
+    {
+        return id >= 0 && id < indices.length ? indices[id] : -1;
+    }
+
+    /**
+     * The number of wishes made by a person.
+     *
+     * @param index the index of the person.
+     * @return the number of persons index has wished for.
+     * */
+    public int wishCount(int index)
+    {
+        return wishOffsets[index + 1] - wishOffsets[index];
+    }
+
+    /**
+     * Gets the k:th wish of a person, the wishes
+     * are ordered by index.
+     *
+     * @param index the index of the person.
+     * @param k the number of the wish, 0 &le; k &lt; wishCount(index).
+     * @return the index of the wished person.
+     * */
+    public int wish(int index, int k)
+    {
+        return wishes[wishOffsets[index] + k];
+    }
+
+    /**
+     * The number of persons that has wished for a person.
+     *
+     * @param index the index of the person.
+     * @return the number of persons that has wished for index.
+     * */
+    public int wishedByCount(int index)
+    {
+        return wishedByOffsets[index + 1] - wishedByOffsets[index];
+    }
+
+    /**
+     * Gets the k:th person that has wished for a person,
+     * they are ordered by index.
+     *
+     * @param index the index of the wished person.
+     * @param k the number of the wisher, 0 &le; k &lt; wishedByCount(index).
+     * @return the index of the wisher.
+     * */
+    public int wishedBy(int index, int k)
+    {
+        return wishedBy[wishedByOffsets[index] + k];
+    }
+
+    /**
+     * The highest number of wishes made by any person.
+     *
+     * @return the highest number of wishes made by one person.
+     * */
+    public int maxWishCount()
+    {
+        var max = 0;
+
+        for (var i = 0; i < size(); i++)
+            max = Math.max(max, wishCount(i));
+
+        return max;
+    }
+
+    /**
+     * Checks if a person has wished for another person.
+     *
+     * @param wisher the index of the wisher.
+     * @param wished the index of the wished person.
+     * @return {@code true} iff wisher has wished for wished.
+     * */
+    public boolean isWished(int wisher, int wished)
+    {
+        return Arrays.binarySearch(wishes, wishOffsets[wisher], wishOffsets[wisher + 1], wished) >= 0;
+    }
+
+    /**
+     * The number of persons a person is denied with.
+     *
+     * @param index the index of the person.
+     * @return the number of persons index is denied with.
+     * */
+    public int denyCount(int index)
+    {
+        return denyOffsets[index + 1] - denyOffsets[index];
+    }
+
+    /**
+     * Gets the k:th person a person is denied with,
+     * they are ordered by index.
+     *
+     * @param index the index of the person.
+     * @param k the number of the deny, 0 &le; k &lt; denyCount(index).
+     * @return the index of the denied person.
+     * */
+    public int deny(int index, int k)
+    {
+        return denies[denyOffsets[index] + k];
+    }
+
+    /**
+     * Checks if two persons are denied with each other.
+     *
+     * @param i1 the index of the first person.
+     * @param i2 the index of the second person.
+     * @return {@code true} iff i1 and i2 are denied.
+     * */
+    public boolean isDenied(int i1, int i2)
+    {
+        return Arrays.binarySearch(denies, denyOffsets[i1], denyOffsets[i1 + 1], i2) >= 0;
+    }
+
+    /**
+     * The number of attributes in the snapshot.
+     *
+     * @return the number of attributes.
+     * */
+    public int attributeCount()
+    {
+        return attributeNames.length;
+    }
+
+    /**
+     * The name of an attribute.
+     *
+     * @param a the index of the attribute.
+     * @return the name of the attribute.
+     * */
+    public String attributeName(int a)
+    {
+        return attributeNames[a];
+    }
+
+    /**
+     * Checks if an attribute is numeric.
+     *
+     * @param a the index of the attribute.
+     * @return {@code true} iff the attribute is numeric, else it is categorical.
+     * */
+    public boolean isNumeric(int a)
+    {
+        return numeric[a] != null;
+    }
+
+    /**
+     * The numeric value of a person.
+     *
+     * @param a the index of the attribute, it has to be numeric.
+     * @param index the index of the person.
+     * @return the value, NaN iff it is missing.
+     * */
+    public double numeric(int a, int index)
+    {
+        return numeric[a][index];
+    }
+
+    /**
+     * The category of a person.
+     *
+     * @param a the index of the attribute, it has to be categorical.
+     * @param index the index of the person.
+     * @return the index of the category, -1 iff it is missing.
+     * */
+    public int category(int a, int index)
+    {
+        return categorical[a][index];
+    }
+
+    /**
+     * The number of categories of an attribute.
+     *
+     * @param a the index of the attribute.
+     * @return the number of categories, 0 iff the attribute is numeric.
+     * */
+    public int categoryCount(int a)
+    {
+        return categoryCounts[a];
+    }
+
+    /**
+     * Creates the snapshot of some of the persons in this snapshot, with only the
+     * wishes and denies between them, and their attributes. It is built directly from the arrays
+     * of this snapshot, so the group isn't involved.
+     *
+     * @param members the indices of the persons to be kept.
+     * @return the snapshot of the members.
+     * */
+    public ConstraintGraph subgraph(int[] members)
+    {
+        var sorted = Arrays.stream(members).sorted().distinct().toArray();
+        return new ConstraintGraph(this, sorted);
+    }
+
+    /**
+     * Translates subgroups of indices to subgroups of ids.
+     *
+     * @param groups the subgroups of indices.
+     * @return the same subgroups, but with ids.
+     * */
+    public List<Set<Integer>> toIds(int[][] groups)
+    {
+        var res = new ArrayList<Set<Integer>>(groups.length);
+
+        for (var g : groups)
+        {
+            var set = new HashSet<Integer>();
+            for (var i : g)
+                set.add(ids[i]);
+
+            res.add(set);
+        }
+
+        return res;
+    }
+
+    /**
+     * Translates subgroups of ids to subgroups of indices.
+     * Ids that aren't part of the snapshot are ignored.
+     *
+     * @param groups the subgroups of ids.
+     * @return the same subgroups, but with indices.
+     * */
+    public int[][] toIndices(Iterable<Set<Integer>> groups)
+    {
+        var res = new ArrayList<int[]>();
+
+        for (var g : groups)
+        {
+            res.add(
+                g.stream()
+                 .mapToInt(this::indexOf)
+                 .filter(i -> i != -1)
+                 .toArray()
+            );
+        }
+
+        return res.toArray(int[][]::new);
+    }
+}
@@ -0,0 +1,401 @@
+package se.skorup.group;
+
+import se.skorup.util.io.BinaryReader;
+import se.skorup.util.io.BinaryWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A change made to a {@link Group}. Every method that changes a group
+ * gives the edit to the {@link Group.Listener listener} of the group, so
+ * the changes can be written to a {@link se.skorup.util.io.Journal journal}
+ * and applied again, in the same order, to a copy of the group.
+ * */
+public sealed interface Edit
+{
+    /**
+     * Applies the edit to a group.
+     *
+     * @param g the group.
+     * @throws IllegalStateException iff the group isn't in the state the edit was made in.
+     * */
+    void apply(Group g) throws IllegalStateException;
+
+    /**
+     * Writes the edit, including its type.
+     *
+     * @param out the writer.
+     * @throws IOException iff the writing fails.
+     * */
+    void writeBinary(BinaryWriter out) throws IOException;
+
+    /**
+     * Reads an edit written by {@link #writeBinary(BinaryWriter)}.
+     *
+     * @param in the reader.
+     * @return the edit.
+     * @throws IOException iff the reading fails or the edit is of an unknown type.
+     * */
+    static Edit readBinary(BinaryReader in) throws IOException
+    {
+        var type = in.readByte();
+
+        return switch (type)
+        {
+            case 0 -> new Rename(in.readString());
+            case 1 -> new Register(in.readVarInt(), in.readString());
+            case 2 -> new Remove(in.readVarInt());
+            case 3 -> new Wish(in.readVarInt(), in.readVarInt(), in.readByte() != 0);
+            case 4 -> new Deny(in.readVarInt(), in.readVarInt(), in.readByte() != 0);
+            case 5 -> new SetMainGroup(in.readVarInt(), in.readByte() == 0 ? MainGroup.ONE : MainGroup.TWO);
+            case 6 -> new AddAttribute(in.readString(), readKind(in));
+            case 7 -> new RemoveAttribute(in.readString());
+            case 8 -> new SetNumeric(in.readVarInt(), in.readString(), in.readDouble());
+            case 9 -> new SetCategory(in.readVarInt(), in.readString(), in.readByte() == 0 ? null : in.readString());
+            case 10 -> SetNumerics.read(in);
+            case 11 -> SetCategories.read(in);
+            default -> throw new IOException("Unknown type of edit: %d".formatted(type));
+        };
+    }
+
+    private static Attribute.Kind readKind(BinaryReader in) throws IOException
+    {
+        var ordinal = in.readByte();
+
+        if (ordinal >= Attribute.Kind.values().length)
+            throw new IOException("Unknown kind of attribute: %d".formatted(ordinal));
+
+        return Attribute.Kind.values()[ordinal];
+    }
+
+    /**
+     * The group was renamed.
+     *
+     * @param name the new name.
+     * */
+    record Rename(String name) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.setName(name);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(0);
+            out.writeString(name);
+        }
+    }
+
+    /**
+     * A person was registered.
+     *
+     * @param id the id the person got.
+     * @param name the name of the person.
+     * */
+    record Register(int id, String name) implements Edit
+    {
+        @Override
+        public void apply(Group g) throws IllegalStateException
+        {
+            var res = g.registerPerson(name);
+
+            if (res != id)
+                throw new IllegalStateException("%s got the id %d, expected: %d".formatted(name, res, id));
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(1);
+            out.writeVarInt(id);
+            out.writeString(name);
+        }
+    }
+
+    /**
+     * A person was removed.
+     *
+     * @param id the id of the person.
+     * */
+    record Remove(int id) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.removePerson(id);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(2);
+            out.writeVarInt(id);
+        }
+    }
+
+    /**
+     * A wish was added or removed.
+     *
+     * @param wisher the id of the person doing the wish.
+     * @param wished the id of the wished person.
+     * @param added {@code true} iff the wish was added.
+     * */
+    record Wish(int wisher, int wished, boolean added) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            if (added)
+                g.addWishItem(wisher, wished);
+            else
+                g.removeWishItem(wisher, wished);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(3);
+            out.writeVarInt(wisher);
+            out.writeVarInt(wished);
+            out.writeByte(added ? 1 : 0);
+        }
+    }
+
+    /**
+     * A deny item was added or removed.
+     *
+     * @param id1 the first id.
+     * @param id2 the second id.
+     * @param added {@code true} iff the deny item was added.
+     * */
+    record Deny(int id1, int id2, boolean added) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            if (added)
+                g.addDenyItem(id1, id2);
+            else
+                g.removeDenyItem(id1, id2);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(4);
+            out.writeVarInt(id1);
+            out.writeVarInt(id2);
+            out.writeByte(added ? 1 : 0);
+        }
+    }
+
+    /**
+     * The main group of a person was set.
+     *
+     * @param id the id of the person.
+     * @param mg the main group.
+     * */
+    record SetMainGroup(int id, MainGroup mg) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.setMainGroup(id, mg);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(5);
+            out.writeVarInt(id);
+            out.writeByte(mg == MainGroup.ONE ? 0 : 1);
+        }
+    }
+
+    /**
+     * An attribute was added.
+     *
+     * @param name the name of the attribute.
+     * @param kind the type of the attribute.
+     * */
+    record AddAttribute(String name, Attribute.Kind kind) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.addAttribute(name, kind);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(6);
+            out.writeString(name);
+            out.writeByte(kind.ordinal());
+        }
+    }
+
+    /**
+     * An attribute was removed.
+     *
+     * @param name the name of the attribute.
+     * */
+    record RemoveAttribute(String name) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.removeAttribute(name);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(7);
+            out.writeString(name);
+        }
+    }
+
+    /**
+     * The value of a numeric attribute was set.
+     *
+     * @param id the id of the person.
+     * @param attribute the name of the attribute.
+     * @param value the value, NaN if it was removed.
+     * */
+    record SetNumeric(int id, String attribute, double value) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.setNumeric(id, attribute, value);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(8);
+            out.writeVarInt(id);
+            out.writeString(attribute);
+            out.writeDouble(value);
+        }
+    }
+
+    /**
+     * The category of a categorical attribute was set.
+     *
+     * @param id the id of the person.
+     * @param attribute the name of the attribute.
+     * @param category the category, {@code null} if it was removed.
+     * */
+    record SetCategory(int id, String attribute, String category) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.setCategory(id, attribute, category);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(9);
+            out.writeVarInt(id);
+            out.writeString(attribute);
+            out.writeByte(category == null ? 0 : 1);
+
+            if (category != null)
+                out.writeString(category);
+        }
+    }
+
+    /**
+     * The values of a numeric attribute of some persons were set at once.
+     *
+     * @param attribute the name of the attribute.
+     * @param values the values by id, NaN if it was removed.
+     * */
+    record SetNumerics(String attribute, Map<Integer, Double> values) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.setNumerics(attribute, values);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(10);
+            out.writeString(attribute);
+            out.writeVarInt(values.size());
+
+            for (var e : values.entrySet())
+            {
+                out.writeVarInt(e.getKey());
+                out.writeDouble(e.getValue());
+            }
+        }
+
+        private static SetNumerics read(BinaryReader in) throws IOException
+        {
+            var attribute = in.readString();
+            var values = new HashMap<Integer, Double>();
+            var count = in.readVarInt();
+
+            for (var i = 0; i < count; i++)
+                values.put(in.readVarInt(), in.readDouble());
+
+            return new SetNumerics(attribute, values);
+        }
+    }
+
+    /**
+     * The categories of a categorical attribute of some persons were set at once.
+     *
+     * @param attribute the name of the attribute.
+     * @param categories the categories by id, {@code null} if it was removed.
+     * */
+    record SetCategories(String attribute, Map<Integer, String> categories) implements Edit
+    {
+        @Override
+        public void apply(Group g)
+        {
+            g.setCategories(attribute, categories);
+        }
+
+        @Override
+        public void writeBinary(BinaryWriter out) throws IOException
+        {
+            out.writeByte(11);
+            out.writeString(attribute);
+            out.writeVarInt(categories.size());
+
+            for (var e : categories.entrySet())
+            {
+                out.writeVarInt(e.getKey());
+                out.writeByte(e.getValue() == null ? 0 : 1);
+
+                if (e.getValue() != null)
+                    out.writeString(e.getValue());
+            }
+        }
+
+        private static SetCategories read(BinaryReader in) throws IOException
+        {
+            var attribute = in.readString();
+            var categories = new HashMap<Integer, String>();
+            var count = in.readVarInt();
+
+            for (var i = 0; i < count; i++)
+                categories.put(in.readVarInt(), in.readByte() == 0 ? null : in.readString());
+
+            return new SetCategories(attribute, categories);
+        }
+    }
+}
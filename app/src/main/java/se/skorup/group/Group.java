@@ -1,18 +1,43 @@
 package se.skorup.group;
 
+import se.skorup.util.Utils;
+import se.skorup.util.io.BinaryReader;
+import se.skorup.util.io.BinaryWriter;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 /**
- * A Thread-Safe group manager.
+ * A Thread-Safe group manager. All the changes are done under
+ * the lock of the group, but all the reads are lock-free. The
+ * readers use an immutable, versioned, {@link State state} that
+ * is published through a volatile field. A change invalidates
+ * the published state and the next read will publish a new version,
+ * this way a burst of changes only costs one copy. The lookups by
+ * name are the exception, they use an index of the working copy under
+ * the lock, so looking up names between changes doesn't copy the group.
+ * <br><br>
+ * A group can be created {@link #lazy(Body) lazily} from its {@link Body body},
+ * e.g. where it is saved, and then only the name and size are known until
+ * the group is used. The body is read the first time it is needed, and a
+ * group that hasn't changed can be {@link #unload(Body) unloaded} again.
  * */
 public class Group implements Serializable
 {
@@ -21,6 +46,11 @@ public class Group implements Serializable
 
     private int currentId = 0;
 
+    /*
+     * The working copy, only touched under the lock. The rows of the
+     * deny- and wishlist are never changed in place, they are replaced,
+     * so they can be shared with the published states.
+     * */
     private final Map<Integer, Person> persons;
     private final Map<Integer, Set<Integer>> denylist;
     private final Map<Integer, Set<Integer>> wishlist;
@@ -28,8 +58,82 @@ public class Group implements Serializable
     private final Set<Person> mainGroupOne;
     private final Set<Person> mainGroupTwo;
 
+    /** The ids by the {@link Utils#toNameCase(String) name case} of their names, it's rebuilt when read. */
+    private transient NavigableMap<String, Set<Integer>> names = new TreeMap<>();
+
+    /** The attributes by name, not final since groups saved before them have none. */
+    private Map<String, Attribute> attributes;
+
     private String name;
 
+    /** The number of changes made to the group, guarded by the lock. */
+    private transient long version;
+
+    /** The published state, it is {@code null} iff the group has changed since it was published. */
+    private transient volatile State state;
+
+    /** The listener of the edits, {@code null} iff there is none. */
+    private transient volatile Listener listener;
+
+    /** The body to be read, {@code null} iff the group is loaded. It is only changed under the lock. */
+    private transient volatile Body body;
+
+    /**
+     * Listens to the edits of a group, e.g. to write them to a journal.
+     * */
+    @FunctionalInterface
+    public interface Listener
+    {
+        /**
+         * Called under the lock of the group after every edit, in the order
+         * the edits are made. It must not block, nor call the group.
+         *
+         * @param g the group that was edited.
+         * @param version the version of the group after the edit.
+         * @param edit the edit.
+         * */
+        void edited(Group g, long version, Edit edit);
+
+        /**
+         * Called under the lock of the group after its body has been read.
+         * It must not block, nor call the group.
+         *
+         * @param g the group that was loaded.
+         * */
+        default void loaded(Group g) {}
+    }
+
+    /**
+     * The name, size and version of a group.
+     *
+     * @param name the name of the group.
+     * @param size the number of persons in the group.
+     * @param version the version of the group.
+     * */
+    public record Summary(String name, int size, long version) {}
+
+    /**
+     * The body of a group that isn't loaded, e.g. where it is saved.
+     * */
+    public interface Body
+    {
+        /**
+         * Gets the summary of the group in the body, so
+         * it is known without reading the body.
+         *
+         * @return the name, size and version of the group.
+         * */
+        Summary summary();
+
+        /**
+         * Reads the group.
+         *
+         * @return a new group with the content of the body.
+         * @throws IOException iff the body can't be read.
+         * */
+        Group read() throws IOException;
+    }
+
     /**
      * Creates a new Group.
      *
@@ -42,9 +146,213 @@ public class Group implements Serializable
         this.wishlist = new HashMap<>();
         this.mainGroupOne = new HashSet<>();
         this.mainGroupTwo = new HashSet<>();
+        this.attributes = new LinkedHashMap<>();
         this.name = name;
     }
 
+    /**
+     * Creates a group that isn't loaded, its body is
+     * read the first time the group is used.
+     *
+     * @param body the body of the group.
+     * @return the group.
+     * */
+    public static Group lazy(Body body)
+    {
+        var g = new Group(body.summary().name());
+        g.version = body.summary().version();
+        g.body = body;
+        return g;
+    }
+
+    /**
+     * Gets the current state of the group, publishing
+     * a new version iff the group has changed.
+     *
+     * @return the current state of the group.
+     * */
+    private State state()
+    {
+        var s = state;
+        return s != null ? s : publish();
+    }
+
+    /**
+     * Publishes a new version of the state.
+     *
+     * @return the published state.
+     * */
+    private synchronized State publish()
+    {
+        load();
+
+        if (state == null)
+        {
+            state = new State(
+                version, new HashMap<>(persons), new HashMap<>(denylist), new HashMap<>(wishlist),
+                new HashSet<>(mainGroupOne), new HashSet<>(mainGroupTwo),
+                new LinkedHashMap<>(attributes), name
+            );
+        }
+
+        return state;
+    }
+
+    /**
+     * Reads the body of the group iff it isn't loaded, must be called
+     * under the lock before the working copy is used.
+     *
+     * @throws UncheckedIOException iff the body can't be read.
+     * */
+    private void load() throws UncheckedIOException
+    {
+        var b = body;
+
+        if (b == null)
+            return;
+
+        final Group g;
+
+        try
+        {
+            g = b.read();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Failed to load the group %s".formatted(b.summary().name()), e);
+        }
+
+        persons.putAll(g.persons);
+        g.persons.values().forEach(this::index);
+        denylist.putAll(g.denylist);
+        wishlist.putAll(g.wishlist);
+        mainGroupOne.addAll(g.mainGroupOne);
+        mainGroupTwo.addAll(g.mainGroupTwo);
+        attributes.putAll(g.attributes);
+        name = g.name;
+        currentId = g.currentId;
+        body = null;
+
+        var l = listener;
+        if (l != null)
+            l.loaded(this);
+    }
+
+    /**
+     * Unloads the group, so its body is read again the next time it is
+     * used. It is only unloaded iff the body is of the current version,
+     * and a group that already is unloaded is read from the new body.
+     *
+     * @param body the body of the group.
+     * @return {@code true} iff the group is unloaded.
+     * */
+    public synchronized boolean unload(Body body)
+    {
+        if (body.summary().version() != version)
+            return false;
+
+        if (this.body == null)
+        {
+            persons.clear();
+            names.clear();
+            denylist.clear();
+            wishlist.clear();
+            mainGroupOne.clear();
+            mainGroupTwo.clear();
+            attributes.clear();
+            state = null;
+        }
+
+        this.body = body;
+        return true;
+    }
+
+    /**
+     * Gets the body of the group iff it isn't loaded, so
+     * it can be copied as it is.
+     *
+     * @return the body, {@code null} iff the group is loaded.
+     * */
+    public Body getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Marks the group as changed, must be called under the
+     * lock by every method that changes the group.
+     * */
+    private void changed()
+    {
+        version++;
+        state = null;
+    }
+
+    /**
+     * Marks the group as changed and gives the edit to the listener,
+     * must be called under the lock by every public method that
+     * changes the group.
+     *
+     * @param edit the edit that was made.
+     * */
+    private void changed(Edit edit)
+    {
+        changed();
+
+        var l = listener;
+        if (l != null)
+            l.edited(this, version, edit);
+    }
+
+    /**
+     * Sets the listener of the edits, there can only be one.
+     *
+     * @param listener the listener, {@code null} removes it.
+     * */
+    public void setListener(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a copy of a row with an id added.
+     *
+     * @param row the row to be copied, might be {@code null}.
+     * @param id the id to be added.
+     * @return a new row containing id.
+     * */
+    private static Set<Integer> with(Set<Integer> row, int id)
+    {
+        var res = row == null ? new HashSet<Integer>() : new HashSet<>(row);
+        res.add(id);
+        return res;
+    }
+
+    /**
+     * Creates a copy of a row with an id removed.
+     *
+     * @param row the row to be copied, might be {@code null}.
+     * @param id the id to be removed.
+     * @return a new row not containing id.
+     * */
+    private static Set<Integer> without(Set<Integer> row, int id)
+    {
+        var res = row == null ? new HashSet<Integer>() : new HashSet<>(row);
+        res.remove(id);
+        return res;
+    }
+
+    /**
+     * Gets the version of the group. The version is increased
+     * by every change made to the group.
+     *
+     * @return the current version of the group.
+     * */
+    public long getVersion()
+    {
+        return state().version;
+    }
+
     /**
      * Sets the name of the group
      *
@@ -52,7 +360,10 @@ public class Group implements Serializable
      * */
     public synchronized void setName(String name)
     {
+        load();
+
         this.name = name;
+        changed(new Edit.Rename(name));
     }
 
     /**
@@ -63,17 +374,14 @@ public class Group implements Serializable
      * */
     public synchronized void addDenyItem(int id1, int id2)
     {
+        load();
+
         if (!persons.containsKey(id1) || !persons.containsKey(id2))
             return;
 
-        var l1 = denylist.getOrDefault(id1, new HashSet<>());
-        var l2 = denylist.getOrDefault(id2, new HashSet<>());
-
-        l1.add(id2);
-        l2.add(id1);
-
-        denylist.put(id1, l1);
-        denylist.put(id2, l2);
+        denylist.put(id1, with(denylist.get(id1), id2));
+        denylist.put(id2, with(denylist.get(id2), id1));
+        changed(new Edit.Deny(id1, id2, true));
     }
 
     /**
@@ -84,14 +392,11 @@ public class Group implements Serializable
      * */
     public synchronized void removeDenyItem(int id1, int id2)
     {
-        var l1 = denylist.getOrDefault(id1, new HashSet<>());
-        var l2 = denylist.getOrDefault(id2, new HashSet<>());
+        load();
 
-        l1.remove(id2);
-        l2.remove(id1);
-
-        denylist.put(id1, l1);
-        denylist.put(id2, l2);
+        denylist.put(id1, without(denylist.get(id1), id2));
+        denylist.put(id2, without(denylist.get(id2), id1));
+        changed(new Edit.Deny(id1, id2, false));
     }
 
     /**
@@ -101,10 +406,11 @@ public class Group implements Serializable
      * @param id2 the second id.
      * @return {@code true} iff a person is blocked else {@code false}
      * */
-    public synchronized boolean isDenied(int id1, int id2)
+    public boolean isDenied(int id1, int id2)
     {
-        return denylist.getOrDefault(id1, new HashSet<>()).contains(id2) ||
-               denylist.getOrDefault(id2, new HashSet<>()).contains(id1);
+        var denylist = state().denylist;
+        return denylist.getOrDefault(id1, Set.of()).contains(id2) ||
+               denylist.getOrDefault(id2, Set.of()).contains(id1);
     }
 
     /**
@@ -115,12 +421,13 @@ public class Group implements Serializable
      * */
     public synchronized void addWishItem(int wisher, int wished)
     {
+        load();
+
         if (!persons.containsKey(wisher) || !persons.containsKey(wished))
             return;
 
-        var set = wishlist.getOrDefault(wisher, new HashSet<>());
-        set.add(wished);
-        wishlist.put(wisher, set);
+        wishlist.put(wisher, with(wishlist.get(wisher), wished));
+        changed(new Edit.Wish(wisher, wished, true));
     }
 
     /**
@@ -131,9 +438,10 @@ public class Group implements Serializable
      * */
     public synchronized void removeWishItem(int wisher, int wished)
     {
-        var set = wishlist.getOrDefault(wisher, new HashSet<>());
-        set.remove(wished);
-        wishlist.put(wisher, set);
+        load();
+
+        wishlist.put(wisher, without(wishlist.get(wisher), wished));
+        changed(new Edit.Wish(wisher, wished, false));
     }
 
     /**
@@ -144,9 +452,9 @@ public class Group implements Serializable
      * @param id the id that we are searching for.
      * @return a set of the ids that id has wished for.
      * */
-    public synchronized Set<Integer> getWishedIds(int id)
+    public Set<Integer> getWishedIds(int id)
     {
-        return new HashSet<>(wishlist.getOrDefault(id, new HashSet<>()));
+        return new HashSet<>(state().wishlist.getOrDefault(id, Set.of()));
     }
 
     /**
@@ -157,9 +465,9 @@ public class Group implements Serializable
      * @param id the id that we are searching for.
      * @return a set of the ids that is denied for id.
      * */
-    public synchronized Set<Integer> getDeniedIds(int id)
+    public Set<Integer> getDeniedIds(int id)
     {
-        return new HashSet<>(denylist.getOrDefault(id, new HashSet<>()));
+        return new HashSet<>(state().denylist.getOrDefault(id, Set.of()));
     }
 
     /**
@@ -170,15 +478,25 @@ public class Group implements Serializable
      * */
     public synchronized int registerPerson(String name)
     {
+        load();
+
         var p = new Person(name, currentId);
         persons.put(currentId, p);
+        index(p);
         mainGroupOne.add(p);
+        changed(new Edit.Register(currentId, name));
         return currentId++;
     }
 
     private synchronized int registerPerson(Person p)
     {
-        persons.put(p.id(), p);
+        var old = persons.put(p.id(), p);
+
+        if (old != null)
+            unindex(old);
+
+        index(p);
+        changed();
         return p.id();
     }
 
@@ -187,11 +505,19 @@ public class Group implements Serializable
      * */
     public synchronized void removePerson(int id)
     {
-        persons.remove(id);
+        load();
+
+        var p = persons.remove(id);
+
+        if (p != null)
+            unindex(p);
+
         wishlist.remove(id);
         denylist.remove(id);
-        mainGroupOne.remove(persons.get(id));
-        mainGroupTwo.remove(persons.get(id));
+        attributes.replaceAll((name, a) -> a.without(id));
+        mainGroupOne.remove(p);
+        mainGroupTwo.remove(p);
+        changed(new Edit.Remove(id));
     }
 
     /**
@@ -199,9 +525,10 @@ public class Group implements Serializable
      *
      * @return a list of all the names.
      * */
-    public synchronized Collection<String> getNames()
+    public Collection<String> getNames()
     {
-        return persons.values()
+        return state().persons
+                      .values()
                       .stream()
                       .map(Person::name)
                       .collect(Collectors.toCollection(ArrayList::new));
@@ -212,9 +539,9 @@ public class Group implements Serializable
      *
      * @return a set of all the ids in the group.
      * */
-    public synchronized Collection<Integer> getIds()
+    public Collection<Integer> getIds()
     {
-        return new HashSet<>(persons.keySet());
+        return new HashSet<>(state().persons.keySet());
     }
 
     /**
@@ -222,9 +549,9 @@ public class Group implements Serializable
      *
      * @return a collection of all the people currently in the group.
      * */
-    public synchronized Collection<Person> getPersons()
+    public Collection<Person> getPersons()
     {
-        return new ArrayList<>(persons.values());
+        return new ArrayList<>(state().persons.values());
     }
 
     /**
@@ -233,28 +560,246 @@ public class Group implements Serializable
      *
      * @return the number persons in the group.
      * */
-    public synchronized int size()
+    public int size()
     {
-        return persons.size();
+        var b = body;
+        return b != null ? b.summary().size() : state().persons.size();
     }
 
     /**
-     * Gets all the persons that match the provided name.
+     * Gets all the persons that match the provided name. The names are
+     * compared in {@link Utils#toNameCase(String) name case}, so the case
+     * and the whitespace between the words doesn't matter.
      *
      * @param name the provided name to search after.
-     * @return a list of all the persons matching the provided name.
+     * @return a list of all the persons matching the provided name, ordered by id.
      * */
     public synchronized List<Person> getPersonFromName(String name)
     {
-        var al = new ArrayList<Person>();
+        load();
+        return toPersons(names.getOrDefault(key(name), Set.of()));
+    }
 
-        for (var p : persons.values())
-        {
-            if (p.name().equals(name))
-                al.add(p);
-        }
+    /**
+     * Gets all the persons whose names start with a prefix. The names
+     * are compared in {@link Utils#toNameCase(String) name case}.
+     *
+     * @param prefix the start of the names.
+     * @return a list of the persons, ordered by name and then by id.
+     * */
+    public synchronized List<Person> getPersonsFromPrefix(String prefix)
+    {
+        load();
+
+        var from = key(prefix);
+        var res = new ArrayList<Person>();
+
+        for (var ids : names.subMap(from, true, from + Character.MAX_VALUE, false).values())
+            res.addAll(toPersons(ids));
+
+        return res;
+    }
+
+    private List<Person> toPersons(Set<Integer> ids)
+    {
+        var res = new ArrayList<Person>(ids.size());
+
+        for (var id : ids)
+            res.add(persons.get(id));
+
+        return res;
+    }
+
+    /**
+     * Adds a person to the index of the names, must be called under the lock.
+     * */
+    private void index(Person p)
+    {
+        names.computeIfAbsent(key(p.name()), k -> new TreeSet<>()).add(p.id());
+    }
+
+    /**
+     * Removes a person from the index of the names, must be called under the lock.
+     * */
+    private void unindex(Person p)
+    {
+        var key = key(p.name());
+        var ids = names.get(key);
+
+        if (ids != null && ids.remove(p.id()) && ids.isEmpty())
+            names.remove(key);
+    }
+
+    /**
+     * Gets the key of a name in the index.
+     * */
+    private static String key(String name)
+    {
+        return name == null ? "" : Utils.toNameCase(name);
+    }
+
+    /**
+     * Adds an attribute to the group, it does nothing
+     * if there already is an attribute with the name.
+     *
+     * @param name the name of the attribute.
+     * @param kind the type of the attribute.
+     * */
+    public synchronized void addAttribute(String name, Attribute.Kind kind)
+    {
+        load();
+
+        if (attributes.putIfAbsent(name, Attribute.of(name, kind)) == null)
+            changed(new Edit.AddAttribute(name, kind));
+    }
+
+    /**
+     * Removes an attribute, and the values of it, from the group.
+     *
+     * @param name the name of the attribute.
+     * */
+    public synchronized void removeAttribute(String name)
+    {
+        load();
+
+        if (attributes.remove(name) != null)
+            changed(new Edit.RemoveAttribute(name));
+    }
+
+    /**
+     * Sets the value of a numeric attribute of a person.
+     *
+     * @param id the id of the person.
+     * @param attribute the name of the attribute.
+     * @param value the value, NaN removes it.
+     * @throws IllegalArgumentException iff the attribute doesn't exist or isn't numeric.
+     * */
+    public synchronized void setNumeric(int id, String attribute, double value) throws IllegalArgumentException
+    {
+        load();
+
+        if (!persons.containsKey(id))
+            return;
+
+        attributes.put(attribute, getAttribute(attribute, Attribute.Kind.NUMERIC).withNumeric(id, value));
+        changed(new Edit.SetNumeric(id, attribute, value));
+    }
+
+    /**
+     * Sets the category of a categorical attribute of a person.
+     *
+     * @param id the id of the person.
+     * @param attribute the name of the attribute.
+     * @param category the category, {@code null} removes it.
+     * @throws IllegalArgumentException iff the attribute doesn't exist or isn't categorical.
+     * */
+    public synchronized void setCategory(int id, String attribute, String category) throws IllegalArgumentException
+    {
+        load();
+
+        if (!persons.containsKey(id))
+            return;
+
+        attributes.put(attribute, getAttribute(attribute, Attribute.Kind.CATEGORICAL).withCategory(id, category));
+        changed(new Edit.SetCategory(id, attribute, category));
+    }
+
+    /**
+     * Sets the values of a numeric attribute of some persons, e.g. a whole
+     * column from a file. The column is only copied once and it is one edit.
+     *
+     * @param attribute the name of the attribute.
+     * @param values the values by the ids of the persons, NaN removes a value.
+     * @throws IllegalArgumentException iff the attribute doesn't exist or isn't numeric.
+     * */
+    public synchronized void setNumerics(String attribute, Map<Integer, Double> values) throws IllegalArgumentException
+    {
+        load();
+
+        var a = getAttribute(attribute, Attribute.Kind.NUMERIC);
+        var known = new HashMap<>(values);
+        known.keySet().retainAll(persons.keySet());
 
-        return al;
+        if (known.isEmpty())
+            return;
+
+        attributes.put(attribute, a.withNumerics(known));
+        changed(new Edit.SetNumerics(attribute, known));
+    }
+
+    /**
+     * Sets the categories of a categorical attribute of some persons, e.g. a
+     * whole column from a file. The column is only copied once and it is one edit.
+     *
+     * @param attribute the name of the attribute.
+     * @param categories the categories by the ids of the persons, {@code null} removes a category.
+     * @throws IllegalArgumentException iff the attribute doesn't exist or isn't categorical.
+     * */
+    public synchronized void setCategories(String attribute, Map<Integer, String> categories) throws IllegalArgumentException
+    {
+        load();
+
+        var a = getAttribute(attribute, Attribute.Kind.CATEGORICAL);
+        var known = new HashMap<>(categories);
+        known.keySet().retainAll(persons.keySet());
+
+        if (known.isEmpty())
+            return;
+
+        attributes.put(attribute, a.withCategories(known));
+        changed(new Edit.SetCategories(attribute, known));
+    }
+
+    /**
+     * Gets an attribute of the working copy, must be called under the lock.
+     *
+     * @throws IllegalArgumentException iff the attribute doesn't exist or is of another kind.
+     * */
+    private Attribute getAttribute(String name, Attribute.Kind kind) throws IllegalArgumentException
+    {
+        var a = attributes.get(name);
+
+        if (a == null || a.kind() != kind)
+            throw new IllegalArgumentException("There is no %s attribute: %s".formatted(kind, name));
+
+        return a;
+    }
+
+    /**
+     * Gets the value of a numeric attribute of a person.
+     *
+     * @param id the id of the person.
+     * @param attribute the name of the attribute.
+     * @return the value, NaN iff it is missing.
+     * */
+    public double getNumeric(int id, String attribute)
+    {
+        var a = state().attributes.get(attribute);
+        return a == null ? Double.NaN : a.getNumeric(id);
+    }
+
+    /**
+     * Gets the category of a categorical attribute of a person.
+     *
+     * @param id the id of the person.
+     * @param attribute the name of the attribute.
+     * @return the category, {@code null} iff it is missing.
+     * */
+    public String getCategory(int id, String attribute)
+    {
+        var a = state().attributes.get(attribute);
+        return a == null ? null : a.getCategory(id);
+    }
+
+    /**
+     * Gets the attributes of the group, in the order they were added.
+     * The attributes are immutable, so they are shared with the group.
+     *
+     * @return the attributes of the group.
+     * */
+    public List<Attribute> getAttributes()
+    {
+        return List.copyOf(state().attributes.values());
     }
 
     /**
@@ -262,9 +807,10 @@ public class Group implements Serializable
      *
      * @param id the id of the person we are matching against.
      * */
-    public synchronized MainGroup getMainGroup(int id)
+    public MainGroup getMainGroup(int id)
     {
-        return mainGroupOne.contains(persons.get(id)) ? MainGroup.ONE : MainGroup.TWO;
+        var s = state();
+        return s.mainGroupOne.contains(s.persons.get(id)) ? MainGroup.ONE : MainGroup.TWO;
     }
 
     /**
@@ -275,6 +821,8 @@ public class Group implements Serializable
      * */
     public synchronized void setMainGroup(int id, MainGroup mg)
     {
+        load();
+
         if (!persons.containsKey(id))
             return;
 
@@ -285,6 +833,8 @@ public class Group implements Serializable
             mainGroupOne.add(persons.get(id));
         else
             mainGroupTwo.add(persons.get(id));
+
+        changed(new Edit.SetMainGroup(id, mg));
     }
 
     /**
@@ -292,9 +842,9 @@ public class Group implements Serializable
      *
      * @return All the current members of MainGroup 1.
      * */
-    public synchronized Set<Person> getMainGroupOne()
+    public Set<Person> getMainGroupOne()
     {
-        return new HashSet<>(mainGroupOne);
+        return new HashSet<>(state().mainGroupOne);
     }
 
     /**
@@ -302,11 +852,12 @@ public class Group implements Serializable
      *
      * @return a group containing MainGroup 1.
      * */
-    public synchronized Group mainGroupOneAsGroup()
+    public Group mainGroupOneAsGroup()
     {
+        var s = state();
         var g = new Group("mg1");
-        getMainGroupOne().forEach(g::registerPerson);
-        return addWishesAndDenies(g);
+        s.mainGroupOne.forEach(g::registerPerson);
+        return addWishesAndDenies(g, s);
     }
 
     /**
@@ -314,9 +865,9 @@ public class Group implements Serializable
      *
      * @return All the current members of MainGroup 2.
      * */
-    public synchronized Set<Person> getMainGroupTwo()
+    public Set<Person> getMainGroupTwo()
     {
-        return new HashSet<>(mainGroupTwo);
+        return new HashSet<>(state().mainGroupTwo);
     }
 
     /**
@@ -324,22 +875,56 @@ public class Group implements Serializable
      *
      * @return a group containing MainGroup 2.
      * */
-    public synchronized Group mainGroupTwoAsGroup()
+    public Group mainGroupTwoAsGroup()
     {
+        var s = state();
         var g = new Group("mg2");
-        getMainGroupTwo().forEach(g::registerPerson);
-        return addWishesAndDenies(g);
+        s.mainGroupTwo.forEach(g::registerPerson);
+        return addWishesAndDenies(g, s);
     }
 
     /**
-     * Adds wishes and denies to the group from this group.
+     * Gets the snapshots of the main groups. They are the subgraphs of
+     * one {@link #snapshot() snapshot}, so no groups are copied.
+     *
+     * @return the snapshot of each main group.
+     * */
+    public Map<MainGroup, ConstraintGraph> mainGroupSnapshots()
+    {
+        var s = state();
+        var cg = s.snapshot();
+        var res = new EnumMap<MainGroup, ConstraintGraph>(MainGroup.class);
+
+        res.put(MainGroup.ONE, cg.subgraph(toIndices(cg, s.mainGroupOne)));
+        res.put(MainGroup.TWO, cg.subgraph(toIndices(cg, s.mainGroupTwo)));
+        return res;
+    }
+
+    /**
+     * Gets the indices of persons in a snapshot.
+     *
+     * @param cg the snapshot.
+     * @param persons the persons.
+     * @return the indices of the persons that are part of the snapshot.
+     * */
+    private static int[] toIndices(ConstraintGraph cg, Set<Person> persons)
+    {
+        return persons.stream()
+                      .mapToInt(p -> cg.indexOf(p.id()))
+                      .filter(i -> i != -1)
+                      .toArray();
+    }
+
+    /**
+     * Adds wishes, denies and attributes to the group from a state of this group.
      *
      * @param g the group to get the wishes and denies.
+     * @param s the state to take the wishes and denies from.
      * @return the created group.
      * */
-    private Group addWishesAndDenies(Group g)
+    private static Group addWishesAndDenies(Group g, State s)
     {
-        for (var entry : wishlist.entrySet())
+        for (var entry : s.wishlist.entrySet())
         {
             var id1 = entry.getKey();
             for (var p : entry.getValue())
@@ -348,7 +933,7 @@ public class Group implements Serializable
             }
         }
 
-        for (var entry : denylist.entrySet())
+        for (var entry : s.denylist.entrySet())
         {
             var id1 = entry.getKey();
             for (var p : entry.getValue())
@@ -357,18 +942,36 @@ public class Group implements Serializable
             }
         }
 
+        synchronized (g)
+        {
+            g.attributes.putAll(s.attributes);
+            g.changed();
+        }
+
         return g;
     }
 
+    /**
+     * Gets an immutable snapshot of the persons, wishes and denies
+     * in the group. The snapshot is cached until the group is changed,
+     * so it is cheap to call this repeatedly.
+     *
+     * @return the current snapshot of the group.
+     * */
+    public ConstraintGraph snapshot()
+    {
+        return state().snapshot();
+    }
+
     /**
      * Gets a person from an id.
      *
      * @param id the id of the person.
      * @return the person corresponding to the id.
      * */
-    public synchronized Person getFromId(int id)
+    public Person getFromId(int id)
     {
-        return persons.get(id);
+        return state().persons.get(id);
     }
 
     /**
@@ -376,9 +979,9 @@ public class Group implements Serializable
      *
      * @return a copy of the denylist.
      * */
-    public synchronized Map<Integer, Set<Integer>> getDenyList()
+    public Map<Integer, Set<Integer>> getDenyList()
     {
-        return new HashMap<>(denylist);
+        return copy(state().denylist);
     }
 
     /**
@@ -386,30 +989,276 @@ public class Group implements Serializable
      *
      * @return a copy of the wishlist.
      * */
-    public synchronized Map<Integer, Set<Integer>> getWishlist()
+    public Map<Integer, Set<Integer>> getWishlist()
+    {
+        return copy(state().wishlist);
+    }
+
+    /**
+     * Creates a deep copy of a deny- or wishlist.
+     *
+     * @param list the list to be copied.
+     * @return a copy of the list, where all the rows are copied.
+     * */
+    private static Map<Integer, Set<Integer>> copy(Map<Integer, Set<Integer>> list)
+    {
+        var res = new HashMap<Integer, Set<Integer>>();
+
+        for (var e : list.entrySet())
+            res.put(e.getKey(), new HashSet<>(e.getValue()));
+
+        return res;
+    }
+
+    @Serial
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException
+    {
+        load();
+        out.defaultWriteObject();
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+
+        // Groups saved before the attributes existed.
+        if (attributes == null)
+            attributes = new LinkedHashMap<>();
+
+        names = new TreeMap<>();
+        persons.values().forEach(this::index);
+    }
+
+    /**
+     * Writes the group in the binary format of a {@link se.skorup.util.io.SaveFile save file}.
+     * Every name is written once in a string table, and the persons refer to it by index.
+     * The ids are varints, and the persons and the rows of the lists are sorted, so every
+     * id is written as the difference to the one before it.
+     *
+     * @param out the writer.
+     * @return the name, size and version of the group that was written.
+     * @throws IOException iff the writing fails.
+     * */
+    public Summary writeBinary(BinaryWriter out) throws IOException
+    {
+        final State s;
+        final int nextId;
+
+        synchronized (this)
+        {
+            s = state();
+            nextId = currentId;
+        }
+
+        var byId = new TreeMap<>(s.persons);
+        var nameTable = new LinkedHashMap<String, Integer>();
+        for (var p : byId.values())
+            nameTable.putIfAbsent(p.name(), nameTable.size());
+
+        out.writeString(s.name);
+        out.writeVarInt(nextId);
+        out.writeVarInt(nameTable.size());
+        for (var name : nameTable.keySet())
+            out.writeString(name);
+
+        // The two lowest bits is the main group: 0 for none, 1 for one and 2 for two.
+        out.writeVarInt(byId.size());
+        var last = 0;
+        for (var p : byId.values())
+        {
+            var mg = s.mainGroupOne.contains(p) ? 1 : s.mainGroupTwo.contains(p) ? 2 : 0;
+            out.writeVarInt(p.id() - last);
+            out.writeVarInt(nameTable.get(p.name()) << 2 | mg);
+            last = p.id();
+        }
+
+        writeList(out, s.wishlist);
+        writeList(out, s.denylist);
+
+        out.writeVarInt(s.attributes.size());
+        for (var a : s.attributes.values())
+            a.writeBinary(out);
+
+        return new Summary(s.name, s.persons.size(), s.version);
+    }
+
+    /**
+     * Writes a deny- or wishlist, with the keys and every row sorted.
+     * */
+    private static void writeList(BinaryWriter out, Map<Integer, Set<Integer>> list) throws IOException
     {
-        return new HashMap<>(wishlist);
+        out.writeVarInt(list.size());
+        var lastKey = 0;
+
+        for (var e : new TreeMap<>(list).entrySet())
+        {
+            out.writeVarInt(e.getKey() - lastKey);
+            lastKey = e.getKey();
+
+            var row = e.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+            out.writeVarInt(row.length);
+
+            var last = 0;
+            for (var id : row)
+            {
+                out.writeVarInt(id - last);
+                last = id;
+            }
+        }
+    }
+
+    /**
+     * Reads a group written by {@link #writeBinary(BinaryWriter)}.
+     *
+     * @param in the reader.
+     * @return the group.
+     * @throws IOException iff the reading fails or the group is corrupt.
+     * */
+    public static Group readBinary(BinaryReader in) throws IOException
+    {
+        var g = new Group(in.readString());
+        var nextId = in.readVarInt();
+
+        var nameTable = new String[in.readVarInt()];
+        for (var i = 0; i < nameTable.length; i++)
+            nameTable[i] = in.readString();
+
+        var count = in.readVarInt();
+        var id = 0;
+        for (var i = 0; i < count; i++)
+        {
+            id += in.readVarInt();
+            var code = in.readVarInt();
+
+            if (code >>> 2 >= nameTable.length)
+                throw new IOException("Unknown name of %d: %d".formatted(id, code >>> 2));
+
+            var p = new Person(nameTable[code >>> 2], id);
+            g.persons.put(id, p);
+            g.index(p);
+
+            if ((code & 3) == 1)
+                g.mainGroupOne.add(p);
+            else if ((code & 3) == 2)
+                g.mainGroupTwo.add(p);
+        }
+
+        readList(in, g.wishlist);
+        readList(in, g.denylist);
+
+        var attributes = in.readVarInt();
+        for (var i = 0; i < attributes; i++)
+        {
+            var a = Attribute.readBinary(in);
+            g.attributes.put(a.name(), a);
+        }
+
+        g.currentId = nextId;
+        return g;
+    }
+
+    /**
+     * Reads a deny- or wishlist written by {@link #writeList(BinaryWriter, Map)}.
+     * */
+    private static void readList(BinaryReader in, Map<Integer, Set<Integer>> list) throws IOException
+    {
+        var rows = in.readVarInt();
+        var key = 0;
+
+        for (var i = 0; i < rows; i++)
+        {
+            key += in.readVarInt();
+
+            var size = in.readVarInt();
+            var row = new HashSet<Integer>();
+            var id = 0;
+
+            for (var k = 0; k < size; k++)
+            {
+                id += in.readVarInt();
+                row.add(id);
+            }
+
+            list.put(key, row);
+        }
     }
 
     @Override
-    public synchronized String toString()
+    public String toString()
     {
-        return name;
+        var b = body;
+        return b != null ? b.summary().name() : state().name;
     }
 
     @Override
-    public synchronized int hashCode()
+    public int hashCode()
     {
-        return persons.hashCode() + wishlist.hashCode() + denylist.hashCode() + name.hashCode();
+        var s = state();
+        return s.persons.hashCode() + s.wishlist.hashCode() + s.denylist.hashCode() + s.name.hashCode();
     }
 
     @Override
-    public synchronized boolean equals(Object o)
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+
+        // The names are compared first, so a group that isn't loaded is only read if it might be equal.
+        if (!(o instanceof Group g) || !toString().equals(g.toString()))
+            return false;
+
+        var s1 = state();
+        var s2 = g.state();
+        return s1.persons.equals(s2.persons)   &&
+               s1.wishlist.equals(s2.wishlist) &&
+               s1.denylist.equals(s2.denylist) &&
+               s1.name.equals(s2.name);
+    }
+
+    /**
+     * An immutable version of the group. The collections
+     * are never changed after the state has been published.
+     * */
+    private static final class State
     {
-        return o instanceof Group g        &&
-               persons.equals(g.persons)   &&
-               wishlist.equals(g.wishlist) &&
-               denylist.equals(g.denylist) &&
-               name.equals(g.name);
+        private final long version;
+        private final Map<Integer, Person> persons;
+        private final Map<Integer, Set<Integer>> denylist;
+        private final Map<Integer, Set<Integer>> wishlist;
+        private final Set<Person> mainGroupOne;
+        private final Set<Person> mainGroupTwo;
+        private final Map<String, Attribute> attributes;
+        private final String name;
+
+        /** Lazily created, the race is benign since the snapshot is immutable. */
+        private volatile ConstraintGraph snapshot;
+
+        private State(
+            long version, Map<Integer, Person> persons,
+            Map<Integer, Set<Integer>> denylist, Map<Integer, Set<Integer>> wishlist,
+            Set<Person> mainGroupOne, Set<Person> mainGroupTwo,
+            Map<String, Attribute> attributes, String name
+        )
+        {
+            this.version = version;
+            this.persons = persons;
+            this.denylist = denylist;
+            this.wishlist = wishlist;
+            this.mainGroupOne = mainGroupOne;
+            this.mainGroupTwo = mainGroupTwo;
+            this.attributes = attributes;
+            this.name = name;
+        }
+
+        private ConstraintGraph snapshot()
+        {
+            var cg = snapshot;
+
+            if (cg == null)
+                snapshot = cg = new ConstraintGraph(persons.keySet(), wishlist, denylist, attributes.values());
+
+            return cg;
+        }
     }
 }
@@ -0,0 +1,352 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+
+/**
+ * Keeps track of how balanced the attributes of the persons are across
+ * the subgroups, and updates it incrementally, so a swap of two persons
+ * only costs a constant amount of work per attribute.
+ * <br><br>
+ * For a numeric attribute the imbalance is the variance of the means of
+ * the subgroups around the mean of everyone, relative to the variance of
+ * everyone. For a categorical attribute it is the sum of the squared
+ * differences between the number of each category in a subgroup and the
+ * number expected from the whole group, divided by the number of persons.
+ * Missing values are left out. Perfect balance is zero in both cases.
+ * */
+public final class BalanceScorer
+{
+    private final ConstraintGraph cg;
+    private final double[] weights;
+    private final int[] groupOf;
+    private final int[] sizes;
+    private final int nbrGroups;
+
+    /** For numeric attributes: the sum and count of the values in each subgroup. */
+    private final double[][] sums;
+    private final int[][] counts;
+    private final double[] means;
+    private final double[] variances;
+
+    /** For categorical attributes: the count of each category in each subgroup, at g * categories + c. */
+    private final int[][] cells;
+    private final double[][] fractions;
+
+    private final double[] imbalances;
+
+    /**
+     * Creates a new BalanceScorer.
+     *
+     * @param cg the snapshot of the group.
+     * @param groups the subgroups, as indices.
+     * @param weights the weight of each attribute, by index.
+     * @throws IllegalArgumentException iff there isn't a weight for every attribute.
+     * */
+    public BalanceScorer(ConstraintGraph cg, int[][] groups, double[] weights) throws IllegalArgumentException
+    {
+        if (weights.length != cg.attributeCount())
+            throw new IllegalArgumentException("Expected %d weights, got: %d".formatted(cg.attributeCount(), weights.length));
+
+        var attributes = cg.attributeCount();
+
+        this.cg = cg;
+        this.weights = weights.clone();
+        this.groupOf = new int[cg.size()];
+        this.sizes = new int[groups.length];
+        this.nbrGroups = groups.length;
+        this.sums = new double[attributes][];
+        this.counts = new int[attributes][];
+        this.means = new double[attributes];
+        this.variances = new double[attributes];
+        this.cells = new int[attributes][];
+        this.fractions = new double[attributes][];
+        this.imbalances = new double[attributes];
+
+        for (var g = 0; g < groups.length; g++)
+        {
+            sizes[g] = groups[g].length;
+            for (var p : groups[g])
+                groupOf[p] = g;
+        }
+
+        for (var a = 0; a < attributes; a++)
+        {
+            if (cg.isNumeric(a))
+                initNumeric(a);
+            else
+                initCategorical(a);
+        }
+    }
+
+    private void initNumeric(int a)
+    {
+        sums[a] = new double[nbrGroups];
+        counts[a] = new int[nbrGroups];
+
+        var total = 0d;
+        var cnt = 0;
+        for (var p = 0; p < cg.size(); p++)
+        {
+            var v = cg.numeric(a, p);
+            if (Double.isNaN(v))
+                continue;
+
+            sums[a][groupOf[p]] += v;
+            counts[a][groupOf[p]]++;
+            total += v;
+            cnt++;
+        }
+
+        means[a] = cnt == 0 ? 0 : total / cnt;
+
+        var squares = 0d;
+        for (var p = 0; p < cg.size(); p++)
+        {
+            var v = cg.numeric(a, p);
+            if (!Double.isNaN(v))
+                squares += (v - means[a]) * (v - means[a]);
+        }
+
+        variances[a] = cnt == 0 ? 0 : squares / cnt;
+
+        for (var g = 0; g < nbrGroups; g++)
+            imbalances[a] += numericTerm(a, sums[a][g], counts[a][g]);
+    }
+
+    private void initCategorical(int a)
+    {
+        var categories = cg.categoryCount(a);
+        cells[a] = new int[nbrGroups * categories];
+        fractions[a] = new double[categories];
+
+        for (var p = 0; p < cg.size(); p++)
+        {
+            var c = cg.category(a, p);
+            if (c == -1)
+                continue;
+
+            cells[a][groupOf[p] * categories + c]++;
+            fractions[a][c]++;
+        }
+
+        for (var c = 0; c < categories; c++)
+            fractions[a][c] /= Math.max(cg.size(), 1);
+
+        for (var g = 0; g < nbrGroups; g++)
+        {
+            for (var c = 0; c < categories; c++)
+                imbalances[a] += categoricalTerm(a, g, c, cells[a][g * categories + c]);
+        }
+    }
+
+    /**
+     * The part of the imbalance of a numeric attribute from one subgroup.
+     * */
+    private double numericTerm(int a, double sum, int count)
+    {
+        if (count == 0 || variances[a] == 0)
+            return 0;
+
+        var d = sum / count - means[a];
+        return d * d / (nbrGroups * variances[a]);
+    }
+
+    /**
+     * The part of the imbalance of a categorical attribute from one category in one subgroup.
+     * */
+    private double categoricalTerm(int a, int g, int c, int count)
+    {
+        var d = count - sizes[g] * fractions[a][c];
+        return d * d / cg.size();
+    }
+
+    /**
+     * The change of the imbalance of one attribute, iff p and q swaps subgroups.
+     * */
+    private double delta(int a, int p, int q)
+    {
+        var gp = groupOf[p];
+        var gq = groupOf[q];
+
+        if (cg.isNumeric(a))
+        {
+            var vp = cg.numeric(a, p);
+            var vq = cg.numeric(a, q);
+            var hasP = Double.isNaN(vp) ? 0 : 1;
+            var hasQ = Double.isNaN(vq) ? 0 : 1;
+            var diff = (hasQ == 1 ? vq : 0) - (hasP == 1 ? vp : 0);
+
+            return numericTerm(a, sums[a][gp] + diff, counts[a][gp] + hasQ - hasP) +
+                   numericTerm(a, sums[a][gq] - diff, counts[a][gq] + hasP - hasQ) -
+                   numericTerm(a, sums[a][gp], counts[a][gp]) -
+                   numericTerm(a, sums[a][gq], counts[a][gq]);
+        }
+
+        var cp = cg.category(a, p);
+        var cq = cg.category(a, q);
+        if (cp == cq)
+            return 0;
+
+        var res = 0d;
+        if (cp != -1)
+            res += cellDelta(a, gp, cp, -1) + cellDelta(a, gq, cp, 1);
+
+        if (cq != -1)
+            res += cellDelta(a, gq, cq, -1) + cellDelta(a, gp, cq, 1);
+
+        return res;
+    }
+
+    /**
+     * The change of the imbalance iff a cell changes by change.
+     * */
+    private double cellDelta(int a, int g, int c, int change)
+    {
+        var count = cells[a][g * cg.categoryCount(a) + c];
+        return categoricalTerm(a, g, c, count + change) - categoricalTerm(a, g, c, count);
+    }
+
+    /**
+     * Computes the change of the weighted imbalance, iff p and q swaps subgroups.
+     * The subgroups aren't changed.
+     *
+     * @param p the first person.
+     * @param q the second person.
+     * @return the change of the {@link #penalty() penalty}.
+     * */
+    public double deltaForSwap(int p, int q)
+    {
+        if (groupOf[p] == groupOf[q])
+            return 0;
+
+        var res = 0d;
+        for (var a = 0; a < imbalances.length; a++)
+        {
+            if (weights[a] != 0)
+                res += weights[a] * delta(a, p, q);
+        }
+
+        return res;
+    }
+
+    /**
+     * Swaps the subgroups of p and q.
+     *
+     * @param p the first person.
+     * @param q the second person.
+     * */
+    public void applySwap(int p, int q)
+    {
+        var gp = groupOf[p];
+        var gq = groupOf[q];
+
+        if (gp == gq)
+            return;
+
+        for (var a = 0; a < imbalances.length; a++)
+        {
+            imbalances[a] += delta(a, p, q);
+
+            if (cg.isNumeric(a))
+            {
+                move(a, p, gp, gq);
+                move(a, q, gq, gp);
+            }
+            else
+            {
+                var categories = cg.categoryCount(a);
+                var cp = cg.category(a, p);
+                var cq = cg.category(a, q);
+
+                if (cp != -1)
+                {
+                    cells[a][gp * categories + cp]--;
+                    cells[a][gq * categories + cp]++;
+                }
+
+                if (cq != -1)
+                {
+                    cells[a][gq * categories + cq]--;
+                    cells[a][gp * categories + cq]++;
+                }
+            }
+        }
+
+        groupOf[p] = gq;
+        groupOf[q] = gp;
+    }
+
+    private void move(int a, int p, int from, int to)
+    {
+        var v = cg.numeric(a, p);
+        if (Double.isNaN(v))
+            return;
+
+        sums[a][from] -= v;
+        counts[a][from]--;
+        sums[a][to] += v;
+        counts[a][to]++;
+    }
+
+    /**
+     * Gets the imbalance of an attribute, it is zero iff the attribute is perfectly balanced.
+     *
+     * @param a the index of the attribute.
+     * @return the imbalance of the attribute.
+     * */
+    public double imbalance(int a)
+    {
+        return Math.max(0, imbalances[a]);
+    }
+
+    /**
+     * Gets the sum of the weighted imbalances.
+     *
+     * @return the weighted imbalance.
+     * */
+    public double penalty()
+    {
+        var res = 0d;
+
+        for (var a = 0; a < imbalances.length; a++)
+            res += weights[a] * imbalance(a);
+
+        return res;
+    }
+
+    /**
+     * Gets the mean of a numeric attribute in a subgroup.
+     *
+     * @param a the index of the attribute.
+     * @param g the index of the subgroup.
+     * @return the mean, NaN iff no one in the subgroup has a value.
+     * */
+    public double mean(int a, int g)
+    {
+        return counts[a][g] == 0 ? Double.NaN : sums[a][g] / counts[a][g];
+    }
+
+    /**
+     * Gets the number of persons of a category in a subgroup.
+     *
+     * @param a the index of the attribute.
+     * @param g the index of the subgroup.
+     * @param c the index of the category.
+     * @return the number of persons in the subgroup with the category.
+     * */
+    public int count(int a, int g, int c)
+    {
+        return cells[a][g * cg.categoryCount(a) + c];
+    }
+
+    /**
+     * Gets the subgroup of a person.
+     *
+     * @param p the person.
+     * @return the index of the subgroup.
+     * */
+    public int groupOf(int p)
+    {
+        return groupOf[p];
+    }
+}
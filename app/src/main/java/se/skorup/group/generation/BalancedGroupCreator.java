@@ -0,0 +1,277 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.progress.Progress;
+import se.skorup.util.Log;
+import se.skorup.util.localization.Localization;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A GroupCreator that balances the attributes of the persons across the
+ * subgroups, as well as fulfilling their wishes. It maximises the
+ * {@link WishesGroupCreator#getScore(int[][], ConstraintGraph) score}
+ * minus the weighted imbalance of the {@link BalanceScorer attributes}
+ * times the number of persons.
+ * <br><br>
+ * The wishes come first: one person without any fulfilled wish costs
+ * more than any imbalance with the default weight of one, but the
+ * imbalance decides between solutions with the same number of
+ * fulfilled wishes.
+ * <br><br>
+ * It starts from a {@link LocalSearchGroupCreator} solution, with half
+ * of the budget, and then runs simulated annealing over the combined
+ * objective with the other half. Both scorers are incremental, so a swap
+ * costs in the order of the number of wishes and attributes.
+ * */
+public final class BalancedGroupCreator implements GroupCreator
+{
+    /** The number of iterations between the checks of the clock. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private static final double START_TEMPERATURE = 0.05;
+    private static final double END_TEMPERATURE = 1e-5;
+
+    private final Progress progress;
+    private final LocalSearchGroupCreator localSearch;
+    private final Map<String, Double> weights;
+    private final long maxIterations;
+    private final Duration maxTime;
+
+    /** Incremented by every interrupt, a run is interrupted iff it has changed since the run started. */
+    private final AtomicInteger interrupts = new AtomicInteger();
+
+    /**
+     * Creates a new BalancedGroupCreator, where every attribute has the
+     * weight one, with the default budget of {@link LocalSearchGroupCreator}.
+     *
+     * @param progress the progress tracker.
+     * */
+    public BalancedGroupCreator(Progress progress)
+    {
+        this(progress, Map.of(), -1, Duration.ofSeconds(10));
+    }
+
+    /**
+     * Creates a new BalancedGroupCreator.
+     *
+     * @param progress the progress tracker.
+     * @param weights the weight of each attribute by name, the attributes
+     *                that aren't in the map gets the weight one.
+     * @param maxIterations the maximum number of iterations, if it is
+     *                      negative the default budget will be used.
+     * @param maxTime the maximum time the search is allowed to run.
+     * */
+    public BalancedGroupCreator(Progress progress, Map<String, Double> weights, long maxIterations, Duration maxTime)
+    {
+        this.progress = progress;
+        this.weights = Map.copyOf(weights);
+
+        // The first half of the progress is reported by the wishes.
+        this.localSearch = new LocalSearchGroupCreator(
+            delta -> progress.onProgress(delta / 2), maxIterations < 0 ? -1 : maxIterations / 2, maxTime.dividedBy(2)
+        );
+        this.maxIterations = maxIterations;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Gets the weight of every attribute of a snapshot.
+     *
+     * @param cg the snapshot.
+     * @return the weights, by the index of the attribute.
+     * */
+    public double[] weightsOf(ConstraintGraph cg)
+    {
+        var res = new double[cg.attributeCount()];
+
+        for (var a = 0; a < res.length; a++)
+            res[a] = weights.getOrDefault(cg.attributeName(a), 1d);
+
+        return res;
+    }
+
+    /**
+     * Runs the search.
+     *
+     * @param cg the snapshot of the group to create subgroups in.
+     * @param sizes the sizes of the subgroups.
+     * @param seed the seed of the random generator.
+     * @return the best subgroups found, or an empty list iff interrupted.
+     * @throws GroupCreationFailedException iff no start solution could be found.
+     * */
+    private List<List<Set<Integer>>> search(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        var epoch = interrupts.get();
+        var n = cg.size();
+        var iterations = maxIterations < 0 ? Math.max(100_000, 1000L * n) : maxIterations;
+        var r = new SplittableRandom(seed);
+
+        var start = localSearch.generate(cg, sizes, r.nextLong());
+
+        if (start.isEmpty() || interrupts.get() != epoch)
+            return List.of();
+
+        var groups = cg.toIndices(start.getFirst());
+        var wishes = new WishScorer(cg, groups);
+        var balance = new BalanceScorer(cg, groups, weightsOf(cg));
+        var best = wishes.groups();
+
+        // The gain is tracked relative to the start, since the score of the wishes can
+        // be far larger than the imbalance, and the temperature follows the imbalance.
+        var gain = 0d;
+        var bestGain = 0d;
+
+        // The best solution, for when the score of the wishes can't be represented.
+        var bestScore = wishes.score();
+        var bestUnfulfilled = wishes.unfulfilled();
+        var bestPsi = wishes.psi();
+        var bestPenalty = balance.penalty();
+
+        var scale = n * balance.penalty();
+
+        var startTime = System.nanoTime();
+        var timeBudget = maxTime.dividedBy(2).toNanos();
+        var budget = iterations - iterations / 2;
+        var cooling = Math.log(END_TEMPERATURE / START_TEMPERATURE);
+        var reported = 0;
+        var fraction = 0d;
+        var i = 0L;
+
+        for (; i < budget && groups.length > 1 && scale > 0; i++)
+        {
+            if (i % CHECK_INTERVAL == 0)
+            {
+                if (interrupts.get() != epoch || Thread.currentThread().isInterrupted())
+                    return List.of();
+
+                var elapsed = System.nanoTime() - startTime;
+                if (elapsed >= timeBudget)
+                    break;
+
+                fraction = Math.max((double) i / budget, (double) elapsed / timeBudget);
+                reported = report(reported, fraction);
+            }
+
+            var a = r.nextInt(n);
+            var b = r.nextInt(n);
+
+            if (wishes.groupOf(a) == wishes.groupOf(b) || !LocalSearchGroupCreator.isSwapAllowed(cg, wishes, a, b))
+                continue;
+
+            var delta = wishes.deltaForSwap(a, b) - n * balance.deltaForSwap(a, b);
+
+            if (!Double.isFinite(delta))
+            {
+                // The gain can't be summed, so the swap is only made if it gives a new best, by
+                // the tiebreak of the local search and then the imbalance. The gain starts over.
+                wishes.applySwap(a, b);
+                balance.applySwap(a, b);
+
+                var better = LocalSearchGroupCreator.isBetter(wishes, bestScore, bestUnfulfilled, bestPsi) ||
+                             wishes.unfulfilled() == bestUnfulfilled && wishes.psi() == bestPsi &&
+                             balance.penalty() < bestPenalty;
+
+                if (!better)
+                {
+                    wishes.applySwap(a, b);
+                    balance.applySwap(a, b);
+                    continue;
+                }
+
+                gain = 0;
+                bestGain = 0;
+            }
+            else
+            {
+                var accept = delta >= 0;
+
+                if (!accept)
+                {
+                    var t = START_TEMPERATURE * Math.exp(cooling * fraction);
+                    accept = r.nextDouble() < Math.exp(delta / (t * scale));
+                }
+
+                if (!accept)
+                    continue;
+
+                wishes.applySwap(a, b);
+                balance.applySwap(a, b);
+
+                gain += delta;
+                if (gain <= bestGain)
+                    continue;
+
+                bestGain = gain;
+            }
+
+            best = wishes.groups();
+            bestScore = wishes.score();
+            bestUnfulfilled = wishes.unfulfilled();
+            bestPsi = wishes.psi();
+            bestPenalty = balance.penalty();
+        }
+
+        Log.debugf("Balancing finished after %d iterations, gain: %s", i, bestGain);
+        report(reported, 1);
+        return Collections.singletonList(cg.toIds(best));
+    }
+
+    /**
+     * Reports the progress of the second half, in steps of one permille.
+     *
+     * @param reported the number of permille already reported.
+     * @param fraction the fraction of the budget that is used.
+     * @return the number of permille reported after this call.
+     * */
+    private int report(int reported, double fraction)
+    {
+        var permille = (int) Math.min(500, fraction * 500);
+
+        for (; reported < permille; reported++)
+            progress.onProgress(1_000_000);
+
+        return reported;
+    }
+
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, int size, long seed
+    ) throws GroupCreationFailedException
+    {
+        return search(cg, Collections.singletonList(size), seed);
+    }
+
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        return search(cg, sizes, seed);
+    }
+
+    /**
+     * Interrupts all searches in progress, resulting
+     * in an empty list being returned.
+     * */
+    @Override
+    public void interrupt()
+    {
+        interrupts.incrementAndGet();
+        localSearch.interrupt();
+    }
+
+    @Override
+    public String toString()
+    {
+        return Localization.getValue("balanced-groups.name");
+    }
+}
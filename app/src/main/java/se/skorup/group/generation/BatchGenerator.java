@@ -0,0 +1,305 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
+import se.skorup.group.progress.Progress;
+import se.skorup.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates subgroups in many groups at once, without any gui, e.g. every
+ * class of a school. Every group runs on a virtual thread of its own, since
+ * some creators block their thread until their workers are done, and an
+ * interrupted creator interrupts the thread it runs on; neither may happen
+ * to the threads of the common fork/join pool, which the optimal creator
+ * and the main groups are forked onto.
+ * <br><br>
+ * The results are streamed in the order the groups finish, and the progress
+ * of all the groups is reported as one, where every group is an equal part.
+ * */
+public final class BatchGenerator
+{
+    /** The progress of one finished generation, as reported by the creators. */
+    private static final int DONE = 1_000_000_000;
+
+    /** The largest progress reported at once, the same as the creators report. */
+    private static final int MAX_STEP = 1_000_000;
+
+    /**
+     * The result of one group.
+     *
+     * @param group the group.
+     * @param subgroups the generated subgroups, empty iff it failed or was interrupted.
+     * @param failure why it failed, {@code null} iff it didn't fail.
+     * */
+    public record Result(Group group, List<Set<Integer>> subgroups, GroupCreationFailedException failure)
+    {
+        /**
+         * Checks if the generation succeeded.
+         *
+         * @return {@code true} iff there are subgroups.
+         * */
+        public boolean isSuccess()
+        {
+            return failure == null && !subgroups.isEmpty();
+        }
+    }
+
+    private final Progress progress;
+
+    /** The creators of the groups in progress. */
+    private final Set<GroupCreator> creators = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new BatchGenerator.
+     *
+     * @param progress the progress tracker of all the groups.
+     * */
+    public BatchGenerator(Progress progress)
+    {
+        this.progress = progress;
+    }
+
+    /**
+     * Generates the subgroups of every group, with the same settings. Every group
+     * gets its own creator and the seed of the settings, so a group gets the same
+     * subgroups as when it is generated alone.
+     * <br><br>
+     * All groups are scheduled at once, and the returned stream blocks until the
+     * next group is finished. It ends after the last group, or if the consuming
+     * thread is interrupted, which also interrupts the groups in progress.
+     *
+     * @param groups the groups to create subgroups in.
+     * @param settings the settings of every group.
+     * @param creator the creator to use.
+     * @return the results, in the order the groups finish.
+     * */
+    public Stream<Result> generateAll(Collection<Group> groups, GenerationSettings settings, Creator creator)
+    {
+        var queue = new LinkedBlockingQueue<Result>();
+        var total = new Aggregate(progress, groups.size());
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        for (var g : groups)
+        {
+            var part = total.part();
+            var gc = creator.create(part, g.size());
+            creators.add(gc);
+
+            executor.execute(() -> {
+                Result result;
+                try
+                {
+                    var res = generate(gc, g, settings);
+                    result = new Result(g, res.isEmpty() ? List.of() : res.getFirst(), null);
+                }
+                catch (GroupCreationFailedException e)
+                {
+                    Log.errorf("Failed to create groups in %s: %s", g, e.getLocalizedMessage());
+                    result = new Result(g, List.of(), e);
+                }
+                catch (RuntimeException e)
+                {
+                    // Every group has to be streamed, or the stream would wait forever.
+                    Log.errorf("Failed to create groups in %s: %s", g, e);
+                    result = new Result(g, List.of(), new GroupCreationFailedException(e.toString()));
+                }
+
+                // The progress is done before the result is streamed.
+                creators.remove(gc);
+                part.finish();
+                queue.add(result);
+            });
+        }
+
+        // The groups that are scheduled still run, but the threads end with them.
+        executor.shutdown();
+
+        var results = new Iterator<Result>()
+        {
+            private int left = groups.size();
+            private Result next;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (next != null)
+                    return true;
+
+                if (left == 0)
+                    return false;
+
+                try
+                {
+                    next = queue.take();
+                    left--;
+                    return true;
+                }
+                catch (InterruptedException e)
+                {
+                    left = 0;
+                    interrupt();
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            @Override
+            public Result next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                var res = next;
+                next = null;
+                return res;
+            }
+        };
+
+        // The size isn't reported, or e.g. count() would return without waiting for the groups.
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL), false
+        );
+    }
+
+    /**
+     * Interrupts all groups in progress, they will
+     * be streamed without any subgroups. Only the
+     * threads of the groups are interrupted.
+     * */
+    public void interrupt()
+    {
+        creators.forEach(GroupCreator::interrupt);
+    }
+
+    /**
+     * Generates the subgroups of one group with the settings. If the main groups are
+     * used they are generated in parallel, and one alternative is picked in each.
+     *
+     * @param creator the creator to use.
+     * @param g the group to create subgroups in.
+     * @param settings the settings of the generation.
+     * @return the generated subgroups, empty iff it was interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create the groups.
+     * */
+    public static List<List<Set<Integer>>> generate(
+        GroupCreator creator, Group g, GenerationSettings settings
+    ) throws GroupCreationFailedException
+    {
+        // Everything is derived from the seed, so a run can be reproduced from the log.
+        var random = new SplittableRandom(settings.seed());
+
+        if (settings.useMainGroups())
+        {
+            // Both main groups are generated in parallel, from the same snapshot.
+            var partitions = creator.generatePartitioned(
+                g, Map.of(MainGroup.ONE, settings.mg1Sizes(), MainGroup.TWO, settings.mg2Sizes()), random.nextLong()
+            );
+
+            var mg1Res = partitions.get(MainGroup.ONE);
+            var mg2Res = partitions.get(MainGroup.TWO);
+
+            if (mg1Res.isEmpty() || mg2Res.isEmpty())
+                return List.of();
+
+            var groups = new ArrayList<>(mg1Res.get(random.nextInt(mg1Res.size())));
+            groups.addAll(mg2Res.get(random.nextInt(mg2Res.size())));
+            return List.of(groups);
+        }
+
+        var sizes = settings.sizes();
+
+        var res = sizes.size() == 1 ?
+                  creator.generate(g, sizes.getFirst(), false, settings.seed()) :
+                  creator.generate(g, sizes, settings.seed());
+
+        Log.debugf("Generated Groups: %s", res);
+        return res;
+    }
+
+    /**
+     * Sums the progress of the groups, every group is 1 / count
+     * of the total, and reports it to one progress tracker.
+     * */
+    private static final class Aggregate
+    {
+        private final Progress progress;
+        private final int count;
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong reported = new AtomicLong();
+
+        private Aggregate(Progress progress, int count)
+        {
+            this.progress = progress;
+            this.count = Math.max(count, 1);
+        }
+
+        private Part part()
+        {
+            return new Part(this);
+        }
+
+        private void add(long delta)
+        {
+            var target = total.addAndGet(delta) / count;
+
+            while (true)
+            {
+                var current = reported.get();
+                if (target <= current)
+                    return;
+
+                if (!reported.compareAndSet(current, target))
+                    continue;
+
+                for (var left = target - current; left > 0; left -= MAX_STEP)
+                    progress.onProgress((int) Math.min(left, MAX_STEP));
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * The progress of one group, it is capped to a full generation,
+     * and is filled up when the group is finished.
+     * */
+    private static final class Part implements Progress
+    {
+        private final Aggregate aggregate;
+        private final AtomicLong done = new AtomicLong();
+
+        private Part(Aggregate aggregate)
+        {
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public void onProgress(int progress)
+        {
+            var before = done.getAndUpdate(d -> Math.min(DONE, d + Math.max(progress, 0)));
+            aggregate.add(Math.min(DONE, before + Math.max(progress, 0)) - before);
+        }
+
+        private void finish()
+        {
+            aggregate.add(DONE - done.getAndSet(DONE));
+        }
+    }
+}
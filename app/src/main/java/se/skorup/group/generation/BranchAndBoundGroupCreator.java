@@ -0,0 +1,605 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.progress.Progress;
+import se.skorup.util.Log;
+import se.skorup.util.localization.Localization;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * A GroupCreator that finds the subgroups with the highest possible
+ * {@link WishesGroupCreator#getScore(int[][], ConstraintGraph) score},
+ * by an exhaustive branch-and-bound search. It is meant for small
+ * groups, at most {@link #MAX_SIZE} persons, since the members of
+ * the subgroups are kept as bitmasks.
+ * <br><br>
+ * The persons are placed one at a time, the most constrained first.
+ * A branch is pruned iff it breaks the denylist, or if an upper bound
+ * of its score, derived from the wishes each person still can get
+ * fulfilled, isn't better than the best solution found. Subgroups of
+ * the same size are interchangeable, so a person is only placed in the
+ * first empty subgroup of each size. The first levels of the search
+ * are split into tasks on the common fork/join pool.
+ * <br><br>
+ * The search starts from a solution of {@link LocalSearchGroupCreator}.
+ * If the time cap is hit, the best solution found so far is returned,
+ * and the {@link Result result} of the {@link #search(ConstraintGraph, List, long) search}
+ * isn't optimal.
+ * */
+public final class BranchAndBoundGroupCreator implements GroupCreator
+{
+    /** The maximum number of persons the creator supports. */
+    public static final int MAX_SIZE = 64;
+
+    /** The depth the tasks are split until. */
+    private static final int SPLIT_DEPTH = 4;
+
+    /** The number of nodes between the checks of the clock. */
+    private static final int CHECK_INTERVAL = 4096;
+
+    private final Progress progress;
+    private final Duration maxTime;
+
+    /** Incremented by every interrupt, a run is interrupted iff it has changed since the run started. */
+    private final AtomicInteger interrupts = new AtomicInteger();
+
+    /**
+     * The result of a search.
+     *
+     * @param groups the subgroups, empty iff the search was interrupted.
+     * @param optimal {@code true} iff the subgroups are proven to be optimal,
+     *                i.e. the search wasn't stopped by the time cap.
+     * */
+    public record Result(List<List<Set<Integer>>> groups, boolean optimal) {}
+
+    /**
+     * Creates a new BranchAndBoundGroupCreator with a time cap of one minute.
+     *
+     * @param progress the progress tracker.
+     * */
+    public BranchAndBoundGroupCreator(Progress progress)
+    {
+        this(progress, Duration.ofMinutes(1));
+    }
+
+    /**
+     * Creates a new BranchAndBoundGroupCreator.
+     *
+     * @param progress the progress tracker.
+     * @param maxTime the maximum time a search is allowed to run.
+     * */
+    public BranchAndBoundGroupCreator(Progress progress, Duration maxTime)
+    {
+        this.progress = progress;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Runs the search.
+     *
+     * @param cg the snapshot of the group.
+     * @param sizes the sizes of the subgroups.
+     * @param seed the seed of the start solution.
+     * @return the best subgroups found, and if they are proven to be optimal.
+     * @throws GroupCreationFailedException iff there is no way to create the groups.
+     * @throws IllegalArgumentException iff the group has more than {@link #MAX_SIZE} persons.
+     * */
+    public Result search(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException, IllegalArgumentException
+    {
+        var n = cg.size();
+
+        if (n > MAX_SIZE)
+            throw new IllegalArgumentException("At most %d persons are supported, got: %d".formatted(MAX_SIZE, n));
+
+        var epoch = interrupts.get();
+        var caps = sizes.size() == 1 ?
+                   FeasibilityAnalyser.capacities(n, sizes.getFirst()) :
+                   FeasibilityAnalyser.capacities(n, sizes);
+
+        var feasibility = FeasibilityAnalyser.analyse(cg, caps);
+        feasibility.requireFeasible();
+
+        var run = new Run(cg, caps, System.nanoTime() + maxTime.toNanos(), epoch);
+
+        if (feasibility.groups() != null)
+            run.offer(feasibility.copyOfGroups());
+
+        // A good start makes the bound prune a lot more.
+        try
+        {
+            var start = new LocalSearchGroupCreator(p -> {}, 20_000L * Math.max(n, 1), maxTime.dividedBy(10))
+                .generate(cg, sizes, seed);
+
+            if (!start.isEmpty())
+                run.offer(cg.toIndices(start.getFirst()));
+        }
+        catch (GroupCreationFailedException e)
+        {
+            Log.debugf("No start solution: %s", e.getLocalizedMessage());
+        }
+
+        if (n > 0)
+            ForkJoinPool.commonPool().invoke(new Node(run, new Branch(run), 0));
+
+        if (interrupts.get() != epoch)
+            return new Result(List.of(), false);
+
+        var optimal = !run.stopped.get();
+        progress.onProgress(1_000_000_000);
+        Log.debugf("Branch and bound: %d nodes, optimal: %s, score: %s", run.nodes.get(), optimal, run.bestScore());
+
+        if (run.best == null)
+            throw new GroupCreationFailedException("Cannot create group, too many denylist items!");
+
+        return new Result(Collections.singletonList(cg.toIds(run.best)), optimal);
+    }
+
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, int size, long seed
+    ) throws GroupCreationFailedException
+    {
+        return search(cg, Collections.singletonList(size), seed).groups();
+    }
+
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        return search(cg, sizes, seed).groups();
+    }
+
+    /**
+     * Interrupts all searches in progress, resulting
+     * in an empty list being returned.
+     * */
+    @Override
+    public void interrupt()
+    {
+        interrupts.incrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return Localization.getValue("optimal-groups.name");
+    }
+
+    /**
+     * The shared, read-only, data of one search and its best solution.
+     * */
+    private final class Run
+    {
+        private final ConstraintGraph cg;
+        private final int n;
+        private final int[] caps;
+        private final long deadline;
+        private final int epoch;
+
+        /** The persons in the order they are placed, the most constrained first. */
+        private final int[] order;
+        private final long[] wishMask;
+        private final long[] denyMask;
+        private final int maxWishes;
+
+        private final AtomicLong bestScore = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+        private final AtomicLong nodes = new AtomicLong();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private volatile int[][] best;
+
+        private Run(ConstraintGraph cg, int[] caps, long deadline, int epoch)
+        {
+            this.cg = cg;
+            this.n = cg.size();
+            this.caps = caps;
+            this.deadline = deadline;
+            this.epoch = epoch;
+            this.wishMask = new long[n];
+            this.denyMask = new long[n];
+            this.maxWishes = cg.maxWishCount();
+
+            for (var p = 0; p < n; p++)
+            {
+                for (var k = 0; k < cg.wishCount(p); k++)
+                    wishMask[p] |= 1L << cg.wish(p, k);
+
+                for (var k = 0; k < cg.denyCount(p); k++)
+                    denyMask[p] |= 1L << cg.deny(p, k);
+            }
+
+            this.order = placementOrder(cg);
+        }
+
+        /**
+         * The order the persons are placed in. It is a breadth first search over the wishes,
+         * starting from the most constrained person, so the persons that wish for each other
+         * are placed close to each other and the bound gets tight early.
+         * */
+        private static int[] placementOrder(ConstraintGraph cg)
+        {
+            var n = cg.size();
+            var byDegree = IntStream.range(0, n)
+                                    .boxed()
+                                    .sorted(Comparator.comparingInt((Integer p) -> cg.denyCount(p) + cg.wishCount(p) + cg.wishedByCount(p)).reversed())
+                                    .mapToInt(Integer::intValue)
+                                    .toArray();
+
+            var res = new int[n];
+            var visited = new boolean[n];
+            var size = 0;
+
+            for (var root : byDegree)
+            {
+                if (visited[root])
+                    continue;
+
+                visited[root] = true;
+                res[size++] = root;
+
+                for (var head = size - 1; head < size; head++)
+                {
+                    var p = res[head];
+
+                    for (var k = 0; k < cg.wishCount(p); k++)
+                        size = visit(cg.wish(p, k), res, visited, size);
+
+                    for (var k = 0; k < cg.wishedByCount(p); k++)
+                        size = visit(cg.wishedBy(p, k), res, visited, size);
+                }
+            }
+
+            return res;
+        }
+
+        private static int visit(int p, int[] res, boolean[] visited, int size)
+        {
+            if (visited[p])
+                return size;
+
+            visited[p] = true;
+            res[size] = p;
+            return size + 1;
+        }
+
+        private double bestScore()
+        {
+            return Double.longBitsToDouble(bestScore.get());
+        }
+
+        /**
+         * Offers a complete solution, it is kept iff it is better than the best.
+         *
+         * @param groups the solution, as indices.
+         * */
+        private synchronized void offer(int[][] groups)
+        {
+            var score = WishesGroupCreator.getScore(groups, cg);
+
+            if (best == null || score > bestScore())
+            {
+                best = groups;
+                bestScore.set(Double.doubleToLongBits(score));
+            }
+        }
+
+        /**
+         * Checks if the search should stop, because of the time cap or an interrupt.
+         *
+         * @return {@code true} iff the search should stop.
+         * */
+        private boolean shouldStop()
+        {
+            if (stopped.get())
+                return true;
+
+            if (System.nanoTime() > deadline || interrupts.get() != epoch || Thread.currentThread().isInterrupted())
+                stopped.set(true);
+
+            return stopped.get();
+        }
+    }
+
+    /**
+     * A branch of the search, i.e. the members of every subgroup.
+     * */
+    private static final class Branch
+    {
+        private final long[] members;
+        private final int[] counts;
+        private final int[] groupOf;
+        private long unassigned;
+
+        private Branch(Run run)
+        {
+            this.members = new long[run.caps.length];
+            this.counts = new int[run.caps.length];
+            this.groupOf = new int[run.n];
+            this.unassigned = run.n == 64 ? -1L : (1L << run.n) - 1;
+            Arrays.fill(groupOf, -1);
+        }
+
+        private Branch(Branch s)
+        {
+            this.members = s.members.clone();
+            this.counts = s.counts.clone();
+            this.groupOf = s.groupOf.clone();
+            this.unassigned = s.unassigned;
+        }
+
+        private void place(int p, int g)
+        {
+            members[g] |= 1L << p;
+            counts[g]++;
+            groupOf[p] = g;
+            unassigned &= ~(1L << p);
+        }
+
+        private void remove(int p, int g)
+        {
+            members[g] &= ~(1L << p);
+            counts[g]--;
+            groupOf[p] = -1;
+            unassigned |= 1L << p;
+        }
+    }
+
+    /**
+     * A node of the search, on the first levels every child is forked
+     * as its own task, below that the search is sequential.
+     * */
+    private static final class Node extends RecursiveAction
+    {
+        private final Run run;
+        private final Branch branch;
+        private final int depth;
+
+        private Node(Run run, Branch branch, int depth)
+        {
+            this.run = run;
+            this.branch = branch;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (depth >= SPLIT_DEPTH || depth >= run.n)
+            {
+                search(branch, depth);
+                return;
+            }
+
+            if (run.shouldStop() || upperBound(run, branch) <= run.bestScore() && run.best != null)
+                return;
+
+            var p = run.order[depth];
+            var children = new ArrayList<Node>();
+
+            for (var g = 0; g < run.caps.length; g++)
+            {
+                if (!canPlace(run, branch, p, g))
+                    continue;
+
+                var child = new Branch(branch);
+                child.place(p, g);
+                children.add(new Node(run, child, depth + 1));
+            }
+
+            invokeAll(children);
+        }
+
+        /**
+         * The sequential search, it places the person at depth and recurses.
+         *
+         * @param s the state, it is restored before returning.
+         * @param depth the number of placed persons.
+         * */
+        private void search(Branch s, int depth)
+        {
+            if (run.nodes.incrementAndGet() % CHECK_INTERVAL == 0 && run.shouldStop())
+                return;
+
+            if (run.stopped.get())
+                return;
+
+            if (depth == run.n)
+            {
+                var groups = new int[run.caps.length][];
+                for (var g = 0; g < groups.length; g++)
+                    groups[g] = toArray(s.members[g]);
+
+                run.offer(groups);
+                return;
+            }
+
+            if (run.best != null && upperBound(run, s) <= run.bestScore())
+                return;
+
+            var p = run.order[depth];
+
+            for (var g = 0; g < run.caps.length; g++)
+            {
+                if (!canPlace(run, s, p, g))
+                    continue;
+
+                s.place(p, g);
+                search(s, depth + 1);
+                s.remove(p, g);
+            }
+        }
+    }
+
+    /**
+     * Checks if p can be placed in g. The subgroup has to have room, no one in it can be
+     * denied with p, and it may only be empty if no earlier subgroup of the same size is empty.
+     * */
+    private static boolean canPlace(Run run, Branch s, int p, int g)
+    {
+        if (s.counts[g] >= run.caps[g] || (s.members[g] & run.denyMask[p]) != 0)
+            return false;
+
+        if (s.counts[g] == 0)
+        {
+            for (var h = 0; h < g; h++)
+            {
+                if (s.counts[h] == 0 && run.caps[h] == run.caps[g])
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * An upper bound of the score of every solution in a branch. Every person gets a
+     * range of the number of wishes that can be fulfilled, so x[i] is at most the
+     * number of persons whose range contains i. Every term of psi is convex and zero
+     * at zero, so it is at most x[i] times its value per person at that maximum, the
+     * bound is the smaller of that and every term maximised on its own.
+     * <br><br>
+     * x[0] is at least the number of persons that can't get any wish fulfilled, plus,
+     * for every person q, the number of persons that only can get q that won't fit
+     * in the subgroup of q.
+     * */
+    private static double upperBound(Run run, Branch s)
+    {
+        var lo = new int[run.n];
+        var hi = new int[run.n];
+        var relying = new long[run.n];
+        var within = new int[run.maxWishes + 2];
+        var x0 = 0;
+
+        for (var p = 0; p < run.n; p++)
+        {
+            var g = s.groupOf[p];
+            var possible = 0L;
+
+            if (g != -1)
+            {
+                var room = run.caps[g] - s.counts[g];
+                var fulfilled = run.wishMask[p] & s.members[g];
+                lo[p] = Long.bitCount(fulfilled);
+                hi[p] = lo[p] + Math.min(Long.bitCount(run.wishMask[p] & s.unassigned), room);
+                possible = fulfilled | (room > 0 ? run.wishMask[p] & s.unassigned : 0);
+            }
+            else
+            {
+                var free = run.wishMask[p] & s.unassigned;
+
+                for (var h = 0; h < run.caps.length; h++)
+                {
+                    var room = run.caps[h] - s.counts[h];
+                    if (room == 0 || (s.members[h] & run.denyMask[p]) != 0)
+                        continue;
+
+                    var there = run.wishMask[p] & s.members[h];
+                    hi[p] = Math.max(hi[p], Long.bitCount(there) + Math.min(Long.bitCount(free), room - 1));
+                    possible |= there;
+                }
+
+                if (hi[p] > 0)
+                    possible |= free;
+            }
+
+            if (hi[p] == 0)
+                x0++;
+            else if (lo[p] == 0 && Long.bitCount(possible) == 1)
+                relying[Long.numberOfTrailingZeros(possible)] |= 1L << p;
+
+            // Marks the range lo..hi, as a difference array.
+            within[lo[p]]++;
+            within[hi[p] + 1]--;
+        }
+
+        for (var q = 0; q < run.n; q++)
+        {
+            if (relying[q] != 0)
+                x0 += Long.bitCount(relying[q]) - maxWithQ(run, s, q, relying[q]);
+        }
+
+        var separate = 0d;
+        var perPerson = new double[run.maxWishes + 1];
+        var cnt = within[0];
+        for (var i = 1; i <= run.maxWishes; i++)
+        {
+            cnt += within[i];
+            var term = Math.pow(cnt, i * i) / Math.pow(2, WishesGroupCreator.n(i));
+            separate += term;
+            perPerson[i] = cnt == 0 ? 0 : term / cnt;
+        }
+
+        var linear = 0d;
+        for (var p = 0; p < run.n; p++)
+        {
+            var max = 0d;
+            for (var i = Math.max(lo[p], 1); i <= hi[p]; i++)
+                max = Math.max(max, perPerson[i]);
+
+            linear += max;
+        }
+
+        return Math.min(separate, linear) - WishesGroupCreator.omega(x0) * x0;
+    }
+
+    /**
+     * The maximum number of the persons in mask that can end up in the same subgroup as q.
+     *
+     * @param run the search.
+     * @param s the branch.
+     * @param q the person.
+     * @param mask the persons.
+     * @return the maximum number of persons in mask together with q.
+     * */
+    private static int maxWithQ(Run run, Branch s, int q, long mask)
+    {
+        var g = s.groupOf[q];
+        var free = Long.bitCount(mask & s.unassigned);
+
+        if (g != -1)
+            return Long.bitCount(mask & s.members[g]) + Math.min(free, run.caps[g] - s.counts[g]);
+
+        var max = 0;
+        for (var h = 0; h < run.caps.length; h++)
+        {
+            var room = run.caps[h] - s.counts[h];
+            if (room == 0 || (s.members[h] & run.denyMask[q]) != 0)
+                continue;
+
+            max = Math.max(max, Long.bitCount(mask & s.members[h]) + Math.min(free, room - 1));
+        }
+
+        return max;
+    }
+
+    /**
+     * The indices of the set bits of a mask.
+     *
+     * @param mask the mask.
+     * @return the set bits, in increasing order.
+     * */
+    private static int[] toArray(long mask)
+    {
+        var res = new int[Long.bitCount(mask)];
+
+        for (var i = 0; mask != 0; i++, mask &= mask - 1)
+            res[i] = Long.numberOfTrailingZeros(mask);
+
+        return res;
+    }
+}
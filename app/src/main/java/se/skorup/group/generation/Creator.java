@@ -0,0 +1,36 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.progress.Progress;
+
+/**
+ * The creator that is supposed to be
+ * used when creating groups.
+ * <br><br>
+ * The {@link BalancedGroupCreator} isn't one of them, since the attributes
+ * it balances can't be entered yet, so it would only be a slower local search.
+ * */
+public enum Creator
+{
+    RANDOM, WISH, LOCAL_SEARCH, OPTIMAL;
+
+    /**
+     * Creates the group creator. The optimal creator can only handle
+     * groups of {@link BranchAndBoundGroupCreator#MAX_SIZE} persons,
+     * so larger groups gets the local search instead.
+     *
+     * @param p the progress tracker.
+     * @param size the number of persons in the group.
+     * @return the group creator.
+     * */
+    public GroupCreator create(Progress p, int size)
+    {
+        return switch (this) {
+            case RANDOM -> new RandomGroupCreator(p);
+            case WISH -> new WishesGroupCreator(p);
+            case LOCAL_SEARCH -> new LocalSearchGroupCreator(p);
+            case OPTIMAL -> size > BranchAndBoundGroupCreator.MAX_SIZE ?
+                            new LocalSearchGroupCreator(p) :
+                            new BranchAndBoundGroupCreator(p);
+        };
+    }
+}
@@ -0,0 +1,390 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Checks, before any generation, if the subgroups can be created at all
+ * without breaking the denylist. The denylist is a graph and the subgroups
+ * are colours with a capacity, so the analyser first looks for a clique of
+ * denied persons larger than the number of subgroups, and for persons that
+ * are denied with too many to fit in any subgroup. Then it searches for a
+ * colouring by backtracking over the persons that have denylist items, the
+ * others can always fill the room that is left.
+ * <br><br>
+ * If a colouring is found, it is handed to the generators, so they can fall
+ * back on it instead of failing when they end up in a dead end.
+ * */
+public final class FeasibilityAnalyser
+{
+    /** The maximum number of placements the search is allowed to try. */
+    private static final long MAX_NODES = 200_000;
+
+    /**
+     * The verdict of the analysis.
+     * */
+    public enum Verdict
+    {
+        /** A colouring is found. */
+        FEASIBLE,
+
+        /** It is proven that there is no colouring. */
+        INFEASIBLE,
+
+        /** The search gave up, the generators have to try on their own. */
+        UNKNOWN
+    }
+
+    /**
+     * The result of an analysis.
+     *
+     * @param verdict the verdict.
+     * @param capacities the capacities of the subgroups.
+     * @param groups the feasible colouring, as indices, iff the verdict is FEASIBLE, else {@code null}.
+     * @param conflicts the ids of the persons causing the conflict, iff the verdict is INFEASIBLE.
+     * @param reason the diagnosis, iff the verdict is INFEASIBLE.
+     * */
+    public record Result(Verdict verdict, int[] capacities, int[][] groups, List<Integer> conflicts, String reason)
+    {
+        /**
+         * Throws iff the subgroups can't be created.
+         *
+         * @throws InfeasibleGroupsException iff the verdict is INFEASIBLE.
+         * */
+        public void requireFeasible() throws InfeasibleGroupsException
+        {
+            if (verdict == Verdict.INFEASIBLE)
+                throw new InfeasibleGroupsException(reason, conflicts);
+        }
+
+        /**
+         * Gets a copy of the feasible colouring.
+         *
+         * @return a copy of the colouring, or {@code null} iff there is none.
+         * */
+        public int[][] copyOfGroups()
+        {
+            return groups == null ? null : Arrays.stream(groups).map(int[]::clone).toArray(int[][]::new);
+        }
+    }
+
+    /** No one should instantiate this class. */
+    private FeasibilityAnalyser() {}
+
+    /**
+     * The capacities of subgroups of size: size, with the remaining persons in one extra group.
+     *
+     * @param n the number of persons.
+     * @param size the size of the subgroups.
+     * @return the capacity of every subgroup.
+     * @throws IllegalArgumentException iff size &lt; 1.
+     * */
+    public static int[] capacities(int n, int size) throws IllegalArgumentException
+    {
+        return capacities(n, unused -> size);
+    }
+
+    /**
+     * The capacities of subgroups with the provided sizes, with the remaining persons in the last group.
+     *
+     * @param n the number of persons.
+     * @param sizes the sizes of the subgroups.
+     * @return the capacity of every subgroup.
+     * @throws IllegalArgumentException iff any of the sizes &lt; 1.
+     * */
+    public static int[] capacities(int n, List<Integer> sizes) throws IllegalArgumentException
+    {
+        return capacities(n, i -> i < sizes.size() ? sizes.get(i) : Integer.MAX_VALUE);
+    }
+
+    private static int[] capacities(int n, IntUnaryOperator sizeOf) throws IllegalArgumentException
+    {
+        var res = new ArrayList<Integer>();
+
+        for (var left = n; left > 0;)
+        {
+            var size = sizeOf.applyAsInt(res.size());
+            if (size < 1)
+                throw new IllegalArgumentException("The size of a subgroup has to be positive, got: %d".formatted(size));
+
+            var cap = Math.min(size, left);
+            res.add(cap);
+            left -= cap;
+        }
+
+        return res.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Analyses if the subgroups can be created.
+     *
+     * @param cg the snapshot of the group.
+     * @param caps the capacities of the subgroups, they have to add up to the size of the group.
+     * @return the result of the analysis.
+     * */
+    public static Result analyse(ConstraintGraph cg, int[] caps)
+    {
+        var n = cg.size();
+        var clique = largestClique(cg);
+
+        if (clique.length > caps.length)
+        {
+            return infeasible(
+                cg, caps, clique,
+                "%d persons are all denied with each other, but there are only %d groups".formatted(clique.length, caps.length)
+            );
+        }
+
+        var minCap = Arrays.stream(caps).min().orElse(0);
+        for (var p = 0; p < n; p++)
+        {
+            // p has to be in a group with caps - 1 persons that p isn't denied with.
+            if (minCap > n - cg.denyCount(p))
+            {
+                return infeasible(
+                    cg, caps, withDenies(cg, p),
+                    "%d is denied with too many persons to fit in any group".formatted(cg.idOf(p))
+                );
+            }
+        }
+
+        return colour(cg, caps);
+    }
+
+    /**
+     * Searches for a colouring, by backtracking over the persons that have
+     * denylist items. Empty groups of the same size are interchangeable, so
+     * only the first of them is tried.
+     * */
+    private static Result colour(ConstraintGraph cg, int[] caps)
+    {
+        var n = cg.size();
+        var order = placementOrder(cg);
+        var groupOf = new int[n];
+        var counts = new int[caps.length];
+        var next = new int[order.length];
+        var failures = new int[n];
+        var nodes = 0L;
+        var depth = 0;
+
+        Arrays.fill(groupOf, -1);
+
+        while (depth >= 0 && depth < order.length)
+        {
+            if (++nodes > MAX_NODES)
+                return new Result(Verdict.UNKNOWN, caps, null, List.of(), null);
+
+            var p = order[depth];
+            if (groupOf[p] != -1)
+            {
+                counts[groupOf[p]]--;
+                groupOf[p] = -1;
+            }
+
+            var g = nextGroup(cg, caps, counts, groupOf, p, next[depth]);
+            if (g == -1)
+            {
+                failures[p]++;
+                next[depth] = 0;
+                depth--;
+                continue;
+            }
+
+            groupOf[p] = g;
+            counts[g]++;
+            next[depth] = g + 1;
+            depth++;
+        }
+
+        if (depth < 0)
+        {
+            var worst = IntStream.range(0, n).boxed().max(Comparator.comparingInt(p -> failures[p])).orElseThrow();
+            return infeasible(
+                cg, caps, withDenies(cg, worst),
+                "There is no way to place %d and the persons it is denied with in the groups".formatted(cg.idOf(worst))
+            );
+        }
+
+        // The persons without any denylist items fill the room that is left.
+        var g = 0;
+        for (var p = 0; p < n; p++)
+        {
+            if (groupOf[p] != -1)
+                continue;
+
+            while (counts[g] == caps[g])
+                g++;
+
+            groupOf[p] = g;
+            counts[g]++;
+        }
+
+        var groups = new int[caps.length][];
+        var filled = new int[caps.length];
+        for (var i = 0; i < caps.length; i++)
+            groups[i] = new int[caps[i]];
+
+        for (var p = 0; p < n; p++)
+            groups[groupOf[p]][filled[groupOf[p]]++] = p;
+
+        return new Result(Verdict.FEASIBLE, caps, groups, List.of(), null);
+    }
+
+    /**
+     * Finds the first group, from the index from, that p can be placed in.
+     *
+     * @return the index of the group, or -1 iff there is none.
+     * */
+    private static int nextGroup(ConstraintGraph cg, int[] caps, int[] counts, int[] groupOf, int p, int from)
+    {
+        for (var g = from; g < caps.length; g++)
+        {
+            if (counts[g] == caps[g] || isFirstEmptyTaken(caps, counts, g))
+                continue;
+
+            var allowed = true;
+            for (var k = 0; k < cg.denyCount(p) && allowed; k++)
+                allowed = groupOf[cg.deny(p, k)] != g;
+
+            if (allowed)
+                return g;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Checks if g is empty, while an earlier group of the same capacity also is empty.
+     * */
+    private static boolean isFirstEmptyTaken(int[] caps, int[] counts, int g)
+    {
+        if (counts[g] != 0)
+            return false;
+
+        for (var h = 0; h < g; h++)
+        {
+            if (counts[h] == 0 && caps[h] == caps[g])
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * The persons that have denylist items, in a breadth first order over
+     * the denylist, starting from the person with the most denylist items.
+     * */
+    private static int[] placementOrder(ConstraintGraph cg)
+    {
+        var n = cg.size();
+        var byDegree = IntStream.range(0, n)
+                                .filter(p -> cg.denyCount(p) > 0)
+                                .boxed()
+                                .sorted(Comparator.comparingInt(cg::denyCount).reversed())
+                                .mapToInt(Integer::intValue)
+                                .toArray();
+
+        var res = new int[byDegree.length];
+        var visited = new boolean[n];
+        var size = 0;
+
+        for (var root : byDegree)
+        {
+            if (visited[root])
+                continue;
+
+            visited[root] = true;
+            res[size++] = root;
+
+            for (var head = size - 1; head < size; head++)
+            {
+                var p = res[head];
+                for (var k = 0; k < cg.denyCount(p); k++)
+                {
+                    var d = cg.deny(p, k);
+                    if (!visited[d])
+                    {
+                        visited[d] = true;
+                        res[size++] = d;
+                    }
+                }
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Finds a large clique in the denylist, greedily from every person.
+     *
+     * @param cg the snapshot of the group.
+     * @return the indices of the persons in the clique.
+     * */
+    private static int[] largestClique(ConstraintGraph cg)
+    {
+        var best = new int[0];
+
+        for (var p = 0; p < cg.size(); p++)
+        {
+            // The clique can't be larger than the number of persons p is denied with, plus one.
+            if (cg.denyCount(p) < best.length)
+                continue;
+
+            var clique = greedyClique(cg, p);
+            if (clique.length > best.length)
+                best = clique;
+        }
+
+        return best;
+    }
+
+    /**
+     * Grows a clique from p, by adding the persons p is denied with, the
+     * ones with the most denylist items first, iff they fit in the clique.
+     * */
+    private static int[] greedyClique(ConstraintGraph cg, int p)
+    {
+        var candidates = IntStream.range(0, cg.denyCount(p))
+                                  .map(k -> cg.deny(p, k))
+                                  .boxed()
+                                  .sorted(Comparator.comparingInt(cg::denyCount).reversed())
+                                  .toList();
+
+        var clique = new ArrayList<Integer>();
+        clique.add(p);
+
+        for (var c : candidates)
+        {
+            if (clique.stream().allMatch(q -> cg.isDenied(c, q)))
+                clique.add(c);
+        }
+
+        return clique.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A person and everyone the person is denied with.
+     * */
+    private static int[] withDenies(ConstraintGraph cg, int p)
+    {
+        var res = new int[cg.denyCount(p) + 1];
+        res[0] = p;
+
+        for (var k = 0; k < cg.denyCount(p); k++)
+            res[k + 1] = cg.deny(p, k);
+
+        return res;
+    }
+
+    private static Result infeasible(ConstraintGraph cg, int[] caps, int[] conflicts, String reason)
+    {
+        var ids = Arrays.stream(conflicts).map(cg::idOf).sorted().boxed().toList();
+        return new Result(Verdict.INFEASIBLE, caps, null, ids, "%s: %s".formatted(reason, ids));
+    }
+}
@@ -1,4 +1,4 @@
-package se.skorup.main.gui.group.helper;
+package se.skorup.group.generation;
 
 import java.util.List;
 
@@ -11,8 +11,10 @@ import java.util.List;
  *                 This is unused if <i>useMainGroups</i> is set to {@code false}.
  * @param mg2Sizes the sizes associated with main group 2.
  *                 This is unused if <i>useMainGroups</i> is set to {@code false}.
+ * @param seed the seed of the generation, the same seed and group gives the same groups.
  * */
 public record GenerationSettings(
     boolean useMainGroups, List<Integer> sizes,
-    List<Integer> mg1Sizes, List<Integer> mg2Sizes
+    List<Integer> mg1Sizes, List<Integer> mg2Sizes,
+    long seed
 ) {}
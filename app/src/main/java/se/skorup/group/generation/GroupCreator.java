@@ -1,9 +1,17 @@
 package se.skorup.group.generation;
 
+import se.skorup.group.ConstraintGraph;
 import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * The base type for all generators.
@@ -26,12 +34,38 @@ public interface GroupCreator
      * @throws IllegalArgumentException iff size &lt; 2.
      * @return A list of generated subgroups.
      * */
-    List<List<Set<Integer>>> generate(
+    default List<List<Set<Integer>>> generate(
         Group gm, int size, boolean overflow
-    ) throws GroupCreationFailedException, IllegalArgumentException;
+    ) throws GroupCreationFailedException, IllegalArgumentException
+    {
+        return generate(gm, size, overflow, ThreadLocalRandom.current().nextLong());
+    }
 
     /**
-     * Generates subgroups of size: size. It could generate
+     * Generates subgroups of size: size, the same way as
+     * {@link #generate(Group, int, boolean)}. All the randomness is
+     * derived from the seed, so the same seed and group gives the same
+     * subgroups, even if the creator runs on multiple threads.
+     *
+     * @param gm the GroupManger responsible for the group to create subgroups in.
+     * @param size the size of the subgroups.
+     * @param overflow If the sizes do not match then it will overflow and add the remaining
+     *                 people to the last group and overflow is set to {@code true}, else it
+     *                 will create one extra group.
+     * @param seed the seed of the random generator.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * @throws IllegalArgumentException iff size &lt; 2.
+     * @return A list of generated subgroups.
+     * */
+    default List<List<Set<Integer>>> generate(
+        Group gm, int size, boolean overflow, long seed
+    ) throws GroupCreationFailedException, IllegalArgumentException
+    {
+        return generate(gm.snapshot(), size, seed);
+    }
+
+    /**
+     * Generates subgroups with the provided sizes. It could generate
      * multiple groups if the implementing algorithm is designed for that.
      * If the algorithm is designed for multiple subgroups, the resulting list
      * could contain more than one element. If it isn't designed for that,
@@ -43,7 +77,111 @@ public interface GroupCreator
      * @throws IllegalArgumentException iff size &lt; 2.
      * @return A list of generated subgroups.
      * */
-    List<List<Set<Integer>>> generate(Group gm, List<Integer> sizes) throws GroupCreationFailedException;
+    default List<List<Set<Integer>>> generate(Group gm, List<Integer> sizes) throws GroupCreationFailedException
+    {
+        return generate(gm, sizes, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Generates subgroups with the provided sizes, the same way as
+     * {@link #generate(Group, List)}. All the randomness is derived
+     * from the seed, so the same seed and group gives the same
+     * subgroups, even if the creator runs on multiple threads.
+     *
+     * @param gm the GroupManger responsible for the group to create subgroups in.
+     * @param sizes the sizes of the subgroups.
+     * @param seed the seed of the random generator.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * @return A list of generated subgroups.
+     * */
+    default List<List<Set<Integer>>> generate(
+        Group gm, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        return generate(gm.snapshot(), sizes, seed);
+    }
+
+    /**
+     * Generates subgroups of size: size, from a snapshot of a group.
+     * The implementations have to support being run on multiple
+     * snapshots at the same time.
+     *
+     * @param cg the snapshot of the group to create subgroups in.
+     * @param size the size of the subgroups.
+     * @param seed the seed of the random generator.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * @return A list of generated subgroups.
+     * */
+    List<List<Set<Integer>>> generate(ConstraintGraph cg, int size, long seed) throws GroupCreationFailedException;
+
+    /**
+     * Generates subgroups with the provided sizes, from a snapshot of a
+     * group. The implementations have to support being run on multiple
+     * snapshots at the same time.
+     *
+     * @param cg the snapshot of the group to create subgroups in.
+     * @param sizes the sizes of the subgroups.
+     * @param seed the seed of the random generator.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * @return A list of generated subgroups.
+     * */
+    List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException;
+
+    /**
+     * Generates subgroups in each of the main groups in parallel. All main groups
+     * are taken from one {@link Group#mainGroupSnapshots() snapshot}, and every
+     * main group but the last is forked onto the common fork/join pool, while
+     * the last one is generated by the calling thread.
+     * <br><br>
+     * As in the rest of the program, a list with one size means that all
+     * subgroups have that size.
+     *
+     * @param gm the group to create subgroups in.
+     * @param sizes the sizes of the subgroups in each main group, main groups
+     *              that aren't in the map are skipped.
+     * @param seed the seed of the random generator.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * @return the generated subgroups of each main group.
+     * */
+    default Map<MainGroup, List<List<Set<Integer>>>> generatePartitioned(
+        Group gm, Map<MainGroup, List<Integer>> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        var snapshots = gm.mainGroupSnapshots();
+        var random = new SplittableRandom(seed);
+        var tasks = new EnumMap<MainGroup, ForkJoinTask<List<List<Set<Integer>>>>>(MainGroup.class);
+
+        // The seeds are drawn in the order of the main groups, so they don't depend on the scheduling.
+        for (var mg : MainGroup.values())
+        {
+            if (!sizes.containsKey(mg))
+                continue;
+
+            var cg = snapshots.get(mg);
+            var s = sizes.get(mg);
+            var partSeed = random.nextLong();
+
+            tasks.put(
+                mg,
+                ForkJoinTask.adapt(() -> s.size() == 1 ? generate(cg, s.getFirst(), partSeed) : generate(cg, s, partSeed))
+            );
+        }
+
+        var order = new ArrayList<>(tasks.values());
+        for (var i = 0; i < order.size() - 1; i++)
+            order.get(i).fork();
+
+        if (!order.isEmpty())
+            order.getLast().invoke();
+
+        var res = new EnumMap<MainGroup, List<List<Set<Integer>>>>(MainGroup.class);
+        for (var e : tasks.entrySet())
+            res.put(e.getKey(), e.getValue().join());
+
+        return res;
+    }
 
     /**
      * Interrupts the group creation. This is optional to implement,
@@ -1,139 +1,226 @@
 package se.skorup.group.generation;
 
-import se.skorup.group.Group;
+import se.skorup.group.ConstraintGraph;
+import se.skorup.util.Log;
+import se.skorup.util.collections.IndexBitSet;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
- * A template class for a group creator.
+ * A template class for a group creator. The template works
+ * against a {@link ConstraintGraph snapshot} of the group, so
+ * all persons are represented by their index in the snapshot.
+ * The state of a run is kept by the template, so the implementations
+ * should be stateless, to allow multiple runs at the same time.
  * */
 public abstract class GroupCreatorTemplate implements GroupCreator
 {
+    /** The number of random splits that are tried before the colouring of the analysis is used. */
+    public static final int MAX_ATTEMPTS = 16;
+
+    /** Returned by an attempt that ended in a dead end. */
+    private static final int[][] DEAD_END = new int[0][];
+
     /** No one should instantiate this class anomalously. */
     protected GroupCreatorTemplate() {}
 
     /**
-     * Gets the next person.
+     * Gets the next person. The template keeps track of the persons
+     * that are left, so the implementation should only choose.
      *
-     * @param gm the instance of the GroupManger responsible for the group.
-     * @param left the id's of the persons that are left.
+     * @param cg the snapshot of the group.
+     * @param allowed the indices of the persons that are left and
+     *                allowed in the current subgroup.
      * @param current the current group being worked on.
-     * @param lastId the id that was the last chosen.
-     * @return the id of the person that's the next person.
+     * @param last the index that was the last chosen, -1 if none has been chosen.
+     * @param random the random generator, it is only used by the current thread.
+     * @return the index of the person that's the next person.
      * @throws GroupCreationFailedException iff there is no possible person to be chosen.
      * */
     protected abstract int getNextPerson(
-        Group gm, Set<Integer> left, Set<Integer> current, int lastId
+        ConstraintGraph cg, IndexBitSet allowed, Subgroup current, int last, RandomGenerator random
     ) throws GroupCreationFailedException;
 
     /**
-     * Checks if a person is allowed in the group.
+     * Creates subgroups of size: size. If the sizes don't match up,
+     * the remaining persons will be put in one extra group.
+     *
+     * @param cg the snapshot of the group.
+     * @param size the size of the subgroups.
+     * @param random the random generator, it is only used by the current thread.
+     * @return the subgroups as arrays of indices, or {@code null}
+     *         iff the thread was interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * */
+    public int[][] createGroups(
+        ConstraintGraph cg, int size, RandomGenerator random
+    ) throws GroupCreationFailedException
+    {
+        return createGroups(cg, FeasibilityAnalyser.capacities(cg.size(), size), null, random);
+    }
+
+    /**
+     * Creates subgroups with the provided sizes. If there are persons left
+     * after the last size, they will be added to the last group.
+     *
+     * @param cg the snapshot of the group.
+     * @param sizes the sizes of the subgroups.
+     * @param random the random generator, it is only used by the current thread.
+     * @return the subgroups as arrays of indices, or {@code null}
+     *         iff the thread was interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * */
+    public int[][] createGroups(
+        ConstraintGraph cg, List<Integer> sizes, RandomGenerator random
+    ) throws GroupCreationFailedException
+    {
+        return createGroups(cg, FeasibilityAnalyser.capacities(cg.size(), sizes), null, random);
+    }
+
+    /**
+     * Creates subgroups with the capacities of an analysis. If the
+     * analysis found a feasible colouring, a creation that ends up in a
+     * dead end is retried with a new random split instead of failing.
+     * The colouring itself is only returned iff every attempt fails.
      *
-     * @param id the id of the person to tested.
-     * @param current the current group in creation.
-     * @param gm the group manager in charge of the group.
-     * @return {@code true} iff the person is allowed to exist in current.
+     * @param cg the snapshot of the group.
+     * @param feasibility the analysis of the group.
+     * @param random the random generator, it is only used by the current thread.
+     * @return the subgroups as arrays of indices, or {@code null}
+     *         iff the thread was interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
      * */
-    protected boolean isPersonAllowed(int id, Collection<Integer> current, Group gm)
+    public int[][] createGroups(
+        ConstraintGraph cg, FeasibilityAnalyser.Result feasibility, RandomGenerator random
+    ) throws GroupCreationFailedException
     {
-        for (var p : current)
+        return createGroups(cg, feasibility.capacities(), feasibility.groups(), random);
+    }
+
+    /**
+     * Creates the subgroups.
+     *
+     * @param cg the snapshot of the group.
+     * @param caps the capacity of every subgroup.
+     * @param fallback the subgroups returned iff every attempt ends in a dead end,
+     *                 {@code null} iff it should fail at the first dead end.
+     * @param random the random generator.
+     * @return the subgroups as arrays of indices, or {@code null}
+     *         iff the thread was interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * */
+    private int[][] createGroups(
+        ConstraintGraph cg, int[] caps, int[][] fallback, RandomGenerator random
+    ) throws GroupCreationFailedException
+    {
+        // The random generator has moved on, so every attempt is a new random split.
+        for (var attempt = 0; fallback == null || attempt < MAX_ATTEMPTS; attempt++)
         {
-            if (gm.isDenied(id, p))
-                return false;
+            var res = attempt(cg, caps, fallback != null, random);
+
+            if (res != DEAD_END)
+                return res;
         }
 
-        return true;
+        Log.debugf("%s: %d attempts ended in a dead end, using the colouring of the analysis", this, MAX_ATTEMPTS);
+        return Arrays.stream(fallback).map(int[]::clone).toArray(int[][]::new);
     }
 
-    @Override
-    public List<List<Set<Integer>>> generate(
-        Group gm, int size, boolean overflow
-    ) throws GroupCreationFailedException, IllegalArgumentException
+    /**
+     * Makes one attempt at creating the subgroups.
+     *
+     * @param cg the snapshot of the group.
+     * @param caps the capacity of every subgroup.
+     * @param retry {@code true} iff a dead end should be returned instead of failing.
+     * @param random the random generator.
+     * @return the subgroups as arrays of indices, {@link #DEAD_END} iff it ended
+     *         in a dead end, or {@code null} iff the thread was interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * */
+    private int[][] attempt(
+        ConstraintGraph cg, int[] caps, boolean retry, RandomGenerator random
+    ) throws GroupCreationFailedException
     {
-        var res = new ArrayList<Set<Integer>>();
-        var count = gm.size();
-        var left = gm.getIds();
-
-        var currentCount = 0;
-        var addedCount = 0;
+        var count = cg.size();
+        var left = new IndexBitSet(count);
+        var allowed = new IndexBitSet(count);
+        var current = new Subgroup(cg);
+        var res = new ArrayList<int[]>();
         var last = -1;
-        var current = new HashSet<Integer>();
+
+        left.setAll();
 
         for (var i = 0; i < count; i++)
         {
             if (Thread.interrupted())
-                return List.of();
+                return null;
 
-            if (currentCount == size)
+            if (current.size() == caps[res.size()])
             {
-                currentCount = 0;
-                res.add(current);
+                res.add(current.toArray());
+                current.clear();
+            }
 
-                if (current.size() != size)
-                    throw new GroupCreationFailedException("Wrong size of group; Please report!");
+            // All the persons that are left and not denied with anyone in current, in one pass.
+            current.allowed(left, allowed);
 
-                addedCount += current.size();
-                if (addedCount + left.size() != count)
-                    throw new GroupCreationFailedException("Please Report: One or more persons are used more than once!");
+            if (allowed.isEmpty() && retry)
+                return DEAD_END;
 
-                current = new HashSet<>();
-            }
+            var next = getNextPerson(cg, allowed, current, last, random);
 
-            current.add(last = getNextPerson(gm, (Set<Integer>) left, current, last));
-            currentCount++;
+            if (!left.get(next) || !current.add(next))
+                throw new GroupCreationFailedException("Please Report: One or more persons are used more than once!");
 
-            if (currentCount != current.size())
-                throw new GroupCreationFailedException("Wrong size of group; Please report!");
+            left.clear(next);
+            last = next;
         }
 
-        if (currentCount != 0)
-            res.add(current);
+        if (!current.isEmpty())
+            res.add(current.toArray());
 
-        return Collections.singletonList(res);
+        return res.toArray(int[][]::new);
     }
 
-    @Override
-    public List<List<Set<Integer>>> generate(Group gm, List<Integer> sizes) throws GroupCreationFailedException
+    /**
+     * Analyses the group and creates the subgroups.
+     *
+     * @param cg the snapshot of the group.
+     * @param caps the capacity of every subgroup.
+     * @param seed the seed of the random generator.
+     * @return the subgroups, or an empty list iff interrupted.
+     * @throws GroupCreationFailedException iff there is no way to create a group.
+     * */
+    private List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, int[] caps, long seed
+    ) throws GroupCreationFailedException
     {
-        var res = new ArrayList<Set<Integer>>();
-        var count = gm.size();
-        var left = gm.getIds();
-        var currentCount = 0;
-        var sizePointer = 0;
-        var last = -1;
-        var current = new HashSet<Integer>();
-
-        for (var i = 0; i < count; i++)
-        {
-            if (Thread.interrupted())
-                return List.of();
-
-            if (sizePointer < sizes.size() && currentCount == sizes.get(sizePointer))
-            {
-                if (sizes.get(sizePointer) != current.size())
-                    throw new GroupCreationFailedException("Wrong group size; please report!");
-
-                currentCount = 0;
-                sizePointer++;
-                res.add(current);
-                current = new HashSet<>();
-            }
-
-            current.add(last = getNextPerson(gm, (Set<Integer>) left, current, last));
-            currentCount++;
+        var feasibility = FeasibilityAnalyser.analyse(cg, caps);
+        feasibility.requireFeasible();
 
-            if (currentCount != current.size())
-                throw new GroupCreationFailedException("Wrong size of group; Please report!");
-        }
+        var groups = createGroups(cg, feasibility, new SplittableRandom(seed));
+        return groups == null ? List.of() : Collections.singletonList(cg.toIds(groups));
+    }
 
-        if (currentCount != 0)
-            res.add(current);
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, int size, long seed
+    ) throws GroupCreationFailedException
+    {
+        return generate(cg, FeasibilityAnalyser.capacities(cg.size(), size), seed);
+    }
 
-        return Collections.singletonList(res);
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        return generate(cg, FeasibilityAnalyser.capacities(cg.size(), sizes), seed);
     }
 }
@@ -0,0 +1,35 @@
+package se.skorup.group.generation;
+
+import java.util.List;
+
+/**
+ * The exception thrown iff it is proven that there is no way to create
+ * the subgroups, because of the denylist. It keeps the ids of the
+ * persons causing the conflict, so they can be shown to the user.
+ * */
+public class InfeasibleGroupsException extends GroupCreationFailedException
+{
+    private final List<Integer> conflicts;
+
+    /**
+     * Creates a new Exception.
+     *
+     * @param msg the message of the exception.
+     * @param conflicts the ids of the persons causing the conflict.
+     * */
+    public InfeasibleGroupsException(String msg, List<Integer> conflicts)
+    {
+        super(msg);
+        this.conflicts = List.copyOf(conflicts);
+    }
+
+    /**
+     * Gets the ids of the persons causing the conflict.
+     *
+     * @return the ids of the persons causing the conflict.
+     * */
+    public List<Integer> getConflicts()
+    {
+        return conflicts;
+    }
+}
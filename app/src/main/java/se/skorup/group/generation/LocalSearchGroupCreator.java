@@ -0,0 +1,329 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.progress.Progress;
+import se.skorup.util.Log;
+import se.skorup.util.localization.Localization;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+
+/**
+ * A GroupCreator that starts from one greedy solution, created by
+ * {@link WishlistGroupCreator}, and improves it by simulated annealing
+ * over swaps of two persons in different subgroups. Only swaps that
+ * respects the denylist are considered, so the subgroups will always
+ * obey the denylist and keep their sizes.
+ * <br><br>
+ * The score is the same as {@link WishesGroupCreator#getScore(int[][], ConstraintGraph)},
+ * but it is updated incrementally, so every swap only costs in the order of the
+ * number of wishes of the persons involved. It runs until either the iteration
+ * budget or the time budget is exhausted and returns the best solution found.
+ * The search is reproducible from the seed as long as it is the iteration
+ * budget that ends it.
+ * */
+public final class LocalSearchGroupCreator implements GroupCreator
+{
+    /** The number of iterations between the checks of the clock. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** The number of times the greedy start is retried. */
+    private static final int START_ATTEMPTS = 10;
+
+    private static final double START_TEMPERATURE = 0.05;
+    private static final double END_TEMPERATURE = 1e-5;
+
+    private final Progress progress;
+    private final long maxIterations;
+    private final Duration maxTime;
+
+    /** Incremented by every interrupt, a run is interrupted iff it has changed since the run started. */
+    private final AtomicInteger interrupts = new AtomicInteger();
+
+    /**
+     * Creates a new LocalSearchGroupCreator with the default budget,
+     * i.e. 1000 iterations per person, but at least 100 000, and at
+     * most ten seconds.
+     *
+     * @param progress the progress tracker.
+     * */
+    public LocalSearchGroupCreator(Progress progress)
+    {
+        this(progress, -1, Duration.ofSeconds(10));
+    }
+
+    /**
+     * Creates a new LocalSearchGroupCreator.
+     *
+     * @param progress the progress tracker.
+     * @param maxIterations the maximum number of iterations, if it is
+     *                      negative the default budget will be used.
+     * @param maxTime the maximum time the search is allowed to run.
+     * */
+    public LocalSearchGroupCreator(Progress progress, long maxIterations, Duration maxTime)
+    {
+        this.progress = progress;
+        this.maxIterations = maxIterations;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Creates the greedy solution that the search starts from. The group is
+     * analysed first, so it fails fast if the denylist can't be satisfied,
+     * and falls back on the feasible colouring of the analysis.
+     *
+     * @param cg the snapshot of the group.
+     * @param sizes the sizes of the subgroups.
+     * @param random the random generator.
+     * @return the subgroups, or {@code null} iff interrupted.
+     * @throws GroupCreationFailedException iff no greedy solution could be found.
+     * */
+    private int[][] createStart(
+        ConstraintGraph cg, List<Integer> sizes, RandomGenerator random
+    ) throws GroupCreationFailedException
+    {
+        var caps = sizes.size() == 1 ?
+                   FeasibilityAnalyser.capacities(cg.size(), sizes.getFirst()) :
+                   FeasibilityAnalyser.capacities(cg.size(), sizes);
+
+        var feasibility = FeasibilityAnalyser.analyse(cg, caps);
+        feasibility.requireFeasible();
+
+        GroupCreationFailedException last = null;
+
+        for (var i = 0; i < START_ATTEMPTS; i++)
+        {
+            try
+            {
+                return new WishlistGroupCreator().createGroups(cg, feasibility, random);
+            }
+            catch (GroupCreationFailedException e)
+            {
+                Log.debugf("Failed to create start solution: %s", e.getLocalizedMessage());
+                last = e;
+            }
+        }
+
+        throw last;
+    }
+
+    /**
+     * Checks if a and b can swap groups without breaking the denylist.
+     *
+     * @param cg the snapshot of the group.
+     * @param scorer the scorer holding the current groups.
+     * @param a the first person.
+     * @param b the second person.
+     * @return {@code true} iff the swap is allowed.
+     * */
+    static boolean isSwapAllowed(ConstraintGraph cg, WishScorer scorer, int a, int b)
+    {
+        var ga = scorer.groupOf(a);
+        var gb = scorer.groupOf(b);
+
+        for (var k = 0; k < cg.denyCount(a); k++)
+        {
+            var d = cg.deny(a, k);
+            if (d != b && scorer.groupOf(d) == gb)
+                return false;
+        }
+
+        for (var k = 0; k < cg.denyCount(b); k++)
+        {
+            var d = cg.deny(b, k);
+            if (d != a && scorer.groupOf(d) == ga)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs the search.
+     *
+     * @param cg the snapshot of the group to create subgroups in.
+     * @param sizes the sizes of the subgroups.
+     * @param seed the seed of the random generator.
+     * @return the best subgroups found, or an empty list iff interrupted.
+     * @throws GroupCreationFailedException iff no start solution could be found.
+     * */
+    private List<List<Set<Integer>>> search(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        var epoch = interrupts.get();
+        var r = new SplittableRandom(seed);
+        var start = createStart(cg, sizes, r.split());
+
+        if (start == null)
+            return List.of();
+
+        var n = cg.size();
+        var iterations = maxIterations < 0 ? Math.max(100_000, 1000L * n) : maxIterations;
+        var scorer = new WishScorer(cg, start);
+        var best = start;
+        var bestScore = scorer.score();
+        var bestUnfulfilled = scorer.unfulfilled();
+        var bestPsi = scorer.psi();
+
+        // The members of each group and the position of each person in its group.
+        var members = new int[start.length][];
+        var pos = new int[n];
+        for (var g = 0; g < start.length; g++)
+        {
+            members[g] = start[g].clone();
+            for (var k = 0; k < members[g].length; k++)
+                pos[members[g][k]] = k;
+        }
+
+        var startTime = System.nanoTime();
+        var timeBudget = maxTime.toNanos();
+        var reported = 0;
+        var cooling = Math.log(END_TEMPERATURE / START_TEMPERATURE);
+        var timeFraction = 0d;
+        var i = 0L;
+
+        for (; i < iterations && start.length > 1 && n > 1; i++)
+        {
+            if (i % CHECK_INTERVAL == 0)
+            {
+                if (interrupts.get() != epoch || Thread.currentThread().isInterrupted())
+                    return List.of();
+
+                var elapsed = System.nanoTime() - startTime;
+                if (elapsed >= timeBudget)
+                    break;
+
+                timeFraction = (double) elapsed / timeBudget;
+                reported = report(reported, Math.max((double) i / iterations, timeFraction));
+            }
+
+            var a = r.nextInt(n);
+            int b;
+
+            // Every other swap tries to move a to the group of someone a has wished for.
+            if ((i & 1) == 0 && cg.wishCount(a) > 0)
+            {
+                var g = members[scorer.groupOf(cg.wish(a, r.nextInt(cg.wishCount(a))))];
+                b = g[r.nextInt(g.length)];
+            }
+            else
+            {
+                b = r.nextInt(n);
+            }
+
+            if (scorer.groupOf(a) == scorer.groupOf(b) || !isSwapAllowed(cg, scorer, a, b))
+                continue;
+
+            var delta = scorer.deltaForSwap(a, b);
+            var accept = delta >= 0;
+
+            if (!accept && Double.isFinite(delta))
+            {
+                var score = scorer.score();
+                var scale = Double.isFinite(score) ? Math.max(1, Math.abs(score)) : 1;
+                var fraction = Math.max((double) i / iterations, timeFraction);
+                var t = START_TEMPERATURE * Math.exp(cooling * fraction);
+                accept = r.nextDouble() < Math.exp(delta / (t * scale));
+            }
+
+            if (!accept)
+                continue;
+
+            members[scorer.groupOf(a)][pos[a]] = b;
+            members[scorer.groupOf(b)][pos[b]] = a;
+            var tmp = pos[a];
+            pos[a] = pos[b];
+            pos[b] = tmp;
+            scorer.applySwap(a, b);
+
+            if (isBetter(scorer, bestScore, bestUnfulfilled, bestPsi))
+            {
+                bestScore = scorer.score();
+                bestUnfulfilled = scorer.unfulfilled();
+                bestPsi = scorer.psi();
+                best = scorer.groups();
+            }
+        }
+
+        Log.debugf("Local search finished after %d iterations, score: %s", i, bestScore);
+        report(reported, 1);
+        return Collections.singletonList(cg.toIds(best));
+    }
+
+    /**
+     * Checks if the current solution of the scorer is better than the best one.
+     * If the scores cannot be represented, the number of persons without any
+     * fulfilled wish decides.
+     *
+     * @param scorer the scorer holding the current groups.
+     * @param bestScore the score of the best solution.
+     * @param bestUnfulfilled the number of persons without any fulfilled wish in the best solution.
+     * @param bestPsi the psi of the best solution.
+     * @return {@code true} iff the current solution is better.
+     * */
+    static boolean isBetter(WishScorer scorer, double bestScore, int bestUnfulfilled, double bestPsi)
+    {
+        if (Double.isFinite(scorer.score()) && Double.isFinite(bestScore))
+            return scorer.score() > bestScore;
+
+        if (scorer.unfulfilled() != bestUnfulfilled)
+            return scorer.unfulfilled() < bestUnfulfilled;
+
+        return scorer.psi() > bestPsi;
+    }
+
+    /**
+     * Reports the progress, in steps of one permille.
+     *
+     * @param reported the number of permille already reported.
+     * @param fraction the fraction of the budget that is used.
+     * @return the number of permille reported after this call.
+     * */
+    private int report(int reported, double fraction)
+    {
+        var permille = (int) Math.min(1000, fraction * 1000);
+
+        for (; reported < permille; reported++)
+            progress.onProgress(1_000_000);
+
+        return reported;
+    }
+
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, int size, long seed
+    ) throws GroupCreationFailedException
+    {
+        return search(cg, Collections.singletonList(size), seed);
+    }
+
+    @Override
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
+    {
+        return search(cg, sizes, seed);
+    }
+
+    /**
+     * Interrupts all searches in progress, resulting
+     * in an empty list being returned.
+     * */
+    @Override
+    public void interrupt()
+    {
+        interrupts.incrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return Localization.getValue("local-search-groups.name");
+    }
+}
@@ -1,69 +1,407 @@
 package se.skorup.group.generation;
 
-import se.skorup.group.Group;
+import se.skorup.group.ConstraintGraph;
 import se.skorup.group.progress.Progress;
+import se.skorup.util.collections.IndexBitSet;
 import se.skorup.util.localization.Localization;
 
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
 
 /**
  * The group creator for totally random groups. This generator
  * will not generate multiple subgroup alternatives. It will
  * pick an id whilst respecting the denylist.
+ * <br><br>
+ * By default it fills the subgroups by drawing from an array of the
+ * persons that are left, with a mark per subgroup of who is denied
+ * with someone in it. If no one left fits in the current subgroup,
+ * it is repaired by swapping someone already placed into it, and if
+ * that isn't possible it backtracks by emptying the last subgroups.
  * */
 public class RandomGroupCreator extends GroupCreatorTemplate
 {
+    /**
+     * How the subgroups are filled.
+     * */
+    public enum Strategy
+    {
+        /** One pick at a time through the template, it fails at the first dead end. */
+        GREEDY,
+
+        /** Picks from a shuffled array, with swap repair and backtracking at dead ends. */
+        BACKTRACKING
+    }
+
+    /** The number of times it may backtrack, per person, before it gives up. */
+    private static final int BACKTRACKS_PER_PERSON = 100;
+
     private final Progress p;
-    private int delta = -1;
+    private final Strategy strategy;
 
     /**
-     * Creates a new RandomGroupCreator. Does nothing, actually.
+     * Creates a new RandomGroupCreator, that backtracks.
      *
      * @param p the progress tracker.
      * */
     public RandomGroupCreator(Progress p)
+    {
+        this(p, Strategy.BACKTRACKING);
+    }
+
+    /**
+     * Creates a new RandomGroupCreator.
+     *
+     * @param p the progress tracker.
+     * @param strategy how the subgroups are filled.
+     * */
+    public RandomGroupCreator(Progress p, Strategy strategy)
     {
         super();
         this.p = p;
+        this.strategy = strategy;
     }
 
     @Override
     protected int getNextPerson(
-        Group gm, Set<Integer> left,
-        Set<Integer> current, int lastId
+        ConstraintGraph cg, IndexBitSet allowed,
+        Subgroup current, int last, RandomGenerator random
     ) throws GroupCreationFailedException
     {
-        if (delta == -1)
-            delta = 1_000_000 / gm.size();
+        this.p.onProgress(1_000_000 / cg.size());
+        var n = allowed.cardinality();
 
-        var leftList = new ArrayList<>(left);
+        // If there is no one left that is allowed, we have failed.
+        if (n == 0)
+            throw new GroupCreationFailedException("Too many denylist items");
+
+        return allowed.nthSetBit(random.nextInt(n));
+    }
 
-        while (!leftList.isEmpty())
+    @Override
+    public int[][] createGroups(
+        ConstraintGraph cg, FeasibilityAnalyser.Result feasibility, RandomGenerator random
+    ) throws GroupCreationFailedException
+    {
+        if (strategy == Strategy.GREEDY)
+            return super.createGroups(cg, feasibility, random);
+
+        return new Run(cg, feasibility.capacities(), random).fill(feasibility.copyOfGroups());
+    }
+
+    @Override
+    public String toString()
+    {
+        return Localization.getValue("random-groups.name");
+    }
+
+    /**
+     * The state of one backtracking run.
+     * */
+    private final class Run
+    {
+        private final ConstraintGraph cg;
+        private final int[] caps;
+        private final RandomGenerator random;
+
+        /**
+         * The persons that are left are pool[0, left), in random order. The
+         * persons in pool[open, left) are known to be forbidden in the
+         * subgroup that is being filled, so they aren't drawn again.
+         * */
+        private final int[] pool;
+        private final int[][] members;
+        private final int[] counts;
+        private final int[] groupOf;
+
+        /** forbidden[g] is the persons that are denied with someone in g. */
+        private final IndexBitSet[] forbidden;
+        private int left;
+        private int open;
+        private int filling;
+
+        private Run(ConstraintGraph cg, int[] caps, RandomGenerator random)
         {
-            var p = leftList.get(new Random().nextInt(leftList.size()));
+            var n = cg.size();
+
+            this.cg = cg;
+            this.caps = caps;
+            this.random = random;
+            this.pool = new int[n];
+            this.members = new int[caps.length][];
+            this.counts = new int[caps.length];
+            this.groupOf = new int[n];
+            this.forbidden = new IndexBitSet[caps.length];
+            this.left = n;
+            this.filling = -1;
 
-            if (isPersonAllowed(p, current, gm))
+            for (var i = 0; i < n; i++)
+                pool[i] = i;
+
+            for (var g = 0; g < caps.length; g++)
             {
-                left.remove(p);
-                this.p.onProgress(delta);
-                return p;
+                members[g] = new int[caps[g]];
+                forbidden[g] = new IndexBitSet(n);
             }
-            else
+
+            Arrays.fill(groupOf, -1);
+            shuffle();
+        }
+
+        /**
+         * Fills the subgroups.
+         *
+         * @param fallback the subgroups returned if it backtracks too many times, can be {@code null}.
+         * @return the subgroups, or {@code null} iff the thread was interrupted.
+         * @throws GroupCreationFailedException iff it backtracks too many times and there is no fallback.
+         * */
+        private int[][] fill(int[][] fallback) throws GroupCreationFailedException
+        {
+            var backtracks = 0;
+            var g = 0;
+
+            while (g < caps.length)
             {
-                leftList.remove(p);
+                if (Thread.interrupted())
+                    return null;
+
+                if (counts[g] == caps[g])
+                {
+                    g++;
+                    continue;
+                }
+
+                if (pick(g) || repair(g))
+                {
+                    p.onProgress(1_000_000 / cg.size());
+                    continue;
+                }
+
+                if (++backtracks > BACKTRACKS_PER_PERSON * cg.size())
+                {
+                    if (fallback == null)
+                        throw new GroupCreationFailedException("Too many denylist items");
+
+                    return fallback;
+                }
+
+                // Empties the current and the previous subgroup and tries them again, in a new order.
+                clear(g);
+                if (g > 0)
+                    clear(--g);
+
+                shuffle();
             }
+
+            return members;
         }
 
-        // If we are here we have failed.
-        this.p.onProgress(delta);
-        throw new GroupCreationFailedException("Too many denylist items");
-    }
+        /**
+         * Places a random person from the pool that is allowed in g. The ones
+         * drawn that are forbidden are moved past open, and since no one
+         * leaves g whilst it is filled they are never drawn again for g.
+         *
+         * @return {@code true} iff someone was placed.
+         * */
+        private boolean pick(int g)
+        {
+            if (g != filling)
+            {
+                filling = g;
+                open = left;
+            }
 
-    @Override
-    public String toString()
-    {
-        return Localization.getValue("random-groups.name");
+            while (open > 0)
+            {
+                var i = random.nextInt(open);
+                var person = pool[i];
+
+                if (forbidden[g].get(person))
+                {
+                    pool[i] = pool[--open];
+                    pool[open] = person;
+                    continue;
+                }
+
+                take(i);
+                place(person, g);
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Repairs a dead end, by moving someone placed in an earlier subgroup h
+         * to g and someone in the pool to the place in h.
+         *
+         * @return {@code true} iff someone was placed.
+         * */
+        private boolean repair(int g)
+        {
+            if (g == 0)
+                return false;
+
+            // movable[h] is a member of h that is allowed in g, or -1.
+            var movable = new int[g];
+            for (var h = 0; h < g; h++)
+            {
+                movable[h] = -1;
+                var offset = counts[h] == 0 ? 0 : random.nextInt(counts[h]);
+
+                for (var j = 0; j < counts[h] && movable[h] == -1; j++)
+                {
+                    var q = members[h][(offset + j) % counts[h]];
+                    if (!forbidden[g].get(q))
+                        movable[h] = q;
+                }
+            }
+
+            var start = random.nextInt(g);
+            for (var i = 0; i < left; i++)
+            {
+                var r = pool[i];
+
+                for (var k = 0; k < g; k++)
+                {
+                    var h = (start + k) % g;
+                    if (movable[h] == -1)
+                        continue;
+
+                    // If r is only denied with one in h, they can swap if that one is allowed in g.
+                    var q = forbidden[h].get(r) ? onlyDenied(r, h) : movable[h];
+                    if (q == -1 || forbidden[g].get(q))
+                        continue;
+
+                    take(i);
+                    swap(q, r, h);
+                    place(q, g);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Gets the only person in g that a person is denied with.
+         *
+         * @return the person, or -1 iff there isn't exactly one.
+         * */
+        private int onlyDenied(int person, int g)
+        {
+            var res = -1;
+
+            for (var k = 0; k < cg.denyCount(person); k++)
+            {
+                var d = cg.deny(person, k);
+                if (groupOf[d] != g)
+                    continue;
+
+                if (res != -1)
+                    return -1;
+
+                res = d;
+            }
+
+            return res;
+        }
+
+        /**
+         * Removes pool[i] from the pool, keeping the ones that are
+         * known to be forbidden past open.
+         * */
+        private void take(int i)
+        {
+            if (i < open)
+            {
+                pool[i] = pool[--open];
+                i = open;
+            }
+
+            pool[i] = pool[--left];
+        }
+
+        private void place(int person, int g)
+        {
+            members[g][counts[g]++] = person;
+            groupOf[person] = g;
+
+            for (var k = 0; k < cg.denyCount(person); k++)
+                forbidden[g].set(cg.deny(person, k));
+        }
+
+        /**
+         * Puts r in the place of q in h, q is left without a subgroup.
+         * */
+        private void swap(int q, int r, int h)
+        {
+            var j = 0;
+            while (members[h][j] != q)
+                j++;
+
+            members[h][j] = r;
+            groupOf[q] = -1;
+            groupOf[r] = h;
+
+            // The ones denied with q are only forbidden in h if they are denied with someone else there.
+            for (var k = 0; k < cg.denyCount(q); k++)
+            {
+                var d = cg.deny(q, k);
+                if (!isDeniedIn(d, h))
+                    forbidden[h].clear(d);
+            }
+
+            for (var k = 0; k < cg.denyCount(r); k++)
+                forbidden[h].set(cg.deny(r, k));
+        }
+
+        /**
+         * Checks if a person is denied with someone in g.
+         * */
+        private boolean isDeniedIn(int person, int g)
+        {
+            for (var k = 0; k < cg.denyCount(person); k++)
+            {
+                if (groupOf[cg.deny(person, k)] == g)
+                    return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Puts all the members of g back in the pool.
+         * */
+        private void clear(int g)
+        {
+            for (var j = 0; j < counts[g]; j++)
+            {
+                var person = members[g][j];
+                groupOf[person] = -1;
+                pool[left++] = person;
+            }
+
+            counts[g] = 0;
+            forbidden[g].clearAll();
+        }
+
+        /**
+         * Shuffles the pool, Fisher-Yates, and forgets who is
+         * known to be forbidden.
+         * */
+        private void shuffle()
+        {
+            for (var i = left - 1; i > 0; i--)
+            {
+                var j = random.nextInt(i + 1);
+                var tmp = pool[i];
+                pool[i] = pool[j];
+                pool[j] = tmp;
+            }
+
+            open = left;
+            filling = -1;
+        }
     }
 }
@@ -0,0 +1,120 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+import se.skorup.util.collections.IndexBitSet;
+import se.skorup.util.collections.SparseIntSet;
+
+/**
+ * The subgroup that is currently being built by a generator. Besides
+ * the members it keeps track of a forbidden set, i.e. every person
+ * that is denied with at least one of the members. When a member is
+ * added its deny row is OR:ed into the forbidden set, so checking
+ * if a person is allowed is a single bit test.
+ * */
+public final class Subgroup
+{
+    private final ConstraintGraph cg;
+    private final SparseIntSet members;
+    private final IndexBitSet forbidden;
+
+    /**
+     * Creates a new, empty, subgroup.
+     *
+     * @param cg the snapshot the subgroup is built from.
+     * */
+    public Subgroup(ConstraintGraph cg)
+    {
+        this.cg = cg;
+        this.members = new SparseIntSet(cg.size());
+        this.forbidden = new IndexBitSet(cg.size());
+    }
+
+    /**
+     * Adds a person to the subgroup.
+     *
+     * @param index the index of the person.
+     * @return {@code true} iff the person wasn't already a member.
+     * */
+    public boolean add(int index)
+    {
+        if (!members.add(index))
+            return false;
+
+        for (var k = 0; k < cg.denyCount(index); k++)
+            forbidden.set(cg.deny(index, k));
+
+        return true;
+    }
+
+    /**
+     * Checks if a person is allowed in the subgroup.
+     *
+     * @param index the index of the person.
+     * @return {@code true} iff the person isn't denied with any member.
+     * */
+    public boolean isAllowed(int index)
+    {
+        return !forbidden.get(index);
+    }
+
+    /**
+     * Computes the allowed candidates, i.e. left &#8745; forbidden<sup>c</sup>.
+     *
+     * @param left the persons that are left.
+     * @param out the set the allowed candidates will be written to.
+     * */
+    public void allowed(IndexBitSet left, IndexBitSet out)
+    {
+        out.andNot(left, forbidden);
+    }
+
+    /**
+     * Removes all the members of the subgroup.
+     * */
+    public void clear()
+    {
+        members.clear();
+        forbidden.clearAll();
+    }
+
+    /**
+     * The number of members in the subgroup.
+     *
+     * @return the size of the subgroup.
+     * */
+    public int size()
+    {
+        return members.size();
+    }
+
+    /**
+     * Checks if the subgroup is empty.
+     *
+     * @return {@code true} iff the subgroup has no members.
+     * */
+    public boolean isEmpty()
+    {
+        return members.isEmpty();
+    }
+
+    /**
+     * Gets the i:th member of the subgroup.
+     *
+     * @param i the position of the member, 0 &le; i &lt; size().
+     * @return the index of the member.
+     * */
+    public int get(int i)
+    {
+        return members.get(i);
+    }
+
+    /**
+     * Copies the members to a new array.
+     *
+     * @return the indices of the members.
+     * */
+    public int[] toArray()
+    {
+        return members.toArray();
+    }
+}
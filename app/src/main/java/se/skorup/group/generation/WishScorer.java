@@ -0,0 +1,393 @@
+package se.skorup.group.generation;
+
+import se.skorup.group.ConstraintGraph;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the score, as defined by
+ * {@link WishesGroupCreator#getScore(int[][], ConstraintGraph) getScore},
+ * of an assignment of persons to subgroups. It holds the number of
+ * fulfilled wishes for every person and the histogram of those counts,
+ * so the change of the score of a swap or a move can be computed by only
+ * looking at the persons that are affected by it, i.e. the moved persons
+ * and the persons that has wished for them.
+ * <br><br>
+ * A scorer isn't thread safe, every optimiser should use its own.
+ * */
+public final class WishScorer
+{
+    private final ConstraintGraph cg;
+    private final int[] groupOf;
+    private final int[] fulfilled;
+    private final int[] x;
+    private final int nbrGroups;
+
+    private double psi;
+    private double score;
+
+    /*
+     * Scratch buffers for the persons affected by a change and their
+     * new number of fulfilled wishes. marks[p] == stamp iff p is affected.
+     * */
+    private final int[] affected;
+    private final int[] counts;
+    private final int[] marks;
+    private int stamp;
+    private int nbrAffected;
+
+    /*
+     * The change being evaluated, the person movedA is put in targetA
+     * and movedB in targetB. A person that isn't moved is -1.
+     * */
+    private int movedA = -1;
+    private int targetA;
+    private int movedB = -1;
+    private int targetB;
+
+    /**
+     * Creates a new scorer.
+     *
+     * @param cg the snapshot of the group.
+     * @param groups the subgroups, as indices in the snapshot.
+     * */
+    public WishScorer(ConstraintGraph cg, int[][] groups)
+    {
+        this.cg = cg;
+        this.nbrGroups = groups.length;
+        this.groupOf = new int[cg.size()];
+        this.fulfilled = new int[cg.size()];
+        this.x = new int[cg.maxWishCount() + 1];
+        this.affected = new int[cg.size()];
+        this.counts = new int[cg.size()];
+        this.marks = new int[cg.size()];
+
+        Arrays.fill(groupOf, -1);
+        for (var g = 0; g < groups.length; g++)
+        {
+            for (var p : groups[g])
+                groupOf[p] = g;
+        }
+
+        for (var p = 0; p < cg.size(); p++)
+        {
+            fulfilled[p] = countFulfilled(p);
+            x[fulfilled[p]]++;
+        }
+
+        updateScore();
+    }
+
+    /**
+     * The group of a person after the change being evaluated.
+     * */
+    private int groupAfter(int p)
+    {
+        if (p == movedA)
+            return targetA;
+        else if (p == movedB)
+            return targetB;
+
+        return groupOf[p];
+    }
+
+    /**
+     * Counts the fulfilled wishes of a person as if
+     * the change being evaluated was applied.
+     *
+     * @param p the person to be counted.
+     * @return the number of fulfilled wishes of p.
+     * */
+    private int countFulfilled(int p)
+    {
+        var g = groupAfter(p);
+
+        if (g == -1)
+            return 0;
+
+        var cnt = 0;
+        for (var k = 0; k < cg.wishCount(p); k++)
+        {
+            if (groupAfter(cg.wish(p, k)) == g)
+                cnt++;
+        }
+
+        return cnt;
+    }
+
+    /**
+     * Adds a person, and all the persons that has wished for
+     * that person, to the affected persons.
+     *
+     * @param p the person that is moved.
+     * */
+    private void markAffected(int p)
+    {
+        mark(p);
+
+        for (var k = 0; k < cg.wishedByCount(p); k++)
+            mark(cg.wishedBy(p, k));
+    }
+
+    private void mark(int p)
+    {
+        if (marks[p] == stamp)
+            return;
+
+        marks[p] = stamp;
+        affected[nbrAffected++] = p;
+    }
+
+    /**
+     * Finds the affected persons of a change and their new counts.
+     *
+     * @param a the first person to be moved.
+     * @param toA the group a is moved to.
+     * @param b the second person to be moved, -1 if there is none.
+     * @param toB the group b is moved to.
+     * */
+    private void collect(int a, int toA, int b, int toB)
+    {
+        movedA = a;
+        targetA = toA;
+        movedB = b;
+        targetB = toB;
+
+        stamp++;
+        nbrAffected = 0;
+        markAffected(a);
+
+        if (b != -1)
+            markAffected(b);
+
+        for (var i = 0; i < nbrAffected; i++)
+            counts[i] = countFulfilled(affected[i]);
+
+        movedA = -1;
+        movedB = -1;
+    }
+
+    private void collectSwap(int a, int b)
+    {
+        collect(a, groupOf[b], b, groupOf[a]);
+    }
+
+    private void collectMove(int p, int toGroup)
+    {
+        if (toGroup < 0 || toGroup >= nbrGroups)
+            throw new IllegalArgumentException("There is no group: %d".formatted(toGroup));
+
+        collect(p, toGroup, -1, -1);
+    }
+
+    /**
+     * Computes psi, i.e. the wish part of the score, from the histogram.
+     *
+     * @return the value of psi.
+     * */
+    private double computePsi()
+    {
+        var res = 0d;
+        for (var i = 1; i < x.length; i++)
+            res += Math.pow(x[i], i * i) / Math.pow(2, WishesGroupCreator.n(i));
+
+        return res;
+    }
+
+    private void updateScore()
+    {
+        psi = computePsi();
+        score = psi - WishesGroupCreator.omega(x[0]) * x[0];
+    }
+
+    /**
+     * The change in score when going from the current score to
+     * another. When the scores are too large to be represented,
+     * the number of persons without any fulfilled wish decides.
+     *
+     * @param x0 the number of persons without any fulfilled wishes after the change.
+     * @param newPsi the value of psi after the change.
+     * @return the change in score.
+     * */
+    private double delta(int x0, double newPsi)
+    {
+        var newScore = newPsi - WishesGroupCreator.omega(x0) * x0;
+        var res = newScore - score;
+
+        if (!Double.isNaN(res))
+            return res;
+
+        if (x0 != x[0])
+            return x0 < x[0] ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+
+        return newPsi - psi;
+    }
+
+    /**
+     * Computes the change in score if a and b swapped groups.
+     *
+     * @param a the first person.
+     * @param b the second person.
+     * @return the change in score, positive iff the swap is an improvement.
+     * */
+    public double deltaForSwap(int a, int b)
+    {
+        collectSwap(a, b);
+        return collectedDelta();
+    }
+
+    /**
+     * Computes the change in score if p was moved to another group.
+     *
+     * @param p the person to be moved.
+     * @param toGroup the group p is moved to.
+     * @return the change in score, positive iff the move is an improvement.
+     * @throws IllegalArgumentException iff toGroup isn't a group.
+     * */
+    public double deltaForMove(int p, int toGroup) throws IllegalArgumentException
+    {
+        collectMove(p, toGroup);
+        return collectedDelta();
+    }
+
+    /**
+     * The change in score of the collected change.
+     *
+     * @return the change in score.
+     * */
+    private double collectedDelta()
+    {
+        for (var i = 0; i < nbrAffected; i++)
+        {
+            x[fulfilled[affected[i]]]--;
+            x[counts[i]]++;
+        }
+
+        var x0 = x[0];
+        var newPsi = computePsi();
+
+        for (var i = 0; i < nbrAffected; i++)
+        {
+            x[counts[i]]--;
+            x[fulfilled[affected[i]]]++;
+        }
+
+        return delta(x0, newPsi);
+    }
+
+    /**
+     * Swaps the groups of a and b.
+     *
+     * @param a the first person.
+     * @param b the second person.
+     * */
+    public void applySwap(int a, int b)
+    {
+        collectSwap(a, b);
+        applyCollected();
+
+        var tmp = groupOf[a];
+        groupOf[a] = groupOf[b];
+        groupOf[b] = tmp;
+    }
+
+    /**
+     * Moves p to another group.
+     *
+     * @param p the person to be moved.
+     * @param toGroup the group p is moved to.
+     * @throws IllegalArgumentException iff toGroup isn't a group.
+     * */
+    public void applyMove(int p, int toGroup) throws IllegalArgumentException
+    {
+        collectMove(p, toGroup);
+        applyCollected();
+        groupOf[p] = toGroup;
+    }
+
+    /**
+     * Stores the counts of the collected change.
+     * */
+    private void applyCollected()
+    {
+        for (var i = 0; i < nbrAffected; i++)
+        {
+            var p = affected[i];
+            x[fulfilled[p]]--;
+            x[counts[i]]++;
+            fulfilled[p] = counts[i];
+        }
+
+        updateScore();
+    }
+
+    /**
+     * Builds the subgroups of the current assignment.
+     *
+     * @return the subgroups, as indices in the snapshot.
+     * */
+    public int[][] groups()
+    {
+        var sizes = new int[nbrGroups];
+        for (var g : groupOf)
+        {
+            if (g != -1)
+                sizes[g]++;
+        }
+
+        var res = new int[nbrGroups][];
+        for (var g = 0; g < nbrGroups; g++)
+            res[g] = new int[sizes[g]];
+
+        var pos = new int[nbrGroups];
+        for (var p = 0; p < groupOf.length; p++)
+        {
+            if (groupOf[p] != -1)
+                res[groupOf[p]][pos[groupOf[p]]++] = p;
+        }
+
+        return res;
+    }
+
+    /**
+     * Gets the group of a person.
+     *
+     * @param p the index of the person.
+     * @return the group of p, or -1 iff p isn't in a group.
+     * */
+    public int groupOf(int p)
+    {
+        return groupOf[p];
+    }
+
+    /**
+     * The current score.
+     *
+     * @return the score of the current assignment.
+     * */
+    public double score()
+    {
+        return score;
+    }
+
+    /**
+     * The number of persons without any fulfilled wishes.
+     *
+     * @return the number of persons without any fulfilled wishes.
+     * */
+    public int unfulfilled()
+    {
+        return x[0];
+    }
+
+    /**
+     * The wish part of the score, i.e. the score without the
+     * penalty for the persons without fulfilled wishes.
+     *
+     * @return the value of psi.
+     * */
+    public double psi()
+    {
+        return psi;
+    }
+}
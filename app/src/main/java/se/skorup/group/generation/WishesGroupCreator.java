@@ -1,205 +1,300 @@
 package se.skorup.group.generation;
 
+import se.skorup.group.ConstraintGraph;
 import se.skorup.group.Group;
 import se.skorup.group.progress.Progress;
-import se.skorup.util.collections.ImmutableHashSet;
 import se.skorup.util.Log;
 import se.skorup.util.localization.Localization;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A GroupCreator that creates all the best groups
  * it can find, according to the wishes. This group
  * will obey the deny-list as well.
+ * <br><br>
+ * Every producer keeps its own best score and only publishes
+ * candidates that are at least as good as both its own best and
+ * the best published score. Among the tied best candidates at most
+ * a fixed number is kept, chosen by reservoir sampling.
+ * <br><br>
+ * Every job gets its own random generator derived from the seed and
+ * the number of the job, so the result only depends on the seed and
+ * not on how the jobs are scheduled on the threads.
+ * <br><br>
+ * The producers run as a fixed number of workers, on either a pool
+ * shared by all creators or on virtual threads, see {@link Execution}.
+ * Cancelling a run only has to stop the workers.
  * */
 public final class WishesGroupCreator implements GroupCreator
 {
-    private final Monitor monitor;
+    /** The default maximum number of tied solutions that are kept. */
+    public static final int DEFAULT_MAX_TIES = 100;
+
+    /** The number of workers of one run. */
+    private static final int WORKERS = Math.max(Runtime.getRuntime().availableProcessors() - 1, 2);
+
+    /**
+     * The work-stealing pool that is shared between all the creators.
+     * Its threads are daemons, so it never keeps the program alive.
+     * */
+    private static final ForkJoinPool POOL = new ForkJoinPool(WORKERS);
+
+    /**
+     * How the workers of a run are executed.
+     * */
+    public enum Execution
+    {
+        /** The workers are run on a work-stealing pool, shared by all creators. */
+        SHARED_POOL,
+
+        /**
+         * Every worker gets its own virtual thread, and the run waits
+         * for all of them to finish before it returns.
+         * */
+        VIRTUAL_THREADS
+    }
+
+    private final int maxTies;
+    private final Execution execution;
+
+    /** The monitors of the runs that are in progress. */
+    private final Set<Monitor> monitors = ConcurrentHashMap.newKeySet();
 
     /** Only used for testing of the class. */
     public AtomicBoolean hasStarted = new AtomicBoolean(false);
     private final Progress progress;
 
     /**
-     * Creates a new WishesGroupCreator.
+     * Creates a new WishesGroupCreator, that keeps at
+     * most {@link #DEFAULT_MAX_TIES} tied solutions.
+     *
+     * @param progress the progress tracker.
      */
     public WishesGroupCreator(Progress progress)
     {
-        this.monitor = new Monitor();
+        this(progress, DEFAULT_MAX_TIES);
+    }
+
+    /**
+     * Creates a new WishesGroupCreator.
+     *
+     * @param progress the progress tracker.
+     * @param maxTies the maximum number of tied solutions that are kept.
+     * @throws IllegalArgumentException iff maxTies &lt; 1.
+     */
+    public WishesGroupCreator(Progress progress, int maxTies) throws IllegalArgumentException
+    {
+        this(progress, maxTies, Execution.SHARED_POOL);
+    }
+
+    /**
+     * Creates a new WishesGroupCreator.
+     *
+     * @param progress the progress tracker.
+     * @param maxTies the maximum number of tied solutions that are kept.
+     * @param execution how the workers are executed.
+     * @throws IllegalArgumentException iff maxTies &lt; 1.
+     */
+    public WishesGroupCreator(Progress progress, int maxTies, Execution execution) throws IllegalArgumentException
+    {
+        if (maxTies < 1)
+            throw new IllegalArgumentException("maxTies must be at least 1, got: %d".formatted(maxTies));
+
+        this.maxTies = maxTies;
+        this.execution = execution;
         this.progress = progress;
     }
 
     /**
      * Generates the groups using a multithreaded system for generating the best alternatives.
      *
-     * @param gm the ins
+     * @param cg the snapshot of the group to create subgroups in.
+     * @param sizes the sizes of the subgroups.
+     * @param seed the seed of the random generators.
+     * @return the best subgroups found.
+     * @throws GroupCreationFailedException iff there is no way to create the groups.
      * */
-    private List<List<Set<Integer>>> generate(Group gm, List<Integer> sizes, boolean overflow)
+    private List<List<Set<Integer>>> generateSeeded(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
     {
-        var consumers = 1;
-        var producers = Math.max(Runtime.getRuntime().availableProcessors() - consumers - 1, 2);
-        Log.debugf(
-            "Starting generation of subgroups: %d producers, %d consumers",
-            producers, consumers
-        );
+        var caps = sizes.size() == 1 ?
+                   FeasibilityAnalyser.capacities(cg.size(), sizes.getFirst()) :
+                   FeasibilityAnalyser.capacities(cg.size(), sizes);
 
-        var factor = 125;
-        final var cl = new CountDownLatch(gm.size() * factor * 2);
-        var tpProd = Executors.newFixedThreadPool(producers);
-        var process = new LinkedBlockingQueue<Result>();
-        var persons = gm.getIds();
-        var delta = 1_000_000_000 / (Math.max(gm.size(), 1) * factor * 2); // The delta that should be added each time.
+        // Fails before any task is started, the tasks fall back on the colouring instead of failing.
+        var feasibility = FeasibilityAnalyser.analyse(cg, caps);
+        feasibility.requireFeasible();
 
-        for (int i = 0; i < factor; i++)
+        Log.debugf("Starting generation of subgroups: %d workers on %s", WORKERS, execution);
+
+        var factor = 125;
+        var n = cg.size();
+
+        // The first half of the jobs starts with every person, factor times, the other half with a random person.
+        var jobs = n * factor * 2;
+        var next = new AtomicInteger();
+        var cl = new CountDownLatch(WORKERS);
+        var started = new CountDownLatch(1);
+        var delta = 1_000_000_000 / Math.max(jobs, 1); // The delta that should be added each time.
+        var m = new Monitor(maxTies);
+        monitors.add(m);
+
+        // The virtual threads are owned by this run, and closing the executor waits for them.
+        try (var vt = execution == Execution.VIRTUAL_THREADS ? Executors.newVirtualThreadPerTaskExecutor() : null)
         {
-            for (var id : persons)
+            ExecutorService executor = vt == null ? POOL : vt;
+
+            for (var i = 0; i < WORKERS; i++)
             {
-                var task = tpProd.submit(() -> {
-                    List<Set<Integer>> res;
+                var task = executor.submit(() -> {
+                    started.countDown();
 
                     try
                     {
-                        if (sizes.size() == 1)
-                            res = new WishlistGroupCreator(id).generate(gm, sizes.getFirst(), overflow).getFirst();
-                        else
-                            res = new WishlistGroupCreator(id).generate(gm, sizes).getFirst();
-                    }
-                    catch (GroupCreationFailedException e)
-                    {
-                        cl.countDown(); // Skip if fails.
-                        Log.errorf("Error in creating groups: %s", e.getLocalizedMessage());
-                        throw e;
+                        produce(m, cg, feasibility, seed, next, jobs, delta);
                     }
                     finally
                     {
-                        // Updates the progress and adds it to the progress bar.
-                        progress.onProgress(delta);
+                        cl.countDown();
                     }
-
-                    Log.debugf("Starting with: %d, Found: %s", id, res);
-                    var score = getScore(res, gm);
-                    Log.debugf("Score: %s", score);
-                    process.add(new Result(res, score));
-                    Log.debug("Produced a candidate for a group");
                 });
-                monitor.addTask(task);
+                m.addTask(task);
             }
-        }
 
-        for (int i = 0; i < gm.size() * factor; i++)
-        {
-            var task = tpProd.submit(() -> {
-                List<Set<Integer>> res;
-
-                try
-                {
-                    if (sizes.size() == 1)
-                        res = new WishlistGroupCreator().generate(gm, sizes.getFirst(), overflow).getFirst();
-                    else
-                        res = new WishlistGroupCreator().generate(gm, sizes).getFirst();
-                }
-                catch (GroupCreationFailedException e)
-                {
-                    cl.countDown(); // Skip if fails.
-                    Log.errorf("Error in creating groups: %s", e.getLocalizedMessage());
-                    throw e;
-                }
-                finally
-                {
-                    // Updates the progress and adds it to the progress bar.
-                    progress.onProgress(delta);
-                }
-
-                Log.debugf("Starting with random person, Found: %s", res);
-                var score = getScore(res, gm);
-                Log.debugf("Score: %s", score);
-                process.add(new Result(res, score));
-                Log.debug("Produced a candidate for a group");
-            });
-            monitor.addTask(task);
-        }
-
-        for (var i = 0; i < consumers; i++)
-        {
-            var t = new Thread(() -> {
-                try
-                {
-                    while (true)
-                    {
-                        var r = process.take();
-                        monitor.updateResult(r.groups, r.score);
-                        progress.onProgress(delta);
-                        cl.countDown();
-                    }
-                }
-                catch (InterruptedException e)
-                {
-                    return; // Just want it to exit, so has returned to make it more readable.
-                }
-            }, "WishesGroupCreator-Consumer: " + i);
-            t.start();
-            monitor.addThread(t);
-        }
-
-        try
-        {
-            monitor.addClThread(Thread.currentThread());
+            m.addClThread(Thread.currentThread());
             hasStarted.set(true);
+
+            // The time limit starts with the first worker, so a run that waits for the
+            // shared pool, e.g. behind the other groups of a batch, doesn't time out.
+            started.await();
             var success = cl.await(5, TimeUnit.MINUTES);
 
             if (!success)
             {
                 Log.error("GroupCreation timed out!");
-                tpProd.shutdownNow();
+                m.cancel();
                 return List.of();
             }
         }
         catch (InterruptedException e)
         {
-            tpProd.shutdownNow();
+            m.cancel();
             return List.of(); // Want it to exit and return nothing.
         }
+        finally
+        {
+            monitors.remove(m);
+        }
 
+        if (m.isInterrupted())
+            return List.of();
+
+        Log.debugf("Finished generation of subgroups: %d jobs, best score: %f", jobs, m.getBestScore());
         progress.onProgress(1_000_000_000);
-        tpProd.shutdownNow();
-        return monitor.getResult().stream().toList();
+        return m.getResult();
+    }
+
+    /**
+     * The work of one producer. It takes jobs until there are none left,
+     * and publishes a candidate only if it is at least as good as both
+     * its own best and the best published score. It stops as soon
+     * as the run is interrupted.
+     *
+     * @param m the monitor of the run.
+     * @param cg the snapshot of the group.
+     * @param feasibility the analysis of the group.
+     * @param seed the seed of the random generators.
+     * @param next the counter of the next job.
+     * @param jobs the total number of jobs.
+     * @param delta the progress of one job.
+     * */
+    private void produce(
+        Monitor m, ConstraintGraph cg, FeasibilityAnalyser.Result feasibility, long seed,
+        AtomicInteger next, int jobs, int delta
+    )
+    {
+        var localBest = Double.NEGATIVE_INFINITY;
+        var n = cg.size();
+
+        for (var job = next.getAndIncrement(); job < jobs && !m.isInterrupted(); job = next.getAndIncrement())
+        {
+            var creator = job < jobs / 2 ? new WishlistGroupCreator(cg.idOf(job % n)) : new WishlistGroupCreator();
+            var random = new SplittableRandom(seed + job);
+            var key = random.nextLong(); // Decides which of the tied solutions that are kept.
+            int[][] res;
+
+            try
+            {
+                res = creator.createGroups(cg, feasibility, random);
+            }
+            catch (GroupCreationFailedException e)
+            {
+                Log.errorf("Error in creating groups: %s", e.getLocalizedMessage());
+                continue; // Skip if fails.
+            }
+            finally
+            {
+                // Updates the progress and adds it to the progress bar.
+                progress.onProgress(delta);
+            }
+
+            if (res == null) // Interrupted
+                return;
+
+            var score = getScore(res, cg);
+
+            if (score < localBest || score < m.getBestScore())
+                continue;
+
+            localBest = score;
+            m.offer(cg.toIds(res), score, key);
+        }
     }
 
     @Override
     public List<List<Set<Integer>>> generate(
-        Group gm, int size, boolean overflow
-    ) throws GroupCreationFailedException, IllegalArgumentException
+        ConstraintGraph cg, int size, long seed
+    ) throws GroupCreationFailedException
     {
-        return generate(gm, Collections.singletonList(size), overflow);
+        return generateSeeded(cg, Collections.singletonList(size), seed);
     }
 
     @Override
-    public List<List<Set<Integer>>> generate(Group gm, List<Integer> sizes) throws GroupCreationFailedException
+    public List<List<Set<Integer>>> generate(
+        ConstraintGraph cg, List<Integer> sizes, long seed
+    ) throws GroupCreationFailedException
     {
-        return generate(gm, sizes, false);
+        return generateSeeded(cg, sizes, seed);
     }
 
     /**
      * This will interrupt the creation and cancel
      * the creation, resulting in an empty list being
-     * returned.
+     * returned. All runs in progress are interrupted.
      */
     @Override
     public void interrupt()
     {
-        monitor.interrupt();
+        for (var m : monitors)
+            m.interrupt();
     }
 
     @Override
@@ -234,24 +329,46 @@ public final class WishesGroupCreator implements GroupCreator
      * Calculates the score of a group result.
      *
      * @param groups the groups.
+     * @param gm the group the subgroups were created from.
      * @return the score of the group.
      * */
     public static double getScore(Iterable<Set<Integer>> groups, Group gm)
     {
-        var persons = gm.getIds();
-        var x = new int[persons.size()];
+        var cg = gm.snapshot();
+        return getScore(cg.toIndices(groups), cg);
+    }
+
+    /**
+     * Calculates the score of a group result.
+     *
+     * @param groups the groups, as indices in the snapshot.
+     * @param cg the snapshot of the group the subgroups were created from.
+     * @return the score of the group.
+     * */
+    public static double getScore(int[][] groups, ConstraintGraph cg)
+    {
+        var groupOf = new int[cg.size()];
+        Arrays.fill(groupOf, -1);
+
+        for (var g = 0; g < groups.length; g++)
+        {
+            for (var p : groups[g])
+                groupOf[p] = g;
+        }
+
+        var x = new int[cg.size()];
         var highestCount = 0;
 
-        for (var p : persons)
+        for (var p = 0; p < cg.size(); p++)
         {
             var cnt = 0;
-            var wished = ImmutableHashSet.fromCollection(gm.getWishedIds(p));
 
-            for (var g : groups)
+            if (groupOf[p] != -1)
             {
-                if (g.contains(p))
+                for (var k = 0; k < cg.wishCount(p); k++)
                 {
-                    cnt += wished.intersection(g).size();
+                    if (groupOf[cg.wish(p, k)] == groupOf[p])
+                        cnt++;
                 }
             }
 
@@ -265,73 +382,161 @@ public final class WishesGroupCreator implements GroupCreator
             psi += Math.pow(x[i], i * i) / Math.pow(2, n(i));
         }
 
-        Log.debugf("%s, score: %f", Arrays.toString(x), psi - omega(x[0]) * x[0]);
         return psi - omega(x[0]) * x[0];
     }
 
-    private record Result(List<Set<Integer>> groups, double score) {}
+    /**
+     * A kept solution and its sampling key.
+     * */
+    private record Tie(List<Set<Integer>> groups, long key) {}
 
+    /**
+     * Keeps the best score and a bounded sample of the tied solutions
+     * with that score. The sample is the ties with the smallest keys,
+     * and since the keys are random it is a uniform reservoir sample,
+     * that doesn't depend on the order the ties arrive in.
+     * */
     private static final class Monitor
     {
         private final List<Future<?>> tasks;
-        private final List<Thread> threads;
-        private final Set<List<Set<Integer>>> result;
+        private final List<Tie> result;
+        private final int maxTies;
+
+        /** The best score as the bits of a double, so it can be read without locking. */
+        private final AtomicLong bestScore;
 
         private Thread clThread;
 
-        private double currentBest = Double.NEGATIVE_INFINITY;
+        /** Read by the workers between every job, without locking. */
+        private volatile boolean interrupted;
 
-        private Monitor()
+        private Monitor(int maxTies)
         {
             this.tasks = new ArrayList<>();
-            this.threads = new ArrayList<>();
-            this.result = new HashSet<>();
+            this.result = new ArrayList<>();
+            this.maxTies = maxTies;
+            this.bestScore = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+        }
+
+        /**
+         * Gets the best published score, without locking.
+         *
+         * @return the best published score.
+         * */
+        private double getBestScore()
+        {
+            return Double.longBitsToDouble(bestScore.get());
+        }
+
+        /**
+         * Raises the best score to score, iff it is higher.
+         *
+         * @param score the new score.
+         * @return {@code true} iff the best score was raised.
+         * */
+        private boolean raise(double score)
+        {
+            for (var cur = bestScore.get(); score > Double.longBitsToDouble(cur); cur = bestScore.get())
+            {
+                if (bestScore.compareAndSet(cur, Double.doubleToLongBits(score)))
+                    return true;
+            }
+
+            return false;
         }
 
-        private synchronized void updateResult(List<Set<Integer>> groups, double score)
+        /**
+         * Offers a candidate. If it is better than the best it replaces
+         * all the kept solutions, if it is tied it is sampled.
+         *
+         * @param groups the candidate.
+         * @param score the score of the candidate.
+         * @param key the sampling key of the candidate.
+         * */
+        private synchronized void offer(List<Set<Integer>> groups, double score, long key)
         {
-            if (score > currentBest)
+            if (raise(score) || result.isEmpty())
             {
                 result.clear();
-                result.add(groups);
-                currentBest = score;
+                result.add(new Tie(groups, key));
+                return;
             }
-            else if (score == currentBest)
+
+            if (score != getBestScore())
+                return;
+
+            // The same solution is kept once, with its smallest key.
+            var largest = 0;
+            for (var i = 0; i < result.size(); i++)
             {
-                result.add(groups);
+                var t = result.get(i);
+
+                if (t.groups.equals(groups))
+                {
+                    if (key < t.key)
+                        result.set(i, new Tie(groups, key));
+
+                    return;
+                }
+
+                if (t.key > result.get(largest).key)
+                    largest = i;
             }
+
+            if (result.size() < maxTies)
+                result.add(new Tie(groups, key));
+            else if (key < result.get(largest).key)
+                result.set(largest, new Tie(groups, key));
         }
 
         /** NOTE TO SELF: CALL ONLY WHEN FINISHED. */
-        private synchronized Set<List<Set<Integer>>> getResult()
+        private synchronized List<List<Set<Integer>>> getResult()
         {
-            return result;
+            return result.stream()
+                         .sorted(Comparator.comparingLong(Tie::key))
+                         .map(Tie::groups)
+                         .toList();
         }
 
-        private synchronized void addTask(Future<?> task)
+        private boolean isInterrupted()
         {
-            tasks.add(task);
+            return interrupted;
         }
 
-        private synchronized void addThread(Thread t)
+        private synchronized void addTask(Future<?> task)
         {
-            threads.add(t);
+            tasks.add(task);
+
+            if (interrupted)
+                task.cancel(true);
         }
 
         private synchronized void addClThread(Thread t)
         {
             clThread = t;
+
+            if (interrupted)
+                t.interrupt();
         }
 
+        /**
+         * Interrupts the run, the thread waiting for the run is
+         * interrupted and the workers are cancelled.
+         * */
         private synchronized void interrupt()
         {
             if (clThread != null)
                 clThread.interrupt();
 
-            for (var t : threads)
-            {
-                t.interrupt();
-            }
+            cancel();
+        }
+
+        /**
+         * Cancels the workers, this is one task per worker.
+         * */
+        private synchronized void cancel()
+        {
+            interrupted = true;
 
             for (var t : tasks)
             {
@@ -339,4 +544,4 @@ public final class WishesGroupCreator implements GroupCreator
             }
         }
     }
-}
\ No newline at end of file
+}
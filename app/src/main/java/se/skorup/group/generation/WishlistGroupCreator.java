@@ -1,16 +1,9 @@
 package se.skorup.group.generation;
 
-import se.skorup.group.Group;
-import se.skorup.util.collections.ImmutableHashSet;
-
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import se.skorup.group.ConstraintGraph;
+import se.skorup.util.collections.IndexBitSet;
+
+import java.util.random.RandomGenerator;
 
 /**
  * Creates subgroups respecting the wishes by the candidates,
@@ -19,9 +12,8 @@ import java.util.stream.Stream;
  * */
 public class WishlistGroupCreator extends GroupCreatorTemplate
 {
-    /** The id of the starting person. */
+    /** The id of the starting person, -1 if there is none. */
     public final int startingPerson;
-    private boolean shouldUseStartPerson;
 
     /**
      * Creates a new GroupCreator, without a starting person.
@@ -31,7 +23,6 @@ public class WishlistGroupCreator extends GroupCreatorTemplate
     public WishlistGroupCreator()
     {
         this(-1);
-        this.shouldUseStartPerson = false;
     }
 
     /**
@@ -42,128 +33,140 @@ public class WishlistGroupCreator extends GroupCreatorTemplate
     public WishlistGroupCreator(int p)
     {
         this.startingPerson = p;
-        this.shouldUseStartPerson = true;
     }
 
     /**
-     * Gets the wishes of a person with id: id. This method will only
-     * return the persons that aren't included in any subgroup.
+     * Gets the number wishes of a person that are among the currently
+     * allowed candidates.
      *
-     * @param gm the Group in charge.
-     * @param left the persons that aren't yet used.
-     * @param id the id of the person to be checked against.
-     * @return a list with the wishes for this id.
-     * */
-    private List<Integer> getWishes(Group gm, Set<Integer> left, int id)
-    {
-        return new ImmutableHashSet<>(gm.getWishedIds(id)).intersection(left).toList();
-    }
-
-    /**
-     * Gets the number wishes of a person with id: id. This method will only
-     * return the persons that aren't included in any subgroup.
-     *
-     * @param gm   the Group in charge.
-     * @param left the persons that aren't yet used.
-     * @param id   the id of the person to be checked against.
-     * @return the number of wishes for this id.
+     * @param cg the snapshot of the group.
+     * @param allowed the allowed candidates.
+     * @param index the index of the person to be checked against.
+     * @return the number of wishes for this index.
      */
-    private int getNumberWishes(Group gm, Set<Integer> left, int id)
+    private int getNumberWishes(ConstraintGraph cg, IndexBitSet allowed, int index)
     {
-        return getWishes(gm, left, id).size();
+        var cnt = 0;
+        for (var k = 0; k < cg.wishCount(index); k++)
+        {
+            if (allowed.get(cg.wish(index, k)))
+                cnt++;
+        }
+
+        return cnt;
     }
 
     /**
-     * Gets the person with the least wishes left int the stream.
+     * Gets the person with the least wishes left among the
+     * first len elements of the array.
      *
-     * @param candidates the candidates to be chosen from.
-     * @param gm the Group in charge.
-     * @param left the persons left to use.
+     * @param arr the candidates to be chosen from.
+     * @param len the number of candidates in arr.
+     * @param cg the snapshot of the group.
+     * @param allowed the allowed candidates.
+     * @param random the random generator used to break ties.
+     * @return the index of a person with the least wishes, ties are broken randomly.
      * */
-    private int getLeastWishes(Stream<Integer> candidates, Group gm, HashSet<Integer> left)
+    private int getLeastWishes(int[] arr, int len, ConstraintGraph cg, IndexBitSet allowed, RandomGenerator random)
     {
-        var list = candidates.map(x -> new PersonWishEntry(x, getNumberWishes(gm, left, x)))
-                             .toList();
+        var wishCounts = new int[len];
+        var min = Integer.MAX_VALUE;
+        for (var i = 0; i < len; i++)
+        {
+            wishCounts[i] = getNumberWishes(cg, allowed, arr[i]);
+            min = Math.min(min, wishCounts[i]);
+        }
 
-        var min = list.stream()
-                      .mapToInt(PersonWishEntry::nbrWishes)
-                      .min()
-                      .orElse(0);
+        var ties = 0;
+        for (var i = 0; i < len; i++)
+        {
+            if (wishCounts[i] == min)
+                ties++;
+        }
 
-        var filtered = list.stream()
-                           .filter(p -> p.nbrWishes == min)
-                           .toList();
+        var chosen = random.nextInt(ties);
+        for (var i = 0; i < len; i++)
+        {
+            if (wishCounts[i] == min && chosen-- == 0)
+                return arr[i];
+        }
 
-        return filtered.get(new Random().nextInt(0, filtered.size())).id;
+        throw new IllegalStateException("Unreachable");
     }
 
     /**
      * Gets the optimal person at this moment, this is very greedy
      * and might not give an optimal solution, but is good enough.
      *
-     * @param gm the Group in charge.
-     * @param left the unused ids.
+     * @param cg the snapshot of the group.
+     * @param allowed the unused indices that are allowed in current.
      * @param current the currently worked on subgroup.
-     * @param lastId the id of the last person chosen.
-     * @return the id of the next optimal person.
+     * @param last the index of the last person chosen.
+     * @param random the random generator.
+     * @return the index of the next optimal person.
      * */
-    private int getOptimalPerson(Group gm, Set<Integer> left, Set<Integer> current, int lastId)
+    private int getOptimalPerson(
+        ConstraintGraph cg, IndexBitSet allowed,
+        Subgroup current, int last, RandomGenerator random
+    )
     {
-        // Removes all the id:s that aren't allowed.
-        var l = left.stream()
-                    .filter(i -> isPersonAllowed(i, current, gm))
-                    .collect(Collectors.toCollection(HashSet::new));
-
-        if (l.isEmpty())
-            throw new GroupCreationFailedException("Cannot create group, too many denylist items!");
+        int[] picks;
+        var nbrPicks = 0;
 
         if (current.isEmpty()) // First person of the subgroup
         {
-            return getLeastWishes(l.stream(), gm, l);
+            picks = new int[allowed.cardinality()];
+            for (var c = allowed.nextSetBit(0); c != -1; c = allowed.nextSetBit(c + 1))
+                picks[nbrPicks++] = c;
         }
-
-        // The subgroup is already started.
-        var wishes = getWishes(gm, l, lastId);
-
-        if (wishes.isEmpty()) // If there are no wishes left.
+        else // The subgroup is already started, so we take the wishes that are left.
         {
-            var list = new ArrayList<Integer>();
-
-            // Get all the persons that has wished for c.
-            for (var c : l) {
-                if (getWishes(gm, l, c).contains(lastId))
-                    list.add(c);
+            picks = new int[Math.max(cg.wishCount(last), cg.wishedByCount(last))];
+            for (var k = 0; k < cg.wishCount(last); k++)
+            {
+                var w = cg.wish(last, k);
+                if (allowed.get(w))
+                    picks[nbrPicks++] = w;
             }
 
-            if (list.isEmpty()) {
-                // Get a random person that hasn't been used.
-                return new ArrayList<>(l).get(new Random().nextInt(l.size()));
-            } else {
-                return getLeastWishes(list.stream(), gm, l);
+            // If there are no wishes left, get all the persons that has wished for last.
+            if (nbrPicks == 0)
+            {
+                for (var k = 0; k < cg.wishedByCount(last); k++)
+                {
+                    var w = cg.wishedBy(last, k);
+                    if (allowed.get(w))
+                        picks[nbrPicks++] = w;
+                }
             }
+
+            // Get a random person that hasn't been used.
+            if (nbrPicks == 0)
+                return allowed.nthSetBit(random.nextInt(allowed.cardinality()));
         }
-        else
-        {
-            return getLeastWishes(wishes.stream(), gm, l);
-        }
+
+        return getLeastWishes(picks, nbrPicks, cg, allowed, random);
     }
 
     @Override
     protected int getNextPerson(
-        Group gm, Set<Integer> left,
-        Set<Integer> current, int lastId
+        ConstraintGraph cg, IndexBitSet allowed,
+        Subgroup current, int last, RandomGenerator random
     ) throws GroupCreationFailedException
     {
-        if (shouldUseStartPerson)
+        if (allowed.isEmpty())
+            throw new GroupCreationFailedException("Cannot create group, too many denylist items!");
+
+        // The starting person is used as the first pick of every run.
+        if (last == -1)
         {
-            shouldUseStartPerson = false;
-            left.remove(startingPerson);
-            return startingPerson;
+            var start = cg.indexOf(startingPerson);
+
+            if (start != -1 && allowed.get(start))
+                return start;
         }
 
-        var opt = getOptimalPerson(gm, left, current, lastId);
-        left.remove(opt);
-        return opt;
+        return getOptimalPerson(cg, allowed, current, last, random);
     }
 
     @Override
@@ -171,13 +174,4 @@ public class WishlistGroupCreator extends GroupCreatorTemplate
     {
         return "REPORT IF YOU SEE THIS; RAPPORTERA OM DU SER DETTA!";
     }
-
-    private record PersonWishEntry(int id, int nbrWishes) implements Comparable<PersonWishEntry>
-    {
-        @Override
-        public int compareTo(PersonWishEntry other)
-        {
-            return Integer.compare(nbrWishes, other.nbrWishes);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,628 @@
+package se.skorup.gui.components.output;
+
+import se.skorup.gui.callbacks.ActionCallback;
+import se.skorup.gui.helper.AnimationClock;
+import se.skorup.gui.helper.State;
+import se.skorup.util.Utils;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A grid of CSV-cells in the GUI for CSV editing. It works like a grid
+ * of {@link CSVLabel CSVLabels}, but it is one component that only paints
+ * the rows that are visible, so it can show a file of any size. The state
+ * and color of every cell is kept in arrays, and the flashing cells are
+ * one animation of the {@link AnimationClock}. <br><br>
+ *
+ * The x-coordinate of a cell is its row and the y-coordinate is its column,
+ * the same way as for the CSVLabels.
+ * */
+public class CSVGrid extends JComponent implements Scrollable
+{
+    /** The interval of the flashing, in milliseconds. */
+    public static final int FLASH_INTERVAL = 500;
+
+    private static final State[] STATES = State.values();
+    private static final Color TEXT_COLOR = Color.DARK_GRAY;
+    private static final int MIN_CELL_WIDTH = 100;
+    private static final int PADDING = 4;
+
+    private final String[][] data;
+    private final int rows;
+    private final int cols;
+
+    /**
+     * The state and the color of every cell, by {@link #index(int, int)},
+     * and the slot of the cell in the flashing cells, or -1.
+     * */
+    private final byte[] states;
+    private final int[] colors;
+    private final boolean[] highlighted;
+    private final int[] flashIndex;
+
+    /** The highlighted cells. */
+    private int[] highlights = new int[16];
+    private int highlightCount;
+
+    /** The flashing cells, their colors and the time they started. */
+    private int[] flashing = new int[16];
+    private int[][] flashColors = new int[16][];
+    private long[] flashStart = new long[16];
+    private int flashCount;
+
+    /** The time of the current frame of the flashing. */
+    private long now;
+
+    private final int rowHeight;
+    private int hovered = -1;
+    private int pressed = -1;
+
+    private final List<ActionCallback<Cell>> enterList = new ArrayList<>();
+    private final List<ActionCallback<Cell>> exitList = new ArrayList<>();
+    private final List<ActionCallback<Cell>> callbacks = new ArrayList<>();
+
+    /**
+     * A cell of the grid.
+     *
+     * @param x the x-coordinate, i.e. the row.
+     * @param y the y-coordinate, i.e. the column.
+     * */
+    public record Cell(int x, int y) {}
+
+    /**
+     * Creates a new CSVGrid, with every cell unselected.
+     *
+     * @param data the rows of the grid, they may be of different lengths.
+     * */
+    public CSVGrid(String[][] data)
+    {
+        this.data = data;
+        this.rows = data.length;
+        this.cols = Arrays.stream(data).mapToInt(a -> a.length).max().orElse(0);
+        this.states = new byte[rows * cols];
+        this.colors = new int[rows * cols];
+        this.highlighted = new boolean[rows * cols];
+        this.flashIndex = new int[rows * cols];
+
+        Arrays.fill(states, (byte) State.UNSELECTED.ordinal());
+        Arrays.fill(colors, State.UNSELECTED.color.getRGB());
+        Arrays.fill(flashIndex, -1);
+
+        this.setFont(new Font(Font.DIALOG, Font.BOLD, 20));
+        this.setBackground(Utils.BACKGROUND_COLOR);
+        this.setOpaque(true);
+        this.rowHeight = getFontMetrics(getFont()).getHeight() + 2 * PADDING;
+
+        var mouse = new MouseAdapter()
+        {
+            @Override
+            public void mouseMoved(MouseEvent e)
+            {
+                hover(cellAt(e.getPoint()));
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e)
+            {
+                hover(cellAt(e.getPoint()));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e)
+            {
+                hover(-1);
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e)
+            {
+                pressed = cellAt(e.getPoint());
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e)
+            {
+                if (pressed != -1)
+                {
+                    var cell = cell(pressed);
+                    pressed = -1;
+                    callbacks.forEach(c -> c.action(cell));
+                }
+            }
+        };
+
+        this.addMouseListener(mouse);
+        this.addMouseMotionListener(mouse);
+    }
+
+    /**
+     * Adds a hover enter effect, it's called with the cell that the mouse enters.
+     *
+     * @param enterEffect the effect to be added.
+     * */
+    public void addEnterEffect(ActionCallback<Cell> enterEffect)
+    {
+        if (enterEffect != null)
+            enterList.add(enterEffect);
+    }
+
+    /**
+     * Adds a hover exit effect, it's called with the cell that the mouse exits.
+     *
+     * @param exitEffect the effect to be added.
+     * */
+    public void addExitEffect(ActionCallback<Cell> exitEffect)
+    {
+        if (exitEffect != null)
+            exitList.add(exitEffect);
+    }
+
+    /**
+     * Adds a callback, it's called with the cell that is clicked.
+     *
+     * @param callback the callback to be added.
+     * */
+    public void addActionCallback(ActionCallback<Cell> callback)
+    {
+        if (callback != null)
+            callbacks.add(callback);
+    }
+
+    /**
+     * Getter for: rows
+     *
+     * @return the number of rows.
+     * */
+    public int getRowCount()
+    {
+        return rows;
+    }
+
+    /**
+     * Gets the number of cells in a row.
+     *
+     * @param x the row.
+     * @return the number of cells in the row, or 0 iff there is no such row.
+     * */
+    public int getColumnCount(int x)
+    {
+        return x >= 0 && x < rows ? data[x].length : 0;
+    }
+
+    /**
+     * Checks if there is a cell at a position.
+     * A row may have fewer cells than the longest row.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return {@code true} iff there is a cell at (x, y).
+     * */
+    public boolean hasCell(int x, int y)
+    {
+        return y >= 0 && y < getColumnCount(x);
+    }
+
+    /**
+     * Gets the text of a cell.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the text of the cell.
+     * */
+    public String getText(int x, int y)
+    {
+        return data[x][y];
+    }
+
+    /**
+     * Gets the state of a cell.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the state of the cell.
+     * */
+    public State getState(int x, int y)
+    {
+        return STATES[states[index(x, y)]];
+    }
+
+    /**
+     * Sets the state of a cell, it will update the color of the cell.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param state the new state of the cell.
+     * */
+    public void setState(int x, int y, State state)
+    {
+        states[index(x, y)] = (byte) state.ordinal();
+        setColor(x, y, state.color);
+    }
+
+    /**
+     * Gets the color of a cell, i.e. the color it has
+     * when it isn't highlighted or flashing.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the color of the cell.
+     * */
+    public Color getColor(int x, int y)
+    {
+        return new Color(colors[index(x, y)]);
+    }
+
+    /**
+     * Sets the color of a cell, without changing its state.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param c the new color.
+     * */
+    public void setColor(int x, int y, Color c)
+    {
+        if (c == null)
+            return;
+
+        colors[index(x, y)] = c.getRGB();
+        repaint(x, y);
+    }
+
+    /**
+     * Highlights a cell, with {@link Utils#SELECTED_COLOR}, until
+     * {@link #clearHighlights()} is called.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * */
+    public void highlight(int x, int y)
+    {
+        var i = index(x, y);
+
+        if (highlighted[i])
+            return;
+
+        if (highlightCount == highlights.length)
+            highlights = Arrays.copyOf(highlights, highlightCount * 2);
+
+        highlighted[i] = true;
+        highlights[highlightCount++] = i;
+        repaint(x, y);
+    }
+
+    /**
+     * Removes the highlight of every highlighted cell.
+     * */
+    public void clearHighlights()
+    {
+        for (var k = 0; k < highlightCount; k++)
+        {
+            highlighted[highlights[k]] = false;
+            repaint(highlights[k] / cols, highlights[k] % cols);
+        }
+
+        highlightCount = 0;
+    }
+
+    /**
+     * Starts flashing a cell, it cycles through the colors every
+     * {@link #FLASH_INTERVAL} milliseconds. All the flashing cells
+     * are advanced together, by the animation clock.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @param flashColor the colors that will be cycled through.
+     * @throws IllegalArgumentException iff flashColor == {@code null} || flashColor.length = 0
+     * */
+    public void startFlashing(int x, int y, Color... flashColor) throws IllegalArgumentException
+    {
+        if (flashColor == null || flashColor.length == 0)
+            throw new IllegalArgumentException("You must pass at least on color.");
+
+        stopFlashing(x, y);
+
+        if (flashCount == flashing.length)
+        {
+            flashing = Arrays.copyOf(flashing, flashCount * 2);
+            flashColors = Arrays.copyOf(flashColors, flashCount * 2);
+            flashStart = Arrays.copyOf(flashStart, flashCount * 2);
+        }
+
+        flashing[flashCount] = index(x, y);
+        flashIndex[flashing[flashCount]] = flashCount;
+        flashColors[flashCount] = Arrays.stream(flashColor).mapToInt(Color::getRGB).toArray();
+        flashStart[flashCount] = AnimationClock.now();
+        flashCount++;
+
+        if (isDisplayable())
+            AnimationClock.register(this, this::flash);
+    }
+
+    /**
+     * Stops the flashing of a cell, it gets its color back.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * */
+    public void stopFlashing(int x, int y)
+    {
+        var i = index(x, y);
+        var k = flashIndex[i];
+
+        if (k == -1)
+            return;
+
+        // The last flashing cell takes its place.
+        flashCount--;
+        flashing[k] = flashing[flashCount];
+        flashColors[k] = flashColors[flashCount];
+        flashStart[k] = flashStart[flashCount];
+        flashColors[flashCount] = null;
+        flashIndex[flashing[k]] = k;
+        flashIndex[i] = -1;
+
+        if (flashCount == 0)
+            AnimationClock.unregister(this);
+
+        repaint(x, y);
+    }
+
+    /**
+     * Checks if a cell is flashing or not.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return {@code true} iff it's flashing,
+     *         {@code false} iff it isn't flashing.
+     * */
+    public boolean isFlashing(int x, int y)
+    {
+        return flashIndex[index(x, y)] != -1;
+    }
+
+    /**
+     * Advances the flashing cells to a frame of the animation clock.
+     *
+     * @param time the time of the frame.
+     * @return the region of the cells that have changed color,
+     *         {@code null} iff none of them have.
+     * */
+    private Rectangle flash(long time)
+    {
+        var prev = now;
+        Rectangle dirty = null;
+        now = time;
+
+        for (var k = 0; k < flashCount; k++)
+        {
+            if (phase(k, prev) == phase(k, time))
+                continue;
+
+            var r = getCellBounds(flashing[k] / cols, flashing[k] % cols);
+            dirty = dirty == null ? r : dirty.union(r);
+        }
+
+        return dirty;
+    }
+
+    /**
+     * Gets the number of intervals a cell has flashed at a time.
+     * */
+    private long phase(int k, long time)
+    {
+        return Math.max(time - flashStart[k], 0) / FLASH_INTERVAL;
+    }
+
+    /**
+     * Gets the color that a cell is painted with.
+     * */
+    private int paintColor(int i)
+    {
+        if (highlighted[i])
+            return Utils.SELECTED_COLOR.getRGB();
+
+        var k = flashIndex[i];
+
+        if (k == -1)
+            return colors[i];
+
+        // A flashing cell keeps its color for the first interval.
+        var phase = phase(k, now);
+        var c = flashColors[k];
+        return phase == 0 ? colors[i] : c[(int) ((phase - 1) % c.length)];
+    }
+
+    /**
+     * Gets the index of a cell in the arrays.
+     * */
+    private int index(int x, int y)
+    {
+        if (!hasCell(x, y))
+            throw new IndexOutOfBoundsException("There is no cell at (%d, %d)".formatted(x, y));
+
+        return x * cols + y;
+    }
+
+    private Cell cell(int i)
+    {
+        return new Cell(i / cols, i % cols);
+    }
+
+    /**
+     * Gets the index of the cell at a point.
+     *
+     * @return the index, or -1 iff there is no cell at the point.
+     * */
+    private int cellAt(Point p)
+    {
+        if (cols == 0 || p.x < 0 || p.y < 0 || p.x >= getWidth())
+            return -1;
+
+        var x = p.y / getRowHeight();
+        var y = (int) ((long) p.x * cols / getWidth());
+
+        return hasCell(x, y) ? x * cols + y : -1;
+    }
+
+    private void hover(int i)
+    {
+        if (i == hovered)
+            return;
+
+        if (hovered != -1)
+        {
+            var cell = cell(hovered);
+            exitList.forEach(ef -> ef.action(cell));
+        }
+
+        hovered = i;
+
+        if (hovered != -1)
+        {
+            var cell = cell(hovered);
+            enterList.forEach(ef -> ef.action(cell));
+        }
+    }
+
+    /**
+     * The height of the rows, they fill the viewport iff they all fit.
+     * */
+    private int getRowHeight()
+    {
+        return rows == 0 ? rowHeight : Math.max(rowHeight, getHeight() / rows);
+    }
+
+    private int columnX(int y)
+    {
+        return (int) ((long) y * getWidth() / cols);
+    }
+
+    private Rectangle getCellBounds(int x, int y)
+    {
+        var height = getRowHeight();
+        var from = columnX(y);
+        return new Rectangle(from, x * height, columnX(y + 1) - from, height);
+    }
+
+    private void repaint(int x, int y)
+    {
+        repaint(getCellBounds(x, y));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        var clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        if (cols == 0)
+            return;
+
+        var height = getRowHeight();
+        var first = Math.max(clip.y / height, 0);
+        var last = Math.min((clip.y + clip.height - 1) / height, rows - 1);
+        var fm = g.getFontMetrics(getFont());
+        Color color = null;
+
+        g.setFont(getFont());
+
+        for (var x = first; x <= last; x++)
+        {
+            for (var y = 0; y < data[x].length; y++)
+            {
+                var from = columnX(y);
+                var width = columnX(y + 1) - from;
+
+                if (from + width < clip.x || from > clip.x + clip.width)
+                    continue;
+
+                var rgb = paintColor(x * cols + y);
+
+                if (color == null || color.getRGB() != rgb)
+                    color = new Color(rgb);
+
+                var cg = g.create(from, x * height, width, height);
+                cg.setColor(color);
+                cg.fillRect(0, 0, width, height);
+                cg.setColor(TEXT_COLOR);
+                cg.drawRect(0, 0, width - 1, height - 1);
+
+                var text = data[x][y];
+                var tx = Math.max((width - fm.stringWidth(text)) / 2, PADDING);
+                cg.drawString(text, tx, (height - fm.getHeight()) / 2 + fm.getAscent());
+                cg.dispose();
+            }
+        }
+    }
+
+    @Override
+    public void addNotify()
+    {
+        super.addNotify();
+
+        if (flashCount > 0)
+            AnimationClock.register(this, this::flash);
+    }
+
+    @Override
+    public void removeNotify()
+    {
+        // The clock would keep the grid alive after its frame is disposed.
+        AnimationClock.unregister(this);
+        super.removeNotify();
+    }
+
+    @Override
+    public Dimension getPreferredSize()
+    {
+        if (isPreferredSizeSet())
+            return super.getPreferredSize();
+
+        return new Dimension(cols * MIN_CELL_WIDTH, rows * rowHeight);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize()
+    {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return orientation == SwingConstants.VERTICAL ? getRowHeight() : MIN_CELL_WIDTH;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight()
+    {
+        return getParent() instanceof JViewport v && v.getHeight() > getPreferredSize().height;
+    }
+}
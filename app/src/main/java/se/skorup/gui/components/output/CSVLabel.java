@@ -3,21 +3,23 @@ package se.skorup.gui.components.output;
 import se.skorup.gui.callbacks.ActionCallback;
 import se.skorup.gui.callbacks.HoverEffectEnter;
 import se.skorup.gui.callbacks.HoverEffectExit;
+import se.skorup.gui.helper.AnimationClock;
 import se.skorup.gui.helper.State;
 import se.skorup.util.Utils;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.SwingConstants;
-import javax.swing.Timer;
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Objects;
 
 /**
  * A CSVLabel in the GUI for CSV editing.
@@ -48,7 +50,12 @@ public class CSVLabel extends JLabel implements MouseListener
     private State state = State.UNSELECTED;
 
     private Color savedBackground;
-    private Timer t;
+
+    /** The colors of the flashing, {@code null} iff it isn't flashing. */
+    private Color[] flashColors;
+    private Color flashColor;
+    private int flashSpeed;
+    private long flashStart;
 
     /**
      * Creates a new CSV label with a label,
@@ -170,15 +177,32 @@ public class CSVLabel extends JLabel implements MouseListener
         else if (flashColor == null || flashColor.length == 0)
             throw new IllegalArgumentException("You must pass at least on color.");
 
-        final var i = new AtomicInteger();
-        final var list = new ArrayList<>(Arrays.asList(flashColor)); // To prevent the immutable list.
+        this.flashColors = flashColor.clone();
+        this.flashSpeed = speedMS;
+        this.flashStart = AnimationClock.now();
+
+        // Else it is registered by addNotify, when it is shown.
+        if (isDisplayable())
+            AnimationClock.register(this, this::flash);
+    }
+
+    /**
+     * Advances the flashing to a frame of the animation clock.
+     * The label isn't flashed while the mouse is on it.
+     *
+     * @param now the time of the frame.
+     * @return the region of the label iff its color has changed.
+     * */
+    private Rectangle flash(long now)
+    {
+        var phase = (now - flashStart) / flashSpeed;
+        var c = !shouldRunTimer || phase == 0 ? null : flashColors[(int) ((phase - 1) % flashColors.length)];
 
-        t = new Timer(speedMS, e -> {
-            if (shouldRunTimer)
-                this.setBackground(list.get(i.getAndIncrement() % list.size()));
-        });
+        if (Objects.equals(c, flashColor))
+            return null;
 
-        t.start();
+        flashColor = c;
+        return new Rectangle(0, 0, getWidth(), getHeight());
     }
 
     /**
@@ -186,10 +210,13 @@ public class CSVLabel extends JLabel implements MouseListener
      * */
     public void stopFlashing()
     {
-        if (t != null)
+        if (flashColors != null)
         {
-            t.stop();
+            AnimationClock.unregister(this);
+            flashColors = null;
+            flashColor = null;
             this.setBackground(savedBackground);
+            this.repaint();
         }
     }
 
@@ -202,10 +229,7 @@ public class CSVLabel extends JLabel implements MouseListener
      * */
     public boolean isFlashing()
     {
-        if (t == null)
-            return false;
-
-        return t.isRunning();
+        return flashColors != null;
     }
 
     /**
@@ -232,6 +256,48 @@ public class CSVLabel extends JLabel implements MouseListener
         return this.state;
     }
 
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        if (flashColor == null)
+        {
+            super.paintComponent(g);
+            return;
+        }
+
+        // The flash color is painted instead of the background, so the background is kept.
+        g.setColor(flashColor);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        var cg = g.create();
+
+        try
+        {
+            ui.paint(cg, this);
+        }
+        finally
+        {
+            cg.dispose();
+        }
+    }
+
+    @Override
+    public void addNotify()
+    {
+        super.addNotify();
+
+        if (flashColors != null)
+            AnimationClock.register(this, this::flash);
+    }
+
+    @Override
+    public void removeNotify()
+    {
+        // The clock would keep the label alive after its frame is disposed.
+        AnimationClock.unregister(this);
+        super.removeNotify();
+    }
+
     @Override
     public void mouseClicked(MouseEvent e) {}
 
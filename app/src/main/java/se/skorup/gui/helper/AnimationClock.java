@@ -0,0 +1,128 @@
+package se.skorup.gui.helper;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The clock of the animations in the GUI. It ticks once per frame, with
+ * one timer, and advances every registered animation. The regions that
+ * the animations change are merged, so every window is repainted once per
+ * frame, however many components that are animated. <br><br>
+ *
+ * It should only be used on the event dispatch thread.
+ * */
+public final class AnimationClock
+{
+    /** The time between the frames, in milliseconds. */
+    public static final int FRAME_INTERVAL = 16;
+
+    private static final Map<JComponent, Animation> animations = new LinkedHashMap<>();
+    private static final Timer timer = new Timer(FRAME_INTERVAL, e -> tick());
+
+    /**
+     * An animation of a component.
+     * */
+    @FunctionalInterface
+    public interface Animation
+    {
+        /**
+         * Advances the animation to a frame.
+         *
+         * @param now the time of the frame, by {@link AnimationClock#now()}.
+         * @return the region of the component that has changed, or
+         *         {@code null} iff nothing has changed.
+         * */
+        Rectangle tick(long now);
+    }
+
+    /** You should not be able to instantiate this class. */
+    private AnimationClock() {}
+
+    /**
+     * Gets the time of the clock.
+     *
+     * @return the time in milliseconds, from an arbitrary start.
+     * */
+    public static long now()
+    {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Registers the animation of a component, it replaces the
+     * animation that the component had.
+     *
+     * @param c the component.
+     * @param a the animation.
+     * */
+    public static void register(JComponent c, Animation a)
+    {
+        if (c == null || a == null)
+            return;
+
+        animations.put(c, a);
+        timer.start();
+    }
+
+    /**
+     * Unregisters the animation of a component.
+     *
+     * @param c the component.
+     * */
+    public static void unregister(JComponent c)
+    {
+        animations.remove(c);
+
+        if (animations.isEmpty())
+            timer.stop();
+    }
+
+    /**
+     * Checks if a component is animated.
+     *
+     * @param c the component.
+     * @return {@code true} iff it has a registered animation.
+     * */
+    public static boolean isRegistered(JComponent c)
+    {
+        return animations.containsKey(c);
+    }
+
+    /**
+     * Advances all the animations, and repaints the
+     * regions they changed.
+     * */
+    private static void tick()
+    {
+        var now = now();
+        var dirty = new HashMap<JComponent, Rectangle>();
+
+        // An animation may unregister components.
+        for (var e : new ArrayList<>(animations.entrySet()))
+        {
+            var c = e.getKey();
+            var r = e.getValue().tick(now);
+
+            if (r == null || r.isEmpty() || !c.isShowing())
+                continue;
+
+            var root = SwingUtilities.getRootPane(c);
+
+            if (root == null)
+            {
+                c.repaint(r);
+                continue;
+            }
+
+            dirty.merge(root, SwingUtilities.convertRectangle(c, r, root), Rectangle::union);
+        }
+
+        dirty.forEach(JComponent::repaint);
+    }
+}
@@ -3,6 +3,7 @@ package se.skorup.main;
 import se.skorup.gui.dialog.ConfirmDialog;
 import se.skorup.gui.dialog.Dialog;
 import se.skorup.gui.dialog.MessageDialog;
+import se.skorup.main.cli.CommandLine;
 import se.skorup.main.gui.main.frames.MainFrame;
 import se.skorup.util.Log;
 import se.skorup.util.Utils;
@@ -18,21 +19,38 @@ import java.io.IOException;
  * */
 public class Main
 {
-    /** The path to the version check. */
-    private static final String VERSION_PATH = "%sversion".formatted(Utils.getFolderName());
-
     /**
      * The main method.
      *
-     * @param args the arguments sent to this program are ignored.
+     * @param args if there are any arguments, the program runs
+     *             {@link CommandLine headless} instead of the gui.
      * */
     public static void main(String[] args)
     {
+        if (args.length > 0)
+            runHeadless(args);
+
         loadResources();
         versionCheck();
         SwingUtilities.invokeLater(MainFrame::new);
     }
 
+    /**
+     * Runs the {@link CommandLine headless} mode and exits. Standard output
+     * is kept for the result, and the logs go to standard error, so the
+     * result can be piped.
+     *
+     * @param args the arguments of the program.
+     * */
+    private static void runHeadless(String[] args)
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        var out = System.out;
+        System.setOut(System.err);
+        System.exit(CommandLine.run(args, out));
+    }
+
     /**
      * Does a version check.
      * */
@@ -41,8 +59,10 @@ public class Main
         if (Utils.VERSION.toLowerCase().contains("indev"))
             return;
 
+        // Not a constant, so the headless mode doesn't log before it has redirected the logs.
+        var versionPath = "%sversion".formatted(Utils.getFolderName());
         var permission = false;
-        if (!new File(VERSION_PATH).exists()) // We need to ask permission.
+        if (!new File(versionPath).exists()) // We need to ask permission.
         {
             permission = ConfirmDialog.create()
                                       .setLocalizedQuestion("ui.question.version-checking")
@@ -53,7 +73,7 @@ public class Main
 
             try
             {
-                SerializationUtil.serializeObject(VERSION_PATH, permission);
+                SerializationUtil.serializeObject(versionPath, permission);
             }
             catch (IOException e)
             {
@@ -64,7 +84,7 @@ public class Main
         {
             try
             {
-                permission = SerializationUtil.deserializeObject(VERSION_PATH);
+                permission = SerializationUtil.deserializeObject(versionPath);
             }
             catch (IOException | ClassNotFoundException e)
             {
@@ -0,0 +1,452 @@
+package se.skorup.main.cli;
+
+import se.skorup.group.Group;
+import se.skorup.group.generation.BatchGenerator;
+import se.skorup.group.generation.Creator;
+import se.skorup.group.generation.GenerationSettings;
+import se.skorup.group.generation.WishesGroupCreator;
+import se.skorup.util.Log;
+import se.skorup.util.io.CSVReader;
+import se.skorup.util.io.EncryptedSerializationUtil;
+import se.skorup.util.io.Journal;
+import se.skorup.util.io.SaveFile;
+import se.skorup.util.io.SerializationUtil;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The headless mode of the program, it generates subgroups from a save
+ * file or a CSV-file and writes them as JSON or CSV, e.g. from cron.
+ * Nothing of the gui is loaded, neither AWT nor the resources, so it
+ * starts as fast as the JVM.
+ * <br><br>
+ * The result is written to the output file or the stream that it is
+ * given, it doesn't change any global state, e.g. standard output.
+ * */
+public final class CommandLine
+{
+    /** The exit code iff a group failed. */
+    public static final int FAILED = 1;
+
+    /** The exit code iff the arguments are wrong. */
+    public static final int USAGE = 2;
+
+    private static final String USAGE_TEXT = """
+        Usage: GroupAssigner --input <file> --sizes <sizes> [options]
+
+          --input <file>       the saves directory, a save file (.gasv, .data or with .enc) or a
+                               CSV-file (.csv), where every row is a person followed by the persons
+                               it wishes.
+          --group <name>       only the group with the name, all groups of a save by default.
+          --creator <creator>  random, wish, local-search or optimal, optimal by default.
+          --sizes <sizes>      the size of every subgroup, or the sizes separated by commas.
+          --mg1-sizes <sizes>  the sizes in main group one, the main groups are used iff given.
+          --mg2-sizes <sizes>  the sizes in main group two.
+          --seed <seed>        the seed, a random seed by default.
+          --format <format>    json or csv, json by default.
+          --output <file>      the output file, standard output by default.
+        """;
+
+    /**
+     * The output formats.
+     * */
+    private enum Format
+    {
+        JSON, CSV
+    }
+
+    /**
+     * The parsed arguments.
+     * */
+    private record Options(
+        String input, String group, Creator creator, GenerationSettings settings, Format format, String output
+    ) {}
+
+    /** You should not be able to instantiate this class. */
+    private CommandLine() {}
+
+    /**
+     * Runs the headless mode.
+     *
+     * @param args the arguments of the program.
+     * @param out the stream the result is written to, if there is no output file.
+     * @return the exit code, 0 iff every group succeeded.
+     * */
+    public static int run(String[] args, PrintStream out)
+    {
+        final Options options;
+        try
+        {
+            options = parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getLocalizedMessage());
+            System.err.print(USAGE_TEXT);
+            return USAGE;
+        }
+
+        final List<Group> groups;
+        try
+        {
+            groups = load(options.input(), options.group());
+        }
+        catch (Exception e)
+        {
+            Log.errorf("Failed to load %s: %s", options.input(), e.getLocalizedMessage());
+            return FAILED;
+        }
+
+        if (groups.isEmpty())
+        {
+            Log.errorf("There is no group named %s in %s", options.group(), options.input());
+            return FAILED;
+        }
+
+        Log.debugf("Generating %d groups with seed: %d", groups.size(), options.settings().seed());
+        // Keyed by identity, since equal groups, e.g. with different main groups, get different subgroups.
+        var results = new IdentityHashMap<Group, BatchGenerator.Result>();
+        new BatchGenerator(p -> {}).generateAll(groups, options.settings(), options.creator())
+                                   .forEach(res -> results.put(res.group(), res));
+
+        // The results are written in the order of the input, so the output only depends on the seed.
+        var ordered = groups.stream().map(results::get).toList();
+
+        try
+        {
+            write(ordered, options, out);
+        }
+        catch (IOException e)
+        {
+            Log.errorf("Failed to write %s: %s", options.output(), e.getLocalizedMessage());
+            return FAILED;
+        }
+
+        return ordered.stream().allMatch(BatchGenerator.Result::isSuccess) ? 0 : FAILED;
+    }
+
+    /**
+     * Parses the arguments.
+     *
+     * @param args the arguments of the program.
+     * @return the parsed arguments.
+     * @throws IllegalArgumentException iff an argument is wrong or missing.
+     * */
+    private static Options parse(String[] args) throws IllegalArgumentException
+    {
+        var values = new HashMap<String, String>();
+
+        for (var i = 0; i < args.length; i++)
+        {
+            if (!args[i].startsWith("--") || i + 1 == args.length)
+                throw new IllegalArgumentException("Expected an option with a value, got: %s".formatted(args[i]));
+
+            values.put(args[i].substring(2), args[++i]);
+        }
+
+        var known = Set.of("input", "group", "creator", "sizes", "mg1-sizes", "mg2-sizes", "seed", "format", "output");
+        for (var key : values.keySet())
+        {
+            if (!known.contains(key))
+                throw new IllegalArgumentException("Unknown option: --%s".formatted(key));
+        }
+
+        var input = values.get("input");
+        if (input == null)
+            throw new IllegalArgumentException("--input is required");
+
+        var useMainGroups = values.containsKey("mg1-sizes") || values.containsKey("mg2-sizes");
+        if (!useMainGroups && !values.containsKey("sizes"))
+            throw new IllegalArgumentException("--sizes is required");
+
+        if (useMainGroups && !(values.containsKey("mg1-sizes") && values.containsKey("mg2-sizes")))
+            throw new IllegalArgumentException("Both --mg1-sizes and --mg2-sizes are required");
+
+        var settings = new GenerationSettings(
+            useMainGroups,
+            useMainGroups ? List.of() : parseSizes(values.get("sizes")),
+            useMainGroups ? parseSizes(values.get("mg1-sizes")) : List.of(),
+            useMainGroups ? parseSizes(values.get("mg2-sizes")) : List.of(),
+            values.containsKey("seed") ? parseLong(values.get("seed")) : ThreadLocalRandom.current().nextLong()
+        );
+
+        return new Options(
+            input,
+            values.get("group"),
+            parseEnum(Creator.class, values.getOrDefault("creator", "optimal")),
+            settings,
+            parseEnum(Format.class, values.getOrDefault("format", "json")),
+            values.get("output")
+        );
+    }
+
+    private static List<Integer> parseSizes(String sizes) throws IllegalArgumentException
+    {
+        try
+        {
+            var res = Arrays.stream(sizes.split(",")).map(String::trim).map(Integer::parseInt).toList();
+
+            if (res.stream().anyMatch(s -> s < 1))
+                throw new IllegalArgumentException("The sizes must be positive, got: %s".formatted(sizes));
+
+            return res;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid sizes: %s".formatted(sizes));
+        }
+    }
+
+    private static long parseLong(String seed) throws IllegalArgumentException
+    {
+        try
+        {
+            return Long.parseLong(seed);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid seed: %s".formatted(seed));
+        }
+    }
+
+    private static <T extends Enum<T>> T parseEnum(Class<T> type, String value) throws IllegalArgumentException
+    {
+        try
+        {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid %s: %s".formatted(type.getSimpleName().toLowerCase(), value));
+        }
+    }
+
+    /**
+     * Loads the groups of a saves directory, a save file or a CSV-file.
+     *
+     * @param path the path of the file.
+     * @param name the name of the group to keep, {@code null} keeps all.
+     * @return the groups.
+     * @throws Exception iff the file can't be read.
+     * */
+    static List<Group> load(String path, String name) throws Exception
+    {
+        final Collection<Group> groups;
+
+        if (Files.isDirectory(Path.of(path)))
+            groups = Journal.read(Path.of(path), EncryptedSerializationUtil::decrypt);
+        else if (path.toLowerCase(Locale.ROOT).endsWith(".csv"))
+            groups = List.of(fromCSV(path, CSVReader.readCSV(path)));
+        else if (path.endsWith(".enc"))
+            groups = loadEncrypted(path);
+        else if (SaveFile.isSaveFile(Path.of(path)))
+            groups = SaveFile.read(Path.of(path), SaveFile.Layer.none());
+        else
+            groups = SerializationUtil.<ArrayList<Group>>deserializeObject(path);
+
+        return groups.stream()
+                     .filter(g -> name == null || g.toString().equals(name))
+                     .toList();
+    }
+
+    /**
+     * Loads an encrypted save file, the encrypted binary save files
+     * can't be told apart from the serialized ones before decryption.
+     * */
+    private static Collection<Group> loadEncrypted(String path) throws Exception
+    {
+        try
+        {
+            return SaveFile.read(Path.of(path), EncryptedSerializationUtil::decrypt);
+        }
+        catch (IOException e)
+        {
+            return EncryptedSerializationUtil.<ArrayList<Group>>deserializeObject(path);
+        }
+    }
+
+    /**
+     * Creates a group from a CSV-file, where the first column is
+     * the persons and the rest of each row is the persons it wishes.
+     *
+     * @param path the path of the file, used as the name of the group.
+     * @param data the CSV-file.
+     * @return the created group.
+     * */
+    static Group fromCSV(String path, String[][] data)
+    {
+        var name = path.substring(path.lastIndexOf('/') + 1).replaceFirst("(?i)\\.csv$", "");
+        var g = new Group(name);
+        var ids = new HashMap<String, Integer>();
+
+        for (var row : data)
+        {
+            if (row.length > 0 && !row[0].isBlank())
+                ids.computeIfAbsent(row[0].trim(), g::registerPerson);
+        }
+
+        for (var row : data)
+        {
+            if (row.length == 0 || row[0].isBlank())
+                continue;
+
+            var id = ids.get(row[0].trim());
+            for (var k = 1; k < row.length; k++)
+            {
+                var wished = ids.get(row[k].trim());
+
+                if (wished != null && wished != id)
+                    g.addWishItem(id, wished);
+                else if (!row[k].isBlank() && wished == null)
+                    Log.errorf("%s wishes %s, who isn't in the file", row[0].trim(), row[k].trim());
+            }
+        }
+
+        return g;
+    }
+
+    /**
+     * Writes the results.
+     *
+     * @param results the results, in the order of the groups.
+     * @param options the parsed arguments.
+     * @param out the stream written to if there is no output file, it is flushed but not closed.
+     * @throws IOException iff the output can't be written.
+     * */
+    private static void write(List<BatchGenerator.Result> results, Options options, PrintStream out) throws IOException
+    {
+        if (options.output() == null)
+        {
+            writeTo(results, options, out);
+            return;
+        }
+
+        try (var file = new FileOutputStream(options.output()))
+        {
+            writeTo(results, options, file);
+        }
+    }
+
+    /**
+     * Writes the results to a stream, in the format of the arguments.
+     *
+     * @param results the results, in the order of the groups.
+     * @param options the parsed arguments.
+     * @param out the stream, it is flushed but not closed.
+     * @throws IOException iff the output can't be written.
+     * */
+    private static void writeTo(List<BatchGenerator.Result> results, Options options, OutputStream out) throws IOException
+    {
+        var writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+        if (options.format() == Format.JSON)
+            writeJSON(results, options.settings().seed(), writer);
+        else
+            writeCSV(results, writer);
+
+        if (writer.checkError())
+            throw new IOException("The output couldn't be written");
+    }
+
+    static void writeJSON(List<BatchGenerator.Result> results, long seed, PrintWriter w)
+    {
+        w.println('[');
+
+        for (var i = 0; i < results.size(); i++)
+        {
+            var res = results.get(i);
+            var g = res.group();
+
+            w.printf("  {\"group\": %s, \"seed\": %d", json(g.toString()), seed);
+
+            if (res.isSuccess())
+            {
+                var score = WishesGroupCreator.getScore(res.subgroups(), g);
+                w.printf(", \"score\": %s, \"subgroups\": [", Double.isFinite(score) ? Double.toString(score) : "null");
+
+                for (var k = 0; k < res.subgroups().size(); k++)
+                {
+                    var members = res.subgroups().get(k).stream().sorted().map(id -> json(g.getFromId(id).name())).toList();
+                    w.printf("%s[%s]", k == 0 ? "" : ", ", String.join(", ", members));
+                }
+
+                w.print(']');
+            }
+            else
+            {
+                var error = res.failure() == null ? "Interrupted" : res.failure().getLocalizedMessage();
+                w.printf(", \"error\": %s", json(error));
+            }
+
+            w.println(i == results.size() - 1 ? "}" : "},");
+        }
+
+        w.println(']');
+    }
+
+    static void writeCSV(List<BatchGenerator.Result> results, PrintWriter w)
+    {
+        w.println("group,subgroup,id,name");
+
+        for (var res : results)
+        {
+            var g = res.group();
+
+            for (var k = 0; k < res.subgroups().size(); k++)
+            {
+                for (var id : res.subgroups().get(k).stream().sorted().toList())
+                    w.printf("%s,%d,%d,%s%n", csv(g.toString()), k + 1, id, csv(g.getFromId(id).name()));
+            }
+        }
+    }
+
+    private static String json(String str)
+    {
+        var sb = new StringBuilder("\"");
+
+        for (var c : str.toCharArray())
+        {
+            switch (c)
+            {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        sb.append("\\u%04x".formatted((int) c));
+                    else
+                        sb.append(c);
+                }
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+
+    private static String csv(String str)
+    {
+        if (str.indexOf(',') == -1 && str.indexOf('"') == -1 && str.indexOf('\n') == -1)
+            return str;
+
+        return '"' + str.replace("\"", "\"\"") + '"';
+    }
+}
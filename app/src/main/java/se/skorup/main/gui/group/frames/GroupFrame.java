@@ -9,14 +9,15 @@ import se.skorup.main.gui.main.frames.MainFrame;
 import se.skorup.util.Log;
 import se.skorup.util.Utils;
 import se.skorup.util.io.EncryptedSerializationUtil;
+import se.skorup.util.io.Journal;
+import se.skorup.util.io.SaveFile;
 import se.skorup.util.io.SerializationUtil;
 
 import javax.swing.JFrame;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.io.File;
-import java.io.IOException;
-import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,15 +26,23 @@ import java.util.List;
  * */
 public class GroupFrame extends Frame
 {
-    /** The path where the save file lies. */
+    /** The directory of the {@link Journal journal}, where the groups are saved. */
+    public static final String SAVES_DIR = "%ssaves/".formatted(Utils.getFolderName());
+
+    /** The path where the serialized save file lies, it is only read to migrate it. */
     public static final String SAVES_PATH = "%ssaves/save.data".formatted(Utils.getFolderName());
 
+    /** The path where the {@link SaveFile binary save file} lies, it is only read to migrate it. */
+    public static final String SAVE_FILE_PATH = "%ssaves/groups.gasv".formatted(Utils.getFolderName());
+
     private final List<Group> groups = new ArrayList<>();
 
     private final MainFrame mf;
 
     private final GroupPanel gp;
 
+    private Journal journal;
+
     /**
      * Creates a new GroupFrame.
      *
@@ -51,54 +60,43 @@ public class GroupFrame extends Frame
     }
 
     /**
-     * Saves the groups.
+     * Saves the groups. Every edit is already given to the journal,
+     * so this only waits for the last ones to be written.
      * */
     private void save()
     {
-        try
-        {
-            Log.debug("Starting saving process.");
-            SerializationUtil.createFileIfNotExists(new File(SAVES_PATH));
-            EncryptedSerializationUtil.serializeObject(SAVES_PATH + ".enc", (Serializable) groups);
-            Log.debug("Saving process finished correctly.");
-        }
-        catch (Exception e)
-        {
-            Log.errorf("Encrypted saving process failed: %s", e.getLocalizedMessage());
-
-            // If saving failed, then try the unencrypted route.
-            try
-            {
-                SerializationUtil.serializeObject(SAVES_PATH, (Serializable) groups);
-                Log.debug("Saving process finished correctly, although unencrypted.");
-            }
-            catch (IOException ex)
-            {
-                Log.errorf("Unencrypted saving process failed: %s", e.getLocalizedMessage());
-            }
-        }
+        if (journal == null)
+            return;
+
+        Log.debug("Starting saving process.");
+        journal.close();
+        Log.debug("Saving process finished correctly.");
     }
 
     /**
-     * Loads the save file.
+     * Loads the groups from the journal. If there is no journal yet, the
+     * old save files are migrated to it. They are kept as they are, as
+     * a backup, but they aren't read again once the journal is written.
      * */
     private void loadSave()
     {
         try
         {
-            if (new File(SAVES_PATH + ".enc").exists()) // First try the encrypted route.
-            {
-                groups.addAll(EncryptedSerializationUtil.deserializeObject(SAVES_PATH + ".enc"));
-                return;
-            }
-
-            if (!new File(SAVES_PATH).exists()) // Then try the unencrypted route.
-            {
-                Log.debug("No save file found.");
-                return;
-            }
+            var dir = Path.of(SAVES_DIR);
+
+            // The old save is read before the journal writes anything, so if it
+            // can't be read nothing is written, and it is tried again next time.
+            var old = Journal.exists(dir) ? List.<Group>of() : loadOldSave();
+            if (!old.isEmpty())
+                Log.debug("Migrating the old save file.");
+
+            journal = Journal.open(
+                dir, EncryptedSerializationUtil::encrypt, EncryptedSerializationUtil::decrypt, old
+            );
 
-            groups.addAll(SerializationUtil.deserializeObject(SAVES_PATH));
+            groups.addAll(journal.getGroups());
+            if (groups.isEmpty())
+                Log.debug("No save file found.");
         }
         catch (Exception e)
         {
@@ -114,6 +112,55 @@ public class GroupFrame extends Frame
         }
     }
 
+    /**
+     * Loads the save files from before the journal.
+     *
+     * @return the saved groups, empty iff there are none.
+     * @throws Exception iff a save file exists but can't be read.
+     * */
+    private List<Group> loadOldSave() throws Exception
+    {
+        if (new File(SAVE_FILE_PATH + ".enc").exists())
+            return SaveFile.read(Path.of(SAVE_FILE_PATH + ".enc"), EncryptedSerializationUtil::decrypt);
+
+        if (new File(SAVE_FILE_PATH).exists())
+            return SaveFile.read(Path.of(SAVE_FILE_PATH), SaveFile.Layer.none());
+
+        if (new File(SAVES_PATH + ".enc").exists())
+            return EncryptedSerializationUtil.deserializeObject(SAVES_PATH + ".enc");
+
+        if (new File(SAVES_PATH).exists())
+            return SerializationUtil.deserializeObject(SAVES_PATH);
+
+        return List.of();
+    }
+
+    /**
+     * Adds a group, it is saved from now on.
+     *
+     * @param g the group to be added.
+     * */
+    public void addGroup(Group g)
+    {
+        groups.add(g);
+
+        if (journal != null)
+            journal.addGroup(g);
+    }
+
+    /**
+     * Removes a group, it is no longer saved.
+     *
+     * @param g the group to be removed.
+     * */
+    public void removeGroup(Group g)
+    {
+        groups.removeIf(x -> x == g);
+
+        if (journal != null)
+            journal.removeGroup(g);
+    }
+
     @Override
     public void init()
     {
@@ -4,7 +4,7 @@ import se.skorup.group.Group;
 import se.skorup.group.Person;
 import se.skorup.gui.callbacks.ActionCallback;
 import se.skorup.gui.components.buttons.Button;
-import se.skorup.gui.components.output.CSVLabel;
+import se.skorup.gui.components.output.CSVGrid;
 import se.skorup.gui.components.containers.Frame;
 import se.skorup.gui.components.output.Label;
 import se.skorup.gui.components.containers.Panel;
@@ -61,21 +61,19 @@ public class ImportFrame extends Frame implements KeyListener
 
     private State state = State.PERSON;
     private FrameState fs = FrameState.NORMAL;
-    private PersonLabelRecord wishPerson;
+    private PersonCell wishPerson;
     private Template template;
 
     private boolean isCtrlDown = false;
     private boolean flashing = false;
     private boolean hasClickedTemplate = false;
 
-    private CSVLabel[] selected = new CSVLabel[0];
-
-    private final PersonLabelRecord[][] labels;
-    private final String[][] data;
+    /** The id of the person of every cell, -1 iff the cell has no person. */
+    private final int[][] ids;
 
     private final List<ActionCallback<Group>> callbacks = new ArrayList<>();
     private final Set<Person> persons = new HashSet<>();
-    private final Map<Person, Set<PersonLabelRecord>> wishes = new HashMap<>();
+    private final Map<Person, Set<PersonCell>> wishes = new HashMap<>();
     private final Map<Person, Integer> personCount = new HashMap<>();
 
     private final Group g = new Group("");
@@ -100,14 +98,14 @@ public class ImportFrame extends Frame implements KeyListener
 
     private final Label lblInfo = new Label("ui.info.person", true);
 
-    private final Panel pCSV = new Panel(null);
     private final Panel pButtons = new Panel(new FlowLayout(FlowLayout.RIGHT));
     private final Panel pSelector = new Panel(null);
     private final Panel pInfo = new Panel(null);
     private final Panel pEditMode = new Panel(null);
     private final Panel pTemplateButtons = new Panel(new FlowLayout(FlowLayout.CENTER));
 
-    private final ScrollPane scrCSV = new ScrollPane(pCSV);
+    private final CSVGrid grid;
+    private final ScrollPane scrCSV;
 
     /**
      * Creates a new Frame.
@@ -118,8 +116,16 @@ public class ImportFrame extends Frame implements KeyListener
     {
         super("ui.title.csv");
 
-        this.data = data;
-        this.labels = new PersonLabelRecord[data.length][data.length];
+        this.ids = new int[data.length][];
+        this.grid = new CSVGrid(data);
+        this.scrCSV = new ScrollPane(grid);
+
+        for (var i = 0; i < data.length; i++)
+        {
+            ids[i] = new int[data[i].length];
+            Arrays.fill(ids[i], -1);
+        }
+
         init();
     }
 
@@ -134,7 +140,10 @@ public class ImportFrame extends Frame implements KeyListener
         if (!hasClickedTemplate)
         {
             for (var i : template)
-                labels[template.getY()][i.x()].label().setState(State.UNSELECTED);
+            {
+                grid.stopFlashing(template.getY(), i.x());
+                grid.setState(template.getY(), i.x(), State.UNSELECTED);
+            }
         }
 
         template = null;
@@ -190,103 +199,69 @@ public class ImportFrame extends Frame implements KeyListener
     }
 
     /**
-     * Handles hover enter foreach CSVLabel.
+     * Gets the person of a cell.
      *
-     * @param c the label itself.
-     * @param x the x-cord of the label.
-     * @param y the y-cord of the label.
+     * @param x the x-coord of the cell.
+     * @param y the y-coord of the cell.
+     * @return the person, or {@code null} iff the cell has no person.
      * */
-    private void hoverEnter(CSVLabel c, int x, int y)
+    private Person getPerson(int x, int y)
     {
+        return ids[x][y] == -1 ? null : new Person(grid.getText(x, y), ids[x][y]);
+    }
+
+    /**
+     * Handles hover enter foreach cell.
+     *
+     * @param c the cell.
+     * */
+    private void hoverEnter(CSVGrid.Cell c)
+    {
+        var x = c.x();
+        var y = c.y();
+
         if (fs.equals(FrameState.NORMAL) || fs.equals(FrameState.FILL_TEMPLATE_CREATING))
         {
-            c.setSavedBackground(c.getBackground());
-            c.setBackground(Utils.SELECTED_COLOR);
-            selected = new CSVLabel[1];
-            selected[0] = c;
+            grid.highlight(x, y);
 
             if (isCtrlDown)
                 clicked(c);
         }
         else if (fs.equals(FrameState.FILL_ROW))
         {
-            var rows = data[0].length;
-            selected = new CSVLabel[rows];
-
-            for (var i = 0; i < selected.length; i++)
-            {
-                if (labels[x][i] == null)
-                    continue;
-
-                var l = labels[x][i].label();
-                updateSelected(l, i);
-            }
+            for (var i = 0; i < grid.getColumnCount(x); i++)
+                grid.highlight(x, i);
         }
         else if (fs.equals(FrameState.FILL_COLUMN))
         {
-            var cols = data.length;
-            selected = new CSVLabel[cols];
-
-            for (var i = 0; i < selected.length; i++)
+            // This will skip the rows that have fewer fields than the longest row.
+            for (var i = 0; i < grid.getRowCount(); i++)
             {
-                if (labels[i][y] == null)
-                    continue;
-
-                var l = labels[i][y].label();
-                updateSelected(l, i);
+                if (grid.hasCell(i, y))
+                    grid.highlight(i, y);
             }
         }
         else if (fs.equals(FrameState.FILL_TEMPLATE_CREATED))
         {
-            selected = new CSVLabel[Math.min(data[0].length, template.size())];
-            var set = new HashSet<CSVLabel>();
-            var count = 0;
-
             for (var i : template)
             {
-                if (labels[x][i.x()] == null)
-                    continue;
-
-                var l = labels[x][i.x()].label();
-
-                if (set.contains(l))
+                if (!grid.hasCell(x, i.x()))
                     continue;
 
-                set.add(l);
-                l.setSavedBackground(l.getState().color);
-                l.setBackground(Utils.SELECTED_COLOR);
-                selected[count++] = l;
+                grid.setColor(x, i.x(), grid.getState(x, i.x()).color);
+                grid.highlight(x, i.x());
             }
         }
 
         this.requestFocus();
     }
 
-    /**
-     * Updates the selected array correctly.
-     * */
-    private void updateSelected(CSVLabel l, int i)
-    {
-        // This will happen if a row has fewer fields than the longest row.
-        if (l == null)
-            return;
-
-        l.setSavedBackground(l.getBackground());
-        l.setBackground(Utils.SELECTED_COLOR);
-        selected[i] = l;
-    }
-
     /**
      * The code that runs on hover exit.
      * */
     private void hoverExit()
     {
-        for (var l : selected)
-        {
-            if (l != null)
-                l.setBackground(l.getSavedBackground());
-        }
-
+        grid.clearHighlights();
         this.requestFocus();
     }
 
@@ -300,7 +275,7 @@ public class ImportFrame extends Frame implements KeyListener
         {
             for (var w : wishes.getOrDefault(p, new HashSet<>()))
             {
-                var id = w.p.id();
+                var id = w.p().id();
                 g.addWishItem(p.id(), id);
             }
         }
@@ -342,30 +317,21 @@ public class ImportFrame extends Frame implements KeyListener
      * */
     private void handlePerson(int x, int y)
     {
-        var pr = labels[x][y];
-        var p = pr.p();
-        var l = pr.label();
-
         if (fs.equals(FrameState.NORMAL)) // Normal selection.
         {
-            handlePersonSelectionLogic(x, y, p, l);
+            handlePersonSelectionLogic(x, y);
         }
         else if (fs.equals(FrameState.FILL_ROW)) // Fill row.
         {
-            for (var i = 0; i < selected.length; i++)
-            {
-                var label = labels[x][i].label();
-                var person = labels[x][i].p();
-                handlePersonSelectionLogic(x, i, person, label);
-            }
+            for (var i = 0; i < grid.getColumnCount(x); i++)
+                handlePersonSelectionLogic(x, i);
         }
         else if (fs.equals(FrameState.FILL_COLUMN)) // Fill column
         {
-            for (var i = 0; i < selected.length; i++)
+            for (var i = 0; i < grid.getRowCount(); i++)
             {
-                var label = labels[i][y].label();
-                var person = labels[i][y].p();
-                handlePersonSelectionLogic(i, y, person, label);
+                if (grid.hasCell(i, y))
+                    handlePersonSelectionLogic(i, y);
             }
         }
 
@@ -378,37 +344,33 @@ public class ImportFrame extends Frame implements KeyListener
      *
      * @param x the current x-coord.
      * @param y the current y-coord.
-     * @param p the current person of the position.
-     * @param label the label of position (x, y).
      * */
-    private void handlePersonSelectionLogic(int x, int y, Person p, CSVLabel label)
+    private void handlePersonSelectionLogic(int x, int y)
     {
-        if (label.getState().equals(State.PERSON)) // Deselection.
+        var p = getPerson(x, y);
+
+        if (grid.getState(x, y).equals(State.PERSON)) // Deselection.
         {
             safeRemovePerson(p);
-            label.setSavedBackground(UNSELECTED_COLOR);
-            label.setBackground(UNSELECTED_COLOR);
             var wishes =
                     Optional.ofNullable(this.wishes.remove(p))
                             .orElse(new HashSet<>());
 
-            for (var plr : wishes)
+            for (var pc : wishes)
             {
-                plr.label().setSavedBackground(Color.WHITE);
-                plr.label().setBackground(Color.WHITE);
-                plr.label().setState(State.UNSELECTED);
-                personCount.put(plr.p, personCount.getOrDefault(plr.p, 1) - 1);
+                grid.setState(pc.x(), pc.y(), State.UNSELECTED);
+                personCount.put(pc.p(), personCount.getOrDefault(pc.p(), 1) - 1);
             }
 
-            label.setState(State.UNSELECTED);
-            labels[x][y] = labels[x][y].swapPerson(null);
+            grid.setState(x, y, State.UNSELECTED);
+            ids[x][y] = -1;
         }
         else // Selection
         {
-            p = handleAlreadyExistingPerson(x, y, p, label);
+            p = handleAlreadyExistingPerson(x, y, p);
 
             if (p != null)
-                label.setState(State.PERSON);
+                grid.setState(x, y, State.PERSON);
         }
     }
 
@@ -418,27 +380,29 @@ public class ImportFrame extends Frame implements KeyListener
      * @param x the x-coord of the existing person.
      * @param y the y-coord of the existing person.
      * @param p the already existing person
-     * @param l the label that's affected.
      * @return the person that has been found or created.
      * */
-    private Person handleAlreadyExistingPerson(int x, int y, Person p, CSVLabel l)
+    private Person handleAlreadyExistingPerson(int x, int y, Person p)
     {
         if (p == null)
         {
-            if (g.getPersonFromName(l.getText()).isEmpty())
+            var text = grid.getText(x, y);
+            var found = g.getPersonFromName(text);
+
+            if (found.isEmpty())
             {
-                p = new Person(l.getText(), g.registerPerson(l.getText()));
+                p = new Person(text, g.registerPerson(text));
                 persons.add(p);
                 personCount.put(p, personCount.getOrDefault(p, 0) + 1);
             }
             else
             {
-                p = g.getPersonFromName(l.getText()).get(0);
+                p = found.getFirst();
                 personCount.put(p, personCount.getOrDefault(p, 0) + 1);
             }
         }
 
-        labels[x][y] = labels[x][y].swapPerson(p);
+        ids[x][y] = p.id();
 
         return p;
     }
@@ -467,71 +431,67 @@ public class ImportFrame extends Frame implements KeyListener
     /**
      * Handles a wish click.
      *
-     * @param x the x-coord of the label.
-     * @param y the y-coord of the label.
+     * @param x the x-coord of the cell.
+     * @param y the y-coord of the cell.
      * */
     private void handleWish(int x, int y)
     {
-        var pr = labels[x][y];
-        var p = pr.p();
-        var l = pr.label();
-        var s = l.getState();
+        var pc = new PersonCell(x, y, getPerson(x, y));
+        var p = pc.p();
+        var s = grid.getState(x, y);
 
         if (s.equals(State.PERSON) && p != null && wishPerson == null) // First wish person
         {
-            wishPerson = labels[x][y];
+            wishPerson = pc;
             wishes.put(p, wishes.getOrDefault(p, new HashSet<>()));
-            l.startFlashing(500, PERSON_COLOR, WISH_COLOR);
+            grid.startFlashing(x, y, PERSON_COLOR, WISH_COLOR);
             Log.debug("First wish person");
-            l.setState(State.WISH);
+            grid.setState(x, y, State.WISH);
         }
         else if (s.equals(State.UNSELECTED) && wishPerson == null && !persons.contains(p)) // First wish person and someone isn't a person
         {
-            p = handleAlreadyExistingPerson(x, y, p, l);
+            p = handleAlreadyExistingPerson(x, y, p);
 
             if (p == null)
                 return;
 
-            l.setSavedBackground(PERSON_COLOR);
-            l.setBackground(PERSON_COLOR);
-            wishPerson = labels[x][y];
+            grid.setColor(x, y, PERSON_COLOR);
+            wishPerson = new PersonCell(x, y, p);
             wishes.put(p, wishes.getOrDefault(p, new HashSet<>()));
-            l.startFlashing(500, PERSON_COLOR, WISH_COLOR);
+            grid.startFlashing(x, y, PERSON_COLOR, WISH_COLOR);
             Log.debug("First wish person and someone isn't a person");
-            l.setState(State.WISH);
+            grid.setState(x, y, State.WISH);
         }
-        else if (s.equals(State.WISH) && wishPerson != null && wishPerson == labels[x][y]) // Deselection of wish person
+        else if (s.equals(State.WISH) && wishPerson != null && wishPerson.equals(pc)) // Deselection of wish person
         {
-            l.stopFlashing();
-            l.setSavedBackground(PERSON_COLOR); // Always no matter what revert to PERSON_COLOR
-            l.setBackground(PERSON_COLOR);
+            grid.stopFlashing(x, y);
             wishPerson = null;
             Log.debug("Deselection of wish person");
-            l.setState(State.PERSON);
+            grid.setState(x, y, State.PERSON); // Always no matter what revert to PERSON_COLOR
         }
         else if (s.equals(State.UNSELECTED) && wishPerson != null && (p == null || persons.contains(p))) // Adding wish.
         {
             var set = wishes.getOrDefault(wishPerson.p(), new HashSet<>());
 
-            p = handleAlreadyExistingPerson(x, y, p, l);
+            p = handleAlreadyExistingPerson(x, y, p);
 
             if (p == null)
                 return;
 
-            set.add(labels[x][y]);
+            set.add(new PersonCell(x, y, p));
             wishes.put(wishPerson.p(), set);
-            l.setState(State.WISH);
+            grid.setState(x, y, State.WISH);
         }
         else if (
-            s.equals(State.WISH) && wishPerson != null && wishPerson != pr &&
-            wishes.getOrDefault(wishPerson.p, new HashSet<>()).contains(pr)
+            s.equals(State.WISH) && wishPerson != null && !wishPerson.equals(pc) &&
+            wishes.getOrDefault(wishPerson.p(), new HashSet<>()).contains(pc)
         ) // Removing wish when selected wish person.
         {
             var set = wishes.getOrDefault(wishPerson.p(), new HashSet<>());
-            set.remove(pr);
+            set.remove(pc);
             wishes.put(wishPerson.p(), set);
-            l.setState(State.UNSELECTED);
-            labels[x][y] = labels[x][y].swapPerson(null);
+            grid.setState(x, y, State.UNSELECTED);
+            ids[x][y] = -1;
         }
         else
         {
@@ -556,14 +516,14 @@ public class ImportFrame extends Frame implements KeyListener
         }
         else if (fs.equals(FrameState.FILL_ROW)) // Filling row
         {
-            for (int i = 0; i < selected.length; i++)
+            for (int i = 0; i < grid.getColumnCount(x); i++)
             {
                 skipDeselectionLogic(x, i);
             }
         }
         else if (fs.equals(FrameState.FILL_COLUMN)) // Filling column
         {
-            for (int i = 0; i < selected.length; i++)
+            for (int i = 0; i < grid.getRowCount(); i++)
             {
                 skipDeselectionLogic(i, y);
             }
@@ -577,83 +537,84 @@ public class ImportFrame extends Frame implements KeyListener
      * The logic for deselecting when using the skip
      * state.
      *
-     * @param x the x-cord of the label.
-     * @param y the y-cord of the label.
+     * @param x the x-cord of the cell.
+     * @param y the y-cord of the cell.
      * */
     private void skipDeselectionLogic(int x, int y)
     {
-        if (labels[x][y] == null)
+        // This will happen if a row has fewer fields than the longest row.
+        if (!grid.hasCell(x, y))
             return;
 
-        var l = labels[x][y].label();
-        var p = labels[x][y].p();
+        var s = grid.getState(x, y);
 
-        if (l.getState().equals(State.SKIP))
+        if (s.equals(State.SKIP))
         {
-            l.setState(State.UNSELECTED);
+            grid.setState(x, y, State.UNSELECTED);
         }
         else
         {
-            if (l.getState().equals(State.PERSON))
-                handlePersonSelectionLogic(x, y, p, l);
-            else if (l.getState().equals(State.WISH) && wishPerson != null)
+            if (s.equals(State.PERSON))
+                handlePersonSelectionLogic(x, y);
+            else if (s.equals(State.WISH) && wishPerson != null)
                 handleWish(x, y);
-            else if (l.getState().equals(State.WISH))
+            else if (s.equals(State.WISH))
                 return;
 
-            l.setState(State.SKIP);
+            grid.setState(x, y, State.SKIP);
         }
     }
 
     /**
      * The code for handling clicks.
      *
-     * @param label the label that is clicked.
+     * @param c the cell that is clicked.
      * */
-    private void clicked(CSVLabel label)
+    private void clicked(CSVGrid.Cell c)
     {
+        var x = c.x();
+        var y = c.y();
+
         if (fs.equals(FrameState.FILL_TEMPLATE_CREATING))
         {
-            if (template != null && label.getXCoordinate() != template.getY())
+            if (template != null && x != template.getY())
                 return;
 
             if (template == null)
             {
-                template = new Template(label.getXCoordinate());
+                template = new Template(x);
                 flashing = false;
                 hasClickedTemplate = false;
             }
 
-            template.addTemplateItem(new TemplateItem(state, label.getYCoordinate()));
+            template.addTemplateItem(new TemplateItem(state, y));
             btnFinishTemplate.setEnabled(true);
             Log.debug(template);
-            Log.debugf("State: %s, Label: %s", label.getState(), label);
+            Log.debugf("State: %s, Cell: %s", grid.getState(x, y), grid.getText(x, y));
+
+            var color = grid.getColor(x, y);
 
             if (
                 state.equals(State.WISH) && !flashing &&
-                (label.getSavedBackground().equals(UNSELECTED_COLOR) ||
-                 label.getSavedBackground().equals(PERSON_COLOR))
+                (color.equals(UNSELECTED_COLOR) || color.equals(PERSON_COLOR))
             )
             {
                 flashing = true;
-                label.startFlashing(500, WISH_COLOR, PERSON_COLOR);
+                grid.startFlashing(x, y, WISH_COLOR, PERSON_COLOR);
             }
-            else if (label.isFlashing())
+            else if (grid.isFlashing(x, y))
             {
                 flashing = false;
-                label.stopFlashing();
-                label.setSavedBackground(PERSON_COLOR);
-                label.setBackground(PERSON_COLOR);
+                grid.stopFlashing(x, y);
+                grid.setColor(x, y, PERSON_COLOR);
             }
-            else if (!label.getSavedBackground().equals(UNSELECTED_COLOR))
+            else if (!color.equals(UNSELECTED_COLOR))
             {
-                label.setBackground(UNSELECTED_COLOR);
-                label.setSavedBackground(UNSELECTED_COLOR);
+                grid.setColor(x, y, UNSELECTED_COLOR);
             }
             else
             {
-                label.setBackground(state.color);
-                label.setSavedBackground(state.color);
+                grid.setColor(x, y, state.color);
             }
         }
         else if (fs.equals(FrameState.FILL_TEMPLATE_CREATED))
@@ -672,13 +633,12 @@ public class ImportFrame extends Frame implements KeyListener
 
                 state = i.state();
 
-                if (labels[label.getXCoordinate()][i.x()] == null)
+                if (!grid.hasCell(x, i.x()))
                     continue;
 
-                var label1 = labels[label.getXCoordinate()][i.x()].label;
-                clicked(label1);
+                clicked(new CSVGrid.Cell(x, i.x()));
 
-                Log.debugf("Label just handled: %s", label1);
+                Log.debugf("Cell just handled: %s (%s)", grid.getText(x, i.x()), grid.getState(x, i.x()));
             }
 
             // Reset state.
@@ -689,19 +649,10 @@ public class ImportFrame extends Frame implements KeyListener
         {
             switch (state)
             {
-                case PERSON -> handlePerson(
-                        label.getXCoordinate(),
-                        label.getYCoordinate()
-                );
-                case WISH -> handleWish(
-                        label.getXCoordinate(),
-                        label.getYCoordinate()
-                );
-                case SKIP -> handleSkip(
-                        label.getXCoordinate(),
-                        label.getYCoordinate()
-                );
-                default -> label.setState(state);
+                case PERSON -> handlePerson(x, y);
+                case WISH -> handleWish(x, y);
+                case SKIP -> handleSkip(x, y);
+                default -> grid.setState(x, y, state);
             }
         }
 
@@ -734,35 +685,15 @@ public class ImportFrame extends Frame implements KeyListener
         this.addKeyListener(this);
 
         cp.setLayout(new BorderLayout());
-        pCSV.setLayout(new GridLayout(data.length, data[0].length));
         pSelector.setLayout(new BoxLayout(pSelector, BoxLayout.Y_AXIS));
         pInfo.setLayout(new BoxLayout(pInfo, BoxLayout.Y_AXIS));
         pEditMode.setLayout(new BoxLayout(pEditMode, BoxLayout.Y_AXIS));
 
         scrCSV.setBorder(BorderFactory.createEmptyBorder());
 
-        var maxCols = Arrays.stream(data)
-                            .mapToInt(a -> a.length)
-                            .max()
-                            .orElse(0);
-
-        for (var i = 0; i < data.length; i++)
-        {
-            for (var ii = 0; ii < data[i].length; ii++)
-            {
-                var label = new CSVLabel(data[i][ii], i, ii, Color.WHITE, Color.DARK_GRAY);
-                var fi = i;
-                var fii = ii;
-                label.addEnterEffect(c -> hoverEnter(c, fi, fii));
-                label.addExitEffect(c -> hoverExit());
-                label.addActionCallback(this::clicked);
-                pCSV.add(label);
-                labels[i][ii] = new PersonLabelRecord(label, null);
-            }
-
-            for (var ii = data[i].length; ii < maxCols; ii++)
-                pCSV.add(new Label(" "));
-        }
+        grid.addEnterEffect(this::hoverEnter);
+        grid.addExitEffect(c -> hoverExit());
+        grid.addActionCallback(this::clicked);
 
         btnAdd.addActionListener(e -> addGroup());
         btnCancel.addActionListener(e -> this.dispose());
@@ -878,9 +809,8 @@ public class ImportFrame extends Frame implements KeyListener
 
             for (var i : template)
             {
-                var label = labels[template.getY()][i.x()].label;
-                label.stopFlashing();
-                label.setState(State.UNSELECTED);
+                grid.stopFlashing(template.getY(), i.x());
+                grid.setState(template.getY(), i.x(), State.UNSELECTED);
             }
 
             setLabelInfoText();
@@ -963,19 +893,15 @@ public class ImportFrame extends Frame implements KeyListener
     }
 
 
-    /** The record for keeping tack on label and person relationship. */
-    private record PersonLabelRecord(CSVLabel label, Person p)
+    /**
+     * The record for keeping tack on cell and person relationship.
+     *
+     * @param x the x-coord of the cell.
+     * @param y the y-coord of the cell.
+     * @param p the person of the cell.
+     * */
+    private record PersonCell(int x, int y, Person p)
     {
-        /**
-         * Swaps the person of this record.
-         *
-         * @param p the new person.
-         * */
-        public PersonLabelRecord swapPerson(Person p)
-        {
-            return new PersonLabelRecord(label, p);
-        }
-
         @Override
         public String toString()
         {
@@ -1,9 +1,11 @@
 package se.skorup.main.gui.group.frames;
 
 import se.skorup.group.Group;
+import se.skorup.group.generation.BatchGenerator;
+import se.skorup.group.generation.GenerationSettings;
+import se.skorup.group.generation.GroupCreationFailedException;
 import se.skorup.group.generation.GroupCreator;
-import se.skorup.group.generation.RandomGroupCreator;
-import se.skorup.group.generation.WishesGroupCreator;
+import se.skorup.group.generation.InfeasibleGroupsException;
 import se.skorup.group.progress.Progress;
 import se.skorup.gui.components.buttons.Button;
 import se.skorup.gui.components.containers.ComponentContainer;
@@ -13,14 +15,13 @@ import se.skorup.gui.components.containers.Panel;
 import se.skorup.gui.components.progress.ProgressBar;
 import se.skorup.gui.dialog.Dialog;
 import se.skorup.gui.dialog.MessageDialog;
-import se.skorup.main.gui.group.helper.Creator;
-import se.skorup.main.gui.group.helper.GenerationSettings;
 import se.skorup.main.gui.group.helper.ProgressReport;
 import se.skorup.main.gui.group.panels.CreatorPanel;
 import se.skorup.main.gui.group.panels.GenerationSettingsPanel;
 import se.skorup.main.gui.group.panels.SubgroupDisplayPanel;
 import se.skorup.util.Log;
 import se.skorup.util.PrinterUtil;
+import se.skorup.util.localization.Localization;
 
 import javax.swing.JComponent;
 import javax.swing.JFrame;
@@ -30,10 +31,9 @@ import java.awt.FlowLayout;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.print.PrinterException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * The frame responsible for generating subgroups.
@@ -88,10 +88,7 @@ public class SubgroupFrame extends Frame implements ComponentListener
         creatorPanel.addCallback(c -> {
             p = new ProgressReport(progress);
 
-            if (c.equals(Creator.RANDOM))
-                creator = new RandomGroupCreator(p);
-            else
-                creator = new WishesGroupCreator(p);
+            creator = c.create(p, g.size());
 
             Log.debugf("Chosen creator: %s", creator);
             state = State.SIZE;
@@ -140,33 +137,18 @@ public class SubgroupFrame extends Frame implements ComponentListener
                 addComponents();
             });
 
+            Log.debugf("Generating groups with seed: %d", settings.seed());
+
             final List<List<Set<Integer>>> res;
-            if (settings.useMainGroups())
+            try
             {
-                var mg1 = settings.mg1Sizes();
-                var mg2 = settings.mg2Sizes();
-
-                var mg1Res = mg1.size() == 1 ?
-                             creator.generate(g.mainGroupOneAsGroup(), mg1.getFirst(), false) :
-                             creator.generate(g.mainGroupOneAsGroup(), mg1);
-
-                var mg2Res = mg1.size() == 1 ?
-                             creator.generate(g.mainGroupTwoAsGroup(), mg2.getFirst(), false) :
-                             creator.generate(g.mainGroupTwoAsGroup(), mg2);
-
-                var groups = new ArrayList<>(mg1Res.get(new Random().nextInt(0, mg1Res.size())));
-                groups.addAll(mg2Res.get(new Random().nextInt(0, mg2Res.size())));
-                res = List.of(groups);
+                res = BatchGenerator.generate(creator, g, settings);
             }
-            else
+            catch (GroupCreationFailedException e)
             {
-                var sizes = settings.sizes();
-
-                res = sizes.size() == 1 ?
-                      creator.generate(g, sizes.getFirst(), false) :
-                      creator.generate(g, sizes);
-
-                Log.debugf("Generated Groups: %s", res);
+                Log.errorf("Failed to create groups: %s", e.getLocalizedMessage());
+                SwingUtilities.invokeLater(() -> showFailure(e));
+                return;
             }
 
             SwingUtilities.invokeLater(() -> {
@@ -179,6 +161,35 @@ public class SubgroupFrame extends Frame implements ComponentListener
         }, "Generation thread :)").start();
     }
 
+    /**
+     * Shows why the generation failed, naming the conflicting persons
+     * if they are known, and goes back to the settings. It has to be
+     * called on the event dispatch thread; the dialog waits for the
+     * user on a thread of its own, since it would block the EDT.
+     *
+     * @param e the reason the generation failed.
+     * */
+    private void showFailure(GroupCreationFailedException e)
+    {
+        var info = e instanceof InfeasibleGroupsException ie ?
+                   Localization.getValuef(
+                       "ui.error.infeasiblef",
+                       ie.getConflicts().stream().map(id -> g.getFromId(id).name()).collect(Collectors.joining(", "))
+                   ) :
+                   e.getLocalizedMessage();
+
+        state = State.SIZE;
+        addComponents();
+
+        new Thread(() -> {
+            MessageDialog.create()
+                         .setLocalizedTitle("ui.title.generation-failure")
+                         .setLocalizedInformationf("ui.title.dialog.error", info)
+                         .setLocalizedButtonText("ui.button.dialog.ok")
+                         .show(Dialog.ERROR_MESSAGE);
+        }, "SubgroupFrame::showFailure-dialog").start();
+    }
+
     private String toPrintString()
     {
         var sb = new StringBuilder();
@@ -1,10 +0,0 @@
-package se.skorup.main.gui.group.helper;
-
-/**
- * The creator that is supposed to be
- * used when creating groups.
- * */
-public enum Creator
-{
-    RANDOM, WISH;
-}
@@ -1,5 +1,6 @@
 package se.skorup.main.gui.group.panels;
 
+import se.skorup.group.generation.Creator;
 import se.skorup.gui.callbacks.ActionCallback;
 import se.skorup.gui.components.buttons.Button;
 import se.skorup.gui.components.containers.ComponentContainer;
@@ -7,7 +8,6 @@ import se.skorup.gui.components.containers.FlowContainer;
 import se.skorup.gui.components.output.Label;
 import se.skorup.gui.components.containers.Panel;
 import se.skorup.gui.components.buttons.RadioButton;
-import se.skorup.main.gui.group.helper.Creator;
 
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
@@ -30,6 +30,8 @@ public class CreatorPanel extends Panel
 
     private final RadioButton radioRandom = new RadioButton("ui.radio.random");
     private final RadioButton radioWish = new RadioButton("ui.radio.wish");
+    private final RadioButton radioLocalSearch = new RadioButton("ui.radio.local-search");
+    private final RadioButton radioOptimal = new RadioButton("ui.radio.optimal");
 
     private final ButtonGroup bg = new ButtonGroup();
 
@@ -51,14 +53,33 @@ public class CreatorPanel extends Panel
     {
         radioRandom.setSelected(true);
         radioWish.setSelected(false);
+        radioLocalSearch.setSelected(false);
+        radioOptimal.setSelected(false);
 
         bg.add(radioRandom);
         bg.add(radioWish);
+        bg.add(radioLocalSearch);
+        bg.add(radioOptimal);
 
         lblHeader.setFont(new Font(Font.DIALOG, Font.BOLD, 32));
-        btnNext.addActionListener(e ->
-            callbacks.forEach(c -> c.action(radioRandom.isSelected() ? Creator.RANDOM : Creator.WISH)
-        ));
+        btnNext.addActionListener(e -> callbacks.forEach(c -> c.action(getSelectedCreator())));
+    }
+
+    /**
+     * Gets the creator of the selected radio button.
+     *
+     * @return the selected creator.
+     * */
+    private Creator getSelectedCreator()
+    {
+        if (radioRandom.isSelected())
+            return Creator.RANDOM;
+        else if (radioWish.isSelected())
+            return Creator.WISH;
+        else if (radioLocalSearch.isSelected())
+            return Creator.LOCAL_SEARCH;
+
+        return Creator.OPTIMAL;
     }
 
     /**
@@ -71,6 +92,8 @@ public class CreatorPanel extends Panel
         cont.add(new ComponentContainer(lblHeader));
         cont.add(new FlowContainer(radioRandom, FlowLayout.LEFT));
         cont.add(new FlowContainer(radioWish, FlowLayout.LEFT));
+        cont.add(new FlowContainer(radioLocalSearch, FlowLayout.LEFT));
+        cont.add(new FlowContainer(radioOptimal, FlowLayout.LEFT));
         cont.add(new FlowContainer(btnNext, FlowLayout.RIGHT));
 
         this.add(new ComponentContainer(cont), BorderLayout.CENTER);
@@ -1,5 +1,6 @@
 package se.skorup.main.gui.group.panels;
 
+import se.skorup.group.generation.GenerationSettings;
 import se.skorup.gui.callbacks.ActionCallback;
 import se.skorup.gui.components.buttons.Button;
 import se.skorup.gui.components.buttons.CheckBox;
@@ -12,7 +13,6 @@ import se.skorup.gui.components.buttons.RadioButton;
 import se.skorup.gui.components.input.TextField;
 import se.skorup.gui.dialog.MessageDialog;
 import se.skorup.main.gui.group.frames.SubgroupFrame;
-import se.skorup.main.gui.group.helper.GenerationSettings;
 import se.skorup.util.Utils;
 import se.skorup.util.localization.Localization;
 
@@ -26,6 +26,7 @@ import java.awt.GridLayout;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * The panel responsible for getting the size
@@ -82,7 +83,7 @@ public class GenerationSettingsPanel extends Panel
                 if (mg1.isEmpty() || mg2.isEmpty())
                     return;
 
-                c.action(new GenerationSettings(true, List.of(), mg1, mg2));
+                c.action(new GenerationSettings(true, List.of(), mg1, mg2, new SplittableRandom().nextLong()));
             }
             else
             {
@@ -91,7 +92,7 @@ public class GenerationSettingsPanel extends Panel
                 if (sizes.isEmpty())
                     return;
 
-                c.action(new GenerationSettings(false, sizes, List.of(), List.of()));
+                c.action(new GenerationSettings(false, sizes, List.of(), List.of(), new SplittableRandom().nextLong()));
             }
         }));
 
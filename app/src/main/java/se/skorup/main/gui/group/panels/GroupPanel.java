@@ -124,7 +124,7 @@ public class GroupPanel extends Panel
 
                     SwingUtilities.invokeLater(() -> {
                         var g = new Group(name);
-                        groups.add(g);
+                        gf.addGroup(g);
                         setGroups(groups);
                         gf.setVisible(true);
                     });
@@ -152,7 +152,7 @@ public class GroupPanel extends Panel
                                 SwingUtilities.invokeLater(() -> {
                                     if (g != null)
                                     {
-                                        groups.add(g);
+                                        gf.addGroup(g);
                                         setGroups(groups);
                                     }
 
@@ -187,7 +187,7 @@ public class GroupPanel extends Panel
                     return;
 
                 SwingUtilities.invokeLater(() -> { // Since the EDT owns the groups. Thread Confinement :)
-                    groups.remove(g);
+                    gf.removeGroup(g);
                     setGroups(groups);
                 });
             }, "Group deletion thread").start();
@@ -1,6 +1,7 @@
 package se.skorup.main.gui.group.panels;
 
 import se.skorup.group.Group;
+import se.skorup.group.generation.BalanceScorer;
 import se.skorup.group.generation.WishesGroupCreator;
 import se.skorup.gui.components.containers.ComponentContainer;
 import se.skorup.gui.components.containers.Panel;
@@ -24,6 +25,7 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -150,6 +152,8 @@ public class SubgroupDisplayPanel extends Panel
             contLeft.add(new Label(Localization.getValuef("ui.wishes.number", i, nbrWishes)));
         }
 
+        addBalance(contLeft, g, groups);
+
         var scr = new ScrollPane(personPanel, false);
         scr.setPreferredSize(new Dimension( this.getWidth(), this.getHeight() / 2));
 
@@ -164,6 +168,61 @@ public class SubgroupDisplayPanel extends Panel
         return new ComponentContainer(cont);
     }
 
+    /**
+     * Adds the balance of every attribute across the subgroups, i.e. the
+     * imbalance and the mean or the categories of each subgroup.
+     *
+     * @param cont the container the labels are added to.
+     * @param g the group that the subgroups are generated from.
+     * @param groups the generated groups.
+     * */
+    private void addBalance(Panel cont, Group g, List<Set<Integer>> groups)
+    {
+        var attributes = g.getAttributes();
+        if (attributes.isEmpty())
+            return;
+
+        // Only the persons in the subgroups, they might be from one of the main groups.
+        var snapshot = g.snapshot();
+        var members = snapshot.toIndices(groups);
+        var cg = snapshot.subgraph(Arrays.stream(members).flatMapToInt(Arrays::stream).toArray());
+        var indices = cg.toIndices(groups);
+        var balance = new BalanceScorer(cg, indices, new double[cg.attributeCount()]);
+
+        var lbl = new Label("ui.label.balance", true);
+        lbl.setFont(new Font(Font.DIALOG, Font.BOLD, 16));
+        cont.add(lbl);
+
+        for (var a = 0; a < cg.attributeCount(); a++)
+        {
+            var attribute = attributes.get(a);
+            cont.add(new Label(Localization.getValuef(
+                "ui.balance.attributef", attribute.name(), balance.imbalance(a)
+            )));
+
+            for (var i = 0; i < indices.length; i++)
+            {
+                if (cg.isNumeric(a))
+                {
+                    cont.add(new Label(Localization.getValuef("ui.balance.meanf", i + 1, balance.mean(a, i))));
+                    continue;
+                }
+
+                var counts = new StringBuilder();
+                for (var c = 0; c < cg.categoryCount(a); c++)
+                {
+                    if (balance.count(a, i, c) != 0)
+                        counts.append(counts.isEmpty() ? "" : ", ")
+                              .append(attribute.categories().get(c))
+                              .append(": ")
+                              .append(balance.count(a, i, c));
+                }
+
+                cont.add(new Label(Localization.getValuef("ui.balance.countf", i + 1, counts)));
+            }
+        }
+    }
+
     /**
      * Calculates the current number of wishes fulfilled for an id.
      *
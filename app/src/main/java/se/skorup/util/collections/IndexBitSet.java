@@ -0,0 +1,186 @@
+package se.skorup.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size set of indices in the range 0..capacity-1, stored
+ * as the bits of a long[]. The set operations work on 64 indices
+ * at the time and nothing allocates after the set has been created.
+ * */
+public class IndexBitSet
+{
+    private final long[] words;
+    private final int capacity;
+
+    /**
+     * Creates a new, empty, IndexBitSet.
+     *
+     * @param capacity the exclusive upper bound of the indices.
+     * */
+    public IndexBitSet(int capacity)
+    {
+        this.capacity = capacity;
+        this.words = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Adds an index to the set.
+     *
+     * @param i the index to be added.
+     * */
+    public void set(int i)
+    {
+        words[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Removes an index from the set.
+     *
+     * @param i the index to be removed.
+     * */
+    public void clear(int i)
+    {
+        words[i >>> 6] &= ~(1L << i);
+    }
+
+    /**
+     * Checks if an index is in the set.
+     *
+     * @param i the index to be checked.
+     * @return {@code true} iff i is in the set.
+     * */
+    public boolean get(int i)
+    {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Adds all the indices, 0..capacity-1, to the set.
+     * */
+    public void setAll()
+    {
+        Arrays.fill(words, -1L);
+
+        if ((capacity & 63) != 0)
+            words[words.length - 1] = -1L >>> (64 - (capacity & 63));
+    }
+
+    /**
+     * Removes all the indices from the set.
+     * */
+    public void clearAll()
+    {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Sets this set to a &#8745; b<sup>c</sup>, i.e. all the
+     * indices that are in a, but not in b. All the sets must
+     * have the same capacity.
+     *
+     * @param a the set A.
+     * @param b the set B.
+     * */
+    public void andNot(IndexBitSet a, IndexBitSet b)
+    {
+        for (var i = 0; i < words.length; i++)
+            words[i] = a.words[i] & ~b.words[i];
+    }
+
+    /**
+     * Counts the indices in the set.
+     *
+     * @return the number of indices in the set.
+     * */
+    public int cardinality()
+    {
+        var cnt = 0;
+
+        for (var w : words)
+            cnt += Long.bitCount(w);
+
+        return cnt;
+    }
+
+    /**
+     * Checks if the set is empty.
+     *
+     * @return {@code true} iff the set is empty.
+     * */
+    public boolean isEmpty()
+    {
+        for (var w : words)
+        {
+            if (w != 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the first index in the set that is
+     * greater than or equal to from.
+     *
+     * @param from the index to start searching from.
+     * @return the next index in the set, or -1 iff there is none.
+     * */
+    public int nextSetBit(int from)
+    {
+        if (from >= capacity)
+            return -1;
+
+        var u = from >>> 6;
+        var w = words[u] & (-1L << from);
+
+        while (true)
+        {
+            if (w != 0)
+                return (u << 6) + Long.numberOfTrailingZeros(w);
+
+            if (++u == words.length)
+                return -1;
+
+            w = words[u];
+        }
+    }
+
+    /**
+     * Gets the n:th index in the set, counting from zero
+     * in increasing order.
+     *
+     * @param n the number of the index, 0 &le; n &lt; cardinality().
+     * @return the n:th index, or -1 iff there are not that many indices.
+     * */
+    public int nthSetBit(int n)
+    {
+        for (var u = 0; u < words.length; u++)
+        {
+            var w = words[u];
+            var cnt = Long.bitCount(w);
+
+            if (n >= cnt)
+            {
+                n -= cnt;
+                continue;
+            }
+
+            for (; n > 0; n--)
+                w &= w - 1; // Drops the lowest bit.
+
+            return (u << 6) + Long.numberOfTrailingZeros(w);
+        }
+
+        return -1;
+    }
+
+    /**
+     * The exclusive upper bound of the indices.
+     *
+     * @return the capacity of the set.
+     * */
+    public int capacity()
+    {
+        return capacity;
+    }
+}
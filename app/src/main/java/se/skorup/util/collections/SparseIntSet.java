@@ -0,0 +1,154 @@
+package se.skorup.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive ints in the range 0..capacity-1. Adding,
+ * removing, testing membership and getting the i:th element are
+ * all O(1) and none of them allocates. The order of the elements
+ * is not stable, removing an element moves the last element into
+ * its place.
+ * */
+public class SparseIntSet
+{
+    private final int[] dense;
+    private final int[] sparse;
+    private int size;
+
+    /**
+     * Creates a new, empty, SparseIntSet.
+     *
+     * @param capacity the exclusive upper bound of the elements.
+     * */
+    public SparseIntSet(int capacity)
+    {
+        this.dense = new int[capacity];
+        this.sparse = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Creates a new SparseIntSet containing all the
+     * elements in the range 0..capacity-1.
+     *
+     * @param capacity the exclusive upper bound of the elements.
+     * @return a full SparseIntSet.
+     * */
+    public static SparseIntSet full(int capacity)
+    {
+        var set = new SparseIntSet(capacity);
+
+        for (var i = 0; i < capacity; i++)
+        {
+            set.dense[i] = i;
+            set.sparse[i] = i;
+        }
+
+        set.size = capacity;
+        return set;
+    }
+
+    /**
+     * Adds an element to the set.
+     *
+     * @param e the element to be added.
+     * @return {@code true} iff the element wasn't already in the set.
+     * */
+    public boolean add(int e)
+    {
+        if (contains(e))
+            return false;
+
+        dense[size] = e;
+        sparse[e] = size++;
+        return true;
+    }
+
+    /**
+     * Removes an element from the set.
+     *
+     * @param e the element to be removed.
+     * @return {@code true} iff the element was in the set.
+     * */
+    public boolean remove(int e)
+    {
+        if (!contains(e))
+            return false;
+
+        var pos = sparse[e];
+        var last = dense[--size];
+        dense[pos] = last;
+        sparse[last] = pos;
+        return true;
+    }
+
+    /**
+     * Checks if the set contains an element.
+     *
+     * @param e the element to be searched for.
+     * @return {@code true} iff e is in the set.
+     * */
+    public boolean contains(int e)
+    {
+        if (e < 0 || e >= sparse.length)
+            return false;
+
+        var pos = sparse[e];
+        return pos < size && dense[pos] == e;
+    }
+
+    /**
+     * Gets the i:th element of the set.
+     *
+     * @param i the position of the element, 0 &le; i &lt; size().
+     * @return the element at position i.
+     * */
+    public int get(int i)
+    {
+        return dense[i];
+    }
+
+    /**
+     * The number of elements in the set.
+     *
+     * @return the size of the set.
+     * */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Checks if the set is empty.
+     *
+     * @return {@code true} iff the set is empty.
+     * */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the elements of the set.
+     * */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Copies the elements to a new array.
+     *
+     * @return an array with the elements of the set.
+     * */
+    public int[] toArray()
+    {
+        return Arrays.copyOf(dense, size);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,215 @@
+package se.skorup.util.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the binary format of a {@link BinaryWriter} from a channel, through a buffer.
+ * A file that ends too early, or a varint that is too long, gives an IOException.
+ * */
+public final class BinaryReader implements Closeable
+{
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a new BinaryReader, with the default size of the buffer.
+     *
+     * @param channel the channel to read from.
+     * */
+    public BinaryReader(ReadableByteChannel channel)
+    {
+        this(channel, BinaryWriter.BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new BinaryReader.
+     *
+     * @param channel the channel to read from.
+     * @param bufferSize the size of the buffer, in bytes.
+     * */
+    public BinaryReader(ReadableByteChannel channel, int bufferSize)
+    {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 16)).flip();
+    }
+
+    /**
+     * Makes sure there are some bytes in the buffer.
+     *
+     * @throws EOFException iff the channel ends before that.
+     * */
+    private void require(int bytes) throws IOException
+    {
+        if (buffer.remaining() >= bytes)
+            return;
+
+        buffer.compact();
+
+        while (buffer.position() < bytes)
+        {
+            if (channel.read(buffer) == -1)
+            {
+                buffer.flip();
+                throw new EOFException("Expected %d more bytes".formatted(bytes - buffer.remaining()));
+            }
+        }
+
+        buffer.flip();
+    }
+
+    /**
+     * Checks if there is anything left to read.
+     *
+     * @return {@code true} iff the channel has ended.
+     * @throws IOException iff the channel fails.
+     * */
+    public boolean isAtEnd() throws IOException
+    {
+        if (buffer.hasRemaining())
+            return false;
+
+        buffer.clear();
+
+        int read;
+        do read = channel.read(buffer); while (read == 0);
+
+        buffer.flip();
+        return read == -1;
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return the byte, from 0 to 255.
+     * @throws IOException iff the channel fails or ends.
+     * */
+    public int readByte() throws IOException
+    {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Reads a varint, that is a non-negative int.
+     *
+     * @return the value.
+     * @throws IOException iff the channel fails or ends, or the value isn't an int.
+     * */
+    public int readVarInt() throws IOException
+    {
+        var value = readVarLong();
+
+        if (value < 0 || value > Integer.MAX_VALUE)
+            throw new IOException("Expected an int, got: %d".formatted(value));
+
+        return (int) value;
+    }
+
+    /**
+     * Reads a varint as a long.
+     *
+     * @return the value.
+     * @throws IOException iff the channel fails or ends, or the varint is too long.
+     * */
+    public long readVarLong() throws IOException
+    {
+        var value = 0L;
+
+        for (var shift = 0; shift < 70; shift += 7)
+        {
+            var b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return value;
+        }
+
+        throw new IOException("The varint is too long");
+    }
+
+    /**
+     * Reads an int, written as its four bytes.
+     *
+     * @return the value.
+     * @throws IOException iff the channel fails or ends.
+     * */
+    public int readInt() throws IOException
+    {
+        require(4);
+        return buffer.getInt();
+    }
+
+    /**
+     * Reads a long, written as its eight bytes.
+     *
+     * @return the value.
+     * @throws IOException iff the channel fails or ends.
+     * */
+    public long readLong() throws IOException
+    {
+        require(8);
+        return buffer.getLong();
+    }
+
+    /**
+     * Reads a double.
+     *
+     * @return the value.
+     * @throws IOException iff the channel fails or ends.
+     * */
+    public double readDouble() throws IOException
+    {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Reads a string.
+     *
+     * @return the string.
+     * @throws IOException iff the channel fails or ends.
+     * */
+    public String readString() throws IOException
+    {
+        return new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads some bytes.
+     *
+     * @param length the number of bytes.
+     * @return the bytes.
+     * @throws IOException iff the channel fails or ends.
+     * */
+    public byte[] readBytes(int length) throws IOException
+    {
+        var res = new byte[length];
+        var offset = 0;
+
+        while (offset < length)
+        {
+            require(1);
+            var n = Math.min(buffer.remaining(), length - offset);
+            buffer.get(res, offset, n);
+            offset += n;
+        }
+
+        return res;
+    }
+
+    /**
+     * Closes the channel.
+     *
+     * @throws IOException iff the channel fails.
+     * */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,225 @@
+package se.skorup.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a compact binary format to a channel, through a buffer. The
+ * integers are written as varints, i.e. seven bits per byte with the
+ * high bit set on every byte but the last, so small numbers take one
+ * byte. It is read by a {@link BinaryReader}.
+ * */
+public final class BinaryWriter implements Closeable
+{
+    /** The default size of the buffer. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /** The number of bytes written to the channel. */
+    private long written;
+
+    /**
+     * Creates a new BinaryWriter, with the default size of the buffer.
+     *
+     * @param channel the channel to write to.
+     * */
+    public BinaryWriter(WritableByteChannel channel)
+    {
+        this(channel, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new BinaryWriter.
+     *
+     * @param channel the channel to write to.
+     * @param bufferSize the size of the buffer, in bytes.
+     * */
+    public BinaryWriter(WritableByteChannel channel, int bufferSize)
+    {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 16));
+    }
+
+    /**
+     * Makes sure there is room for some bytes in the buffer.
+     * */
+    private void ensure(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+            drain();
+    }
+
+    /**
+     * Writes the content of the buffer to the channel.
+     * */
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        written += buffer.remaining();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param b the byte, only the lowest eight bits are written.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeByte(int b) throws IOException
+    {
+        ensure(1);
+        buffer.put((byte) b);
+    }
+
+    /**
+     * Writes a non-negative int as a varint.
+     *
+     * @param value the value.
+     * @throws IOException iff the channel fails.
+     * @throws IllegalArgumentException iff the value is negative.
+     * */
+    public void writeVarInt(int value) throws IOException, IllegalArgumentException
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("A varint can't be negative, got: %d".formatted(value));
+
+        writeVarLong(value);
+    }
+
+    /**
+     * Writes a long as a varint, a negative long takes ten bytes.
+     *
+     * @param value the value.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeVarLong(long value) throws IOException
+    {
+        ensure(10);
+
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes an int, as its four bytes.
+     *
+     * @param value the value.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeInt(int value) throws IOException
+    {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Writes a long, as its eight bytes.
+     *
+     * @param value the value.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeLong(long value) throws IOException
+    {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Writes a double, as its eight bytes.
+     *
+     * @param value the value.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeDouble(double value) throws IOException
+    {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Writes a string, as the number of bytes followed by the bytes in UTF-8.
+     *
+     * @param str the string.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeString(String str) throws IOException
+    {
+        var bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes some bytes.
+     *
+     * @param bytes the bytes.
+     * @param offset the index of the first byte to write.
+     * @param length the number of bytes to write.
+     * @throws IOException iff the channel fails.
+     * */
+    public void writeBytes(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (length > buffer.capacity())
+        {
+            drain();
+            var wrapped = ByteBuffer.wrap(bytes, offset, length);
+            written += length;
+
+            while (wrapped.hasRemaining())
+                channel.write(wrapped);
+
+            return;
+        }
+
+        ensure(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Gets the number of bytes written, including the ones in the buffer.
+     *
+     * @return the position of the next byte that is written.
+     * */
+    public long position()
+    {
+        return written + buffer.position();
+    }
+
+    /**
+     * Writes everything in the buffer to the channel.
+     *
+     * @throws IOException iff the channel fails.
+     * */
+    public void flush() throws IOException
+    {
+        drain();
+    }
+
+    /**
+     * Flushes the buffer and closes the channel.
+     *
+     * @throws IOException iff the channel fails.
+     * */
+    @Override
+    public void close() throws IOException
+    {
+        try (channel)
+        {
+            flush();
+        }
+    }
+}
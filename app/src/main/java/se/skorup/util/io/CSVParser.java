@@ -0,0 +1,500 @@
+package se.skorup.util.io;
+
+import se.skorup.util.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A streaming parser of CSV-files, the rows are read one at a time so
+ * only the row that is being read has to fit in memory. The bytes are
+ * decoded as UTF-8 into a buffer of chars, and the cells are read right
+ * out of the buffer:
+ * <ul>
+ *     <li>the separator is a comma iff the row contains one, otherwise a semicolon,
+ *         unless the parser is given a separator.</li>
+ *     <li>a cell that starts with a quote is quoted, it ends at the next single
+ *         quote and two quotes in it are one quote. It may contain separators
+ *         and line breaks.</li>
+ *     <li>every cell is converted to name case, by {@link Utils#toNameCase(String)}.</li>
+ *     <li>the empty cells at the end of a row, and the empty rows, are skipped.</li>
+ * </ul>
+ * The same name is always the same instance of the string, so the rows
+ * of a large file share their names, and a name that has been read before
+ * doesn't create any garbage.
+ * */
+public final class CSVParser implements Closeable
+{
+    /** The default size of the buffers, it grows iff a row is larger. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private static final char BOM = '\uFEFF';
+
+    private final ReadableByteChannel channel;
+    private final char separator;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                                                                 .onMalformedInput(CodingErrorAction.REPLACE)
+                                                                 .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes;
+    private final Names names = new Names();
+
+    /** The decoded chars, the current row starts at start and the chars end at limit. */
+    private char[] chars;
+    private int start;
+    private int limit;
+    private boolean eof;
+    private boolean first = true;
+    private boolean skipLineFeed;
+    private boolean endsInQuote;
+
+    /** The cells of the current row, as pairs of offsets from the start of the row. */
+    private int[] cells = new int[32];
+
+    /**
+     * Creates a new CSVParser, that finds the separator of every row.
+     *
+     * @param channel the channel to read from.
+     * */
+    public CSVParser(ReadableByteChannel channel)
+    {
+        this(channel, (char) 0, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new CSVParser.
+     *
+     * @param channel the channel to read from.
+     * @param separator the separator of the cells, 0 to find the separator of every row.
+     * @param bufferSize the size of the buffers.
+     * */
+    public CSVParser(ReadableByteChannel channel, char separator, int bufferSize)
+    {
+        this.channel = channel;
+        this.separator = separator;
+        this.bytes = ByteBuffer.allocate(Math.max(bufferSize, 16));
+        this.chars = new char[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Opens a CSV-file.
+     *
+     * @param path the path of the file.
+     * @return the parser of the file.
+     * @throws IOException iff the file can't be opened.
+     * */
+    public static CSVParser open(Path path) throws IOException
+    {
+        return new CSVParser(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Reads the next row that isn't empty.
+     *
+     * @return the name case cells of the row, {@code null} iff there are no more rows.
+     * @throws IOException iff the reading fails.
+     * */
+    public String[] readRow() throws IOException
+    {
+        while (true)
+        {
+            if (start == limit && !fill())
+                return null;
+
+            if (first)
+            {
+                first = false;
+                if (chars[start] == BOM)
+                    start++;
+
+                continue;
+            }
+
+            if (skipLineFeed)
+            {
+                skipLineFeed = false;
+                if (chars[start] == '\n')
+                    start++;
+
+                continue;
+            }
+
+            var end = findEnd();
+            var row = parse(end);
+            start += Math.min(end + 1, limit - start);
+
+            if (row != null)
+                return row;
+        }
+    }
+
+    /**
+     * Finds the end of the current row, and reads until all of it is in the buffer.
+     *
+     * @return the offset of the line break from the start of the row, or
+     *         of the end of the file iff it is the last row.
+     * */
+    private int findEnd() throws IOException
+    {
+        var quoted = false;
+        var closing = false;
+        var cellStart = true;
+        var i = 0;
+
+        while (true)
+        {
+            if (start + i == limit && !fill())
+            {
+                endsInQuote = quoted;
+                return i;
+            }
+
+            var c = chars[start + i++];
+
+            if (quoted)
+            {
+                quoted = c != '"';
+                closing = !quoted;
+                continue;
+            }
+
+            // Two quotes in a quoted cell.
+            if (closing && c == '"')
+            {
+                quoted = true;
+                closing = false;
+                continue;
+            }
+
+            closing = false;
+
+            if (c == '\n' || c == '\r')
+            {
+                skipLineFeed = c == '\r';
+                return i - 1;
+            }
+
+            if (c == '"' && cellStart)
+                quoted = true;
+
+            if (c == ',' || c == ';')
+                cellStart = true;
+            else if (c != ' ' && c != '\t')
+                cellStart = false;
+        }
+    }
+
+    /**
+     * Parses the current row, that is in the buffer.
+     *
+     * @param end the offset of the end of the row.
+     * @return the cells, {@code null} iff the row is empty.
+     * */
+    private String[] parse(int end)
+    {
+        var sep = separator != 0 ? separator : hasComma(end) ? ',' : ';';
+        var count = 0;
+        var i = 0;
+
+        while (i <= end)
+        {
+            // The leading whitespace is trimmed anyway.
+            while (i < end && (chars[start + i] == ' ' || chars[start + i] == '\t'))
+                i++;
+
+            var from = i;
+            var to = i;
+
+            if (i < end && chars[start + i] == '"')
+            {
+                from = to = ++i;
+
+                // Unescapes the quotes in place, the row is read once.
+                while (i < end)
+                {
+                    var c = chars[start + i++];
+
+                    if (c == '"')
+                    {
+                        if (i == end || chars[start + i] != '"')
+                            break;
+
+                        i++;
+                    }
+
+                    chars[start + to++] = c;
+                }
+
+                // Anything after the closing quote is ignored.
+                while (i < end && chars[start + i] != sep)
+                    i++;
+            }
+            else
+            {
+                while (i < end && chars[start + i] != sep)
+                    i++;
+
+                to = i;
+            }
+
+            if (count + 2 > cells.length)
+                cells = Arrays.copyOf(cells, cells.length * 2);
+
+            cells[count++] = from;
+            cells[count++] = to;
+            i++;
+        }
+
+        var row = new String[count / 2];
+        var size = 0;
+
+        for (var k = 0; k < row.length; k++)
+        {
+            row[k] = names.get(chars, start + cells[2 * k], start + cells[2 * k + 1]);
+
+            if (!row[k].isEmpty())
+                size = k + 1;
+        }
+
+        if (size == 0)
+            return null;
+
+        return size == row.length ? row : Arrays.copyOf(row, size);
+    }
+
+    /**
+     * Checks if the current row contains a comma outside of the quotes.
+     * */
+    private boolean hasComma(int end)
+    {
+        var quoted = false;
+
+        for (var i = 0; i < end; i++)
+        {
+            var c = chars[start + i];
+
+            if (c == '"')
+                quoted = !quoted;
+            else if (c == ',' && !quoted)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads more chars into the buffer. The current row is moved
+     * to the start of the buffer, and the buffer grows iff it is full.
+     *
+     * @return {@code false} iff there are no more chars.
+     * */
+    private boolean fill() throws IOException
+    {
+        if (eof)
+            return false;
+
+        if (start > 0)
+        {
+            System.arraycopy(chars, start, chars, 0, limit - start);
+            limit -= start;
+            start = 0;
+        }
+
+        // Room for a surrogate pair.
+        if (chars.length - limit < 2)
+            chars = Arrays.copyOf(chars, chars.length * 2);
+
+        var out = CharBuffer.wrap(chars, limit, chars.length - limit);
+
+        while (out.position() == limit && !eof)
+        {
+            var n = channel.read(bytes);
+            bytes.flip();
+            decoder.decode(bytes, out, n == -1);
+            bytes.compact();
+
+            if (n == -1)
+            {
+                decoder.flush(out);
+                eof = true;
+            }
+        }
+
+        var read = out.position() > limit;
+        limit = out.position();
+        return read;
+    }
+
+    /**
+     * Checks if the input ended inside a quoted cell, e.g. iff
+     * the input is a part of a file that was cut inside the cell.
+     *
+     * @return {@code true} iff the last cell that was read isn't closed.
+     * */
+    boolean endsInQuote()
+    {
+        return endsInQuote;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * The names read by the parser. A cell is converted to name case right
+     * out of the buffer, and the converted chars are looked up, so a name
+     * that has been read before doesn't create any new strings.
+     * */
+    private static final class Names
+    {
+        /** The languages where the case of a char depends on the locale. */
+        private static final Set<String> SPECIAL_CASING = Set.of("tr", "az", "lt");
+
+        private final boolean fast = !SPECIAL_CASING.contains(Locale.getDefault().getLanguage());
+        private char[] converted = new char[64];
+        private String[] table = new String[1024];
+        private int size;
+
+        /**
+         * Gets the name case of some chars.
+         *
+         * @param chars the chars.
+         * @param from the index of the first char.
+         * @param to the index after the last char.
+         * @return the name case string, the same instance for the same name.
+         * */
+        private String get(char[] chars, int from, int to)
+        {
+            var length = convert(chars, from, to);
+
+            if (length < 0)
+            {
+                var name = Utils.toNameCase(new String(chars, from, to - from));
+                length = name.length();
+                converted = name.toCharArray();
+                return lookup(length, name);
+            }
+
+            return lookup(length, null);
+        }
+
+        /**
+         * Converts some chars to name case, the same way as {@link Utils#toNameCase(String)}.
+         *
+         * @return the length of the name, or -1 iff it has chars where
+         *         the case conversion of a char and a string may differ.
+         * */
+        private int convert(char[] chars, int from, int to)
+        {
+            if (!fast)
+                return -1;
+
+            if (converted.length < to - from)
+                converted = new char[to - from];
+
+            var length = 0;
+            var word = true;
+
+            for (var i = from; i < to; i++)
+            {
+                var c = chars[i];
+
+                if (c > 0xFF || c == 'ß')
+                    return -1;
+
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r')
+                {
+                    word = true;
+                    continue;
+                }
+
+                if (word && length > 0)
+                    converted[length++] = ' ';
+
+                converted[length++] = word ? Character.toUpperCase(c) : Character.toLowerCase(c);
+                word = false;
+            }
+
+            return length;
+        }
+
+        /**
+         * Looks up the converted chars.
+         *
+         * @param length the length of the name.
+         * @param name the name, {@code null} iff it is created when it isn't found.
+         * @return the string of the name.
+         * */
+        private String lookup(int length, String name)
+        {
+            var hash = 0;
+            for (var i = 0; i < length; i++)
+                hash = 31 * hash + converted[i];
+
+            var mask = table.length - 1;
+            var slot = (hash ^ hash >>> 16) & mask;
+
+            for (; table[slot] != null; slot = (slot + 1) & mask)
+            {
+                if (matches(table[slot], length))
+                    return table[slot];
+            }
+
+            var res = name != null ? name : new String(converted, 0, length);
+            table[slot] = res;
+
+            if (++size * 2 > table.length)
+                grow();
+
+            return res;
+        }
+
+        private boolean matches(String str, int length)
+        {
+            if (str.length() != length)
+                return false;
+
+            for (var i = 0; i < length; i++)
+            {
+                if (str.charAt(i) != converted[i])
+                    return false;
+            }
+
+            return true;
+        }
+
+        private void grow()
+        {
+            var old = table;
+            table = new String[old.length * 2];
+            var mask = table.length - 1;
+
+            for (var str : old)
+            {
+                if (str == null)
+                    continue;
+
+                var hash = str.hashCode();
+                var slot = (hash ^ hash >>> 16) & mask;
+
+                while (table[slot] != null)
+                    slot = (slot + 1) & mask;
+
+                table[slot] = str;
+            }
+        }
+    }
+}
@@ -2,19 +2,38 @@ package se.skorup.util.io;
 
 import se.skorup.util.Utils;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A class for reading CSV-files.
  * */
 public class CSVReader
 {
+    /** Files at least this large, in bytes, are read in parallel. */
+    public static final long PARALLEL_SIZE = 4 << 20;
+
+    /** The smallest part of a file that is read by one task, in bytes. */
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
     /**
      * Reads a CSV-file and creates a matrix representing the csv-file.
      * It will also convert all strings to name case using
-     * {@link Utils#toNameCase toNameCase}.
+     * {@link Utils#toNameCase toNameCase}. The file is streamed
+     * through a {@link CSVParser}, so only the matrix is kept in memory.
+     * A file larger than {@link #PARALLEL_SIZE} is read in parallel.
      *
      * @param path the path to the CSV-file.
      * @return a matrix of name case strings representing the csv-file.
@@ -22,20 +41,177 @@ public class CSVReader
      * */
     public static String[][] readCSV(String path) throws IOException
     {
-        var data = MyFileReader.readFile(new File(path));
+        var pool = ForkJoinPool.commonPool();
+
+        if (pool.getParallelism() > 1 && Files.size(Path.of(path)) >= PARALLEL_SIZE)
+            return readCSV(path, pool);
+
+        try (var parser = CSVParser.open(Path.of(path)))
+        {
+            return readRows(parser).toArray(String[][]::new);
+        }
+    }
+
+    /**
+     * Reads a CSV-file in parallel, like {@link #readCSV(String)}. The file
+     * is mapped into memory and split into chunks at line breaks, and every
+     * chunk is decoded and converted to name case by a task in the pool.
+     * The rows of the chunks are put together in order.
+     *
+     * @param path the path to the CSV-file.
+     * @param pool the pool that reads the chunks.
+     * @return a matrix of name case strings representing the csv-file.
+     * @throws IOException iff file reading fails.
+     * */
+    public static String[][] readCSV(String path, ForkJoinPool pool) throws IOException
+    {
+        return readCSV(Path.of(path), pool, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Reads a CSV-file in parallel, in chunks of about chunkSize bytes
+     * or more. A line break inside a quoted cell can't be told apart from
+     * the end of a row without reading everything before it, so if a chunk
+     * ends inside a quoted cell the file is read again from the start.
+     * */
+    static String[][] readCSV(Path path, ForkJoinPool pool, long minChunkSize) throws IOException
+    {
+        try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            var size = fc.size();
+
+            if (size > Integer.MAX_VALUE)
+                return readSequentially(path);
+
+            var file = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            var chunkSize = Math.max(minChunkSize, size / (4L * pool.getParallelism()));
+            var tasks = new ArrayList<Chunk>();
+            var start = 0;
+
+            while (start < size)
+            {
+                var end = lineBreakAfter(file, (int) Math.min(size, start + chunkSize));
+                tasks.add(new Chunk(file.slice(start, end - start)));
+                start = end;
+            }
+
+            try
+            {
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            }
+            catch (UncheckedIOException e)
+            {
+                // The chunks can only throw unchecked exceptions.
+                throw e.getCause();
+            }
+
+            var count = 0;
+
+            for (var t : tasks)
+            {
+                var rows = t.getRawResult();
+
+                if (rows == null)
+                    return readSequentially(path);
+
+                count += rows.size();
+            }
+
+            var res = new String[count][];
+            var i = 0;
+
+            for (var t : tasks)
+            {
+                for (var row : t.getRawResult())
+                    res[i++] = row;
+            }
+
+            return res;
+        }
+    }
+
+    private static String[][] readSequentially(Path path) throws IOException
+    {
+        try (var parser = CSVParser.open(path))
+        {
+            return readRows(parser).toArray(String[][]::new);
+        }
+    }
+
+    private static List<String[]> readRows(CSVParser parser) throws IOException
+    {
+        var rows = new ArrayList<String[]>();
+
+        for (var row = parser.readRow(); row != null; row = parser.readRow())
+            rows.add(row);
+
+        return rows;
+    }
 
-        if (data.trim().isEmpty())
-            return new String[0][0];
+    /**
+     * Finds the index after the first line feed at, or after, an index.
+     * */
+    private static int lineBreakAfter(ByteBuffer file, int index)
+    {
+        while (index < file.limit() && file.get(index) != '\n')
+            index++;
+
+        return Math.min(index + 1, file.limit());
+    }
+
+    /**
+     * Reads the rows of a chunk of a file. The result is
+     * {@code null} iff the chunk ends inside a quoted cell.
+     * */
+    private static final class Chunk extends RecursiveTask<List<String[]>>
+    {
+        private final MappedByteBuffer bytes;
+
+        private Chunk(MappedByteBuffer bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected List<String[]> compute()
+        {
+            try (var parser = new CSVParser(new BufferChannel(bytes), (char) 0, CSVParser.BUFFER_SIZE))
+            {
+                var rows = readRows(parser);
+                return parser.endsInQuote() ? null : rows;
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * A channel that reads a buffer.
+     * */
+    private record BufferChannel(ByteBuffer buffer) implements ReadableByteChannel
+    {
+        @Override
+        public int read(ByteBuffer dst)
+        {
+            if (!buffer.hasRemaining())
+                return -1;
 
-        var lines = Arrays.stream(data.trim().split("\n"))
-                          .toArray(String[]::new);
+            var n = Math.min(buffer.remaining(), dst.remaining());
+            dst.put(dst.position(), buffer, buffer.position(), n);
+            dst.position(dst.position() + n);
+            buffer.position(buffer.position() + n);
+            return n;
+        }
 
-        if (lines.length == 0)
-            return new String[0][0];
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
 
-        return Arrays.stream(lines)
-                     .map(s -> Arrays.stream(s.split(s.indexOf(',') != -1 ? "," : ";"))
-                     .map(Utils::toNameCase).toArray(String[]::new))
-                     .toArray(String[][]::new);
+        @Override
+        public void close() {}
     }
 }
@@ -0,0 +1,379 @@
+package se.skorup.util.io;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Streaming authenticated encryption with AES-GCM. The plain bytes are
+ * encrypted in chunks of {@link #CHUNK_SIZE}, each with its own tag, so
+ * only one chunk is in memory at a time, and a chunk that is corrupt or
+ * tampered with is found when it is read. The stream is:
+ * <ul>
+ *     <li>the header: the magic bytes "GAEC", the version and a random prefix of the nonces.</li>
+ *     <li>every chunk: its length, where the highest bit marks the last chunk, and the encrypted chunk.</li>
+ * </ul>
+ * The nonce of a chunk is the prefix, the index of the chunk and if it is
+ * the last chunk, and the header is authenticated with every chunk. This
+ * way chunks can't be reordered, and a stream that is cut off is found
+ * since it doesn't end with a last chunk.
+ * */
+public final class ChunkedCipher
+{
+    /** The number of plain bytes in a chunk. */
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    private static final byte[] MAGIC = { 'G', 'A', 'E', 'C' };
+    private static final int VERSION = 1;
+    private static final int PREFIX_SIZE = 7;
+    private static final int HEADER_SIZE = MAGIC.length + 1 + PREFIX_SIZE;
+    private static final int TAG_SIZE = 16;
+    private static final int LAST = 1 << 31;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** You should not be able to instantiate this class. */
+    private ChunkedCipher() {}
+
+    /**
+     * Encrypts everything written to a channel. Closing the returned
+     * channel writes the last chunk, and closes the channel.
+     *
+     * @param channel the channel the encrypted bytes are written to.
+     * @param key the key.
+     * @return the channel to write the plain bytes to.
+     * @throws IOException iff the header can't be written, or the key can't be used.
+     * */
+    public static WritableByteChannel encrypt(WritableByteChannel channel, SecretKey key) throws IOException
+    {
+        return new Encrypter(channel, key);
+    }
+
+    /**
+     * Decrypts everything read from a channel. The returned channel
+     * throws an IOException iff a chunk is corrupt, tampered with or
+     * missing, i.e., it only ends after the last chunk.
+     *
+     * @param channel the channel the encrypted bytes are read from.
+     * @param key the key.
+     * @return the channel to read the plain bytes from.
+     * @throws IOException iff the header can't be read, or the key can't be used.
+     * */
+    public static ReadableByteChannel decrypt(ReadableByteChannel channel, SecretKey key) throws IOException
+    {
+        return new Decrypter(channel, key);
+    }
+
+    /**
+     * Checks if some bytes are the start of an encrypted stream.
+     *
+     * @param start the first bytes of the stream.
+     * @return {@code true} iff they start with the magic bytes.
+     * */
+    public static boolean isEncrypted(byte[] start)
+    {
+        return start.length >= MAGIC.length && Arrays.equals(start, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Checks if a file is an encrypted stream.
+     *
+     * @param path the path of the file.
+     * @return {@code true} iff it starts with the magic bytes.
+     * */
+    public static boolean isEncrypted(Path path)
+    {
+        try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            var start = ByteBuffer.allocate(MAGIC.length);
+            while (start.hasRemaining() && fc.read(start) != -1);
+            return isEncrypted(start.array());
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the cipher of a chunk.
+     * */
+    private static Cipher cipher(Cipher cipher, int mode, SecretKey key, byte[] header, int index, boolean last) throws IOException
+    {
+        var iv = new byte[12];
+        System.arraycopy(header, MAGIC.length + 1, iv, 0, PREFIX_SIZE);
+        ByteBuffer.wrap(iv, PREFIX_SIZE, 4).putInt(index);
+        iv[11] = (byte) (last ? 1 : 0);
+
+        try
+        {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+            cipher.updateAAD(header);
+            return cipher;
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    private static Cipher newCipher() throws IOException
+    {
+        try
+        {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The channel that encrypts the chunks.
+     * */
+    private static final class Encrypter implements WritableByteChannel
+    {
+        private final WritableByteChannel channel;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private final byte[] header = new byte[HEADER_SIZE];
+
+        private final ByteBuffer plain = ByteBuffer.allocate(CHUNK_SIZE);
+        private final ByteBuffer sealed = ByteBuffer.allocate(4 + CHUNK_SIZE + TAG_SIZE);
+
+        private int index;
+        private boolean open = true;
+
+        private Encrypter(WritableByteChannel channel, SecretKey key) throws IOException
+        {
+            this.channel = channel;
+            this.key = key;
+            this.cipher = newCipher();
+
+            System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+            header[MAGIC.length] = VERSION;
+
+            var prefix = new byte[PREFIX_SIZE];
+            RANDOM.nextBytes(prefix);
+            System.arraycopy(prefix, 0, header, MAGIC.length + 1, PREFIX_SIZE);
+
+            writeFully(ByteBuffer.wrap(header));
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            if (!open)
+                throw new ClosedChannelException();
+
+            var written = src.remaining();
+
+            while (src.hasRemaining())
+            {
+                // A full chunk is only sealed when there is more, since the last chunk is marked.
+                if (!plain.hasRemaining())
+                    seal(false);
+
+                var n = Math.min(plain.remaining(), src.remaining());
+                plain.put(src.slice(src.position(), n));
+                src.position(src.position() + n);
+            }
+
+            return written;
+        }
+
+        /**
+         * Encrypts and writes the chunk in the buffer.
+         * */
+        private void seal(boolean last) throws IOException
+        {
+            if (index == -1)
+                throw new IOException("The stream is too long to be encrypted");
+
+            plain.flip();
+            sealed.clear().position(4);
+
+            try
+            {
+                cipher(cipher, Cipher.ENCRYPT_MODE, key, header, index, last).doFinal(plain, sealed);
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new IOException(e);
+            }
+
+            sealed.putInt(0, (sealed.position() - 4) | (last ? LAST : 0));
+            sealed.flip();
+            writeFully(sealed);
+
+            plain.clear();
+            index++;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!open)
+                return;
+
+            open = false;
+
+            try (channel)
+            {
+                seal(true);
+            }
+        }
+    }
+
+    /**
+     * The channel that decrypts the chunks.
+     * */
+    private static final class Decrypter implements ReadableByteChannel
+    {
+        private final ReadableByteChannel channel;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private final byte[] header = new byte[HEADER_SIZE];
+
+        private final ByteBuffer length = ByteBuffer.allocate(4);
+        private final ByteBuffer sealed = ByteBuffer.allocate(CHUNK_SIZE + TAG_SIZE);
+        private final ByteBuffer plain = ByteBuffer.allocate(CHUNK_SIZE).flip();
+
+        private int index;
+        private boolean done;
+        private boolean open = true;
+
+        private Decrypter(ReadableByteChannel channel, SecretKey key) throws IOException
+        {
+            this.channel = channel;
+            this.key = key;
+            this.cipher = newCipher();
+
+            try
+            {
+                readFully(ByteBuffer.wrap(header));
+            }
+            catch (EOFException e)
+            {
+                throw new IOException("It isn't encrypted", e);
+            }
+
+            if (!isEncrypted(header))
+                throw new IOException("It isn't encrypted");
+
+            if (header[MAGIC.length] != VERSION)
+                throw new IOException("Unknown version of the encryption: %d".formatted(header[MAGIC.length]));
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException
+        {
+            if (!open)
+                throw new ClosedChannelException();
+
+            while (!plain.hasRemaining())
+            {
+                if (done)
+                    return -1;
+
+                open();
+            }
+
+            var n = Math.min(plain.remaining(), dst.remaining());
+            dst.put(plain.slice(plain.position(), n));
+            plain.position(plain.position() + n);
+            return n;
+        }
+
+        /**
+         * Reads and decrypts the next chunk.
+         * */
+        private void open() throws IOException
+        {
+            try
+            {
+                readFully(length.clear());
+            }
+            catch (EOFException e)
+            {
+                throw new IOException("The encrypted stream is cut off after %d chunks".formatted(index), e);
+            }
+
+            var value = length.getInt(0);
+            var last = (value & LAST) != 0;
+            var size = value & ~LAST;
+
+            if (size < TAG_SIZE || size > CHUNK_SIZE + TAG_SIZE)
+                throw new IOException("The chunk %d is corrupt, its length is: %d".formatted(index, size));
+
+            readFully(sealed.clear().limit(size));
+            sealed.flip();
+            plain.clear();
+
+            try
+            {
+                cipher(cipher, Cipher.DECRYPT_MODE, key, header, index, last).doFinal(sealed, plain);
+            }
+            catch (AEADBadTagException e)
+            {
+                throw new IOException("The chunk %d is corrupt or has been tampered with".formatted(index), e);
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new IOException(e);
+            }
+
+            plain.flip();
+            index++;
+            done = last;
+        }
+
+        private void readFully(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer) == -1)
+                    throw new EOFException();
+            }
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            open = false;
+            channel.close();
+        }
+    }
+}
@@ -4,12 +4,29 @@ import se.skorup.util.Log;
 import se.skorup.util.Utils;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SealedObject;
 import javax.crypto.SecretKey;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 
 public class EncryptedSerializationUtil
@@ -24,7 +41,6 @@ public class EncryptedSerializationUtil
         try
         {
             key = getKey();
-            SerializationUtil.serializeObject(KEY_STORAGE, key);
         }
         catch (NoSuchAlgorithmException | IOException e)
         {
@@ -34,7 +50,8 @@ public class EncryptedSerializationUtil
     }
 
     /**
-     * Encrypts then serializes an object to the specified path.
+     * Encrypts then serializes an object to the specified path. The object
+     * is streamed through the encryption, so it is never in memory as bytes.
      *
      * @param <T> the type of the object to be serialized.
      * @param object the object to be serialized.
@@ -43,14 +60,21 @@ public class EncryptedSerializationUtil
      * */
     public static <T extends Serializable> void serializeObject(String path, T object) throws Exception
     {
-        var cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        var sealed = new SealedObject(object, cipher);
-        SerializationUtil.serializeObject(path, sealed);
+        SerializationUtil.createFileIfNotExists(new File(path));
+
+        try (
+            var fc = FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            var oos = new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(encrypt(fc)), ChunkedCipher.CHUNK_SIZE))
+        )
+        {
+            oos.writeObject(object);
+        }
     }
 
     /**
      * Decrypts and deserializes the object at the location path on the disc.
+     * Files written before the streaming encryption, as a {@link SealedObject},
+     * can still be read.
      *
      * @param <T> The type of the returned object.
      * @param path The path on disc of the encrypted file.
@@ -59,10 +83,74 @@ public class EncryptedSerializationUtil
     @SuppressWarnings("unchecked")
     public static <T extends Serializable> T deserializeObject(String path) throws Exception
     {
-        var cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, key);
-        var obj = (SealedObject) SerializationUtil.deserializeObject(path);
-        return (T) obj.getObject(cipher);
+        if (!ChunkedCipher.isEncrypted(Path.of(path)))
+        {
+            var cipher = Cipher.getInstance("AES");
+            cipher.init(Cipher.DECRYPT_MODE, key);
+            var obj = (SealedObject) SerializationUtil.deserializeObject(path);
+            return (T) obj.getObject(cipher);
+        }
+
+        try (
+            var fc = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+            var ois = new ObjectInputStream(new BufferedInputStream(Channels.newInputStream(decrypt(fc)), ChunkedCipher.CHUNK_SIZE))
+        )
+        {
+            return (T) ois.readObject();
+        }
+    }
+
+    /**
+     * Encrypts everything written to a channel, with the key of this computer,
+     * using {@link ChunkedCipher AES-GCM in chunks}. Closing the returned channel
+     * finishes the encryption, and closes the channel.
+     *
+     * @param channel the channel the encrypted bytes are written to.
+     * @return the channel to write the plain bytes to.
+     * @throws IOException iff the encryption can't be created.
+     * */
+    public static WritableByteChannel encrypt(WritableByteChannel channel) throws IOException
+    {
+        return ChunkedCipher.encrypt(channel, key);
+    }
+
+    /**
+     * Decrypts everything read from a channel, with the key of this computer.
+     * A channel that was encrypted before the {@link ChunkedCipher chunks}
+     * is decrypted as it was written, without being authenticated.
+     *
+     * @param channel the channel the encrypted bytes are read from.
+     * @return the channel to read the plain bytes from.
+     * @throws IOException iff the decryption can't be created.
+     * */
+    public static ReadableByteChannel decrypt(ReadableByteChannel channel) throws IOException
+    {
+        var start = ByteBuffer.allocate(4);
+        while (start.hasRemaining() && channel.read(start) != -1);
+
+        // The bytes that were read to tell the formats apart are read again.
+        var replay = Channels.newChannel(
+            new SequenceInputStream(new ByteArrayInputStream(start.array(), 0, start.position()), Channels.newInputStream(channel))
+        );
+
+        if (ChunkedCipher.isEncrypted(start.array()))
+            return ChunkedCipher.decrypt(replay, key);
+
+        return Channels.newChannel(new CipherInputStream(Channels.newInputStream(replay), cipher(Cipher.DECRYPT_MODE)));
+    }
+
+    private static Cipher cipher(int mode) throws IOException
+    {
+        try
+        {
+            var cipher = Cipher.getInstance("AES");
+            cipher.init(mode, key);
+            return cipher;
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IOException(e);
+        }
     }
 
     /**
@@ -80,11 +168,13 @@ public class EncryptedSerializationUtil
 
     /**
      * Gets the stored secret key for this computer. If it does not
-     *  exist, then it will create a new one.
+     * exist, then it will create a new one. The key file is only
+     * written when the key is created, and a key file that can't
+     * be read is kept as a backup before it is replaced.
      *
      * @return the key used on this computer.
      * */
-    private static SecretKey getKey() throws NoSuchAlgorithmException
+    private static SecretKey getKey() throws NoSuchAlgorithmException, IOException
     {
         var keyFile = new File(KEY_STORAGE);
         if (keyFile.exists())
@@ -96,10 +186,12 @@ public class EncryptedSerializationUtil
             catch (IOException | ClassNotFoundException e)
             {
                 Log.error(e);
-                return generateKey();
+                Files.move(keyFile.toPath(), Path.of(KEY_STORAGE + ".old"), StandardCopyOption.REPLACE_EXISTING);
             }
         }
 
-        return generateKey();
+        var key = generateKey();
+        SerializationUtil.serializeObject(KEY_STORAGE, key);
+        return key;
     }
 }
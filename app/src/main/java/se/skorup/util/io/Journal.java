@@ -0,0 +1,885 @@
+package se.skorup.util.io;
+
+import se.skorup.group.Edit;
+import se.skorup.group.Group;
+import se.skorup.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the groups as a {@link SaveFile snapshot} and a journal of the
+ * {@link Edit edits} made since the snapshot, so nothing has to be written
+ * when the program exits. The edits are given to a background thread that
+ * appends them to the journal in frames, one per batch of edits, and
+ * forces every frame to the disk. When the journal has grown as large as
+ * the snapshot, or it hasn't been compacted for a while, it is compacted
+ * into a new snapshot.
+ * <br><br>
+ * Every snapshot has a generation, and the journal of a generation is
+ * only valid on top of the snapshot of the same generation. The files are
+ * {@code groups.<generation>.gasv} and {@code groups.<generation>.journal}.
+ * A new generation is written before the old one is deleted, so there is
+ * always a complete generation on the disk.
+ * <br><br>
+ * A frame is the length of it, the CRC32 of it and the records, through
+ * the layer of the journal, e.g. encryption. A record is a group added
+ * with all of its content, a group removed, or an edit of a group with
+ * the version of the group after the edit. The version is relative to
+ * the version of the group in the snapshot, so an edit that already is
+ * part of the snapshot is skipped. A frame that is cut off, by a crash,
+ * ends the journal.
+ * <br><br>
+ * The groups are opened from the index of the snapshot, so only the
+ * groups that are used are read. The groups that have been used last
+ * are kept loaded, and the others are unloaded again once they are
+ * part of a snapshot, so the memory doesn't depend on how many groups
+ * are saved.
+ * */
+public final class Journal implements Closeable
+{
+    /** The journal is compacted when it is larger than this, and larger than the snapshot. */
+    public static final long COMPACT_SIZE = 1 << 20;
+
+    /** The journal is compacted if there have been no edits for this long, in milliseconds. */
+    public static final long COMPACT_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /** The longest time close waits for the edits to be written, in milliseconds. */
+    public static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /** The number of groups that are kept loaded since they were used last. */
+    public static final int CACHE_SIZE = 8;
+
+    private static final byte[] MAGIC = { 'G', 'A', 'J', 'L' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    private static final Pattern SNAPSHOT = Pattern.compile("groups\\.(\\d+)\\.gasv");
+    private static final Pattern GENERATION_FILE = Pattern.compile("groups\\.\\d+\\.(gasv|journal).*");
+
+    private static final int EDITED = 0;
+    private static final int ADDED = 1;
+    private static final int REMOVED = 2;
+
+    /** An entry in the queue of the writer. */
+    private sealed interface Entry {}
+    private record Edited(Group group, long version, Edit edit) implements Entry {}
+    private record Loaded(Group group) implements Entry {}
+    private record Added(Group group) implements Entry {}
+    private record Removed(Group group) implements Entry {}
+    private record Compact() implements Entry {}
+    private record Sync(CountDownLatch done) implements Entry {}
+    private record Close(CountDownLatch done) implements Entry {}
+
+    /**
+     * A group in the current generation.
+     *
+     * @param key the key of the group in the journal.
+     * @param base the version of the group in the snapshot, or when it was added.
+     * */
+    private record Tracked(int key, long base) {}
+
+    /** The groups read from the disk, and the generation they were read from. */
+    private record Recovery(List<Group> groups, long generation, int records, boolean complete, boolean indexed) {}
+
+    private final Path dir;
+    private final SaveFile.Layer<WritableByteChannel> encrypt;
+    private final SaveFile.Layer<ReadableByteChannel> decrypt;
+    private final List<Group> groups;
+    private final boolean found;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Group.Listener listener = new Group.Listener()
+    {
+        @Override
+        public void edited(Group g, long version, Edit edit)
+        {
+            offer(new Edited(g, version, edit));
+        }
+
+        @Override
+        public void loaded(Group g)
+        {
+            offer(new Loaded(g));
+        }
+    };
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Only used by the writer thread, after the journal has been opened.
+    private final Map<Group, Tracked> tracked = new IdentityHashMap<>();
+    private final List<Group> order = new ArrayList<>();
+    private final Map<Group, SaveFile.Blob> blobs = new IdentityHashMap<>();
+    private final List<Group> cache = new ArrayList<>();
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    private final BinaryWriter records = new BinaryWriter(Channels.newChannel(frame));
+    private int nextKey;
+    private long generation;
+    private FileChannel journal;
+    private BinaryWriter out;
+    private long journalSize;
+    private long snapshotSize;
+    private boolean broken;
+
+    private Journal(
+        Path dir, SaveFile.Layer<WritableByteChannel> encrypt,
+        SaveFile.Layer<ReadableByteChannel> decrypt, Recovery recovery
+    )
+    {
+        this.dir = dir;
+        this.encrypt = encrypt;
+        this.decrypt = decrypt;
+        this.groups = recovery.groups();
+        this.found = recovery.generation() >= 0;
+        this.generation = recovery.generation();
+        this.writer = new Thread(this::run, "Journal writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal in a directory, and reads the index of the groups
+     * saved in it. The journal is compacted at once iff it contains any
+     * edits, or the snapshot has no index, so the files always are appended
+     * from a clean state.
+     *
+     * @param dir the directory.
+     * @param encrypt the layer the files are written through, e.g. encryption.
+     * @param decrypt the layer the files are read through, e.g. decryption.
+     * @return the opened journal.
+     * @throws IOException iff the saved groups can't be read, or the journal can't be written.
+     * */
+    public static Journal open(
+        Path dir, SaveFile.Layer<WritableByteChannel> encrypt, SaveFile.Layer<ReadableByteChannel> decrypt
+    ) throws IOException
+    {
+        return open(dir, encrypt, decrypt, List.of());
+    }
+
+    /**
+     * Opens the journal in a directory, like {@link #open(Path, SaveFile.Layer, SaveFile.Layer)}.
+     * If there is no snapshot in the directory, the first snapshot is written with the
+     * initial groups, e.g. the groups of an older save file.
+     *
+     * @param dir the directory.
+     * @param encrypt the layer the files are written through, e.g. encryption.
+     * @param decrypt the layer the files are read through, e.g. decryption.
+     * @param initial the groups of the first snapshot, they are ignored iff there already is a snapshot.
+     * @return the opened journal.
+     * @throws IOException iff the saved groups can't be read, or the journal can't be written.
+     * */
+    public static Journal open(
+        Path dir, SaveFile.Layer<WritableByteChannel> encrypt,
+        SaveFile.Layer<ReadableByteChannel> decrypt, Collection<Group> initial
+    ) throws IOException
+    {
+        Files.createDirectories(dir);
+        var recovery = recover(dir, decrypt);
+
+        if (recovery.generation() < 0)
+            recovery = new Recovery(new ArrayList<>(initial), recovery.generation(), 0, true, true);
+        var j = new Journal(dir, encrypt, decrypt, recovery);
+
+        for (var g : j.groups)
+            j.track(g, 0);
+
+        if (recovery.generation() < 0 || recovery.records() > 0 || !recovery.complete() || !recovery.indexed())
+        {
+            j.writeGeneration();
+        }
+        else
+        {
+            var path = j.journalPath(j.generation);
+
+            if (Files.exists(path))
+            {
+                j.journal = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                j.out = new BinaryWriter(j.journal);
+                j.journalSize = j.journal.size();
+            }
+            else
+            {
+                j.createJournal(j.generation);
+            }
+
+            j.snapshotSize = Files.size(j.snapshotPath(j.generation));
+
+            for (var g : j.groups)
+            {
+                if (g.getBody() instanceof SaveFile.Blob b)
+                    j.blobs.put(g, b);
+            }
+        }
+
+        for (var g : j.groups)
+            g.setListener(j.listener);
+
+        j.writer.start();
+        return j;
+    }
+
+    /**
+     * Reads the groups saved in a directory, without opening the journal. The
+     * groups that have no edits in the journal are read when they are used.
+     *
+     * @param dir the directory.
+     * @param decrypt the layer the files are read through, e.g. decryption.
+     * @return the saved groups, empty iff there are none.
+     * @throws IOException iff the saved groups can't be read.
+     * */
+    public static List<Group> read(Path dir, SaveFile.Layer<ReadableByteChannel> decrypt) throws IOException
+    {
+        return recover(dir, decrypt).groups();
+    }
+
+    /**
+     * Checks if there is a snapshot in a directory, i.e., if
+     * the journal has saved anything there.
+     *
+     * @param dir the directory.
+     * @return {@code true} iff there is a snapshot.
+     * @throws IOException iff the directory can't be listed.
+     * */
+    public static boolean exists(Path dir) throws IOException
+    {
+        return Files.isDirectory(dir) && latestGeneration(dir) >= 0;
+    }
+
+    /**
+     * Gets the generation of the latest snapshot in a directory, or -1 iff there is none.
+     * */
+    private static long latestGeneration(Path dir) throws IOException
+    {
+        var generation = -1L;
+
+        try (var files = Files.list(dir))
+        {
+            for (var f : files.toList())
+            {
+                var m = SNAPSHOT.matcher(f.getFileName().toString());
+                if (m.matches())
+                    generation = Math.max(generation, Long.parseLong(m.group(1)));
+            }
+        }
+
+        return generation;
+    }
+
+    /**
+     * Reads the latest snapshot and replays its journal.
+     * */
+    private static Recovery recover(Path dir, SaveFile.Layer<ReadableByteChannel> decrypt) throws IOException
+    {
+        var generation = latestGeneration(dir);
+
+        if (generation < 0)
+            return new Recovery(new ArrayList<>(), generation, 0, true, true);
+
+        var snapshot = snapshotPath(dir, generation);
+        var indexed = SaveFile.hasIndex(snapshot);
+        var byKey = new ArrayList<Group>(SaveFile.open(snapshot, decrypt));
+        var versions = new ArrayList<Long>();
+        byKey.forEach(g -> versions.add(0L));
+
+        var path = journalPath(dir, generation);
+        var records = 0;
+        var complete = true;
+
+        if (Files.exists(path))
+        {
+            try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                var in = new BinaryReader(fc);
+
+                // The program stopped before the journal was started.
+                if (fc.size() < HEADER_SIZE)
+                    return new Recovery(removeNulls(byKey), generation, 0, false, indexed);
+
+                if (!Arrays.equals(in.readBytes(MAGIC.length), MAGIC) || in.readVarInt() != VERSION)
+                    throw new IOException("It isn't a journal: %s".formatted(path));
+
+                while (!in.isAtEnd())
+                {
+                    final byte[] bytes;
+
+                    try
+                    {
+                        var length = in.readVarInt();
+                        var crc = in.readInt();
+
+                        if (length > fc.size())
+                            throw new EOFException("The frame is longer than the journal");
+
+                        bytes = in.readBytes(length);
+
+                        if (crc(bytes) != crc)
+                            throw new IOException("The checksum of the frame is wrong");
+                    }
+                    catch (IOException e)
+                    {
+                        // The frame was being written when the program stopped, so it was never forced.
+                        Log.errorf("The journal ends with a broken frame, it is ignored: %s", e.getLocalizedMessage());
+                        complete = false;
+                        break;
+                    }
+
+                    records += replay(bytes, decrypt, byKey, versions);
+                }
+            }
+        }
+
+        return new Recovery(removeNulls(byKey), generation, records, complete, indexed);
+    }
+
+    private static List<Group> removeNulls(List<Group> byKey)
+    {
+        var groups = new ArrayList<Group>();
+        for (var g : byKey)
+        {
+            if (g != null)
+                groups.add(g);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Replays the records of a frame.
+     *
+     * @return the number of records in the frame.
+     * */
+    private static int replay(
+        byte[] bytes, SaveFile.Layer<ReadableByteChannel> decrypt, List<Group> byKey, List<Long> versions
+    ) throws IOException
+    {
+        var in = new BinaryReader(decrypt.wrap(Channels.newChannel(new ByteArrayInputStream(bytes))));
+        var records = 0;
+
+        while (!in.isAtEnd())
+        {
+            var type = in.readByte();
+            var key = in.readVarInt();
+            records++;
+
+            if (type == ADDED)
+            {
+                while (byKey.size() <= key)
+                {
+                    byKey.add(null);
+                    versions.add(0L);
+                }
+
+                byKey.set(key, Group.readBinary(in));
+                continue;
+            }
+
+            if (key >= byKey.size() || byKey.get(key) == null)
+                throw new IOException("The journal refers to an unknown group: %d".formatted(key));
+
+            if (type == REMOVED)
+            {
+                byKey.set(key, null);
+                continue;
+            }
+
+            if (type != EDITED)
+                throw new IOException("Unknown type of record: %d".formatted(type));
+
+            var version = in.readVarLong();
+            var edit = Edit.readBinary(in);
+            var current = versions.get(key);
+
+            if (version <= current)
+                continue;
+
+            if (version != current + 1)
+                throw new IOException("The journal misses the edits %d to %d of %s".formatted(current + 1, version - 1, byKey.get(key)));
+
+            try
+            {
+                edit.apply(byKey.get(key));
+            }
+            catch (IllegalArgumentException | IllegalStateException e)
+            {
+                throw new IOException("Failed to replay %s: %s".formatted(edit, e.getLocalizedMessage()), e);
+            }
+
+            versions.set(key, version);
+        }
+
+        return records;
+    }
+
+    /**
+     * Gets the groups that were read when the journal was opened,
+     * in the order they were added.
+     *
+     * @return the saved groups.
+     * */
+    public List<Group> getGroups()
+    {
+        return groups;
+    }
+
+    /**
+     * Checks if there were any saved groups when the journal was
+     * opened, i.e., if there was a snapshot in the directory.
+     *
+     * @return {@code true} iff there was a save.
+     * */
+    public boolean hasSave()
+    {
+        return found;
+    }
+
+    /**
+     * Adds a group, the group and every edit made to it from now on are saved.
+     *
+     * @param g the group to be added.
+     * */
+    public void addGroup(Group g)
+    {
+        g.setListener(listener);
+        offer(new Added(g));
+    }
+
+    /**
+     * Removes a group, it is no longer saved.
+     *
+     * @param g the group to be removed.
+     * */
+    public void removeGroup(Group g)
+    {
+        g.setListener(null);
+        offer(new Removed(g));
+    }
+
+    /**
+     * Asks the writer to compact the journal into a new snapshot.
+     * */
+    public void compact()
+    {
+        offer(new Compact());
+    }
+
+    /**
+     * Waits until everything given to the journal is forced to the disk.
+     *
+     * @throws InterruptedException iff the thread is interrupted while waiting.
+     * */
+    public void flush() throws InterruptedException
+    {
+        var done = new CountDownLatch(1);
+
+        if (offer(new Sync(done)))
+            done.await();
+    }
+
+    /**
+     * Writes the edits that are left and closes the journal. This only
+     * waits for the edits that haven't been written yet, so it doesn't
+     * depend on how much there is saved. It does nothing if the journal
+     * already is closed.
+     * */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (closed)
+                return;
+
+            closed = true;
+        }
+
+        var done = new CountDownLatch(1);
+        queue.add(new Close(done));
+
+        try
+        {
+            if (!done.await(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS))
+                Log.error("The journal wasn't closed in time.");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean offer(Entry e)
+    {
+        if (closed)
+            return false;
+
+        queue.add(e);
+        return true;
+    }
+
+    /**
+     * The loop of the writer thread. Everything in the queue is written as one frame.
+     * */
+    private void run()
+    {
+        var batch = new ArrayList<Entry>();
+
+        while (true)
+        {
+            try
+            {
+                var first = queue.poll(COMPACT_INTERVAL, TimeUnit.MILLISECONDS);
+
+                if (first != null)
+                {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+
+                for (var e : batch)
+                {
+                    try
+                    {
+                        if (!write(e))
+                            return;
+                    }
+                    catch (IOException | RuntimeException ex)
+                    {
+                        failed(ex);
+                    }
+                }
+
+                writeFrame();
+
+                var idle = first == null && journalSize > HEADER_SIZE;
+                if (broken || idle || journalSize > Math.max(COMPACT_SIZE, snapshotSize))
+                    writeGeneration();
+            }
+            catch (InterruptedException e)
+            {
+                Log.error("The journal writer was interrupted.");
+                return;
+            }
+            catch (IOException | RuntimeException e)
+            {
+                failed(e);
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes an entry of the queue. When the journal is broken, nothing is written
+     * to it, but the groups are still tracked so they are part of the next snapshot.
+     *
+     * @return {@code false} iff the journal is closed.
+     * */
+    private boolean write(Entry entry) throws IOException
+    {
+        switch (entry)
+        {
+            case Edited e -> {
+                var t = tracked.get(e.group());
+
+                // The group isn't saved, or the edit already is part of the snapshot.
+                if (t == null || e.version() <= t.base())
+                    return true;
+
+                used(e.group());
+
+                if (broken)
+                    return true;
+
+                records.writeByte(EDITED);
+                records.writeVarInt(t.key());
+                records.writeVarLong(e.version() - t.base());
+                e.edit().writeBinary(records);
+            }
+            case Added a -> {
+                if (tracked.containsKey(a.group()))
+                    return true;
+
+                // Tracked first, so the group is part of the next snapshot even if this fails.
+                var key = nextKey;
+                track(a.group(), Long.MAX_VALUE);
+
+                if (broken)
+                    return true;
+
+                records.writeByte(ADDED);
+                records.writeVarInt(key);
+                tracked.put(a.group(), new Tracked(key, a.group().writeBinary(records).version()));
+            }
+            case Loaded l -> {
+                if (tracked.containsKey(l.group()))
+                    used(l.group());
+            }
+            case Removed r -> {
+                var t = tracked.remove(r.group());
+
+                if (t == null)
+                    return true;
+
+                order.removeIf(g -> g == r.group());
+                cache.removeIf(g -> g == r.group());
+                blobs.remove(r.group());
+
+                if (broken)
+                    return true;
+
+                records.writeByte(REMOVED);
+                records.writeVarInt(t.key());
+            }
+            case Compact c -> {
+                writeFrame();
+                writeGeneration();
+            }
+            case Sync s -> {
+                try
+                {
+                    writeFrame();
+                }
+                finally
+                {
+                    s.done().countDown();
+                }
+            }
+            case Close c -> {
+                try
+                {
+                    writeFrame();
+
+                    if (broken)
+                        writeGeneration();
+
+                    journal.close();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    Log.errorf("Failed to write the journal: %s", e.getLocalizedMessage());
+                }
+                finally
+                {
+                    c.done().countDown();
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the journal as broken, after the writing failed. The records that
+     * haven't been written are lost, so nothing more is written to the journal
+     * until the groups have been written as a new snapshot.
+     * */
+    private void failed(Exception e)
+    {
+        Log.errorf("Failed to write the journal: %s", e.getLocalizedMessage());
+        broken = true;
+
+        try
+        {
+            records.flush();
+        }
+        catch (IOException ex)
+        {
+            Log.error(ex); // It only writes to memory.
+        }
+
+        frame.reset();
+    }
+
+    /**
+     * Starts to track a group in the current generation.
+     *
+     * @param g the group.
+     * @param base the version of the group that is saved.
+     * */
+    private void track(Group g, long base)
+    {
+        tracked.put(g, new Tracked(nextKey++, base));
+        order.add(g);
+    }
+
+    /**
+     * Marks a group as used. The groups that have been used least recently
+     * are unloaded, iff they haven't changed since they were written to the
+     * snapshot. The others are kept until they are part of a snapshot.
+     *
+     * @param g the group.
+     * */
+    private void used(Group g)
+    {
+        cache.removeIf(c -> c == g);
+        cache.add(g);
+
+        for (var it = cache.iterator(); cache.size() > CACHE_SIZE && it.hasNext();)
+        {
+            var c = it.next();
+            var blob = blobs.get(c);
+
+            if (c != g && blob != null && c.unload(blob))
+                it.remove();
+        }
+    }
+
+    /**
+     * Writes the records as a frame, and forces it to the disk.
+     * */
+    private void writeFrame() throws IOException
+    {
+        records.flush();
+
+        if (frame.size() == 0)
+            return;
+
+        var encrypted = new ByteArrayOutputStream(frame.size() + 32);
+
+        try (var channel = encrypt.wrap(Channels.newChannel(encrypted)))
+        {
+            frame.writeTo(Channels.newOutputStream(channel));
+        }
+        finally
+        {
+            frame.reset();
+        }
+
+        var bytes = encrypted.toByteArray();
+        out.writeVarInt(bytes.length);
+        out.writeInt(crc(bytes));
+        out.writeBytes(bytes, 0, bytes.length);
+        out.flush();
+        journal.force(false);
+
+        journalSize = journal.size();
+    }
+
+    /**
+     * Writes the tracked groups as the snapshot of the next generation,
+     * starts its journal and deletes the older generations. The groups
+     * are written while they are being edited, but the version of every
+     * group that was written is known, so the edits are not lost. The
+     * groups that aren't loaded are copied as they are, and afterwards
+     * they are read from the new snapshot.
+     * */
+    private void writeGeneration() throws IOException
+    {
+        var next = generation + 1;
+        var written = SaveFile.write(snapshotPath(next), order, encrypt, decrypt);
+
+        if (journal != null)
+            journal.close();
+
+        createJournal(next);
+        generation = next;
+        snapshotSize = Files.size(snapshotPath(next));
+
+        var groups = new ArrayList<>(order);
+        tracked.clear();
+        order.clear();
+        nextKey = 0;
+
+        blobs.clear();
+
+        for (var i = 0; i < groups.size(); i++)
+        {
+            var g = groups.get(i);
+            var blob = written.get(i);
+            track(g, blob.summary().version());
+            blobs.put(g, blob);
+
+            // Before the old snapshot is deleted, since the groups that aren't loaded are read from it. A
+            // group in the cache may have been unloaded before its use was seen, so it is moved as well.
+            if (g.getBody() != null || cache.stream().noneMatch(c -> c == g))
+                g.unload(blob);
+        }
+
+        broken = false;
+
+        // The older generations, and the temporary files of a crashed compaction.
+        try (var files = Files.list(dir))
+        {
+            for (var f : files.toList())
+            {
+                var name = f.getFileName().toString();
+                var current = name.equals(snapshotPath(next).getFileName().toString()) ||
+                              name.equals(journalPath(next).getFileName().toString());
+
+                if (!current && GENERATION_FILE.matcher(name).matches())
+                    Files.deleteIfExists(f);
+            }
+        }
+
+        Log.debugf("Compacted the journal into generation %d.", next);
+    }
+
+    /**
+     * Creates the empty journal of a generation.
+     * */
+    private void createJournal(long generation) throws IOException
+    {
+        journal = FileChannel.open(
+            journalPath(generation),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+
+        out = new BinaryWriter(journal);
+        out.writeBytes(MAGIC, 0, MAGIC.length);
+        out.writeVarInt(VERSION);
+        out.flush();
+        journal.force(true);
+        journalSize = journal.size();
+    }
+
+    private Path snapshotPath(long generation)
+    {
+        return snapshotPath(dir, generation);
+    }
+
+    private Path journalPath(long generation)
+    {
+        return journalPath(dir, generation);
+    }
+
+    private static Path snapshotPath(Path dir, long generation)
+    {
+        return dir.resolve("groups.%d.gasv".formatted(generation));
+    }
+
+    private static Path journalPath(Path dir, long generation)
+    {
+        return dir.resolve("groups.%d.journal".formatted(generation));
+    }
+
+    private static int crc(byte[] bytes)
+    {
+        var crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
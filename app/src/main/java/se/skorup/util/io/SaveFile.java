@@ -0,0 +1,454 @@
+package se.skorup.util.io;
+
+import se.skorup.group.Group;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The binary save file of the groups, it replaces the serialization of the
+ * whole list of groups. The file is:
+ * <ul>
+ *     <li>the magic bytes "GASV" and the version, as a varint.</li>
+ *     <li>the number of groups, as a varint.</li>
+ *     <li>every group, as the number of bytes followed by
+ *         the {@link Group#writeBinary(BinaryWriter) group}.</li>
+ *     <li>the index, as the number of bytes followed by the number of
+ *         groups and the name, size, offset and length of every group.</li>
+ *     <li>the offset of the index, as eight bytes.</li>
+ * </ul>
+ * Every group, and the index, is written through the layer on its own,
+ * e.g. encryption, so one group can be read without the rest of the file.
+ * This way the groups can be {@link #open(Path, Layer) opened} from the
+ * index alone, and the body of a group is only read when it is used. The
+ * first version had no index and the whole file was written through the
+ * layer, it can still be read.
+ * */
+public final class SaveFile
+{
+    /** The current version of the format. */
+    public static final int VERSION = 2;
+
+    private static final byte[] MAGIC = { 'G', 'A', 'S', 'V' };
+    private static final int FOOTER_SIZE = 8;
+
+    /**
+     * A layer around a channel, e.g. encryption.
+     *
+     * @param <C> the type of the channel.
+     * */
+    @FunctionalInterface
+    public interface Layer<C>
+    {
+        /**
+         * Wraps a channel.
+         *
+         * @param channel the channel to be wrapped.
+         * @return the wrapped channel.
+         * @throws IOException iff the layer can't be created.
+         * */
+        C wrap(C channel) throws IOException;
+
+        /**
+         * Gets the layer that does nothing.
+         *
+         * @param <C> the type of the channel.
+         * @return the layer that returns the channel as is.
+         * */
+        static <C> Layer<C> none()
+        {
+            return c -> c;
+        }
+    }
+
+    /** You should not be able to instantiate this class. */
+    private SaveFile() {}
+
+    /**
+     * A group saved in a file, its body is read from the file when it is loaded.
+     *
+     * @param path the path of the file.
+     * @param offset the offset of the group in the file.
+     * @param length the number of bytes of the group.
+     * @param summary the name, size and version of the group.
+     * @param layer the layer the group is read through, e.g. decryption.
+     * */
+    record Blob(
+        Path path, long offset, int length, Group.Summary summary, Layer<ReadableByteChannel> layer
+    ) implements Group.Body
+    {
+        @Override
+        public Group read() throws IOException
+        {
+            return Group.readBinary(decode(readBytes(), layer));
+        }
+
+        /**
+         * Reads the bytes of the group, as they are in the file.
+         * */
+        private byte[] readBytes() throws IOException
+        {
+            try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                var buffer = ByteBuffer.allocate(length);
+
+                while (buffer.hasRemaining())
+                {
+                    if (fc.read(buffer, offset + buffer.position()) == -1)
+                        throw new EOFException("The group %s is cut off".formatted(summary.name()));
+                }
+
+                return buffer.array();
+            }
+        }
+    }
+
+    /**
+     * Writes the groups to a channel.
+     *
+     * @param channel the channel, it is not closed.
+     * @param groups the groups.
+     * @return the {@link Group#getVersion() versions} of the groups that were written, in order.
+     * @throws IOException iff the writing fails.
+     * */
+    public static long[] write(WritableByteChannel channel, Collection<Group> groups) throws IOException
+    {
+        return versions(write(channel, null, groups, Layer.none(), null));
+    }
+
+    /**
+     * Writes the groups, and the index of them, to a channel.
+     *
+     * @param channel the channel, it is not closed.
+     * @param path the path of the file, the blobs refer to it.
+     * @param groups the groups.
+     * @param encrypt the layer every group is written through.
+     * @param decrypt the layer the file is read through, a group that isn't loaded and
+     *                is read through it is copied as it is. {@code null} iff there is none.
+     * @return the groups that were written, in order.
+     * */
+    private static List<Blob> write(
+        WritableByteChannel channel, Path path, Collection<Group> groups,
+        Layer<WritableByteChannel> encrypt, Layer<ReadableByteChannel> decrypt
+    ) throws IOException
+    {
+        var out = new BinaryWriter(channel);
+        var bytes = new ByteArrayOutputStream();
+        var blobs = new ArrayList<Blob>(groups.size());
+
+        out.writeBytes(MAGIC, 0, MAGIC.length);
+        out.writeVarInt(VERSION);
+        out.writeVarInt(groups.size());
+
+        for (var g : groups)
+        {
+            final Group.Summary summary;
+            final byte[] group;
+
+            // It is copied without being loaded, since its version can't change until it is loaded.
+            if (decrypt != null && g.getBody() instanceof Blob b && b.layer() == decrypt)
+            {
+                summary = b.summary();
+                group = b.readBytes();
+            }
+            else
+            {
+                bytes.reset();
+
+                try (var w = new BinaryWriter(encrypt.wrap(Channels.newChannel(bytes))))
+                {
+                    summary = g.writeBinary(w);
+                }
+
+                group = bytes.toByteArray();
+            }
+
+            out.writeVarInt(group.length);
+            blobs.add(new Blob(path, out.position(), group.length, summary, decrypt));
+            out.writeBytes(group, 0, group.length);
+        }
+
+        var index = out.position();
+        bytes.reset();
+
+        try (var w = new BinaryWriter(encrypt.wrap(Channels.newChannel(bytes))))
+        {
+            w.writeVarInt(blobs.size());
+
+            for (var b : blobs)
+            {
+                w.writeString(b.summary().name());
+                w.writeVarInt(b.summary().size());
+                w.writeVarLong(b.offset());
+                w.writeVarInt(b.length());
+            }
+        }
+
+        out.writeVarInt(bytes.size());
+        out.writeBytes(bytes.toByteArray(), 0, bytes.size());
+        out.writeLong(index);
+        out.flush();
+        return blobs;
+    }
+
+    private static long[] versions(List<Blob> blobs)
+    {
+        return blobs.stream().mapToLong(b -> b.summary().version()).toArray();
+    }
+
+    /**
+     * Reads the groups from a channel.
+     *
+     * @param channel the channel, it is not closed.
+     * @return the groups.
+     * @throws IOException iff the reading fails, or it isn't a save file of a known version.
+     * */
+    public static List<Group> read(ReadableByteChannel channel) throws IOException
+    {
+        return read(channel, Layer.none());
+    }
+
+    /**
+     * Reads every group, in order, from a channel.
+     *
+     * @param channel the channel, it is not closed.
+     * @param layer the layer every group is read through, the first version has none.
+     * @return the groups.
+     * */
+    private static List<Group> read(ReadableByteChannel channel, Layer<ReadableByteChannel> layer) throws IOException
+    {
+        var in = new BinaryReader(channel);
+
+        if (!isMagic(in.readBytes(MAGIC.length)))
+            throw new IOException("It isn't a save file");
+
+        var version = in.readVarInt();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unknown version of the save file: %d".formatted(version));
+
+        var count = in.readVarInt();
+        var res = new ArrayList<Group>(Math.min(count, 1024));
+
+        for (var i = 0; i < count; i++)
+        {
+            var length = in.readVarInt();
+
+            if (version == 1)
+                res.add(Group.readBinary(in));
+            else
+                res.add(Group.readBinary(decode(in.readBytes(length), layer)));
+        }
+
+        return res;
+    }
+
+    /**
+     * Writes the groups to a file. They are first written to a temporary
+     * file, that is forced to the disk and then moved over the file,
+     * so the old file is kept iff the writing fails.
+     *
+     * @param path the path of the file.
+     * @param groups the groups.
+     * @param layer the layer every group is written through, e.g. encryption.
+     * @return the {@link Group#getVersion() versions} of the groups that were written, in order.
+     * @throws IOException iff the writing fails.
+     * */
+    public static long[] write(Path path, Collection<Group> groups, Layer<WritableByteChannel> layer) throws IOException
+    {
+        return versions(write(path, groups, layer, null));
+    }
+
+    /**
+     * Writes the groups to a file, like {@link #write(Path, Collection, Layer)}, and
+     * copies the groups that aren't loaded and are read through the decrypt layer
+     * as they are.
+     *
+     * @param path the path of the file.
+     * @param groups the groups.
+     * @param encrypt the layer every group is written through, e.g. encryption.
+     * @param decrypt the layer the file is read through, e.g. decryption.
+     * @return the groups that were written, in order, as they are read from the file.
+     * @throws IOException iff the writing fails.
+     * */
+    static List<Blob> write(
+        Path path, Collection<Group> groups, Layer<WritableByteChannel> encrypt, Layer<ReadableByteChannel> decrypt
+    ) throws IOException
+    {
+        var parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        var tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        final List<Blob> blobs;
+
+        try
+        {
+            try (var fc = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                blobs = write(fc, path, groups, encrypt, decrypt);
+                fc.force(true);
+            }
+
+            try
+            {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+
+        return blobs;
+    }
+
+    /**
+     * Reads all the groups from a file.
+     *
+     * @param path the path of the file.
+     * @param layer the layer every group, or the whole file in the first version, is read through.
+     * @return the groups.
+     * @throws IOException iff the reading fails, or it isn't a save file of a known version.
+     * */
+    public static List<Group> read(Path path, Layer<ReadableByteChannel> layer) throws IOException
+    {
+        // The whole file of the first version is written through the layer.
+        if (!isSaveFile(path))
+        {
+            try (var channel = layer.wrap(FileChannel.open(path, StandardOpenOption.READ)))
+            {
+                return read(channel, Layer.none());
+            }
+        }
+
+        try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return read(fc, layer);
+        }
+    }
+
+    /**
+     * Opens the groups in a file, only the index is read. The groups are
+     * {@link Group#lazy(Group.Body) lazy}, and every group is read from the
+     * file the first time it is used. A file of the first version has no
+     * index, so all of it is read.
+     *
+     * @param path the path of the file.
+     * @param layer the layer every group is read through, e.g. decryption.
+     * @return the groups, in order.
+     * @throws IOException iff the index can't be read, or it isn't a save file of a known version.
+     * */
+    public static List<Group> open(Path path, Layer<ReadableByteChannel> layer) throws IOException
+    {
+        if (!hasIndex(path))
+            return read(path, layer);
+
+        try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            var footer = ByteBuffer.allocate(FOOTER_SIZE);
+            var size = fc.size();
+
+            while (footer.hasRemaining())
+            {
+                if (fc.read(footer, size - FOOTER_SIZE + footer.position()) == -1)
+                    throw new EOFException("The save file is cut off");
+            }
+
+            var offset = footer.getLong(0);
+            if (offset < 0 || offset > size - FOOTER_SIZE)
+                throw new IOException("The index of the save file is corrupt");
+
+            var in = new BinaryReader(fc.position(offset));
+            var index = decode(in.readBytes(in.readVarInt()), layer);
+            var count = index.readVarInt();
+            var res = new ArrayList<Group>(Math.min(count, 1024));
+
+            for (var i = 0; i < count; i++)
+            {
+                var summary = new Group.Summary(index.readString(), index.readVarInt(), 0);
+                var blob = new Blob(path, index.readVarLong(), index.readVarInt(), summary, layer);
+                res.add(Group.lazy(blob));
+            }
+
+            return res;
+        }
+    }
+
+    /**
+     * Checks if a file is a save file with an index, i.e., if
+     * its groups can be read one at a time.
+     *
+     * @param path the path of the file.
+     * @return {@code true} iff it is a save file of the second version or later.
+     * */
+    public static boolean hasIndex(Path path)
+    {
+        try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            var buffer = ByteBuffer.allocate(MAGIC.length + 1);
+            while (buffer.hasRemaining() && fc.read(buffer) != -1);
+            return !buffer.hasRemaining() && isMagic(buffer.array()) && buffer.get(MAGIC.length) >= 2;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if a file starts as a save file, so it can
+     * be told apart from the serialized saves.
+     *
+     * @param path the path of the file.
+     * @return {@code true} iff it starts with the magic bytes.
+     * */
+    public static boolean isSaveFile(Path path)
+    {
+        try (var fc = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            var buffer = ByteBuffer.allocate(MAGIC.length);
+            while (buffer.hasRemaining() && fc.read(buffer) != -1);
+            return !buffer.hasRemaining() && isMagic(buffer.array());
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    private static boolean isMagic(byte[] bytes)
+    {
+        for (var i = 0; i < MAGIC.length; i++)
+        {
+            if (bytes[i] != MAGIC[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a reader of some bytes written through a layer.
+     * */
+    private static BinaryReader decode(byte[] bytes, Layer<ReadableByteChannel> layer) throws IOException
+    {
+        return new BinaryReader(layer.wrap(Channels.newChannel(new ByteArrayInputStream(bytes))));
+    }
+}
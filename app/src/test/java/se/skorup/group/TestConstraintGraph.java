@@ -0,0 +1,273 @@
+package se.skorup.group;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestConstraintGraph
+{
+    @Test
+    public void testSnapshotMatchesGroup()
+    {
+        var gm = new Group("Test");
+        var cnt = 1000;
+
+        for (var i = 0; i < cnt; i++)
+            gm.registerPerson(UUID.randomUUID().toString());
+
+        var random = new Random("kaka".hashCode()); // Seed to be the same each time.
+        for (var i = 0; i < cnt * 3; i++)
+        {
+            var id1 = random.nextInt(0, cnt);
+            var id2 = random.nextInt(0, cnt);
+
+            if (random.nextBoolean())
+                gm.addWishItem(id1, id2);
+            else
+                gm.addDenyItem(id1, id2);
+        }
+
+        var cg = gm.snapshot();
+        assertEquals(gm.size(), cg.size(), "The sizes should match.");
+
+        for (var i = 0; i < cg.size(); i++)
+        {
+            var id = cg.idOf(i);
+            assertEquals(i, cg.indexOf(id), "The index should map back.");
+
+            var wishes = gm.getWishedIds(id);
+            wishes.remove(id);
+            assertEquals(wishes.size(), cg.wishCount(i), "The number of wishes should match for %d.".formatted(id));
+
+            for (var k = 0; k < cg.wishCount(i); k++)
+                assertTrue(wishes.contains(cg.idOf(cg.wish(i, k))), "%d should be wished by %d.".formatted(cg.idOf(cg.wish(i, k)), id));
+
+            for (var j = 0; j < cg.size(); j++)
+            {
+                if (i == j)
+                    continue;
+
+                assertEquals(
+                    gm.isDenied(id, cg.idOf(j)), cg.isDenied(i, j),
+                    "Deny between %d and %d should match.".formatted(id, cg.idOf(j))
+                );
+
+                assertEquals(
+                    wishes.contains(cg.idOf(j)), cg.isWished(i, j),
+                    "Wish from %d to %d should match.".formatted(id, cg.idOf(j))
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testRemovedPersonsAreIgnored()
+    {
+        var gm = new Group("Kaka");
+        var id1 = gm.registerPerson("Kalle");
+        var id2 = gm.registerPerson("Liza");
+        var id3 = gm.registerPerson("Sven");
+        gm.addWishItem(id1, id2);
+        gm.addWishItem(id1, id3);
+        gm.addDenyItem(id3, id2);
+        gm.removePerson(id2);
+
+        var cg = gm.snapshot();
+        assertEquals(2, cg.size(), "Only two persons should be left.");
+        assertEquals(-1, cg.indexOf(id2), "The removed person should not have an index.");
+        assertEquals(1, cg.wishCount(cg.indexOf(id1)), "Only the wish for Sven should be left.");
+        assertEquals(0, cg.denyCount(cg.indexOf(id3)), "The deny should be gone.");
+        assertFalse(cg.isDenied(cg.indexOf(id1), cg.indexOf(id3)), "They should not be denied.");
+    }
+
+    @Test
+    public void testSnapshotIsCached()
+    {
+        var gm = new Group("Kaka");
+        var id1 = gm.registerPerson("Kalle");
+        var id2 = gm.registerPerson("Liza");
+
+        var cg = gm.snapshot();
+        assertSame(cg, gm.snapshot(), "An unchanged group should reuse the snapshot.");
+
+        gm.addDenyItem(id1, id2);
+        assertNotSame(cg, gm.snapshot(), "A changed group should create a new snapshot.");
+        assertTrue(gm.snapshot().isDenied(0, 1), "The new snapshot should have the deny item.");
+        assertFalse(cg.isDenied(0, 1), "The old snapshot should not change.");
+    }
+
+    @Test
+    public void testToIdsAndToIndices()
+    {
+        var gm = new Group("Kaka");
+        for (var i = 0; i < 6; i++)
+            gm.registerPerson("Test-" + i);
+
+        gm.removePerson(2);
+
+        var cg = gm.snapshot();
+        var groups = List.of(Set.of(0, 1), Set.of(3, 4, 5));
+        assertEquals(groups, cg.toIds(cg.toIndices(groups)), "The round trip should give the same groups.");
+    }
+
+    @Test
+    public void testMainGroupSnapshotsMatchAsGroup()
+    {
+        var gm = new Group("Test");
+        var cnt = 300;
+
+        for (var i = 0; i < cnt; i++)
+            gm.registerPerson(UUID.randomUUID().toString());
+
+        var random = new Random("kaka".hashCode()); // Seed to be the same each time.
+        for (var i = 0; i < cnt * 3; i++)
+        {
+            var id1 = random.nextInt(0, cnt);
+            var id2 = random.nextInt(0, cnt);
+
+            if (random.nextBoolean())
+                gm.addWishItem(id1, id2);
+            else
+                gm.addDenyItem(id1, id2);
+        }
+
+        for (var i = 0; i < cnt; i += 3)
+            gm.setMainGroup(i, MainGroup.TWO);
+
+        var snapshots = gm.mainGroupSnapshots();
+        var expected = List.of(gm.mainGroupOneAsGroup().snapshot(), gm.mainGroupTwoAsGroup().snapshot());
+        var actual = List.of(snapshots.get(MainGroup.ONE), snapshots.get(MainGroup.TWO));
+
+        for (var g = 0; g < 2; g++)
+        {
+            var e = expected.get(g);
+            var a = actual.get(g);
+            assertEquals(e.size(), a.size(), "The sizes should match.");
+
+            for (var i = 0; i < e.size(); i++)
+            {
+                assertEquals(e.idOf(i), a.idOf(i), "The ids should match.");
+                assertEquals(e.wishCount(i), a.wishCount(i), "The number of wishes should match.");
+                assertEquals(e.wishedByCount(i), a.wishedByCount(i), "The number of wishers should match.");
+                assertEquals(e.denyCount(i), a.denyCount(i), "The number of denies should match.");
+
+                for (var k = 0; k < e.wishCount(i); k++)
+                    assertEquals(e.wish(i, k), a.wish(i, k), "The wishes should match.");
+
+                for (var k = 0; k < e.denyCount(i); k++)
+                    assertEquals(e.deny(i, k), a.deny(i, k), "The denies should match.");
+            }
+        }
+    }
+
+    @Test
+    public void testAttributes()
+    {
+        var gm = new Group("Kaka");
+        for (var i = 0; i < 6; i++)
+            gm.registerPerson("Test-" + i);
+
+        gm.addAttribute("Level", Attribute.Kind.NUMERIC);
+        gm.addAttribute("Class", Attribute.Kind.CATEGORICAL);
+
+        for (var i = 0; i < 6; i++)
+        {
+            gm.setNumeric(i, "Level", i);
+            gm.setCategory(i, "Class", i % 2 == 0 ? "A" : "B");
+        }
+
+        var old = gm.snapshot();
+        gm.removePerson(2);
+        gm.setNumeric(3, "Level", Double.NaN);
+
+        var cg = gm.snapshot();
+        assertEquals(2, cg.attributeCount(), "There should be two attributes.");
+        assertEquals("Level", cg.attributeName(0), "The attributes should be in the order they were added.");
+        assertTrue(cg.isNumeric(0), "Level should be numeric.");
+        assertFalse(cg.isNumeric(1), "Class should be categorical.");
+        assertEquals(2, cg.categoryCount(1), "There should be two classes.");
+        assertTrue(Double.isNaN(cg.numeric(0, cg.indexOf(3))), "The removed value should be missing.");
+        assertEquals(4, cg.numeric(0, cg.indexOf(4)), "The value should be kept.");
+        assertEquals(1, cg.category(1, cg.indexOf(5)), "5 should be in the second class.");
+        assertEquals(2, old.numeric(0, old.indexOf(2)), "The old snapshot should not change.");
+        assertTrue(Double.isNaN(gm.getNumeric(2, "Level")), "The removed person should not have a value.");
+
+        var sub = cg.subgraph(new int[] { cg.indexOf(4), cg.indexOf(5) });
+        assertEquals(4, sub.numeric(0, sub.indexOf(4)), "The subgraph should keep the values.");
+        assertEquals(0, sub.category(1, sub.indexOf(4)), "The subgraph should keep the categories.");
+
+        assertThrows(IllegalArgumentException.class, () -> gm.setCategory(0, "Level", "A"), "Level isn't categorical.");
+        assertThrows(IllegalArgumentException.class, () -> gm.setNumeric(0, "Missing", 1), "There is no such attribute.");
+
+        gm.setMainGroup(4, MainGroup.TWO);
+        var two = gm.mainGroupTwoAsGroup();
+        assertEquals("B", two.getCategory(5, "Class"), "The main group should have the attributes.");
+        assertEquals(2, gm.mainGroupSnapshots().get(MainGroup.TWO).attributeCount(), "The main group snapshot should have the attributes.");
+    }
+
+    @Test
+    public void testBulkAttributes()
+    {
+        var gm = new Group("Kaka");
+        for (var i = 0; i < 6; i++)
+            gm.registerPerson("Test-" + i);
+
+        gm.addAttribute("Level", Attribute.Kind.NUMERIC);
+        gm.addAttribute("Class", Attribute.Kind.CATEGORICAL);
+
+        var edits = new ArrayList<Edit>();
+        gm.setListener((g, version, edit) -> edits.add(edit));
+
+        var levels = new HashMap<Integer, Double>();
+        var classes = new HashMap<Integer, String>();
+        for (var i = 0; i < 6; i++)
+        {
+            levels.put(i, (double) i);
+            classes.put(i, i % 2 == 0 ? "A" : "B");
+        }
+
+        // Unknown persons are ignored, like by the single setters.
+        levels.put(17, 1.0);
+        gm.setNumerics("Level", levels);
+        gm.setCategories("Class", classes);
+        gm.setCategories("Class", Map.of(0, "C"));
+
+        assertEquals(3, edits.size(), "Every bulk set should be one edit.");
+        assertEquals(5, gm.getNumeric(5, "Level"), "The values should be set.");
+        assertTrue(Double.isNaN(gm.getNumeric(17, "Level")), "An unknown person should not get a value.");
+        assertEquals("B", gm.getCategory(3, "Class"), "The categories should be set.");
+        assertEquals("C", gm.getCategory(0, "Class"), "A later set should replace the category.");
+        assertEquals(3, gm.snapshot().categoryCount(1), "The new category should be added.");
+
+        // Applying the edits to a copy gives the same attributes.
+        var copy = new Group("Kaka");
+        for (var i = 0; i < 6; i++)
+            copy.registerPerson("Test-" + i);
+
+        copy.addAttribute("Level", Attribute.Kind.NUMERIC);
+        copy.addAttribute("Class", Attribute.Kind.CATEGORICAL);
+        edits.forEach(e -> e.apply(copy));
+
+        for (var i = 0; i < 6; i++)
+        {
+            assertEquals(gm.getNumeric(i, "Level"), copy.getNumeric(i, "Level"), "The edits should set the values.");
+            assertEquals(gm.getCategory(i, "Class"), copy.getCategory(i, "Class"), "The edits should set the categories.");
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> gm.setNumerics("Class", Map.of(0, 1.0)), "Class isn't numeric.");
+        assertThrows(IllegalArgumentException.class, () -> gm.setCategories("Missing", Map.of()), "There is no such attribute.");
+    }
+}
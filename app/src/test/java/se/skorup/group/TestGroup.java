@@ -571,6 +571,38 @@ public class TestGroup
         assertEquals(List.of(new Person("Kalle", id1), new Person("Kalle", id2)), gm.getPersonFromName("Kalle"));
     }
 
+    @Test
+    public void testNameIndex()
+    {
+        var gm = new Group("Kaka");
+        var anna = gm.registerPerson("Anna Svensson");
+        var annika = gm.registerPerson("Annika");
+        var anna2 = gm.registerPerson("Anna Svensson");
+        var bo = gm.registerPerson("Bo");
+
+        assertEquals(
+            List.of(new Person("Anna Svensson", anna), new Person("Anna Svensson", anna2)),
+            gm.getPersonFromName("  anna   SVENSSON "),
+            "The names should be compared in name case."
+        );
+        assertEquals(
+            List.of(new Person("Anna Svensson", anna), new Person("Anna Svensson", anna2), new Person("Annika", annika)),
+            gm.getPersonsFromPrefix("ann"),
+            "The prefix should find all the names that start with it."
+        );
+        assertEquals(List.of(), gm.getPersonsFromPrefix("C"), "No names should start with C.");
+        assertEquals(4, gm.getPersonsFromPrefix("").size(), "The empty prefix should find everyone.");
+
+        gm.removePerson(anna);
+        gm.removePerson(bo);
+        assertEquals(List.of(new Person("Anna Svensson", anna2)), gm.getPersonFromName("Anna Svensson"), "A removed person should not be found.");
+        assertEquals(List.of(), gm.getPersonFromName("Bo"), "The last person with a name should not be found.");
+
+        gm.setMainGroup(anna2, MainGroup.ONE);
+        var mg1 = gm.mainGroupOneAsGroup();
+        assertEquals(List.of(new Person("Anna Svensson", anna2)), mg1.getPersonFromName("anna svensson"), "A copied group should be indexed.");
+    }
+
     @Test
     public void testMainGroup()
     {
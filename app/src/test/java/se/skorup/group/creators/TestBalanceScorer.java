@@ -0,0 +1,243 @@
+package se.skorup.group.creators;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import se.skorup.group.Attribute;
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.Group;
+import se.skorup.group.generation.BalanceScorer;
+import se.skorup.group.generation.BalancedGroupCreator;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBalanceScorer
+{
+    private static final String[] CATEGORIES = { "A", "B", "C" };
+
+    private static Group createGroup(int members, Random r)
+    {
+        var gm = new Group("Test");
+
+        for (var i = 0; i < members; i++)
+            gm.registerPerson("Test-" + i);
+
+        gm.addAttribute("Level", Attribute.Kind.NUMERIC);
+        gm.addAttribute("Class", Attribute.Kind.CATEGORICAL);
+
+        for (var i = 0; i < members; i++)
+        {
+            // Every tenth is missing, to test that they are left out.
+            if (r.nextInt(10) != 0)
+                gm.setNumeric(i, "Level", r.nextInt(1, 6));
+
+            if (r.nextInt(10) != 0)
+                gm.setCategory(i, "Class", CATEGORIES[r.nextInt(CATEGORIES.length)]);
+        }
+
+        return gm;
+    }
+
+    private static int[][] createGroups(int members, int size)
+    {
+        var res = new int[(members + size - 1) / size][];
+
+        for (var g = 0; g < res.length; g++)
+        {
+            res[g] = new int[Math.min(size, members - g * size)];
+            for (var k = 0; k < res[g].length; k++)
+                res[g][k] = g * size + k;
+        }
+
+        return res;
+    }
+
+    private static double[] ones(ConstraintGraph cg)
+    {
+        var res = new double[cg.attributeCount()];
+        Arrays.fill(res, 1);
+        return res;
+    }
+
+    public static Stream<Arguments> getTestData()
+    {
+        return Stream.of(
+            Arguments.of(10, 2),
+            Arguments.of(10, 3),
+            Arguments.of(50, 5),
+            Arguments.of(100, 4),
+            Arguments.of(301, 6)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestData")
+    public void testParity(int members, int size)
+    {
+        var r = new Random("Kaka".hashCode());
+        var cg = createGroup(members, r).snapshot();
+        var groups = createGroups(members, size);
+        var weights = new double[] { 2, 0.5 };
+        var scorer = new BalanceScorer(cg, groups, weights);
+
+        for (var i = 0; i < 2000; i++)
+        {
+            var a = r.nextInt(members);
+            var b = r.nextInt(members);
+            var before = scorer.penalty();
+            var delta = scorer.deltaForSwap(a, b);
+
+            assertEquals(before, scorer.penalty(), "deltaForSwap should not change the penalty.");
+            scorer.applySwap(a, b);
+
+            var ga = scorer.groupOf(a);
+            var gb = scorer.groupOf(b);
+            for (var g = 0; g < groups.length; g++)
+            {
+                for (var k = 0; k < groups[g].length; k++)
+                {
+                    if (groups[g][k] == a)
+                        groups[g][k] = -1;
+                    else if (groups[g][k] == b)
+                        groups[g][k] = -2;
+                }
+            }
+
+            for (var g : groups)
+            {
+                for (var k = 0; k < g.length; k++)
+                    g[k] = g[k] == -1 ? b : g[k] == -2 ? a : g[k];
+            }
+
+            assertTrue(Arrays.stream(groups[ga]).anyMatch(p -> p == a), "The scorer should have moved a.");
+            assertTrue(Arrays.stream(groups[gb]).anyMatch(p -> p == b), "The scorer should have moved b.");
+
+            var expected = new BalanceScorer(cg, groups, weights);
+            assertEquals(expected.penalty(), scorer.penalty(), 1e-9, "The penalty should match after %d swaps.".formatted(i));
+            assertEquals(expected.penalty() - before, delta, 1e-9, "The delta should match the change in penalty.");
+        }
+    }
+
+    @Test
+    public void testImbalance()
+    {
+        var gm = new Group("Test");
+        for (var i = 0; i < 4; i++)
+            gm.registerPerson("Test-" + i);
+
+        gm.addAttribute("Level", Attribute.Kind.NUMERIC);
+        gm.addAttribute("Class", Attribute.Kind.CATEGORICAL);
+
+        // 0 and 1 are strong A, 2 and 3 are weak B.
+        for (var i = 0; i < 4; i++)
+        {
+            gm.setNumeric(i, "Level", i < 2 ? 5 : 1);
+            gm.setCategory(i, "Class", i < 2 ? "A" : "B");
+        }
+
+        var cg = gm.snapshot();
+        var split = new BalanceScorer(cg, new int[][] { { 0, 1 }, { 2, 3 } }, ones(cg));
+        var mixed = new BalanceScorer(cg, new int[][] { { 0, 2 }, { 1, 3 } }, ones(cg));
+
+        // Means are 5 and 1 around 3 with variance 4, i.e. (4 + 4) / (2 * 4).
+        assertEquals(1, split.imbalance(0), 1e-9, "The numeric imbalance should be one.");
+        // Each cell is off by one, from 1, i.e. 4 / 4.
+        assertEquals(1, split.imbalance(1), 1e-9, "The categorical imbalance should be one.");
+        assertEquals(0, mixed.penalty(), 1e-9, "The mixed groups should be balanced.");
+        assertEquals(3, mixed.mean(0, 0), 1e-9, "The mean of the first group should be three.");
+        assertEquals(1, mixed.count(1, 1, 0), "There should be one A in the second group.");
+    }
+
+    @Test
+    public void testWrongNumberOfWeights()
+    {
+        var cg = createGroup(10, new Random("Kaka".hashCode())).snapshot();
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new BalanceScorer(cg, createGroups(10, 5), new double[1]),
+            "There should be one weight per attribute."
+        );
+    }
+
+    @Test
+    public void testBalancedGroupCreatorBalances()
+    {
+        var r = new Random("Kaka".hashCode());
+        var cg = createGroup(60, r).snapshot();
+
+        // The persons in the order of their level are the most unbalanced groups.
+        var sorted = new int[60];
+        Arrays.setAll(sorted, i -> i);
+        sorted = Arrays.stream(sorted)
+                       .boxed()
+                       .sorted((a, b) -> Double.compare(cg.numeric(0, a), cg.numeric(0, b)))
+                       .mapToInt(Integer::intValue)
+                       .toArray();
+
+        var unbalanced = createGroups(60, 6);
+        for (var g : unbalanced)
+        {
+            for (var k = 0; k < g.length; k++)
+                g[k] = sorted[g[k]];
+        }
+
+        var before = new BalanceScorer(cg, unbalanced, ones(cg)).penalty();
+        var creator = new BalancedGroupCreator(diff -> {}, Map.of(), 200_000, Duration.ofSeconds(10));
+        var res = creator.generate(cg, 6, "Kaka".hashCode());
+
+        assertEquals(1, res.size(), "There should be one solution.");
+
+        var groups = cg.toIndices(res.getFirst());
+        var seen = new HashSet<Integer>();
+        for (var g : groups)
+        {
+            assertEquals(6, g.length, "Every subgroup should have six persons.");
+            Arrays.stream(g).forEach(seen::add);
+        }
+
+        assertEquals(60, seen.size(), "Everyone should be placed.");
+
+        var after = new BalanceScorer(cg, groups, ones(cg)).penalty();
+        assertTrue(after < before / 10, "The groups should be balanced, got: %f before: %f".formatted(after, before));
+    }
+
+    @Test
+    public void testBalancedGroupCreatorWithInfiniteScore()
+    {
+        var r = new Random("Kaka".hashCode());
+        var gm = createGroup(60, r);
+
+        // Everyone wishes everyone, so the score of the wishes is too large to be represented.
+        for (var i = 0; i < 60; i++)
+        {
+            for (var j = 0; j < 60; j++)
+            {
+                if (i != j)
+                    gm.addWishItem(i, j);
+            }
+        }
+
+        var cg = gm.snapshot();
+        var creator = new BalancedGroupCreator(diff -> {}, Map.of(), 200_000, Duration.ofSeconds(10));
+        var res = creator.generate(cg, 30, "Kaka".hashCode());
+
+        assertEquals(1, res.size(), "There should be one solution.");
+
+        var groups = cg.toIndices(res.getFirst());
+        assertEquals(2, groups.length, "There should be two subgroups.");
+        assertEquals(60, Arrays.stream(groups).mapToInt(g -> g.length).sum(), "Everyone should be placed.");
+
+        var penalty = new BalanceScorer(cg, groups, ones(cg)).penalty();
+        assertTrue(penalty < 0.1, "The imbalance should decide, got: %f".formatted(penalty));
+    }
+}
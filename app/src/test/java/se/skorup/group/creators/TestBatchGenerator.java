@@ -0,0 +1,140 @@
+package se.skorup.group.creators;
+
+import org.junit.jupiter.api.Test;
+import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
+import se.skorup.group.generation.BatchGenerator;
+import se.skorup.group.generation.Creator;
+import se.skorup.group.generation.GenerationSettings;
+import se.skorup.group.generation.InfeasibleGroupsException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBatchGenerator
+{
+    private static Group createGroup(String name, int members, Random r)
+    {
+        var gm = new Group(name);
+
+        for (var i = 0; i < members; i++)
+            gm.registerPerson("Test-" + i);
+
+        for (var i = 0; i < members * 2; i++)
+        {
+            var id1 = r.nextInt(members);
+            var id2 = r.nextInt(members);
+
+            if (id1 != id2)
+                gm.addWishItem(id1, id2);
+        }
+
+        return gm;
+    }
+
+    @Test
+    public void testGenerateAll()
+    {
+        var r = new Random("Kaka".hashCode());
+        var groups = new ArrayList<Group>();
+        for (var i = 0; i < 12; i++)
+            groups.add(createGroup("Class-" + i, r.nextInt(10, 40), r));
+
+        var progress = new AtomicLong();
+        var settings = new GenerationSettings(false, List.of(4), List.of(), List.of(), 1234);
+        var results = new BatchGenerator(progress::addAndGet).generateAll(groups, settings, Creator.RANDOM).toList();
+
+        assertEquals(groups.size(), results.size(), "Every group should be streamed.");
+        assertEquals(1_000_000_000, progress.get(), "The progress should sum to one full generation.");
+
+        var seen = new HashSet<Group>();
+        for (var res : results)
+        {
+            assertTrue(res.isSuccess(), "%s should succeed.".formatted(res.group()));
+            assertTrue(seen.add(res.group()), "%s should only be streamed once.".formatted(res.group()));
+
+            var alone = BatchGenerator.generate(Creator.RANDOM.create(p -> {}, res.group().size()), res.group(), settings);
+            assertEquals(alone.getFirst(), res.subgroups(), "%s should get the same groups as alone.".formatted(res.group()));
+        }
+    }
+
+    @Test
+    public void testGenerateAllWithMainGroups()
+    {
+        var r = new Random("Kaka".hashCode());
+        var groups = new ArrayList<Group>();
+        for (var i = 0; i < 4; i++)
+        {
+            var gm = createGroup("Class-" + i, 30, r);
+            for (var id = 0; id < 30; id += 2)
+                gm.setMainGroup(id, MainGroup.TWO);
+
+            groups.add(gm);
+        }
+
+        var settings = new GenerationSettings(true, List.of(), List.of(3), List.of(5), 1234);
+        var results = new BatchGenerator(p -> {}).generateAll(groups, settings, Creator.LOCAL_SEARCH).toList();
+
+        assertEquals(groups.size(), results.size(), "Every group should be streamed.");
+        for (var res : results)
+        {
+            var ids = new HashSet<Integer>();
+            res.subgroups().forEach(ids::addAll);
+            assertEquals(30, ids.size(), "Everyone in %s should be placed.".formatted(res.group()));
+        }
+    }
+
+    @Test
+    public void testFailuresAreStreamed()
+    {
+        var r = new Random("Kaka".hashCode());
+        var ok = createGroup("Ok", 20, r);
+        var infeasible = createGroup("Infeasible", 20, r);
+
+        // Five persons that all deny each other can't fit in four groups.
+        for (var i = 0; i < 5; i++)
+        {
+            for (var j = i + 1; j < 5; j++)
+                infeasible.addDenyItem(i, j);
+        }
+
+        var settings = new GenerationSettings(false, List.of(5), List.of(), List.of(), 1234);
+        var results = new HashMap<Group, BatchGenerator.Result>();
+        new BatchGenerator(p -> {}).generateAll(List.of(ok, infeasible), settings, Creator.RANDOM)
+                                   .forEach(res -> results.put(res.group(), res));
+
+        assertEquals(2, results.size(), "Both groups should be streamed.");
+        assertTrue(results.get(ok).isSuccess(), "The feasible group should succeed.");
+        assertFalse(results.get(infeasible).isSuccess(), "The infeasible group should fail.");
+        assertTrue(results.get(infeasible).failure() instanceof InfeasibleGroupsException, "It should say why.");
+    }
+
+    @Test
+    public void testGroupsDontRunOnTheCommonPool()
+    {
+        var r = new Random("Kaka".hashCode());
+        var groups = new ArrayList<Group>();
+        for (var i = 0; i < 4; i++)
+            groups.add(createGroup("Class-" + i, 30, r));
+
+        // The progress is reported on the threads that the groups run on.
+        var pooled = new AtomicBoolean();
+        var settings = new GenerationSettings(false, List.of(3), List.of(), List.of(), 1234);
+        var results = new BatchGenerator(p -> pooled.compareAndSet(false, Thread.currentThread() instanceof ForkJoinWorkerThread))
+            .generateAll(groups, settings, Creator.RANDOM)
+            .toList();
+
+        assertEquals(groups.size(), results.size(), "Every group should be streamed.");
+        assertFalse(pooled.get(), "The groups should run on threads of their own, not the common pool.");
+    }
+}
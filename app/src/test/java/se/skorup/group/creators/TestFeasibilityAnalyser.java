@@ -0,0 +1,161 @@
+package se.skorup.group.creators;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import se.skorup.group.Group;
+import se.skorup.group.generation.FeasibilityAnalyser;
+import se.skorup.group.generation.GroupCreator;
+import se.skorup.group.generation.InfeasibleGroupsException;
+import se.skorup.group.generation.LocalSearchGroupCreator;
+import se.skorup.group.generation.RandomGroupCreator;
+import se.skorup.group.generation.WishesGroupCreator;
+import se.skorup.group.generation.WishlistGroupCreator;
+import se.skorup.group.progress.Progress;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestFeasibilityAnalyser
+{
+    private static final Progress p = p -> {};
+
+    private static Group createGroup(int members)
+    {
+        var gm = new Group("Test");
+
+        for (var i = 0; i < members; i++)
+            gm.registerPerson("Test-" + i);
+
+        return gm;
+    }
+
+    /**
+     * Everyone is denied with everyone in another class, i.e. i % classes,
+     * so the only way is one class per group.
+     * */
+    private static Group createClasses(int members, int classes)
+    {
+        var gm = createGroup(members);
+
+        for (var i = 0; i < members; i++)
+        {
+            for (var j = i + 1; j < members; j++)
+            {
+                if (i % classes != j % classes)
+                    gm.addDenyItem(i, j);
+            }
+        }
+
+        return gm;
+    }
+
+    public static Stream<Arguments> getCapacities()
+    {
+        return Stream.of(
+            Arguments.of(10, List.of(3), new int[] { 3, 3, 3, 1 }),
+            Arguments.of(10, List.of(5), new int[] { 5, 5 }),
+            Arguments.of(10, List.of(2, 3), new int[] { 2, 3, 5 }),
+            Arguments.of(4, List.of(3, 3), new int[] { 3, 1 }),
+            Arguments.of(0, List.of(3), new int[0])
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getCapacities")
+    public void testCapacities(int n, List<Integer> sizes, int[] expected)
+    {
+        var res = sizes.size() == 1 ?
+                  FeasibilityAnalyser.capacities(n, sizes.getFirst()) :
+                  FeasibilityAnalyser.capacities(n, sizes);
+
+        assertArrayEquals(expected, res, "Wrong capacities of %d persons in %s".formatted(n, sizes));
+        assertThrows(IllegalArgumentException.class, () -> FeasibilityAnalyser.capacities(5, 0), "The size has to be positive.");
+    }
+
+    @Test
+    public void testClique()
+    {
+        var gm = createGroup(12);
+        for (var i = 0; i < 4; i++)
+        {
+            for (var j = i + 1; j < 4; j++)
+                gm.addDenyItem(i, j);
+        }
+
+        var res = FeasibilityAnalyser.analyse(gm.snapshot(), FeasibilityAnalyser.capacities(12, 4));
+
+        assertEquals(FeasibilityAnalyser.Verdict.INFEASIBLE, res.verdict(), "Four persons can't be in three groups.");
+        assertEquals(List.of(0, 1, 2, 3), res.conflicts(), "The clique should be named.");
+
+        var e = assertThrows(
+            InfeasibleGroupsException.class, () -> new RandomGroupCreator(p).generate(gm, 4, false),
+            "The creator should fail fast."
+        );
+
+        assertEquals(List.of(0, 1, 2, 3), e.getConflicts(), "The exception should name the clique.");
+    }
+
+    @Test
+    public void testDeniedWithTooMany()
+    {
+        var gm = createGroup(10);
+        for (var i = 1; i < 9; i++)
+            gm.addDenyItem(0, i);
+
+        var res = FeasibilityAnalyser.analyse(gm.snapshot(), FeasibilityAnalyser.capacities(10, 5));
+
+        assertEquals(FeasibilityAnalyser.Verdict.INFEASIBLE, res.verdict(), "0 can only be with one person.");
+        assertEquals(0, res.conflicts().getFirst(), "0 should be named.");
+        assertThrows(InfeasibleGroupsException.class, res::requireFeasible, "It should throw.");
+    }
+
+    @Test
+    public void testExhaustedSearch()
+    {
+        // A cycle of five can't be split in two groups, but there is no clique larger than two.
+        var gm = createGroup(6);
+        for (var i = 0; i < 5; i++)
+            gm.addDenyItem(i, (i + 1) % 5);
+
+        var res = FeasibilityAnalyser.analyse(gm.snapshot(), FeasibilityAnalyser.capacities(6, 3));
+        assertEquals(FeasibilityAnalyser.Verdict.INFEASIBLE, res.verdict(), "An odd cycle can't be split in two.");
+        assertFalse(res.conflicts().isEmpty(), "Someone should be named.");
+    }
+
+    public static Stream<Arguments> getCreators()
+    {
+        return Stream.of(
+            Arguments.of(new RandomGroupCreator(p)),
+            Arguments.of(new WishlistGroupCreator()),
+            Arguments.of(new WishesGroupCreator(p)),
+            Arguments.of(new LocalSearchGroupCreator(p, 10_000, Duration.ofSeconds(5)))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getCreators")
+    public void testFallsBackOnColouring(GroupCreator gc)
+    {
+        var gm = createClasses(12, 3);
+
+        for (var seed = 0; seed < 5; seed++)
+        {
+            var res = gc.generate(gm, 4, false, seed);
+            assertFalse(res.isEmpty(), "There should be a result from %s.".formatted(gc));
+
+            for (var group : res.getFirst())
+            {
+                assertEquals(4, group.size(), "The groups should keep their sizes.");
+                assertEquals(1, group.stream().map(i -> i % 3).distinct().count(), "Only one class per group: %s".formatted(group));
+            }
+        }
+    }
+}
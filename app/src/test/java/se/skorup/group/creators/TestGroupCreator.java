@@ -5,17 +5,28 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
+import se.skorup.group.ConstraintGraph;
+import se.skorup.group.generation.BalancedGroupCreator;
+import se.skorup.group.generation.BranchAndBoundGroupCreator;
+import se.skorup.group.generation.FeasibilityAnalyser;
 import se.skorup.group.generation.GroupCreator;
+import se.skorup.group.generation.LocalSearchGroupCreator;
 import se.skorup.group.generation.RandomGroupCreator;
 import se.skorup.group.generation.WishesGroupCreator;
 import se.skorup.group.generation.WishlistGroupCreator;
 import se.skorup.group.progress.Progress;
 import se.skorup.util.collections.ImmutableHashSet;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -25,6 +36,9 @@ import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class TestGroupCreator
@@ -70,14 +84,20 @@ public class TestGroupCreator
             Arguments.of(new WishlistGroupCreator(), 2, gms.get(0)),
             Arguments.of(new WishlistGroupCreator(0), 2, gms.get(0)),
             Arguments.of(new WishesGroupCreator(p), 2, gms.get(0)),
+            Arguments.of(new LocalSearchGroupCreator(p, 20_000, Duration.ofSeconds(5)), 2, gms.get(0)),
+            Arguments.of(new BranchAndBoundGroupCreator(p), 2, gms.get(0)),
             Arguments.of(new RandomGroupCreator(p), 5, gms.get(1)),
             Arguments.of(new WishlistGroupCreator(), 5, gms.get(1)),
             Arguments.of(new WishlistGroupCreator(0), 5, gms.get(1)),
             Arguments.of(new WishesGroupCreator(p), 5, gms.get(1)),
+            Arguments.of(new WishesGroupCreator(p, 10, WishesGroupCreator.Execution.VIRTUAL_THREADS), 5, gms.get(1)),
+            Arguments.of(new LocalSearchGroupCreator(p, 20_000, Duration.ofSeconds(5)), 5, gms.get(1)),
+            Arguments.of(new BalancedGroupCreator(p, Map.of(), 20_000, Duration.ofSeconds(5)), 5, gms.get(1)),
             Arguments.of(new RandomGroupCreator(p), 2, gms.get(2)),
             Arguments.of(new WishlistGroupCreator(), 2, gms.get(2)),
             Arguments.of(new WishlistGroupCreator(0), 2, gms.get(2)),
-            Arguments.of(new WishesGroupCreator(p), 2, gms.get(2))
+            Arguments.of(new WishesGroupCreator(p), 2, gms.get(2)),
+            Arguments.of(new LocalSearchGroupCreator(p, 20_000, Duration.ofSeconds(5)), 2, gms.get(2))
         );
     }
 
@@ -111,10 +131,18 @@ public class TestGroupCreator
         }
     }
 
-    @Test
-    public synchronized void testInterrupt() throws ExecutionException, InterruptedException, TimeoutException
+    public static Stream<Arguments> getExecutions()
     {
-        var gc = new WishesGroupCreator(p);
+        return Stream.of(WishesGroupCreator.Execution.values()).map(Arguments::of);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getExecutions")
+    public synchronized void testInterrupt(
+        WishesGroupCreator.Execution execution
+    ) throws ExecutionException, InterruptedException, TimeoutException
+    {
+        var gc = new WishesGroupCreator(p, WishesGroupCreator.DEFAULT_MAX_TIES, execution);
         var tp = Executors.newSingleThreadExecutor();
 
         var task = tp.submit(() -> gc.generate(gms.get(1), 6, false));
@@ -127,4 +155,270 @@ public class TestGroupCreator
 
         assertEquals(List.of(), res, "The interrupted result should be empty.");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLocalSearchRespectsDenylist() throws Exception
+    {
+        var gm = new Group("Deny");
+        var r = new Random("Kaka".hashCode());
+        setUpGroup(60, gm, r);
+
+        for (var i = 0; i < 60; i += 2)
+            gm.addDenyItem(i, i + 1);
+
+        var res = new LocalSearchGroupCreator(p, 50_000, Duration.ofSeconds(5)).generate(gm, 6, false);
+        assertEquals(1, res.size(), "There should be one result.");
+
+        for (var g : res.getFirst())
+        {
+            assertEquals(6, g.size(), "The groups should keep their sizes.");
+
+            for (var i = 0; i < 60; i += 2)
+                assertFalse(g.contains(i) && g.contains(i + 1), "%d and %d are denied: %s".formatted(i, i + 1, g));
+        }
+    }
+
+    @Test
+    public void testRandomBacktracksOnDenseDenylist()
+    {
+        var gm = new Group("Dense");
+        var r = new Random("Kaka".hashCode());
+        setUpGroup(60, gm, r);
+
+        for (var i = 0; i < 60; i++)
+        {
+            for (var k = 0; k < 10; k++)
+            {
+                var j = r.nextInt(60);
+                if (i != j)
+                    gm.addDenyItem(i, j);
+            }
+        }
+
+        var cg = gm.snapshot();
+        var caps = FeasibilityAnalyser.capacities(cg.size(), 6);
+
+        // Without the colouring of the analysis, so only the backtracking can save it.
+        var unknown = new FeasibilityAnalyser.Result(FeasibilityAnalyser.Verdict.UNKNOWN, caps, null, List.of(), null);
+        var gc = new RandomGroupCreator(p);
+
+        for (var seed = 0; seed < 50; seed++)
+        {
+            var random = new SplittableRandom(seed);
+            var groups = assertDoesNotThrow(
+                () -> gc.createGroups(cg, unknown, random), "The backtracking should always succeed."
+            );
+
+            var all = new HashSet<Integer>();
+            for (var g : groups)
+            {
+                assertEquals(6, g.length, "The groups should keep their sizes.");
+
+                for (var a : g)
+                {
+                    all.add(a);
+                    for (var b : g)
+                        assertFalse(cg.isDenied(a, b), "%d and %d are denied: %s".formatted(a, b, Arrays.toString(g)));
+                }
+            }
+
+            assertEquals(60, all.size(), "Everyone should be placed once.");
+        }
+    }
+
+    @Test
+    public void testTemplateRetriesDeadEnds()
+    {
+        var gm = new Group("Dead ends");
+        var r = new Random("Kaka".hashCode());
+        setUpGroup(30, gm, r);
+
+        for (var i = 0; i < 30; i++)
+        {
+            for (var k = 0; k < 6; k++)
+            {
+                var j = r.nextInt(30);
+                if (i != j)
+                    gm.addDenyItem(i, j);
+            }
+        }
+
+        var cg = gm.snapshot();
+        var feasibility = FeasibilityAnalyser.analyse(cg, FeasibilityAnalyser.capacities(cg.size(), 5));
+        assertNotNull(feasibility.groups(), "The analysis should find a colouring.");
+
+        var colouring = Arrays.stream(feasibility.groups()).map(Arrays::toString).toList();
+        var distinct = new HashSet<List<String>>();
+        var gc = new WishlistGroupCreator();
+
+        for (var seed = 0; seed < 50; seed++)
+        {
+            var random = new SplittableRandom(seed);
+            var groups = assertDoesNotThrow(() -> gc.createGroups(cg, feasibility, random), "A dead end should be retried.");
+            distinct.add(Arrays.stream(groups).map(Arrays::toString).toList());
+
+            for (var g : groups)
+            {
+                for (var a : g)
+                {
+                    for (var b : g)
+                        assertFalse(cg.isDenied(a, b), "%d and %d are denied: %s".formatted(a, b, Arrays.toString(g)));
+                }
+            }
+        }
+
+        distinct.remove(colouring);
+        assertTrue(distinct.size() > 10, "The results should stay random, not fall back on the colouring: %d".formatted(distinct.size()));
+    }
+
+    @Test
+    public void testWishesMaxTies()
+    {
+        var res = assertDoesNotThrow(() -> new WishesGroupCreator(p, 1).generate(gms.get(0), 2, false));
+        assertEquals(1, res.size(), "Only one of the tied solutions should be kept.");
+    }
+
+    /**
+     * Finds the best score by trying every way to fill the groups.
+     * */
+    private static double bruteForce(ConstraintGraph cg, int[] caps, List<List<Integer>> groups, int person)
+    {
+        if (person == cg.size())
+        {
+            var arr = groups.stream().map(g -> g.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+            return WishesGroupCreator.getScore(arr, cg);
+        }
+
+        var best = Double.NEGATIVE_INFINITY;
+        for (var g = 0; g < caps.length; g++)
+        {
+            var group = groups.get(g);
+            if (group.size() == caps[g] || group.stream().anyMatch(q -> cg.isDenied(person, q)))
+                continue;
+
+            group.add(person);
+            best = Math.max(best, bruteForce(cg, caps, groups, person + 1));
+            group.removeLast();
+        }
+
+        return best;
+    }
+
+    @Test
+    public void testBranchAndBoundIsOptimal()
+    {
+        var r = new Random("Kaka".hashCode());
+
+        for (var round = 0; round < 5; round++)
+        {
+            var gm = new Group("Optimal");
+            setUpGroup(10, gm, r);
+            setUpGroup(0, gm, r);
+
+            for (var i = 0; i < 10; i++)
+                gm.addWishItem(i, (i + 1 + r.nextInt(9)) % 10);
+
+            gm.addDenyItem(r.nextInt(5), 5 + r.nextInt(5));
+
+            var cg = gm.snapshot();
+            var groups = new ArrayList<List<Integer>>();
+            for (var i = 0; i < 4; i++)
+                groups.add(new ArrayList<>());
+
+            var expected = bruteForce(cg, new int[] { 3, 3, 3, 1 }, groups, 0);
+            var gc = new BranchAndBoundGroupCreator(p, Duration.ofMinutes(1));
+            var result = gc.search(cg, List.of(3), round);
+            var res = result.groups();
+
+            assertEquals(1, res.size(), "There should be one result.");
+            assertTrue(result.optimal(), "The search should finish within the time cap.");
+            assertEquals(
+                expected, WishesGroupCreator.getScore(res.getFirst(), gm), 1e-9,
+                "The result should have the best possible score: %s".formatted(res.getFirst())
+            );
+        }
+    }
+
+    @Test
+    public void testBranchAndBoundTimeCap()
+    {
+        var gm = new Group("Capped");
+        setUpGroup(60, gm, new Random("Kaka".hashCode()));
+
+        var start = System.nanoTime();
+        var res = new BranchAndBoundGroupCreator(p, Duration.ofSeconds(1)).generate(gm, 6, false, 1);
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(10)) < 0, "The time cap should stop the search: %s".formatted(elapsed));
+        assertEquals(10, res.getFirst().size(), "The best solution so far should be returned.");
+    }
+
+    public static Stream<Arguments> getSeededCreators()
+    {
+        return Stream.of(
+            Arguments.of(new RandomGroupCreator(p), new RandomGroupCreator(p)),
+            Arguments.of(new WishlistGroupCreator(), new WishlistGroupCreator()),
+            Arguments.of(new WishesGroupCreator(p), new WishesGroupCreator(p)),
+            Arguments.of(
+                new WishesGroupCreator(p, WishesGroupCreator.DEFAULT_MAX_TIES, WishesGroupCreator.Execution.SHARED_POOL),
+                new WishesGroupCreator(p, WishesGroupCreator.DEFAULT_MAX_TIES, WishesGroupCreator.Execution.VIRTUAL_THREADS)
+            ),
+            Arguments.of(
+                new LocalSearchGroupCreator(p, 20_000, Duration.ofMinutes(1)),
+                new LocalSearchGroupCreator(p, 20_000, Duration.ofMinutes(1))
+            )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getSeededCreators")
+    public void testSeedIsReproducible(GroupCreator gc1, GroupCreator gc2) throws Exception
+    {
+        var gm = gms.get(1);
+        var seed = "Kaka".hashCode();
+
+        assertEquals(
+            gc1.generate(gm, 5, false, seed), gc2.generate(gm, 5, false, seed),
+            "The same seed should give the same result with: %s".formatted(gc1)
+        );
+
+        assertEquals(
+            gc1.generate(gm, List.of(3, 4), seed), gc2.generate(gm, List.of(3, 4), seed),
+            "The same seed should give the same result with: %s".formatted(gc1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getSeededCreators")
+    public void testGeneratePartitioned(GroupCreator gc, GroupCreator unused) throws Exception
+    {
+        var gm = new Group("Partitioned");
+        var r = new Random("Kaka".hashCode());
+        setUpGroup(40, gm, r);
+
+        for (var i = 0; i < 40; i += 2)
+            gm.setMainGroup(i, MainGroup.TWO);
+
+        var res = gc.generatePartitioned(gm, Map.of(MainGroup.ONE, List.of(4), MainGroup.TWO, List.of(3, 7)), 1);
+
+        for (var mg : MainGroup.values())
+        {
+            var expected = new HashSet<Integer>();
+            for (var i = 0; i < 40; i++)
+            {
+                if (gm.getMainGroup(i) == mg)
+                    expected.add(i);
+            }
+
+            for (var groups : res.get(mg))
+            {
+                var all = new HashSet<Integer>();
+                groups.forEach(all::addAll);
+                assertEquals(expected, all, "Every subgroup of %s should be from %s.".formatted(gc, mg));
+            }
+        }
+
+        assertEquals(3, res.get(MainGroup.TWO).getFirst().get(0).size(), "The first size should be used.");
+        assertEquals(7, res.get(MainGroup.TWO).getFirst().get(1).size(), "The second size should be used.");
+    }
+}
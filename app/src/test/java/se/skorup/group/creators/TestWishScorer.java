@@ -0,0 +1,149 @@
+package se.skorup.group.creators;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import se.skorup.group.Group;
+import se.skorup.group.generation.WishScorer;
+import se.skorup.group.generation.WishesGroupCreator;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestWishScorer
+{
+    private static Group createGroup(int members, int wishes, Random r)
+    {
+        var gm = new Group("Test");
+
+        for (var i = 0; i < members; i++)
+            gm.registerPerson("Test-" + i);
+
+        for (var i = 0; i < members; i++)
+        {
+            for (var k = 0; k < wishes; k++)
+            {
+                var id = r.nextInt(0, members);
+                if (id != i)
+                    gm.addWishItem(i, id);
+            }
+        }
+
+        return gm;
+    }
+
+    private static int[][] createGroups(int members, int size)
+    {
+        var res = new int[(members + size - 1) / size][];
+
+        for (var g = 0; g < res.length; g++)
+        {
+            res[g] = new int[Math.min(size, members - g * size)];
+            for (var k = 0; k < res[g].length; k++)
+                res[g][k] = g * size + k;
+        }
+
+        return res;
+    }
+
+    public static Stream<Arguments> getTestData()
+    {
+        return Stream.of(
+            Arguments.of(10, 1, 2),
+            Arguments.of(10, 3, 3),
+            Arguments.of(50, 2, 5),
+            Arguments.of(100, 4, 4),
+            Arguments.of(100, 6, 10),
+            Arguments.of(300, 3, 6)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestData")
+    public void testParity(int members, int wishes, int size)
+    {
+        var r = new Random("Kaka".hashCode());
+        var cg = createGroup(members, wishes, r).snapshot();
+        var scorer = new WishScorer(cg, createGroups(members, size));
+        var nbrGroups = scorer.groups().length;
+
+        assertEquals(
+            WishesGroupCreator.getScore(scorer.groups(), cg), scorer.score(), 1e-9,
+            "The initial score should match getScore."
+        );
+
+        for (var i = 0; i < 2000; i++)
+        {
+            var before = scorer.score();
+            var a = r.nextInt(members);
+            double delta;
+
+            if (r.nextBoolean())
+            {
+                var b = r.nextInt(members);
+                delta = scorer.deltaForSwap(a, b);
+                assertEquals(before, scorer.score(), "deltaForSwap should not change the score.");
+                scorer.applySwap(a, b);
+            }
+            else
+            {
+                var to = r.nextInt(nbrGroups);
+                delta = scorer.deltaForMove(a, to);
+                assertEquals(before, scorer.score(), "deltaForMove should not change the score.");
+                scorer.applyMove(a, to);
+                assertEquals(to, scorer.groupOf(a), "The person should be moved.");
+            }
+
+            var expected = WishesGroupCreator.getScore(scorer.groups(), cg);
+            var tolerance = Math.max(1e-9, Math.abs(expected) * 1e-12);
+            assertEquals(expected, scorer.score(), tolerance, "The score should match getScore after %d changes.".formatted(i));
+            assertEquals(expected - before, delta, tolerance, "The delta should match the change in getScore.");
+        }
+    }
+
+    @Test
+    public void testOmegaAndN()
+    {
+        // 0 and 1 wish each other, 2 and 3 wish each other, 4 wishes 0.
+        var gm = new Group("Test");
+        for (var i = 0; i < 5; i++)
+            gm.registerPerson("Test-" + i);
+
+        gm.addWishItem(0, 1);
+        gm.addWishItem(1, 0);
+        gm.addWishItem(2, 3);
+        gm.addWishItem(3, 2);
+        gm.addWishItem(4, 0);
+
+        var cg = gm.snapshot();
+        var scorer = new WishScorer(cg, new int[][] { { 0, 2, 4 }, { 1, 3 } });
+
+        // Only 4 has a fulfilled wish, so x = [4, 1].
+        var expected = 1 / Math.pow(2, WishesGroupCreator.n(1)) - WishesGroupCreator.omega(4) * 4;
+        assertEquals(expected, scorer.score(), 1e-9, "The score should include omega and n.");
+        assertEquals(4, scorer.unfulfilled(), "Four persons should be without a fulfilled wish.");
+
+        // Swapping 2 and 1 fulfills all the wishes, so x = [0, 5].
+        var delta = scorer.deltaForSwap(2, 1);
+        scorer.applySwap(2, 1);
+        assertEquals(Math.pow(5, 1) / Math.pow(2, WishesGroupCreator.n(1)), scorer.score(), 1e-9, "All wishes should be fulfilled.");
+        assertEquals(scorer.score() - expected, delta, 1e-9, "The delta should match.");
+        assertEquals(0, scorer.unfulfilled(), "No one should be without a fulfilled wish.");
+    }
+
+    @Test
+    public void testMoveToMissingGroup()
+    {
+        var cg = createGroup(10, 2, new Random("Kaka".hashCode())).snapshot();
+        var scorer = new WishScorer(cg, createGroups(10, 5));
+
+        assertThrows(IllegalArgumentException.class, () -> scorer.deltaForMove(0, 2), "There are only two groups.");
+        assertThrows(IllegalArgumentException.class, () -> scorer.applyMove(0, -1), "There is no negative group.");
+        assertTrue(Double.isFinite(scorer.score()), "The score should be untouched.");
+    }
+}
@@ -0,0 +1,183 @@
+package se.skorup.main.cli;
+
+import org.junit.jupiter.api.Test;
+import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
+import se.skorup.util.io.MyFileReader;
+import se.skorup.util.io.SerializationUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCommandLine
+{
+    /**
+     * Runs the headless mode, the result is discarded.
+     * */
+    private static int run(String... args)
+    {
+        return CommandLine.run(args, new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Test
+    public void testFromCSV()
+    {
+        var data = new String[][] {
+            { "Anna", "Bo", "Cia" },
+            { "Bo", "Anna", "Okänd" },
+            { "Cia" },
+            { "" }
+        };
+
+        var g = CommandLine.fromCSV("test/klass.csv", data);
+
+        assertEquals("klass", g.toString(), "The name should be the name of the file.");
+        assertEquals(3, g.size(), "Only the persons in the first column should be registered.");
+
+        var anna = g.getPersonFromName("Anna").getFirst().id();
+        var bo = g.getPersonFromName("Bo").getFirst().id();
+        var cia = g.getPersonFromName("Cia").getFirst().id();
+        assertTrue(g.getWishedIds(anna).containsAll(List.of(bo, cia)), "Anna should wish Bo and Cia.");
+        assertEquals(1, g.getWishedIds(bo).size(), "Bo should only wish Anna.");
+    }
+
+    @Test
+    public void testRunWithSave() throws Exception
+    {
+        var groups = new ArrayList<Group>();
+        for (var name : List.of("Klass A", "Klass B"))
+        {
+            var g = new Group(name);
+            for (var i = 0; i < 12; i++)
+                g.registerPerson("Test-" + i);
+
+            for (var i = 0; i < 12; i++)
+                g.addWishItem(i, (i + 1) % 12);
+
+            groups.add(g);
+        }
+
+        var save = "TestCommandLine.data";
+        var output = "TestCommandLine.json";
+        new File(save).deleteOnExit();
+        new File(output).deleteOnExit();
+        SerializationUtil.serializeObject(save, groups);
+
+        var code = run(
+            "--input", save, "--group", "Klass B", "--creator", "local-search",
+            "--sizes", "4", "--seed", "42", "--output", output
+        );
+
+        assertEquals(0, code, "The generation should succeed.");
+
+        var json = MyFileReader.readFile(new File(output));
+        assertTrue(json.contains("\"group\": \"Klass B\""), "The chosen group should be written.");
+        assertTrue(!json.contains("Klass A"), "The other group should not be written.");
+        assertTrue(json.contains("\"seed\": 42"), "The seed should be written.");
+        assertEquals(12, json.split("\"Test-").length - 1, "Everyone should be in a subgroup.");
+    }
+
+    @Test
+    public void testUsage()
+    {
+        assertEquals(CommandLine.USAGE, run("--sizes", "4"), "The input is required.");
+        assertEquals(CommandLine.USAGE, run("--input", "a.csv", "--sizes", "0"), "The sizes must be positive.");
+        assertEquals(CommandLine.USAGE, run("--input", "a.csv", "--sizes", "4", "--creator", "kaka"), "The creator must exist.");
+        assertEquals(CommandLine.USAGE, run("--input", "a.csv", "--sizes", "4", "--creator", "balanced"), "The attributes can't be entered.");
+        assertEquals(CommandLine.USAGE, run("--input", "a.csv", "--mg1-sizes", "4"), "Both main groups need sizes.");
+        assertEquals(CommandLine.FAILED, run("--input", "missing.csv", "--sizes", "4"), "A missing file should fail.");
+    }
+
+    @Test
+    public void testRunToStream() throws Exception
+    {
+        var g = new Group("Klass");
+        for (var i = 0; i < 8; i++)
+            g.registerPerson("Test-" + i);
+
+        var save = "TestCommandLineStream.data";
+        new File(save).deleteOnExit();
+        SerializationUtil.serializeObject(save, new ArrayList<>(List.of(g)));
+
+        var stdout = System.out;
+        var out = new ByteArrayOutputStream();
+        var code = CommandLine.run(
+            new String[] { "--input", save, "--creator", "random", "--sizes", "4", "--format", "csv" },
+            new PrintStream(out)
+        );
+
+        assertEquals(0, code, "The generation should succeed.");
+        assertSame(stdout, System.out, "Standard output should be untouched.");
+        assertEquals(
+            9, out.toString(StandardCharsets.UTF_8).lines().count(),
+            "The header and everyone should be written to the stream."
+        );
+    }
+
+    @Test
+    public void testRunWithEqualGroups() throws Exception
+    {
+        // The main groups aren't a part of equals, so the groups are equal but get different subgroups.
+        var mg1 = List.of(Set.of(0, 1, 2, 3), Set.of(0, 1, 4, 5));
+        var groups = new ArrayList<Group>();
+        for (var members : mg1)
+        {
+            var g = new Group("Klass");
+            for (var i = 0; i < 8; i++)
+            {
+                var id = g.registerPerson("Test-" + i);
+                g.setMainGroup(id, members.contains(id) ? MainGroup.ONE : MainGroup.TWO);
+            }
+
+            groups.add(g);
+        }
+
+        assertEquals(groups.get(0), groups.get(1), "The groups should be equal.");
+
+        var save = "TestCommandLineEqual.data";
+        new File(save).deleteOnExit();
+        SerializationUtil.serializeObject(save, groups);
+
+        var out = new ByteArrayOutputStream();
+        var code = CommandLine.run(
+            new String[] {
+                "--input", save, "--creator", "random", "--mg1-sizes", "4",
+                "--mg2-sizes", "4", "--format", "csv"
+            },
+            new PrintStream(out)
+        );
+
+        assertEquals(0, code, "The generation should succeed.");
+
+        // Every group writes its 8 persons, so the lines of a group are found by their position.
+        var lines = out.toString(StandardCharsets.UTF_8).lines().skip(1).toList();
+        assertEquals(16, lines.size(), "Both groups should be written.");
+
+        for (var i = 0; i < mg1.size(); i++)
+        {
+            var subgroups = new HashMap<String, Set<Integer>>();
+            for (var line : lines.subList(i * 8, i * 8 + 8))
+            {
+                var cols = line.split(",");
+                subgroups.computeIfAbsent(cols[1], k -> new HashSet<>()).add(Integer.parseInt(cols[2]));
+            }
+
+            assertTrue(
+                subgroups.containsValue(mg1.get(i)),
+                "Group %d should get its own subgroups: %s".formatted(i + 1, subgroups)
+            );
+        }
+    }
+}
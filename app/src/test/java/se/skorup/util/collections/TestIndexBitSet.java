@@ -0,0 +1,102 @@
+package se.skorup.util.collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestIndexBitSet
+{
+    public static Stream<Arguments> getTestSizes()
+    {
+        return Stream.of(
+            Arguments.of(1),
+            Arguments.of(63),
+            Arguments.of(64),
+            Arguments.of(65),
+            Arguments.of(500),
+            Arguments.of(2000)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestSizes")
+    public void testSetAll(int size)
+    {
+        var set = new IndexBitSet(size);
+        set.setAll();
+
+        assertEquals(size, set.cardinality(), "All the indices should be set.");
+        assertEquals(size - 1, set.nthSetBit(size - 1), "The last index should be the last one.");
+        assertEquals(-1, set.nthSetBit(size), "There should be no more indices.");
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestSizes")
+    public void testAgainstBitSet(int size)
+    {
+        var r = new Random("Kaka".hashCode());
+        var a = new IndexBitSet(size);
+        var b = new IndexBitSet(size);
+        var res = new IndexBitSet(size);
+        var ea = new BitSet(size);
+        var eb = new BitSet(size);
+
+        for (var i = 0; i < size; i++)
+        {
+            if (r.nextBoolean())
+            {
+                a.set(i);
+                ea.set(i);
+            }
+
+            if (r.nextInt(4) == 0)
+            {
+                b.set(i);
+                eb.set(i);
+            }
+        }
+
+        res.andNot(a, b);
+        ea.andNot(eb);
+
+        assertEquals(ea.cardinality(), res.cardinality(), "The cardinality should match.");
+
+        var n = 0;
+        for (int i = ea.nextSetBit(0), j = res.nextSetBit(0); i != -1; i = ea.nextSetBit(i + 1), j = res.nextSetBit(j + 1))
+        {
+            assertEquals(i, j, "The indices should match.");
+            assertEquals(i, res.nthSetBit(n++), "The n:th index should match.");
+        }
+
+        assertEquals(-1, res.nextSetBit(ea.length()), "There should be no more indices.");
+    }
+
+    @Test
+    public void testSetAndClear()
+    {
+        var set = new IndexBitSet(130);
+        assertTrue(set.isEmpty(), "A new set should be empty.");
+
+        set.set(129);
+        set.set(64);
+        assertTrue(set.get(129), "129 should be in the set.");
+        assertTrue(set.get(64), "64 should be in the set.");
+        assertFalse(set.get(63), "63 should not be in the set.");
+        assertEquals(64, set.nextSetBit(0), "64 should be the first index.");
+
+        set.clear(64);
+        assertEquals(129, set.nextSetBit(0), "129 should be the first index.");
+
+        set.clearAll();
+        assertTrue(set.isEmpty(), "The set should be empty after clearAll.");
+    }
+}
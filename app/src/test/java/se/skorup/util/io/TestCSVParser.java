@@ -0,0 +1,80 @@
+package se.skorup.util.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCSVParser
+{
+    private static List<String[]> parse(String csv, int bufferSize) throws IOException
+    {
+        var channel = Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        var rows = new ArrayList<String[]>();
+
+        try (var parser = new CSVParser(channel, (char) 0, bufferSize))
+        {
+            for (var row = parser.readRow(); row != null; row = parser.readRow())
+                rows.add(row);
+        }
+
+        return rows;
+    }
+
+    public static Stream<Arguments> getCSV()
+    {
+        var names = new String[][] { { "Anton", "Minna" }, { "Felix", "Stina Svensson" } };
+
+        return Stream.of(
+            Arguments.of("anton,minna\nfelix,stina  svensson\n", names),
+            Arguments.of("anton; minna\r\nFELIX; Stina Svensson", names),
+            Arguments.of("\uFEFFanton;minna\r\rfelix;stina svensson\r", names),
+            Arguments.of("\n\nanton,minna,,\n ,\nfelix,stina svensson,\n\n", names),
+            Arguments.of("\"anton\",\"minna\"\n\"felix\",\"stina\nsvensson\"", names),
+            Arguments.of("\"a, \"\"b\"\"\";c\n", new String[][] { { "A, \"b\"", "C" } }),
+            Arguments.of("anton;\"minna; felix\"", new String[][] { { "Anton", "Minna; Felix" } }),
+            Arguments.of("", new String[0][])
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getCSV")
+    public void testParse(String csv, String[][] expected) throws IOException
+    {
+        // The smallest buffer makes every row cross the end of it.
+        for (var size : new int[] { 16, CSVParser.BUFFER_SIZE })
+        {
+            var rows = parse(csv, size).toArray(String[][]::new);
+            assertTrue(Arrays.deepEquals(expected, rows), "%s should be parsed, got: %s".formatted(csv, Arrays.deepToString(rows)));
+        }
+    }
+
+    @Test
+    public void testLargeFile() throws IOException
+    {
+        var csv = new StringBuilder();
+        for (var i = 0; i < 10_000; i++)
+            csv.append("Person ").append(i).append(",person ").append(i % 10).append(",\"Å\"\"ä\"\"ö ").append(i % 3).append("\"\n");
+
+        var rows = parse(csv.toString(), 100);
+        assertEquals(10_000, rows.size(), "Every row should be read.");
+
+        for (var i = 0; i < rows.size(); i++)
+            assertEquals(List.of("Person " + i, "Person " + i % 10, "Å\"ä\"ö " + i % 3), List.of(rows.get(i)), "Row %d should be read.".formatted(i));
+
+        assertSame(rows.get(1)[0], rows.get(11)[1], "The same name should be the same string.");
+    }
+}
@@ -4,12 +4,17 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestCSVReader
@@ -53,4 +58,48 @@ public class TestCSVReader
 
         assertTrue(Arrays.deepEquals(expected, res), "The resulting array should equal the expected.");
     }
+
+    public static Stream<Arguments> getLargeCSV()
+    {
+        var plain = new StringBuilder();
+        var quoted = new StringBuilder();
+
+        for (var i = 0; i < 20_000; i++)
+        {
+            plain.append("person ").append(i).append("; friend ").append(i % 50).append("\r\n");
+            quoted.append("\"Person\n").append(i).append("\",\"Friend, ").append(i % 50).append("\"\n");
+        }
+
+        return Stream.of(Arguments.of(plain.toString()), Arguments.of(quoted.toString()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getLargeCSV")
+    public void testParallel(String csv) throws IOException
+    {
+        var path = Files.createTempFile("parallel", ".csv");
+        var pool = new ForkJoinPool(4);
+
+        try
+        {
+            Files.writeString(path, csv);
+            var expected = new ArrayList<String[]>();
+
+            try (var parser = CSVParser.open(path))
+            {
+                for (var row = parser.readRow(); row != null; row = parser.readRow())
+                    expected.add(row);
+            }
+
+            // Small chunks, so a quoted line break is cut.
+            var res = CSVReader.readCSV(path, pool, 1024);
+            assertEquals(20_000, res.length, "Every row should be read.");
+            assertTrue(Arrays.deepEquals(expected.toArray(String[][]::new), res), "The rows should be the same as when read in order.");
+        }
+        finally
+        {
+            pool.shutdown();
+            Files.delete(path);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package se.skorup.util.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestChunkedCipher
+{
+    private static final SecretKey KEY = EncryptedSerializationUtil.key;
+
+    /** The size of the header, and of the length and tag of a chunk. */
+    private static final int HEADER = 12;
+    private static final int OVERHEAD = 4 + 16;
+
+    private static byte[] encrypt(byte[] plain, SecretKey key) throws IOException
+    {
+        var bytes = new ByteArrayOutputStream();
+
+        try (var out = Channels.newOutputStream(ChunkedCipher.encrypt(Channels.newChannel(bytes), key)))
+        {
+            // Written in odd pieces, so the chunks don't line up with the writes.
+            for (var i = 0; i < plain.length; i += 1000)
+                out.write(plain, i, Math.min(1000, plain.length - i));
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] encrypted, SecretKey key) throws IOException
+    {
+        var channel = ChunkedCipher.decrypt(Channels.newChannel(new ByteArrayInputStream(encrypted)), key);
+
+        try (var in = Channels.newInputStream(channel))
+        {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] random(int length)
+    {
+        var bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Stream<Integer> getSizes()
+    {
+        var c = ChunkedCipher.CHUNK_SIZE;
+        return Stream.of(0, 1, 1000, c - 1, c, c + 1, 3 * c + 17);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getSizes")
+    public void testRoundTrip(int size) throws IOException
+    {
+        var plain = random(size);
+        var encrypted = encrypt(plain, KEY);
+        var chunks = Math.max(1, (size + ChunkedCipher.CHUNK_SIZE - 1) / ChunkedCipher.CHUNK_SIZE);
+
+        assertTrue(ChunkedCipher.isEncrypted(encrypted), "It should start with the magic bytes.");
+        assertEquals(HEADER + size + chunks * OVERHEAD, encrypted.length, "Only the header and the chunks should be added.");
+        assertArrayEquals(plain, decrypt(encrypted, KEY), "%d bytes should be decrypted.".formatted(size));
+    }
+
+    @Test
+    public void testTamperedChunks() throws IOException
+    {
+        var c = ChunkedCipher.CHUNK_SIZE;
+        var encrypted = encrypt(random(3 * c), KEY);
+
+        // A byte in every chunk, and in the header.
+        for (var i : new int[] { 6, HEADER + 10, HEADER + c + OVERHEAD + 10, encrypted.length - 1 })
+        {
+            var tampered = encrypted.clone();
+            tampered[i] ^= 1;
+            assertThrows(IOException.class, () -> decrypt(tampered, KEY), "A changed byte at %d should be found.".formatted(i));
+        }
+    }
+
+    @Test
+    public void testCutOff() throws IOException
+    {
+        var c = ChunkedCipher.CHUNK_SIZE;
+        var encrypted = encrypt(random(2 * c), KEY);
+
+        var lastChunkRemoved = Arrays.copyOf(encrypted, HEADER + c + OVERHEAD);
+        assertThrows(IOException.class, () -> decrypt(lastChunkRemoved, KEY), "A missing last chunk should be found.");
+
+        var cut = Arrays.copyOf(encrypted, encrypted.length - 5);
+        assertThrows(IOException.class, () -> decrypt(cut, KEY), "A cut off chunk should be found.");
+    }
+
+    @Test
+    public void testReorderedChunks() throws IOException
+    {
+        var c = ChunkedCipher.CHUNK_SIZE;
+        var encrypted = encrypt(random(3 * c), KEY);
+        var size = c + OVERHEAD;
+
+        // The first and second chunk are swapped.
+        var reordered = encrypted.clone();
+        System.arraycopy(encrypted, HEADER, reordered, HEADER + size, size);
+        System.arraycopy(encrypted, HEADER + size, reordered, HEADER, size);
+
+        assertThrows(IOException.class, () -> decrypt(reordered, KEY), "Swapped chunks should be found.");
+    }
+
+    @Test
+    public void testWrongKey() throws Exception
+    {
+        var encrypted = encrypt(random(100), KEY);
+        var other = EncryptedSerializationUtil.generateKey();
+
+        assertThrows(IOException.class, () -> decrypt(encrypted, other), "Another key should not decrypt it.");
+        assertFalse(ChunkedCipher.isEncrypted(random(100)), "Random bytes should not be encrypted.");
+        assertThrows(IOException.class, () -> decrypt(random(100), KEY), "Random bytes should not be decrypted.");
+    }
+}
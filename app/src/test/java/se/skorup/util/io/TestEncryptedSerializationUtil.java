@@ -2,12 +2,19 @@ package se.skorup.util.io;
 
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.Cipher;
 import javax.crypto.SealedObject;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.security.InvalidKeyException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -50,13 +57,22 @@ public class TestEncryptedSerializationUtil
         {
             var obj = new TestDataStructure("Kalle", 123, List.of(1, 2, 3, 4, 5));
             EncryptedSerializationUtil.serializeObject(path, obj);
-            var deserialized = SerializationUtil.deserializeObject(path);
-            assertTrue(deserialized instanceof SealedObject, "The object is not an instance of SealedObject");
+            assertTrue(ChunkedCipher.isEncrypted(Path.of(path)), "The file should be encrypted in chunks");
             assertThrows(
-                InvalidKeyException.class,
-                () -> ((SealedObject) deserialized).getObject(EncryptedSerializationUtil.generateKey()),
-                "The object should not be able to be decrypted"
+                IOException.class,
+                () -> SerializationUtil.deserializeObject(path),
+                "The object should not be able to be deserialized without decryption"
             );
+
+            try (var fc = FileChannel.open(Path.of(path)))
+            {
+                var key = EncryptedSerializationUtil.generateKey();
+                assertThrows(
+                    IOException.class,
+                    () -> new ObjectInputStream(Channels.newInputStream(ChunkedCipher.decrypt(fc, key))).readObject(),
+                    "The object should not be able to be decrypted"
+                );
+            }
         }
         catch (Exception e)
         {
@@ -70,5 +86,48 @@ public class TestEncryptedSerializationUtil
         }
     }
 
+    @Test
+    public void testDeserializeSealedObject()
+    {
+        var path = "./test.test";
+
+        try
+        {
+            // The format before the streaming encryption.
+            var obj = new TestDataStructure("Kalle", 123, List.of(1, 2, 3, 4, 5));
+            var cipher = Cipher.getInstance("AES");
+            cipher.init(Cipher.ENCRYPT_MODE, EncryptedSerializationUtil.key);
+            SerializationUtil.serializeObject(path, new SealedObject(obj, cipher));
+
+            var decrypted = (TestDataStructure) EncryptedSerializationUtil.deserializeObject(path);
+            assertEquals(
+                obj, decrypted, "The two objects must match! obj: %s, decrypted: %s".formatted(obj, decrypted)
+            );
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            var msg = e.getLocalizedMessage();
+            fail(msg);
+        }
+        finally
+        {
+            new File(path).delete();
+        }
+    }
+
+    @Test
+    public void testDecryptOldChannel() throws Exception
+    {
+        // The channels were encrypted with plain AES before the chunks.
+        var plain = "Kalle, Anka & Kajsa".repeat(1000).getBytes();
+        var cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, EncryptedSerializationUtil.key);
+        var encrypted = cipher.doFinal(plain);
+
+        var channel = EncryptedSerializationUtil.decrypt(Channels.newChannel(new ByteArrayInputStream(encrypted)));
+        assertArrayEquals(plain, Channels.newInputStream(channel).readAllBytes(), "The old channels should still be decrypted");
+    }
+
     private record TestDataStructure(String s, int i, List<Integer> l) implements Serializable {}
 }
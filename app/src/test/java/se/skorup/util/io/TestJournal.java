@@ -0,0 +1,317 @@
+package se.skorup.util.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skorup.group.Attribute;
+import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestJournal
+{
+    private Path dir;
+
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException
+    {
+        try (var files = Files.list(dir))
+        {
+            for (var f : files.toList())
+                Files.delete(f);
+        }
+
+        Files.delete(dir);
+    }
+
+    private Journal open() throws IOException
+    {
+        return Journal.open(dir, SaveFile.Layer.none(), SaveFile.Layer.none());
+    }
+
+    private List<Group> read() throws IOException
+    {
+        return Journal.read(dir, SaveFile.Layer.none());
+    }
+
+    private static void edit(Group g, Random r, int edits)
+    {
+        for (var i = 0; i < edits; i++)
+        {
+            var ids = new ArrayList<>(g.getIds());
+            var id1 = ids.isEmpty() ? 0 : ids.get(r.nextInt(ids.size()));
+            var id2 = ids.isEmpty() ? 0 : ids.get(r.nextInt(ids.size()));
+
+            switch (r.nextInt(12))
+            {
+                case 0, 1 -> g.registerPerson("Test-" + r.nextInt(20));
+                case 2 -> g.addWishItem(id1, id2);
+                case 3 -> g.addDenyItem(id1, id2);
+                case 4 -> g.removeWishItem(id1, id2);
+                case 5 -> g.setMainGroup(id1, r.nextBoolean() ? MainGroup.ONE : MainGroup.TWO);
+                case 6 -> g.setNumeric(id1, "Grade", r.nextInt(6));
+                case 7 -> g.setCategory(id1, "Gender", r.nextBoolean() ? "F" : null);
+                case 8 -> g.removePerson(id1);
+                case 9 -> {
+                    var grades = new HashMap<Integer, Double>();
+                    grades.put(id2, Double.NaN);
+                    grades.put(id1, (double) r.nextInt(6));
+                    g.setNumerics("Grade", grades);
+                }
+                case 10 -> g.setCategories("Gender", Collections.singletonMap(id1, r.nextBoolean() ? "M" : null));
+                default -> g.setName("Group-" + r.nextInt(5));
+            }
+        }
+    }
+
+    private static Group createGroup(String name, Random r)
+    {
+        var g = new Group(name);
+        g.addAttribute("Grade", Attribute.Kind.NUMERIC);
+        g.addAttribute("Gender", Attribute.Kind.CATEGORICAL);
+
+        for (var i = 0; i < 10; i++)
+            g.registerPerson("Test-" + i);
+
+        return g;
+    }
+
+    private static void assertSameGroups(List<Group> expected, List<Group> actual)
+    {
+        assertEquals(expected, actual, "The groups should be saved.");
+
+        for (var i = 0; i < expected.size(); i++)
+        {
+            var e = expected.get(i);
+            var a = actual.get(i);
+
+            for (var id : e.getIds())
+            {
+                assertEquals(e.getMainGroup(id), a.getMainGroup(id), "The main group of %d should be saved.".formatted(id));
+                assertEquals(e.getNumeric(id, "Grade"), a.getNumeric(id, "Grade"), "The grade of %d should be saved.".formatted(id));
+                assertEquals(e.getCategory(id, "Gender"), a.getCategory(id, "Gender"), "The gender of %d should be saved.".formatted(id));
+            }
+
+            assertEquals(e.registerPerson("New"), a.registerPerson("New"), "The next id of %s should be saved.".formatted(e));
+        }
+    }
+
+    @Test
+    public void testRecoveryWithoutClose() throws Exception
+    {
+        var r = new Random("Kaka".hashCode());
+        var journal = open();
+        assertFalse(journal.hasSave(), "There should be no save in an empty directory.");
+
+        var groups = List.of(createGroup("Class-1", r), createGroup("Class-2", r));
+        groups.forEach(journal::addGroup);
+
+        for (var i = 0; i < 20; i++)
+        {
+            groups.forEach(g -> edit(g, r, 10));
+            journal.flush();
+        }
+
+        // The journal isn't closed before it is read, as if the program crashed.
+        assertSameGroups(groups, read());
+        journal.close();
+    }
+
+    @Test
+    public void testReopen() throws Exception
+    {
+        var r = new Random(1);
+        var journal = open();
+        var g = createGroup("Class", r);
+        journal.addGroup(g);
+        edit(g, r, 100);
+        journal.close();
+
+        journal = open();
+        assertTrue(journal.hasSave(), "The save should be found.");
+        assertSameGroups(List.of(g), journal.getGroups());
+
+        // The edits of the loaded groups are saved as well.
+        var loaded = journal.getGroups().getFirst();
+        edit(loaded, r, 100);
+        var added = createGroup("Added", r);
+        journal.addGroup(added);
+        journal.removeGroup(loaded);
+        edit(added, r, 50);
+        journal.close();
+
+        assertSameGroups(List.of(added), read());
+    }
+
+    @Test
+    public void testCompaction() throws Exception
+    {
+        var r = new Random(2);
+        var journal = open();
+        var groups = List.of(createGroup("Class-1", r), createGroup("Class-2", r));
+        groups.forEach(journal::addGroup);
+
+        // Edits made while the groups are compacted.
+        for (var i = 0; i < 10; i++)
+        {
+            groups.forEach(g -> edit(g, r, 20));
+            journal.compact();
+        }
+
+        journal.flush();
+        assertSameGroups(groups, read());
+
+        try (var files = Files.list(dir))
+        {
+            assertEquals(2, files.count(), "Only the latest snapshot and journal should be kept.");
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testConcurrentEdits() throws Exception
+    {
+        var journal = open();
+        var groups = new ArrayList<Group>();
+        var threads = new ArrayList<Thread>();
+
+        for (var i = 0; i < 4; i++)
+        {
+            var r = new Random(i);
+            var g = createGroup("Class-" + i, r);
+            groups.add(g);
+            journal.addGroup(g);
+            threads.add(new Thread(() -> edit(g, r, 500)));
+        }
+
+        threads.forEach(Thread::start);
+        for (var i = 0; i < 5; i++)
+            journal.compact();
+
+        for (var t : threads)
+            t.join();
+
+        journal.close();
+        assertSameGroups(groups, read());
+    }
+
+    @Test
+    public void testBrokenFrame() throws Exception
+    {
+        var r = new Random(3);
+        var journal = open();
+        var g = createGroup("Class", r);
+        journal.addGroup(g);
+        edit(g, r, 50);
+        journal.flush();
+
+        var expected = read();
+        var path = dir.resolve("groups.0.journal");
+        Files.write(path, new byte[] { 100, 1, 2, 3, 4, 5 }, StandardOpenOption.APPEND);
+
+        assertSameGroups(expected, read());
+        journal.close();
+    }
+
+    @Test
+    public void testEncrypted() throws Exception
+    {
+        var r = new Random(4);
+        var journal = Journal.open(dir, EncryptedSerializationUtil::encrypt, EncryptedSerializationUtil::decrypt);
+        var g = createGroup("Class", r);
+        journal.addGroup(g);
+        edit(g, r, 100);
+        journal.close();
+
+        assertSameGroups(List.of(g), Journal.read(dir, EncryptedSerializationUtil::decrypt));
+    }
+
+    @Test
+    public void testLazyGroups() throws Exception
+    {
+        var r = new Random(5);
+        var journal = open();
+        var groups = new ArrayList<Group>();
+
+        for (var i = 0; i < Journal.CACHE_SIZE * 2; i++)
+        {
+            groups.add(createGroup("Class-" + i, r));
+            journal.addGroup(groups.getLast());
+        }
+
+        journal.close();
+        journal = open();
+        var opened = journal.getGroups();
+
+        for (var g : opened)
+            assertNotNull(g.getBody(), "%s shouldn't be read when the journal is opened.".formatted(g));
+
+        assertEquals(groups.stream().map(Group::toString).toList(), opened.stream().map(Group::toString).toList(), "The names should be in the index.");
+
+        // Every group is used once, the first ones are unloaded again.
+        for (var g : opened)
+            g.getIds();
+
+        journal.flush();
+        assertNotNull(opened.getFirst().getBody(), "The least recently used group should be unloaded.");
+        assertNull(opened.getLast().getBody(), "The last used group should be kept.");
+
+        // An edited group is kept, until it is part of a snapshot.
+        var edited = opened.getFirst();
+        edit(edited, r, 20);
+        opened.subList(1, opened.size()).forEach(Group::getIds);
+        journal.flush();
+        assertNull(edited.getBody(), "The edited group should be kept.");
+
+        journal.compact();
+        opened.getLast().getIds();
+        journal.flush();
+
+        var expected = new ArrayList<>(groups);
+        expected.set(0, edited);
+        journal.close();
+        assertSameGroups(expected, read());
+    }
+
+    @Test
+    public void testInitialGroups() throws Exception
+    {
+        var r = new Random("Kaka".hashCode());
+        var initial = List.of(createGroup("Class-1", r), createGroup("Class-2", r));
+        assertFalse(Journal.exists(dir), "There should be no snapshot in an empty directory.");
+
+        var journal = Journal.open(dir, SaveFile.Layer.none(), SaveFile.Layer.none(), initial);
+        assertFalse(journal.hasSave(), "The initial groups aren't a save.");
+        assertEquals(initial, journal.getGroups(), "The initial groups should be used.");
+        journal.close();
+
+        assertTrue(Journal.exists(dir), "The initial groups should be written as a snapshot.");
+
+        // Once there is a snapshot, the initial groups are ignored.
+        journal = Journal.open(dir, SaveFile.Layer.none(), SaveFile.Layer.none(), List.of(createGroup("Class-3", r)));
+        journal.close();
+        assertSameGroups(initial, read());
+    }
+}
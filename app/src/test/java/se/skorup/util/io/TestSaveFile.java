@@ -0,0 +1,223 @@
+package se.skorup.util.io;
+
+import org.junit.jupiter.api.Test;
+import se.skorup.group.Attribute;
+import se.skorup.group.Group;
+import se.skorup.group.MainGroup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestSaveFile
+{
+    private static Group createGroup(String name, int members, Random r)
+    {
+        var gm = new Group(name);
+
+        for (var i = 0; i < members; i++)
+            gm.registerPerson("Test-" + (i % 7) + " Åäö");
+
+        for (var i = 0; i < members * 3; i++)
+        {
+            var id1 = r.nextInt(members);
+            var id2 = r.nextInt(members);
+
+            if (id1 == id2)
+                continue;
+
+            if (r.nextBoolean())
+                gm.addWishItem(id1, id2);
+            else
+                gm.addDenyItem(id1, id2);
+        }
+
+        for (var id = 0; id < members; id += 3)
+            gm.setMainGroup(id, MainGroup.TWO);
+
+        gm.addAttribute("Grade", Attribute.Kind.NUMERIC);
+        gm.addAttribute("Gender", Attribute.Kind.CATEGORICAL);
+        for (var id = 0; id < members; id += 2)
+        {
+            gm.setNumeric(id, "Grade", r.nextDouble() * 5);
+            gm.setCategory(id, "Gender", r.nextBoolean() ? "F" : "M");
+        }
+
+        gm.removePerson(1);
+        return gm;
+    }
+
+    private static byte[] write(List<Group> groups) throws IOException
+    {
+        var bytes = new ByteArrayOutputStream();
+        SaveFile.write(Channels.newChannel(bytes), groups);
+        return bytes.toByteArray();
+    }
+
+    private static List<Group> read(byte[] bytes) throws IOException
+    {
+        return SaveFile.read(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        var r = new Random("Kaka".hashCode());
+        var groups = List.of(createGroup("Class-1", 30, r), createGroup("Class-2", 200, r), new Group("Empty"));
+        var res = read(write(groups));
+
+        assertEquals(groups, res, "The groups should be the same after reading them.");
+
+        for (var i = 0; i < groups.size(); i++)
+        {
+            var expected = groups.get(i);
+            var actual = res.get(i);
+
+            for (var id : expected.getIds())
+            {
+                assertEquals(expected.getMainGroup(id), actual.getMainGroup(id), "The main group of %d should be kept.".formatted(id));
+                assertEquals(expected.getNumeric(id, "Grade"), actual.getNumeric(id, "Grade"), "The grade of %d should be kept.".formatted(id));
+                assertEquals(expected.getCategory(id, "Gender"), actual.getCategory(id, "Gender"), "The gender of %d should be kept.".formatted(id));
+            }
+
+            assertEquals(
+                expected.registerPerson("New"), actual.registerPerson("New"),
+                "The next id of %s should be kept.".formatted(expected)
+            );
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException
+    {
+        var bytes = write(List.of(createGroup("Class", 20, new Random(1))));
+
+        var magic = bytes.clone();
+        magic[0] = 'X';
+        assertThrows(IOException.class, () -> read(magic), "A file without the magic bytes should fail.");
+
+        var version = bytes.clone();
+        version[4] = SaveFile.VERSION + 1;
+        assertThrows(IOException.class, () -> read(version), "A file of an unknown version should fail.");
+
+        var truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> read(truncated), "A truncated file should fail.");
+    }
+
+    @Test
+    public void testEncryptedFile() throws IOException
+    {
+        var dir = Files.createTempDirectory("save");
+        var path = dir.resolve("groups.gasv.enc");
+
+        try
+        {
+            var groups = List.of(createGroup("Class", 50, new Random(2)));
+            SaveFile.write(path, groups, EncryptedSerializationUtil::encrypt);
+
+            var content = new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1);
+            assertFalse(content.contains("Class") || content.contains("Test-"), "The names shouldn't be readable in the encrypted file.");
+            assertEquals(groups, SaveFile.read(path, EncryptedSerializationUtil::decrypt), "The groups should be decrypted.");
+
+            var plain = dir.resolve("groups.gasv");
+            SaveFile.write(plain, groups, SaveFile.Layer.none());
+            assertTrue(SaveFile.isSaveFile(plain), "The unencrypted file should be a save file.");
+
+            try (var files = Files.list(dir))
+            {
+                assertEquals(2, files.count(), "No temporary files should be left.");
+            }
+        }
+        finally
+        {
+            try (var files = Files.list(dir))
+            {
+                for (var f : files.toList())
+                    Files.delete(f);
+            }
+
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testVarInts() throws IOException
+    {
+        var values = new long[] { 0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, Long.MAX_VALUE, -1 };
+        var bytes = new ByteArrayOutputStream();
+
+        try (var out = new BinaryWriter(Channels.newChannel(bytes), 16))
+        {
+            for (var v : values)
+                out.writeVarLong(v);
+        }
+
+        assertEquals(34, bytes.size(), "Small values should take few bytes.");
+
+        var in = new BinaryReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), 16);
+        for (var v : values)
+            assertEquals(v, in.readVarLong(), "%d should be read back.".formatted(v));
+
+        assertTrue(in.isAtEnd(), "Everything should be read.");
+    }
+
+    @Test
+    public void testOpenLazily() throws IOException
+    {
+        var dir = Files.createTempDirectory("save");
+        var path = dir.resolve("groups.gasv");
+
+        try
+        {
+            var r = new Random(3);
+            var groups = List.of(createGroup("Class-1", 40, r), createGroup("Class-2", 10, r), new Group("Empty"));
+            SaveFile.write(path, groups, EncryptedSerializationUtil::encrypt);
+
+            var opened = SaveFile.open(path, EncryptedSerializationUtil::decrypt);
+            assertEquals(groups.size(), opened.size(), "Every group should be in the index.");
+
+            for (var i = 0; i < groups.size(); i++)
+            {
+                var g = opened.get(i);
+                assertNotNull(g.getBody(), "%s shouldn't be read when it is opened.".formatted(g));
+                assertEquals(groups.get(i).toString(), g.toString(), "The name should be in the index.");
+                assertEquals(groups.get(i).size(), g.size(), "The size should be in the index.");
+                assertNotNull(g.getBody(), "%s shouldn't be read for its name and size.".formatted(g));
+            }
+
+            assertEquals(groups.get(1).getIds(), opened.get(1).getIds(), "The group should be read when it is used.");
+            assertNull(opened.get(1).getBody(), "The used group should be loaded.");
+            assertNotNull(opened.getFirst().getBody(), "The other groups should not be read.");
+            assertEquals(groups, opened, "All groups should be read when they are used.");
+
+            var name = groups.getFirst().getPersons().iterator().next().name();
+            assertEquals(
+                groups.getFirst().getPersonFromName(name), opened.getFirst().getPersonFromName(name),
+                "The names of a read group should be indexed."
+            );
+        }
+        finally
+        {
+            try (var files = Files.list(dir))
+            {
+                for (var f : files.toList())
+                    Files.delete(f);
+            }
+
+            Files.delete(dir);
+        }
+    }
+}